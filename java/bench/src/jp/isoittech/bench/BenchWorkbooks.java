@@ -0,0 +1,104 @@
+/**
+ * Synthetic workbooks used by the JMH benchmarks.
+ *
+ * <p>Each workbook has a single sheet named "Data" with {@link #COLUMNS}
+ * columns: an id, a text column drawn from a pool of {@code strings}
+ * distinct values (stored in the shared strings table), a date and seven
+ * numeric columns. Cell styles are picked from {@code styles} distinct
+ * styles. Files are generated once with SXSSF and cached under
+ * {@code java.io.tmpdir}, since a million-row workbook takes a while to
+ * produce.
+ */
+package jp.isoittech.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+
+final class BenchWorkbooks {
+
+    static final String SHEET = "Data";
+    static final int COLUMNS = 10;
+
+    private static final Path CACHE_DIR = Paths.get(System.getProperty("java.io.tmpdir"), "excel-mcp-bench");
+
+    private BenchWorkbooks() {
+    }
+
+    /**
+     * Returns the cached workbook for the given shape, generating it first
+     * if needed.
+     */
+    static Path fixture(int rows, int styles, int strings) throws IOException {
+        Files.createDirectories(CACHE_DIR);
+        Path file = CACHE_DIR.resolve("rows" + rows + "_styles" + styles + "_strings" + strings + ".xlsx");
+        if (Files.exists(file)) {
+            return file;
+        }
+        Path tmp = Files.createTempFile(CACHE_DIR, "fixture", ".xlsx");
+        generate(tmp, rows, styles, strings);
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /**
+     * Copies a fixture to a fresh file that a mutating tool can overwrite.
+     */
+    static Path workingCopy(Path fixture, Path target) throws IOException {
+        return Files.copy(fixture, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void generate(Path file, int rows, int styles, int strings) throws IOException {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(null, 1000, true, true)) {
+            CellStyle[] pool = new CellStyle[styles];
+            short dateFormat = workbook.createDataFormat().getFormat("yyyy-mm-dd");
+            for (int i = 0; i < styles; i++) {
+                XSSFCellStyle style = (XSSFCellStyle) workbook.createCellStyle();
+                if (i > 0) {
+                    byte[] rgb = {(byte) (i * 37), (byte) (i * 73), (byte) (i * 151)};
+                    style.setFillForegroundColor(new XSSFColor(rgb, null));
+                    style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+                }
+                pool[i] = style;
+            }
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(dateFormat);
+
+            SXSSFSheet sheet = workbook.createSheet(SHEET);
+            Row header = sheet.createRow(0);
+            for (int c = 0; c < COLUMNS; c++) {
+                header.createCell(c).setCellValue("col" + c);
+            }
+            for (int r = 1; r <= rows; r++) {
+                Row row = sheet.createRow(r);
+                CellStyle style = pool[r % styles];
+                row.createCell(0).setCellValue(r);
+                row.createCell(1).setCellValue("text-" + (r * 7919L % strings));
+                row.createCell(2).setCellValue(40000 + r % 3650);
+                row.getCell(2).setCellStyle(dateStyle);
+                for (int c = 3; c < COLUMNS; c++) {
+                    row.createCell(c).setCellValue((r * 31L + c) % 10007 / 7.0);
+                }
+                for (int c = 0; c < COLUMNS; c++) {
+                    if (c != 2) {
+                        row.getCell(c).setCellStyle(style);
+                    }
+                }
+            }
+            try (OutputStream out = Files.newOutputStream(file)) {
+                workbook.write(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * JMH benchmarks that run the command line tools end to end (load, change,
+ * save) against synthetic workbooks, as the MCP server does for each call.
+ *
+ * <p>Run with {@code java/tools/bench.sh}; arguments are passed to JMH, for
+ * example {@code ./tools/bench.sh ToolBenchmark.read -p rows=1000 -prof gc}.
+ */
+package jp.isoittech.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import jp.isoittech.AppendRowsTool;
+import jp.isoittech.CopyRangeTool;
+import jp.isoittech.DeleteRangeTool;
+import jp.isoittech.FormatRangeTool;
+import jp.isoittech.ReadExcelTool;
+import jp.isoittech.WriteRangeTool;
+
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx6g"})
+public class ToolBenchmark {
+
+    /** Rows touched by each operation, independent of the workbook size. */
+    private static final int BLOCK_ROWS = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    /** Number of distinct cell styles in the workbook. */
+    @Param({"1", "1000"})
+    public int styles;
+
+    /** Number of distinct strings in the text column. */
+    @Param({"100", "100000"})
+    public int strings;
+
+    private Path fixture;
+    private Path work;
+    private PrintStream originalOut;
+
+    private String file;
+    private String blockStart;
+    private String blockEnd;
+    private String targetStart;
+    private String rowsJson;
+    private String blockJson;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        fixture = BenchWorkbooks.fixture(rows, styles, strings);
+        work = Files.createTempFile("excel-mcp-bench", ".xlsx");
+        file = work.toString();
+
+        // Operate on the last block of rows, so that row lookups and shifts
+        // see the whole sheet.
+        int first = Math.max(2, rows - BLOCK_ROWS + 2);
+        blockStart = "A" + first;
+        blockEnd = "J" + (rows + 1);
+        targetStart = "L" + first;
+        rowsJson = jsonRows(100);
+        blockJson = jsonRows(Math.min(BLOCK_ROWS, rows));
+
+        // ReadExcelTool prints its result; keep it out of the JMH output.
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() throws IOException {
+        BenchWorkbooks.workingCopy(fixture, work);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() throws IOException {
+        System.setOut(originalOut);
+        Files.deleteIfExists(work);
+    }
+
+    @Benchmark
+    public void read() throws Exception {
+        ReadExcelTool.main(new String[]{file, BenchWorkbooks.SHEET, blockStart + ":" + blockEnd});
+    }
+
+    @Benchmark
+    public void writeRange() throws Exception {
+        WriteRangeTool.main(new String[]{file, BenchWorkbooks.SHEET, blockStart, blockJson});
+    }
+
+    @Benchmark
+    public void appendRows() throws Exception {
+        AppendRowsTool.main(new String[]{file, BenchWorkbooks.SHEET, "A", rowsJson});
+    }
+
+    @Benchmark
+    public void formatRange() throws Exception {
+        FormatRangeTool.main(new String[]{file, BenchWorkbooks.SHEET, blockStart, blockEnd,
+                "true", "false", "12", "#FF0000", "#FFFF00"});
+    }
+
+    @Benchmark
+    public void copyRange() throws Exception {
+        CopyRangeTool.main(new String[]{file, BenchWorkbooks.SHEET, blockStart, blockEnd, targetStart});
+    }
+
+    @Benchmark
+    public void deleteRange() throws Exception {
+        DeleteRangeTool.main(new String[]{file, BenchWorkbooks.SHEET, blockStart, blockEnd, "up"});
+    }
+
+    /**
+     * Builds a JSON array of {@code count} rows shaped like the fixture rows.
+     */
+    private static String jsonRows(int count) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int r = 0; r < count; r++) {
+            if (r > 0) {
+                sb.append(',');
+            }
+            sb.append('[').append(r).append(",\"bench-").append(r).append("\",40000");
+            for (int c = 3; c < BenchWorkbooks.COLUMNS; c++) {
+                sb.append(',').append(r * c / 3.0);
+            }
+            sb.append(']');
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -7,7 +7,8 @@
  *     <li>filePath - path to the .xlsx file</li>
  *     <li>sheetName - name of the worksheet</li>
  *     <li>anchorColumn - column letter used to find the first empty row (e.g. "A")</li>
- *     <li>jsonRows - JSON array of arrays representing rows and cells</li>
+ *     <li>jsonRows - JSON array of arrays representing rows and cells, "-" to read it from
+ *     standard input, or "@path" to read it from a file</li>
  * </ol>
  *
  * Notes:
@@ -17,28 +18,22 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellReference;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class AppendRowsTool {
 
     public static void main(String[] args) throws Exception {
         if (args.length != 4) {
-            System.err.println("Usage: AppendRowsTool <filePath> <sheetName> <anchorColumn> <jsonRows>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: AppendRowsTool <filePath> <sheetName> <anchorColumn> <jsonRows|-|@path>");
         }
 
         String filePath = args[0];
@@ -46,29 +41,26 @@ public class AppendRowsTool {
         String anchorColumn = args[2];
         String jsonRows = args[3];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
         int anchorColIndex = CellReference.convertColStringToIndex(anchorColumn);
 
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
+            boolean created = workbook.getSheet(sheetName) == null;
             Sheet sheet = ExcelUtils.getOrCreateSheet(workbook, sheetName);
 
-            JsonArray rows = JsonParser.parseString(jsonRows).getAsJsonArray();
-
             int startRow = findFirstEmptyRowByAnchorColumn(sheet, anchorColIndex);
             int startCol = 0; // append starts from column A
 
             Row templateRow = startRow > 0 ? sheet.getRow(startRow - 1) : null;
-            writeMatrixAt(sheet, startRow, startCol, rows, templateRow);
-
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
+            long cells;
+            try (JsonRowReader rows = JsonRowReader.open(jsonRows)) {
+                cells = writeMatrixAt(sheet, startRow, startCol, rows, templateRow);
             }
+            session.getMetrics().addCellsTouched(cells);
+
+            // Appending no rows leaves the file alone.
+            session.saveIfChanged(cells > 0 || created);
 
             // Print where we appended (useful for debugging / future wrapper enhancements)
             System.out.println(startRow);
@@ -124,10 +116,14 @@ public class AppendRowsTool {
      *
      * When appending, we try to keep the visible look by copying styles from a template row
      * (typically the row immediately above the append position).
+     * Each row is written as soon as it is read. Returns the number of cells written.
      */
-    private static void writeMatrixAt(Sheet sheet, int startRow, int startCol, JsonArray rows, Row templateRow) {
-        for (int r = 0; r < rows.size(); r++) {
-            JsonArray rowArray = rows.get(r).getAsJsonArray();
+    private static long writeMatrixAt(Sheet sheet, int startRow, int startCol, JsonRowReader rows,
+                                      Row templateRow) throws IOException {
+        long cells = 0;
+        JsonArray rowArray;
+        for (int r = 0; (rowArray = rows.nextRow()) != null; r++) {
+            cells += rowArray.size();
             int rowIndex = startRow + r;
 
             Row row = sheet.getRow(rowIndex);
@@ -167,6 +163,7 @@ public class AppendRowsTool {
                 writeCellValue(cell, cellElement);
             }
         }
+        return cells;
     }
 
     /**
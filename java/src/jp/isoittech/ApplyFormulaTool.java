@@ -4,17 +4,11 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellAddress;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class ApplyFormulaTool {
 
@@ -29,8 +23,7 @@ public class ApplyFormulaTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 4) {
-            System.err.println("Usage: ApplyFormulaTool <filePath> <sheetName> <cell> <formula>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: ApplyFormulaTool <filePath> <sheetName> <cell> <formula>");
         }
 
         String filePath = args[0];
@@ -38,13 +31,8 @@ public class ApplyFormulaTool {
         String cellAddressStr = args[2];
         String formula = args[3];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             Sheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
@@ -52,23 +40,26 @@ public class ApplyFormulaTool {
             }
 
             CellAddress addr = ExcelRangeUtils.parseCellAddress(cellAddressStr);
+            boolean changed = false;
             Row row = sheet.getRow(addr.getRow());
             if (row == null) {
                 row = sheet.createRow(addr.getRow());
+                changed = true;
             }
             Cell cell = row.getCell(addr.getColumn());
             if (cell == null) {
                 cell = row.createCell(addr.getColumn());
+                changed = true;
             }
 
             if (!formula.startsWith("=")) {
                 formula = "=" + formula;
             }
-            cell.setCellFormula(formula.substring(1));
+            changed |= CellUpdates.setFormula(cell, formula.substring(1));
+            session.getMetrics().addCellsTouched(1);
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
-            }
+            // Applying the formula the cell already has leaves the file alone.
+            session.saveIfChanged(changed);
         }
     }
 }
@@ -0,0 +1,91 @@
+/**
+ * Training run for the AppCDS archive built by {@code tools/compile.sh}.
+ *
+ * <p>Runs every tool once against a small temporary workbook so that the
+ * classes each of them needs (POI, xmlbeans schema types, commons-compress,
+ * Gson, ...) are loaded and recorded in the class list that the archive is
+ * dumped from. Tool output is discarded.
+ *
+ * <pre>
+ *   java -XX:DumpLoadedClassList=dist/classes.lst -cp dist/excel-mcp.jar jp.isoittech.CdsTrainingRun
+ * </pre>
+ */
+package jp.isoittech;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class CdsTrainingRun {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("excel-mcp-cds");
+        String file = dir.resolve("training.xlsx").toString();
+        Path csv = dir.resolve("training.csv");
+
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            CreateExcelTool.main(new String[]{file, "Data"});
+            ListSheetsTool.main(new String[]{file});
+            WriteExcelTool.main(new String[]{file, "Data", "[[\"x\",\"a\",\"b\"],[1,2.5,\"text\"],[2,true,null]]"});
+            WriteRangeTool.main(new String[]{file, "Data", "A4", "[[3,4.5,5],[4,6,7],[5,8,9]]"});
+            AppendRowsTool.main(new String[]{file, "Data", "A", "[[6,10,11],[7,12,13]]"});
+            Files.writeString(csv, "x,a,b\n8,\"14\",TRUE\n9,=B2*2,text\n");
+            ImportCsvTool.main(new String[]{file, "Imported", csv.toString()});
+            ImportCsvTool.main(new String[]{file, "Data", csv.toString(), "A10"});
+            ReadExcelTool.main(new String[]{file, "Data", "A1:C8"});
+            ReadExcelTool.main(new String[]{file, "Data", "A1:C8", "columnar", dir.resolve("read.xlcols").toString()});
+            WriteRangeTool.main(new String[]{file, "Data", "E1", "@" + dir.resolve("read.xlcols"), "columnar"});
+            WriteRangeTool.main(new String[]{file, "Columns", "A1", "@" + dir.resolve("read.xlcols"), "columnar"});
+            ReadPageTool.main(new String[]{file, "Data", "3"});
+            SearchTool.main(new String[]{file, "x"});
+            SearchTool.main(new String[]{file, "SUM", "formula", "10", "Data"});
+            DiffTool.main(new String[]{file, file});
+            DiffTool.main(new String[]{file, file, "Data", "Imported", "A1:C8", "A1:C3", "A"});
+            ExportSheetTool.main(new String[]{file, "Data", dir.resolve("export.csv").toString()});
+            ExportSheetTool.main(new String[]{file, "Imported", dir.resolve("export.ndjson").toString(), "ndjson", "A1:C3"});
+            ApplyFormulaTool.main(new String[]{file, "Data", "D2", "=SUM(B2:C2)"});
+            ValidateFormulaSyntaxTool.main(new String[]{file, "Data", "=AVERAGE(B2:B8)"});
+            ValidateExcelRangeTool.main(new String[]{file, "Data", "A1", "C8"});
+            FormatRangeTool.main(new String[]{file, "Data", "A1", "C1", "true", "false", "12", "#FF0000", "#FFFF00"});
+            FormatRangeTool.main(new String[]{file, "Data", "D", "D", "false", "true", "0", "", ""});
+            ConditionalFormatTool.main(new String[]{file, "Data", "B2:B8",
+                    "{\"type\":\"cellValue\",\"operator\":\"greaterThan\",\"value\":5,\"bgColor\":\"#FFC7CE\"}"});
+            ConditionalFormatTool.main(new String[]{file, "Data", "C2:C8",
+                    "{\"type\":\"colorScale\",\"colors\":[\"#FFFFFF\",\"#63BE7B\"]}"});
+            MergeCellsTool.main(new String[]{file, "Data", "F1", "G2"});
+            UnmergeCellsTool.main(new String[]{file, "Data", "F1", "G2"});
+            CopyRangeTool.main(new String[]{file, "Data", "A1", "C8", "I1"});
+            InsertRangeTool.main(new String[]{file, "Data", "A3", "C3", "down"});
+            DeleteRangeTool.main(new String[]{file, "Data", "A3", "C3", "up"});
+            InsertRangeTool.main(new String[]{file, "Data", "I1", "I8", "right"});
+            DeleteRangeTool.main(new String[]{file, "Data", "I1", "I8", "left"});
+            CreateChartTool.main(new String[]{file, "Data", "A2:C8", "line", "K1", "Chart"});
+            CreateChartTool.main(new String[]{file, "Data", "A1:C8", "scatter", "K22", "", "", "", "lttb", "3"});
+            CreatePivotTableTool.main(new String[]{file, "Data", "A1:C8", "x", "a", "", "sum"});
+            CreateSheetTool.main(new String[]{file, "Extra"});
+            CopyWorksheetTool.main(new String[]{file, "Data", "Copy"});
+            String other = dir.resolve("other.xlsx").toString();
+            CreateExcelTool.main(new String[]{other, "Sheet1"});
+            CopyWorksheetTool.main(new String[]{file, "Data", "Copy", other});
+            RenameWorksheetTool.main(new String[]{file, "Copy", "Renamed"});
+            DeleteWorksheetTool.main(new String[]{file, "Renamed"});
+            MoveWorksheetTool.main(new String[]{file, "Extra", "0"});
+            RenameWorksheetTool.main(new String[]{file, "Data", "Sales"});
+            FlushTool.main(new String[]{file});
+            new ToolMetrics().toJson();
+        } finally {
+            System.setOut(originalOut);
+            // The workbook, the CSV, the exports and the lock file next to the workbook.
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path f : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(f);
+                }
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Sets cell contents only when they differ from what the cell holds, and
+ * reports whether anything changed, so that tools can skip saving a
+ * workbook they left as it was (see {@link WorkbookSession#saveIfChanged}).
+ */
+package jp.isoittech;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+
+final class CellUpdates {
+
+    private CellUpdates() {
+    }
+
+    /** Sets a number; returns true if the cell did not hold it already. */
+    static boolean setValue(Cell cell, double value) {
+        if (cell.getCellType() == CellType.NUMERIC && Double.compare(cell.getNumericCellValue(), value) == 0) {
+            return false;
+        }
+        cell.setCellValue(value);
+        return true;
+    }
+
+    /** Sets a boolean; returns true if the cell did not hold it already. */
+    static boolean setValue(Cell cell, boolean value) {
+        if (cell.getCellType() == CellType.BOOLEAN && cell.getBooleanCellValue() == value) {
+            return false;
+        }
+        cell.setCellValue(value);
+        return true;
+    }
+
+    /**
+     * Sets plain text; returns true if the cell did not hold it already.
+     * Rich text with the same characters still counts as a change, since its
+     * formatting runs are dropped.
+     */
+    static boolean setValue(Cell cell, String value) {
+        if (cell.getCellType() == CellType.STRING && cell.getRichStringCellValue().numFormattingRuns() == 0
+                && cell.getStringCellValue().equals(value)) {
+            return false;
+        }
+        cell.setCellValue(value);
+        return true;
+    }
+
+    /** Sets a formula (without "="); returns true if the cell did not have it already. */
+    static boolean setFormula(Cell cell, String formula) {
+        if (cell.getCellType() == CellType.FORMULA && !cell.isPartOfArrayFormulaGroup()
+                && cell.getCellFormula().equals(formula)) {
+            return false;
+        }
+        cell.setCellFormula(formula);
+        return true;
+    }
+
+    /** Clears the content, keeping the style; returns true if the cell was not blank. */
+    static boolean setBlank(Cell cell) {
+        if (cell.getCellType() == CellType.BLANK) {
+            return false;
+        }
+        cell.setBlank();
+        return true;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Point reduction algorithms used by {@link CreateChartTool} to keep charts
+ * over very long series small enough for Excel to open quickly.
+ *
+ * <p>Each method returns the indexes of the points to keep, in ascending
+ * order, so that the same selection can be applied to the X column and to
+ * every other column of the source rows. Points whose value is
+ * {@link Double#NaN} (blank or non-numeric cells) are never selected.
+ */
+package jp.isoittech;
+
+import java.util.Arrays;
+
+public final class ChartDownsampleUtils {
+
+    private ChartDownsampleUtils() {
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets: keeps the first and last point and, for
+     * each bucket in between, the point forming the largest triangle with the
+     * previously kept point and the average of the next bucket.
+     *
+     * @param xs        X values (same length as {@code ys})
+     * @param ys        Y values, {@code NaN} for missing points
+     * @param threshold maximum number of points to keep (at least 3)
+     * @return indexes of the kept points in ascending order
+     */
+    public static int[] lttb(double[] xs, double[] ys, int threshold) {
+        int[] valid = validIndexes(ys);
+        int n = valid.length;
+        if (threshold < 3) {
+            throw new IllegalArgumentException("LTTB needs at least 3 points: " + threshold);
+        }
+        if (n <= threshold) {
+            return valid;
+        }
+
+        int[] sampled = new int[threshold];
+        int count = 0;
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+        sampled[count++] = valid[0];
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket (or the last point for the final bucket).
+            int nextStart = (int) Math.floor((i + 1) * bucketSize) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * bucketSize) + 1, n);
+            if (nextStart >= nextEnd) {
+                nextStart = n - 1;
+                nextEnd = n;
+            }
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += xs[valid[j]];
+                avgY += ys[valid[j]];
+            }
+            avgX /= nextEnd - nextStart;
+            avgY /= nextEnd - nextStart;
+
+            int start = (int) Math.floor(i * bucketSize) + 1;
+            int end = (int) Math.floor((i + 1) * bucketSize) + 1;
+            double ax = xs[valid[a]];
+            double ay = ys[valid[a]];
+            double maxArea = -1;
+            int next = start;
+            for (int j = start; j < end; j++) {
+                double area = Math.abs((ax - avgX) * (ys[valid[j]] - ay)
+                        - (ax - xs[valid[j]]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            sampled[count++] = valid[next];
+            a = next;
+        }
+
+        sampled[count++] = valid[n - 1];
+        return Arrays.copyOf(sampled, count);
+    }
+
+    /**
+     * Min/max buckets: splits the series into {@code threshold / 2} buckets
+     * and keeps the smallest and the largest point of each, so peaks are
+     * never lost.
+     *
+     * @param ys        Y values, {@code NaN} for missing points
+     * @param threshold maximum number of points to keep (at least 2)
+     * @return indexes of the kept points in ascending order
+     */
+    public static int[] minMax(double[] ys, int threshold) {
+        int[] valid = validIndexes(ys);
+        int n = valid.length;
+        if (threshold < 2) {
+            throw new IllegalArgumentException("Min/max downsampling needs at least 2 points: " + threshold);
+        }
+        if (n <= threshold) {
+            return valid;
+        }
+
+        int buckets = threshold / 2;
+        int[] sampled = new int[buckets * 2];
+        int count = 0;
+        for (int b = 0; b < buckets; b++) {
+            int start = (int) ((long) b * n / buckets);
+            int end = (int) ((long) (b + 1) * n / buckets);
+            int min = start;
+            int max = start;
+            for (int j = start + 1; j < end; j++) {
+                double y = ys[valid[j]];
+                if (y < ys[valid[min]]) {
+                    min = j;
+                }
+                if (y > ys[valid[max]]) {
+                    max = j;
+                }
+            }
+            sampled[count++] = valid[Math.min(min, max)];
+            if (min != max) {
+                sampled[count++] = valid[Math.max(min, max)];
+            }
+        }
+        return Arrays.copyOf(sampled, count);
+    }
+
+    private static int[] validIndexes(double[] ys) {
+        int[] valid = new int[ys.length];
+        int n = 0;
+        for (int i = 0; i < ys.length; i++) {
+            if (!Double.isNaN(ys[i])) {
+                valid[n++] = i;
+            }
+        }
+        return Arrays.copyOf(valid, n);
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Reads values in the binary format written by {@link ColumnarEncoder}, so
+ * that numeric blocks can be written to a sheet without going through JSON.
+ *
+ * <p>Values are read straight from the buffer holding the input (a mapped
+ * file or the bytes read from standard input) by row and column; nothing is
+ * allocated per value except the strings of the string table, once each.
+ */
+package jp.isoittech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+final class ColumnarDecoder {
+
+    private final ByteBuffer buffer;
+    private final int rows;
+    private final String[] strings;
+    private final byte[] types;
+    /** Offset of the validity bitmap of each column. */
+    private final int[] validity;
+    /** Offset of the data of each column. */
+    private final int[] data;
+
+    private ColumnarDecoder(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        byte[] magic = new byte[ColumnarEncoder.MAGIC.length];
+        if (buffer.limit() < 24 || !Arrays.equals(get(0, magic), ColumnarEncoder.MAGIC)) {
+            throw new IllegalArgumentException("Not columnar data");
+        }
+        rows = buffer.getInt(8);
+        int columns = buffer.getInt(12);
+        int stringCount = buffer.getInt(16);
+        if (rows < 0 || columns < 0 || stringCount < 0) {
+            throw new IllegalArgumentException("Invalid columnar header");
+        }
+
+        long pos = 24;
+        strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int length = buffer.getInt(require(pos, 4));
+            strings[i] = new String(get(require(pos + 4, length), new byte[length]), StandardCharsets.UTF_8);
+            pos += 4 + length;
+        }
+        pos = align(pos);
+
+        long bitmapSize = align((rows + 7) / 8);
+        types = new byte[columns];
+        validity = new int[columns];
+        data = new int[columns];
+        for (int c = 0; c < columns; c++) {
+            types[c] = buffer.get(require(pos, 8));
+            pos += 8;
+            if (types[c] == ColumnarEncoder.TYPE_NULL) {
+                continue;
+            }
+            validity[c] = require(pos, bitmapSize);
+            pos += bitmapSize;
+            data[c] = (int) pos;
+            switch (types[c]) {
+                case ColumnarEncoder.TYPE_FLOAT64:
+                    pos += 8L * rows;
+                    break;
+                case ColumnarEncoder.TYPE_BOOL:
+                    pos += bitmapSize;
+                    break;
+                case ColumnarEncoder.TYPE_STRING:
+                    pos += align(4L * rows);
+                    break;
+                case ColumnarEncoder.TYPE_MIXED:
+                    pos += align(rows) + 8L * rows + align(4L * rows);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown column type " + types[c] + " in column " + c);
+            }
+            require(data[c], pos - data[c]);
+        }
+    }
+
+    /**
+     * Reads {@code "@path"} (mapped into memory) or {@code "-"} (standard input).
+     *
+     * @throws IOException if the file does not exist or cannot be read
+     */
+    static ColumnarDecoder open(String source) throws IOException {
+        // Like JsonRowReader: the input may be gone when the journal is replayed.
+        Journal.setInvocation(null, null);
+        if (source.equals("-")) {
+            return new ColumnarDecoder(ByteBuffer.wrap(System.in.readAllBytes()));
+        }
+        if (!source.startsWith("@")) {
+            throw new IllegalArgumentException("Columnar data must be \"-\" or \"@path\": " + source);
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(source.substring(1)), StandardOpenOption.READ)) {
+            return new ColumnarDecoder(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (NoSuchFileException e) {
+            throw new IOException("File not found: " + source.substring(1), e);
+        }
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getColumns() {
+        return types.length;
+    }
+
+    /**
+     * Returns what a cell holds: {@link ColumnarEncoder#EMPTY},
+     * {@link ColumnarEncoder#NUMBER}, {@link ColumnarEncoder#BOOLEAN} or
+     * {@link ColumnarEncoder#STRING}.
+     */
+    byte getTag(int row, int column) {
+        byte type = types[column];
+        if (type == ColumnarEncoder.TYPE_NULL || !bit(validity[column], row)) {
+            return ColumnarEncoder.EMPTY;
+        }
+        switch (type) {
+            case ColumnarEncoder.TYPE_FLOAT64:
+                return ColumnarEncoder.NUMBER;
+            case ColumnarEncoder.TYPE_BOOL:
+                return ColumnarEncoder.BOOLEAN;
+            case ColumnarEncoder.TYPE_STRING:
+                return ColumnarEncoder.STRING;
+            default:
+                return buffer.get(data[column] + row);
+        }
+    }
+
+    double getNumber(int row, int column) {
+        int offset = types[column] == ColumnarEncoder.TYPE_MIXED ? data[column] + align(rows) : data[column];
+        return buffer.getDouble(offset + 8 * row);
+    }
+
+    boolean getBoolean(int row, int column) {
+        if (types[column] == ColumnarEncoder.TYPE_BOOL) {
+            return bit(data[column], row);
+        }
+        return getNumber(row, column) != 0;
+    }
+
+    String getString(int row, int column) {
+        int offset = types[column] == ColumnarEncoder.TYPE_MIXED
+                ? data[column] + align(rows) + 8 * rows : data[column];
+        int index = buffer.getInt(offset + 4 * row);
+        if (index < 0 || index >= strings.length) {
+            throw new IllegalArgumentException("Invalid string index " + index + " in column " + column);
+        }
+        return strings[index];
+    }
+
+    private boolean bit(int offset, int row) {
+        return (buffer.get(offset + (row >> 3)) >> (row & 7) & 1) != 0;
+    }
+
+    private byte[] get(int offset, byte[] bytes) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    /** Returns {@code offset} after checking that {@code length} bytes follow it. */
+    private int require(long offset, long length) {
+        if (length < 0 || offset + length > buffer.limit()) {
+            throw new IllegalArgumentException("Truncated columnar data");
+        }
+        return (int) offset;
+    }
+
+    private static int align(int n) {
+        return (n + 7) & ~7;
+    }
+
+    private static long align(long n) {
+        return (n + 7) & ~7L;
+    }
+}
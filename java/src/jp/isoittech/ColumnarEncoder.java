@@ -0,0 +1,269 @@
+/**
+ * Collects the values of a cell range column by column and writes them in a
+ * compact binary format, so that bulk reads skip formatting numbers as text
+ * and parsing them back.
+ *
+ * <p>Format (all integers and doubles little-endian; every section starts at
+ * an offset that is a multiple of 8, padded with zero bytes):
+ *
+ * <pre>
+ *   header   8 bytes  magic "XLCOLS01"
+ *            int32    row count
+ *            int32    column count
+ *            int32    string count
+ *            int32    reserved (0)
+ *   strings  per string: int32 byte length, UTF-8 bytes; then padding
+ *   columns  per column, in range order:
+ *            uint8    type, then 7 bytes of padding
+ *            validity bitmap, unless the type is NULL: bit (i % 8) of byte
+ *                     (i / 8) is 1 if row i has a value; then padding
+ *            data, depending on the type:
+ *              0 NULL     no data; every row is empty
+ *              1 FLOAT64  float64 per row (0 for empty rows)
+ *              2 BOOL     bitmap of the values, laid out like the validity bitmap; padding
+ *              3 STRING   int32 per row, an index into the strings (0 for empty rows); padding
+ *              4 MIXED    uint8 per row: 0 empty, 1 number, 2 boolean, 3 string; padding
+ *                         float64 per row: the number, or 1 / 0 for booleans
+ *                         int32 per row: the string index, or 0; padding
+ * </pre>
+ *
+ * Strings are stored once however often they occur. Python can decode the
+ * format with {@code decode_columnar} in the wrapper package and encode it
+ * with {@code encode_columnar}; {@link ColumnarDecoder} reads it back.
+ */
+package jp.isoittech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class ColumnarEncoder {
+
+    static final byte[] MAGIC = "XLCOLS01".getBytes(StandardCharsets.US_ASCII);
+
+    static final byte EMPTY = 0;
+    static final byte NUMBER = 1;
+    static final byte BOOLEAN = 2;
+    static final byte STRING = 3;
+
+    static final byte TYPE_NULL = 0;
+    static final byte TYPE_FLOAT64 = 1;
+    static final byte TYPE_BOOL = 2;
+    static final byte TYPE_STRING = 3;
+    static final byte TYPE_MIXED = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int rows;
+    private final Column[] columns;
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    ColumnarEncoder(int rows, int columns) {
+        this.rows = rows;
+        this.columns = new Column[columns];
+        for (int c = 0; c < columns; c++) {
+            this.columns[c] = new Column(rows);
+        }
+    }
+
+    void setNumber(int row, int column, double value) {
+        Column col = columns[column];
+        col.tags[row] = NUMBER;
+        col.numbers()[row] = value;
+    }
+
+    void setBoolean(int row, int column, boolean value) {
+        Column col = columns[column];
+        col.tags[row] = BOOLEAN;
+        col.numbers()[row] = value ? 1 : 0;
+    }
+
+    void setString(int row, int column, String value) {
+        Column col = columns[column];
+        col.tags[row] = STRING;
+        col.strings()[row] = stringIndex.computeIfAbsent(value, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        });
+    }
+
+    /**
+     * Writes the collected values to {@code channel}.
+     *
+     * @return the number of bytes written
+     */
+    long write(WritableByteChannel channel) throws IOException {
+        Output out = new Output(channel);
+        out.ensure(24);
+        out.buffer.put(MAGIC);
+        out.buffer.putInt(rows).putInt(columns.length).putInt(strings.size()).putInt(0);
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.ensure(4);
+            out.buffer.putInt(bytes.length);
+            out.put(bytes, bytes.length);
+        }
+        out.pad();
+
+        for (Column column : columns) {
+            byte type = column.type();
+            out.ensure(8);
+            out.buffer.put(type).put(new byte[7]);
+            if (type == TYPE_NULL) {
+                continue;
+            }
+            out.put(column.bitmap(EMPTY, false), (rows + 7) / 8);
+            out.pad();
+            switch (type) {
+                case TYPE_FLOAT64:
+                    out.putDoubles(column.numbers());
+                    break;
+                case TYPE_BOOL:
+                    out.put(column.bitmap(BOOLEAN, true), (rows + 7) / 8);
+                    out.pad();
+                    break;
+                case TYPE_STRING:
+                    out.putInts(column.strings());
+                    out.pad();
+                    break;
+                default:
+                    out.put(column.tags, rows);
+                    out.pad();
+                    out.putDoubles(column.numbers());
+                    out.putInts(column.strings());
+                    out.pad();
+                    break;
+            }
+        }
+        out.flush();
+        return out.written;
+    }
+
+    /** The values of one column; the typed arrays are allocated on first use. */
+    private static final class Column {
+        final byte[] tags;
+        private double[] numbers;
+        private int[] strings;
+
+        Column(int rows) {
+            this.tags = new byte[rows];
+        }
+
+        double[] numbers() {
+            if (numbers == null) {
+                numbers = new double[tags.length];
+            }
+            return numbers;
+        }
+
+        int[] strings() {
+            if (strings == null) {
+                strings = new int[tags.length];
+            }
+            return strings;
+        }
+
+        byte type() {
+            boolean hasNumber = false;
+            boolean hasBoolean = false;
+            boolean hasString = false;
+            for (byte tag : tags) {
+                hasNumber |= tag == NUMBER;
+                hasBoolean |= tag == BOOLEAN;
+                hasString |= tag == STRING;
+            }
+            int kinds = (hasNumber ? 1 : 0) + (hasBoolean ? 1 : 0) + (hasString ? 1 : 0);
+            if (kinds == 0) {
+                return TYPE_NULL;
+            }
+            if (kinds > 1) {
+                return TYPE_MIXED;
+            }
+            return hasNumber ? TYPE_FLOAT64 : hasBoolean ? TYPE_BOOL : TYPE_STRING;
+        }
+
+        /**
+         * Returns a bitmap with a bit set for each row whose tag is (or, if
+         * {@code equal} is false, is not) {@code tag}; for booleans, only
+         * the true values.
+         */
+        byte[] bitmap(byte tag, boolean equal) {
+            byte[] bits = new byte[(tags.length + 7) / 8];
+            for (int i = 0; i < tags.length; i++) {
+                boolean set = (tags[i] == tag) == equal;
+                if (set && tag == BOOLEAN) {
+                    set = numbers[i] != 0;
+                }
+                if (set) {
+                    bits[i >> 3] |= (byte) (1 << (i & 7));
+                }
+            }
+            return bits;
+        }
+    }
+
+    /** Buffers the output and keeps track of the padding. */
+    private static final class Output {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final WritableByteChannel channel;
+        long written;
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void put(byte[] bytes, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                ensure(1);
+                int n = Math.min(buffer.remaining(), length - offset);
+                buffer.put(bytes, offset, n);
+                offset += n;
+            }
+        }
+
+        void putDoubles(double[] values) throws IOException {
+            for (double value : values) {
+                ensure(8);
+                buffer.putDouble(value);
+            }
+        }
+
+        void putInts(int[] values) throws IOException {
+            for (int value : values) {
+                ensure(4);
+                buffer.putInt(value);
+            }
+        }
+
+        /** Pads the output with zero bytes to a multiple of 8. */
+        void pad() throws IOException {
+            int padding = (int) (-(written + buffer.position()) & 7);
+            ensure(padding);
+            for (int i = 0; i < padding; i++) {
+                buffer.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                written += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Command line tool that adds a conditional formatting rule to a range.
+ *
+ * <p>Unlike {@link FormatRangeTool}, no cell is touched and no cell style is
+ * created: the rule is stored once for the whole range and Excel applies it
+ * when the sheet is displayed, so formatting a million rows costs the same
+ * as formatting ten, and the format follows the values as they change.
+ *
+ * <p>The rule is a JSON object; its "type" is one of:
+ * <ul>
+ *     <li>cellValue - compares each cell's value: "operator" is between,
+ *     notBetween, equal, notEqual, greaterThan, lessThan, greaterThanOrEqual
+ *     or lessThanOrEqual; "value" (and "value2" for between / notBetween) is
+ *     a number, a text, or a formula starting with "="</li>
+ *     <li>formula - "formula" is true for the cells to format, written for
+ *     the top-left cell of the range (e.g. "=$C2>100" highlights whole rows)</li>
+ *     <li>colorScale - "colors" is 2 or 3 colors ("#RRGGBB") for the lowest,
+ *     (median,) and highest values</li>
+ *     <li>dataBar - "color" of the bars</li>
+ * </ul>
+ * cellValue and formula rules take the format to apply: "bold", "italic",
+ * "fontColor" and "bgColor" ("#RRGGBB"). For example:
+ *
+ * <pre>
+ *   {"type":"cellValue","operator":"greaterThan","value":100,"bgColor":"#FFC7CE","fontColor":"#9C0006"}
+ * </pre>
+ */
+package jp.isoittech;
+
+import java.util.Map;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.apache.poi.ss.usermodel.ComparisonOperator;
+import org.apache.poi.ss.usermodel.ConditionalFormattingThreshold.RangeType;
+import org.apache.poi.ss.usermodel.PatternFormatting;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.IndexedColorMap;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFColorScaleFormatting;
+import org.apache.poi.xssf.usermodel.XSSFConditionalFormattingRule;
+import org.apache.poi.xssf.usermodel.XSSFConditionalFormattingThreshold;
+import org.apache.poi.xssf.usermodel.XSSFFontFormatting;
+import org.apache.poi.xssf.usermodel.XSSFPatternFormatting;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFSheetConditionalFormatting;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+public class ConditionalFormatTool {
+
+    private static final Map<String, Byte> OPERATORS = Map.of(
+            "between", ComparisonOperator.BETWEEN,
+            "notBetween", ComparisonOperator.NOT_BETWEEN,
+            "equal", ComparisonOperator.EQUAL,
+            "notEqual", ComparisonOperator.NOT_EQUAL,
+            "greaterThan", ComparisonOperator.GT,
+            "lessThan", ComparisonOperator.LT,
+            "greaterThanOrEqual", ComparisonOperator.GE,
+            "lessThanOrEqual", ComparisonOperator.LE);
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath - path to the .xlsx file</li>
+     *     <li>sheetName - name of the worksheet</li>
+     *     <li>range - A1-style range, or several separated by commas ("A2:A1000,C2:C1000")</li>
+     *     <li>ruleJson - the rule, see the class comment</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 4) {
+            throw new IllegalArgumentException(
+                    "Usage: ConditionalFormatTool <filePath> <sheetName> <range> <ruleJson>");
+        }
+
+        String filePath = args[0];
+        String sheetName = args[1];
+        String rangeStr = args[2];
+        JsonObject rule;
+        try {
+            rule = JsonParser.parseString(args[3]).getAsJsonObject();
+        } catch (JsonSyntaxException | IllegalStateException e) {
+            throw new IllegalArgumentException("ruleJson must be a JSON object: " + args[3], e);
+        }
+
+        String[] parts = rangeStr.split(",");
+        CellRangeAddress[] regions = new CellRangeAddress[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            regions[i] = ExcelRangeUtils.parseRange(part.contains(":") ? part : part + ":" + part);
+        }
+
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            XSSFWorkbook workbook = session.getWorkbook();
+
+            XSSFSheet sheet = workbook.getSheet(sheetName);
+            if (sheet == null) {
+                throw new IllegalArgumentException("Sheet not found: " + sheetName);
+            }
+
+            XSSFSheetConditionalFormatting formatting = sheet.getSheetConditionalFormatting();
+            FormulaCheck formulas = new FormulaCheck(workbook, sheet);
+            IndexedColorMap colorMap = workbook.getStylesSource().getIndexedColors();
+            XSSFConditionalFormattingRule conditionalRule;
+            String type = getString(rule, "type", true);
+            switch (type) {
+                case "cellValue":
+                    conditionalRule = cellValueRule(formatting, rule, formulas);
+                    applyFormat(conditionalRule, rule, colorMap);
+                    break;
+                case "formula":
+                    conditionalRule = formatting.createConditionalFormattingRule(
+                            formula(getString(rule, "formula", true), formulas));
+                    applyFormat(conditionalRule, rule, colorMap);
+                    break;
+                case "colorScale":
+                    conditionalRule = colorScaleRule(formatting, rule, colorMap);
+                    break;
+                case "dataBar":
+                    conditionalRule = formatting.createConditionalFormattingRule(
+                            color(getString(rule, "color", true), colorMap));
+                    break;
+                default:
+                    throw new IllegalArgumentException(
+                            "type must be cellValue, formula, colorScale or dataBar: " + type);
+            }
+
+            formatting.addConditionalFormatting(regions, conditionalRule);
+            session.save();
+        }
+    }
+
+    private static XSSFConditionalFormattingRule cellValueRule(XSSFSheetConditionalFormatting formatting,
+                                                               JsonObject rule, FormulaCheck formulas) {
+        String operatorName = getString(rule, "operator", true);
+        Byte operator = OPERATORS.get(operatorName);
+        if (operator == null) {
+            throw new IllegalArgumentException("Unknown operator: " + operatorName);
+        }
+        boolean range = operator == ComparisonOperator.BETWEEN || operator == ComparisonOperator.NOT_BETWEEN;
+        String value = operand(rule, "value", formulas);
+        String value2 = range ? operand(rule, "value2", formulas) : null;
+        return formatting.createConditionalFormattingRule(operator, value, value2);
+    }
+
+    private static XSSFConditionalFormattingRule colorScaleRule(XSSFSheetConditionalFormatting formatting,
+                                                                JsonObject rule, IndexedColorMap colorMap) {
+        JsonElement colors = rule.get("colors");
+        if (colors == null || !colors.isJsonArray()
+                || colors.getAsJsonArray().size() < 2 || colors.getAsJsonArray().size() > 3) {
+            throw new IllegalArgumentException("colors must be an array of 2 or 3 colors");
+        }
+        int points = colors.getAsJsonArray().size();
+
+        XSSFConditionalFormattingRule conditionalRule = formatting.createConditionalFormattingColorScaleRule();
+        XSSFColorScaleFormatting scale = conditionalRule.getColorScaleFormatting();
+        scale.setNumControlPoints(points);
+        XSSFConditionalFormattingThreshold[] thresholds = scale.getThresholds();
+        XSSFColor[] scaleColors = new XSSFColor[points];
+        for (int i = 0; i < points; i++) {
+            if (i == 0) {
+                setThreshold(thresholds[i], RangeType.MIN, null);
+            } else if (i == points - 1) {
+                setThreshold(thresholds[i], RangeType.MAX, null);
+            } else {
+                setThreshold(thresholds[i], RangeType.PERCENTILE, 50d);
+            }
+            scaleColors[i] = color(colors.getAsJsonArray().get(i).getAsString(), colorMap);
+        }
+        scale.setThresholds(thresholds);
+        scale.setColors(scaleColors);
+        return conditionalRule;
+    }
+
+    private static void setThreshold(XSSFConditionalFormattingThreshold threshold, RangeType type, Double value) {
+        // Unsetting a value that is not there fails, and min / max thresholds do not report theirs.
+        if (value != null || threshold.getValue() != null) {
+            threshold.setValue(value);
+        }
+        threshold.setRangeType(type);
+    }
+
+    /** Applies "bold", "italic", "fontColor" and "bgColor" to a cellValue or formula rule. */
+    private static void applyFormat(XSSFConditionalFormattingRule conditionalRule, JsonObject rule,
+                                    IndexedColorMap colorMap) {
+        boolean bold = rule.has("bold") && rule.get("bold").getAsBoolean();
+        boolean italic = rule.has("italic") && rule.get("italic").getAsBoolean();
+        String fontColor = getString(rule, "fontColor", false);
+        String bgColor = getString(rule, "bgColor", false);
+        if (!bold && !italic && fontColor == null && bgColor == null) {
+            throw new IllegalArgumentException("The rule needs a format: bold, italic, fontColor or bgColor");
+        }
+
+        if (bold || italic || fontColor != null) {
+            XSSFFontFormatting font = conditionalRule.createFontFormatting();
+            font.setFontStyle(italic, bold);
+            if (fontColor != null) {
+                font.setFontColor(color(fontColor, colorMap));
+            }
+        }
+        if (bgColor != null) {
+            XSSFPatternFormatting fill = conditionalRule.createPatternFormatting();
+            // Differential formats fill solid patterns with the background color.
+            fill.setFillBackgroundColor(color(bgColor, colorMap));
+            fill.setFillPattern(PatternFormatting.SOLID_FOREGROUND);
+        }
+    }
+
+    /** Returns a comparison operand as formula text: a number, a quoted text, or a formula without "=". */
+    private static String operand(JsonObject rule, String name, FormulaCheck formulas) {
+        JsonElement value = rule.get(name);
+        if (value == null || !value.isJsonPrimitive()) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        if (value.getAsJsonPrimitive().isNumber()) {
+            return value.getAsBigDecimal().toPlainString();
+        }
+        if (value.getAsJsonPrimitive().isBoolean()) {
+            return value.getAsBoolean() ? "TRUE" : "FALSE";
+        }
+        String s = value.getAsString();
+        if (s.startsWith("=") && s.length() > 1) {
+            return formula(s, formulas);
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    /** Strips the "=" of a formula and checks its syntax. */
+    private static String formula(String formula, FormulaCheck formulas) {
+        String text = formula.startsWith("=") ? formula.substring(1) : formula;
+        formulas.check(text);
+        return text;
+    }
+
+    /** Parses "#RRGGBB" as an opaque ARGB color, which is how Excel writes the colors of these rules. */
+    private static XSSFColor color(String hex, IndexedColorMap colorMap) {
+        byte[] rgb = FormatRangeTool.parseRgbColor(hex);
+        return new XSSFColor(new byte[]{(byte) 0xFF, rgb[0], rgb[1], rgb[2]}, colorMap);
+    }
+
+    private static String getString(JsonObject rule, String name, boolean required) {
+        JsonElement value = rule.get(name);
+        if (value == null || value.isJsonNull() || value.getAsString().isEmpty()) {
+            if (required) {
+                throw new IllegalArgumentException(name + " is required");
+            }
+            return null;
+        }
+        return value.getAsString();
+    }
+}
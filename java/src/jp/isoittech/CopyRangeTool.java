@@ -5,18 +5,12 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class CopyRangeTool {
 
@@ -40,8 +34,7 @@ public class CopyRangeTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length < 5 || args.length > 7) {
-            System.err.println("Usage: CopyRangeTool <filePath> <sheetName> <sourceStart> <sourceEnd> <targetStart> [targetSheet] [copyStyle]");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: CopyRangeTool <filePath> <sheetName> <sourceStart> <sourceEnd> <targetStart> [targetSheet] [copyStyle]");
         }
 
         String filePath = args[0];
@@ -65,13 +58,8 @@ public class CopyRangeTool {
             copyStyle = Boolean.parseBoolean(args[6]);
         }
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             Sheet sourceSheet = workbook.getSheet(sheetName);
             if (sourceSheet == null) {
@@ -115,10 +103,9 @@ public class CopyRangeTool {
                     }
                 }
             }
+            session.getMetrics().addCellsTouched(sourceRange.getNumberOfCells());
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
-            }
+            session.save();
         }
     }
 
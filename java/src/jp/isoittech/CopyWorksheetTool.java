@@ -1,17 +1,17 @@
 /**
- * Command line tool that copies a worksheet within a workbook.
- * Implements the "copy_worksheet" tool from README.JA.md.
+ * Command line tool that copies a worksheet within a workbook, or into
+ * another workbook. Implements the "copy_worksheet" tool from README.JA.md.
+ *
+ * Copies into another workbook are streamed from package to package by
+ * {@link WorksheetTransfer}, so neither workbook is loaded.
  */
 package jp.isoittech;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.nio.file.Files;
 
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class CopyWorksheetTool {
 
@@ -21,25 +21,27 @@ public class CopyWorksheetTool {
      *     <li>filePath - path to the .xlsx file</li>
      *     <li>sourceSheet - name of the sheet to copy</li>
      *     <li>targetSheet - name of the new sheet</li>
+     *     <li>targetFilePath - (optional) workbook to copy the sheet into; defaults to filePath</li>
      * </ol>
      */
     public static void main(String[] args) throws Exception {
-        if (args.length != 3) {
-            System.err.println("Usage: CopyWorksheetTool <filePath> <sourceSheet> <targetSheet>");
-            System.exit(1);
+        if (args.length < 3 || args.length > 4) {
+            throw new IllegalArgumentException(
+                    "Usage: CopyWorksheetTool <filePath> <sourceSheet> <targetSheet> [targetFilePath]");
         }
 
         String filePath = args[0];
         String sourceSheet = args[1];
         String targetSheet = args[2];
+        String targetFilePath = args.length > 3 && !args[3].isEmpty() ? args[3] : null;
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
+        if (targetFilePath != null && !isSameFile(filePath, targetFilePath)) {
+            WorksheetTransfer.copy(filePath, sourceSheet, targetFilePath, targetSheet);
+            return;
         }
 
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             int sourceIndex = workbook.getSheetIndex(sourceSheet);
             if (sourceIndex < 0) {
@@ -50,9 +52,13 @@ public class CopyWorksheetTool {
             int newIndex = workbook.getSheetIndex(cloned.getSheetName());
             workbook.setSheetName(newIndex, targetSheet);
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
-            }
+            session.save();
         }
     }
+
+    private static boolean isSameFile(String filePath, String otherPath) throws Exception {
+        File file = new File(filePath);
+        File other = new File(otherPath);
+        return file.exists() && other.exists() && Files.isSameFile(file.toPath(), other.toPath());
+    }
 }
@@ -1,25 +1,32 @@
 /**
  * Command line tool that creates a simple chart on a worksheet using
  * a given data range. Implements "create_chart" from README.JA.md.
+ *
+ * <p>When a downsampling mode is given, the first column of the range is
+ * used as X and every further column becomes a series. If the series are
+ * longer than {@code maxPoints}, a reduced copy of the selected rows is
+ * written to a hidden helper sheet and the chart is bound to that copy.
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.usermodel.XSSFDrawing;
 import org.apache.poi.xssf.usermodel.XSSFClientAnchor;
 import org.apache.poi.xssf.usermodel.XSSFChart;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.xddf.usermodel.chart.*;
 
 public class CreateChartTool {
 
+    private static final int DEFAULT_MAX_POINTS = 1000;
+
     /**
      * Arguments (string values):
      * <ol>
@@ -31,12 +38,14 @@ public class CreateChartTool {
      *     <li>title (optional)</li>
      *     <li>xAxis (optional)</li>
      *     <li>yAxis (optional)</li>
+     *     <li>downsample (optional): none, lttb or minmax (default none)</li>
+     *     <li>maxPoints (optional): rows kept per chart, shared by all of its series, when downsampling (default 1000)</li>
      * </ol>
+     * Empty optional arguments are treated as omitted.
      */
     public static void main(String[] args) throws Exception {
-        if (args.length < 5 || args.length > 8) {
-            System.err.println("Usage: CreateChartTool <filePath> <sheetName> <dataRange> <chartType> <targetCell> [title] [xAxis] [yAxis]");
-            System.exit(1);
+        if (args.length < 5 || args.length > 10) {
+            throw new IllegalArgumentException("Usage: CreateChartTool <filePath> <sheetName> <dataRange> <chartType> <targetCell> [title] [xAxis] [yAxis] [downsample] [maxPoints]");
         }
 
         String filePath = args[0];
@@ -44,17 +53,21 @@ public class CreateChartTool {
         String dataRange = args[2];
         String chartType = args[3];
         String targetCell = args[4];
-        String title = args.length >= 6 ? args[5] : null;
-        String xAxisTitle = args.length >= 7 ? args[6] : null;
-        String yAxisTitle = args.length >= 8 ? args[7] : null;
+        String title = optionalArg(args, 5);
+        String xAxisTitle = optionalArg(args, 6);
+        String yAxisTitle = optionalArg(args, 7);
+        String downsample = optionalArg(args, 8) != null ? args[8].toLowerCase() : "none";
+        int maxPoints = optionalArg(args, 9) != null ? Integer.parseInt(args[9]) : DEFAULT_MAX_POINTS;
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
+        if (!downsample.equals("none") && !downsample.equals("lttb") && !downsample.equals("minmax")) {
+            throw new IllegalArgumentException("downsample must be 'none', 'lttb' or 'minmax'");
+        }
+        if (maxPoints < 3) {
+            throw new IllegalArgumentException("maxPoints must be at least 3: " + maxPoints);
         }
 
-        try (FileInputStream fis = new FileInputStream(file);
-             XSSFWorkbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            XSSFWorkbook workbook = session.getWorkbook();
 
             Sheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
@@ -81,14 +94,21 @@ public class CreateChartTool {
                 leftAxis.setTitle(yAxisTitle);
             }
 
-            XDDFDataSource<Double> xs = XDDFDataSourcesFactory.fromNumericCellRange((org.apache.poi.xssf.usermodel.XSSFSheet) sheet, range);
-            XDDFNumericalDataSource<Double> ys = XDDFDataSourcesFactory.fromNumericCellRange((org.apache.poi.xssf.usermodel.XSSFSheet) sheet, range);
-
             XDDFChartData data;
             ChartTypes type = mapChartType(chartType);
             data = chart.createData(type, bottomAxis, leftAxis);
-            XDDFChartData.Series series = data.addSeries(xs, ys);
-            series.setTitle(title, null);
+
+            if (downsample.equals("none")) {
+                XDDFDataSource<Double> xs = XDDFDataSourcesFactory.fromNumericCellRange((org.apache.poi.xssf.usermodel.XSSFSheet) sheet, range);
+                XDDFNumericalDataSource<Double> ys = XDDFDataSourcesFactory.fromNumericCellRange((org.apache.poi.xssf.usermodel.XSSFSheet) sheet, range);
+                XDDFChartData.Series series = data.addSeries(xs, ys);
+                series.setTitle(title, null);
+            } else {
+                addDownsampledSeries(workbook, (XSSFSheet) sheet, range, data, downsample, maxPoints, title);
+                if (data.getSeriesCount() > 1) {
+                    chart.getOrAddLegend().setPosition(LegendPosition.BOTTOM);
+                }
+            }
 
             chart.plot(data);
 
@@ -96,10 +116,234 @@ public class CreateChartTool {
                 chart.setTitleText(title);
             }
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
+            session.save();
+        }
+    }
+
+    /**
+     * Adds one series per Y column of {@code range}, using its first column as
+     * X. A leading row whose Y cells are text is taken as series titles.
+     * When any series has more than {@code maxPoints} values, the rows picked
+     * by the downsampling algorithm are copied to a hidden helper sheet and
+     * the series are bound to that sheet instead of the source.
+     */
+    private static void addDownsampledSeries(XSSFWorkbook workbook, XSSFSheet sheet, CellRangeAddress range,
+                                             XDDFChartData data, String mode, int maxPoints, String title) {
+        int xCol = range.getFirstColumn();
+        int seriesCount = range.getLastColumn() - xCol;
+        if (seriesCount < 1) {
+            throw new IllegalArgumentException("Downsampling needs an X column and at least one Y column: "
+                    + range.formatAsString());
+        }
+
+        boolean hasHeader = isHeaderRow(sheet.getRow(range.getFirstRow()), xCol + 1, range.getLastColumn());
+        int firstDataRow = range.getFirstRow() + (hasHeader ? 1 : 0);
+        int n = range.getLastRow() - firstDataRow + 1;
+        if (n < 1) {
+            throw new IllegalArgumentException("No data rows in range: " + range.formatAsString());
+        }
+
+        double[] xs = new double[n];
+        double[][] ys = new double[seriesCount][n];
+        boolean numericX = true;
+        for (int i = 0; i < n; i++) {
+            Row row = sheet.getRow(firstDataRow + i);
+            double x = numericValue(row == null ? null : row.getCell(xCol));
+            if (Double.isNaN(x)) {
+                numericX = false;
+            }
+            xs[i] = x;
+            for (int s = 0; s < seriesCount; s++) {
+                ys[s][i] = numericValue(row == null ? null : row.getCell(xCol + 1 + s));
+            }
+        }
+        if (!numericX) {
+            // Text categories: run the algorithms on the row position instead.
+            for (int i = 0; i < n; i++) {
+                xs[i] = i;
+            }
+        }
+
+        boolean[] keep = select(xs, ys, mode, maxPoints);
+        int kept = count(keep);
+
+        // Cached results, so that formula cells yield their value rather than their formula.
+        DataFormatter formatter = new DataFormatter();
+        formatter.setUseCachedValuesForFormulaCells(true);
+        XSSFSheet source = sheet;
+        int sourceHeaderRow = range.getFirstRow();
+        int sourceFirstRow = firstDataRow;
+        int sourceLastRow = range.getLastRow();
+        int sourceXCol = xCol;
+        if (kept < n) {
+            source = createHelperSheet(workbook);
+            sourceHeaderRow = 0;
+            sourceFirstRow = hasHeader ? 1 : 0;
+            sourceLastRow = sourceFirstRow + kept - 1;
+            sourceXCol = 0;
+            if (hasHeader) {
+                copyRow(sheet.getRow(range.getFirstRow()), source.createRow(0), xCol, seriesCount + 1, formatter);
+            }
+            int target = sourceFirstRow;
+            for (int i = 0; i < n; i++) {
+                if (keep[i]) {
+                    copyRow(sheet.getRow(firstDataRow + i), source.createRow(target++), xCol, seriesCount + 1, formatter);
+                }
+            }
+            workbook.setSheetHidden(workbook.getSheetIndex(source), true);
+        }
+
+        CellRangeAddress xRange = new CellRangeAddress(sourceFirstRow, sourceLastRow, sourceXCol, sourceXCol);
+        XDDFDataSource<?> xSource = numericX
+                ? XDDFDataSourcesFactory.fromNumericCellRange(source, xRange)
+                : XDDFDataSourcesFactory.fromStringCellRange(source, xRange);
+        for (int s = 0; s < seriesCount; s++) {
+            int col = sourceXCol + 1 + s;
+            XDDFNumericalDataSource<Double> ySource = XDDFDataSourcesFactory.fromNumericCellRange(source,
+                    new CellRangeAddress(sourceFirstRow, sourceLastRow, col, col));
+            XDDFChartData.Series series = data.addSeries(xSource, ySource);
+            if (hasHeader) {
+                Cell header = source.getRow(sourceHeaderRow).getCell(col);
+                series.setTitle(header == null ? null : formatter.formatCellValue(header),
+                        new CellReference(source.getSheetName(), sourceHeaderRow, col, true, true));
+            } else {
+                series.setTitle(seriesCount == 1 ? title : "Series " + (s + 1), null);
+            }
+            if (series instanceof XDDFLineChartData.Series) {
+                ((XDDFLineChartData.Series) series).setMarkerStyle(MarkerStyle.NONE);
+            }
+        }
+    }
+
+    /**
+     * Picks at most {@code maxPoints} rows. Every series picks its own rows
+     * and the union is kept, so that all series still share one X column;
+     * the per-series budget is the largest one whose union fits, found by
+     * bisection. With too many series for even the smallest budget, the
+     * union is thinned to evenly spaced rows.
+     */
+    private static boolean[] select(double[] xs, double[][] ys, String mode, int maxPoints) {
+        int low = 3;
+        int high = maxPoints;
+        boolean[] best = null;
+        while (low <= high) {
+            int budget = (low + high) >>> 1;
+            boolean[] keep = union(xs, ys, mode, budget);
+            if (count(keep) <= maxPoints) {
+                best = keep;
+                low = budget + 1;
+            } else {
+                high = budget - 1;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        boolean[] keep = union(xs, ys, mode, 3);
+        return thin(keep, count(keep), maxPoints);
+    }
+
+    private static boolean[] union(double[] xs, double[][] ys, String mode, int budget) {
+        boolean[] keep = new boolean[xs.length];
+        for (double[] series : ys) {
+            int[] picked = mode.equals("lttb")
+                    ? ChartDownsampleUtils.lttb(xs, series, budget)
+                    : ChartDownsampleUtils.minMax(series, budget);
+            for (int i : picked) {
+                keep[i] = true;
+            }
+        }
+        return keep;
+    }
+
+    private static int count(boolean[] keep) {
+        int count = 0;
+        for (boolean k : keep) {
+            if (k) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Keeps {@code maxPoints} evenly spaced rows of the {@code kept} rows marked in {@code keep}. */
+    private static boolean[] thin(boolean[] keep, int kept, int maxPoints) {
+        boolean[] thinned = new boolean[keep.length];
+        int rank = 0;
+        int next = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (!keep[i]) {
+                continue;
+            }
+            // Rank r is kept when it is the next of maxPoints steps over kept - 1, so both ends stay.
+            if (rank == (int) ((long) next * (kept - 1) / (maxPoints - 1))) {
+                thinned[i] = true;
+                next++;
             }
+            rank++;
         }
+        return thinned;
+    }
+
+    private static boolean isHeaderRow(Row row, int firstCol, int lastCol) {
+        if (row == null) {
+            return false;
+        }
+        for (int c = firstCol; c <= lastCol; c++) {
+            Cell cell = row.getCell(c);
+            if (cell != null && cell.getCellType() == CellType.STRING) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the numeric value of a cell (including cached formula results),
+     * or NaN when the cell is missing or not numeric.
+     */
+    private static double numericValue(Cell cell) {
+        if (cell == null) {
+            return Double.NaN;
+        }
+        CellType type = cell.getCellType() == CellType.FORMULA ? cell.getCachedFormulaResultType() : cell.getCellType();
+        return type == CellType.NUMERIC ? cell.getNumericCellValue() : Double.NaN;
+    }
+
+    private static XSSFSheet createHelperSheet(XSSFWorkbook workbook) {
+        int i = 1;
+        while (workbook.getSheet("_chart_data" + i) != null) {
+            i++;
+        }
+        return workbook.createSheet("_chart_data" + i);
+    }
+
+    /**
+     * Copies the values (and styles, so dates keep their format) of
+     * {@code width} cells starting at {@code firstCol} into column A onwards.
+     */
+    private static void copyRow(Row from, Row to, int firstCol, int width, DataFormatter formatter) {
+        if (from == null) {
+            return;
+        }
+        for (int c = 0; c < width; c++) {
+            Cell src = from.getCell(firstCol + c);
+            if (src == null) {
+                continue;
+            }
+            Cell dst = to.createCell(c);
+            dst.setCellStyle(src.getCellStyle());
+            double value = numericValue(src);
+            if (!Double.isNaN(value)) {
+                dst.setCellValue(value);
+            } else if (src.getCellType() != CellType.BLANK) {
+                dst.setCellValue(formatter.formatCellValue(src));
+            }
+        }
+    }
+
+    private static String optionalArg(String[] args, int index) {
+        return args.length > index && !args[index].isEmpty() ? args[index] : null;
     }
 
     private static ChartTypes mapChartType(String chartType) {
@@ -16,8 +16,7 @@ public class CreateExcelTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length < 1 || args.length > 2) {
-            System.err.println("Usage: CreateExcelTool <filePath> [sheetName]");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: CreateExcelTool <filePath> [sheetName]");
         }
 
         String filePath = args[0];
@@ -4,14 +4,8 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class CreateSheetTool {
 
@@ -24,20 +18,20 @@ public class CreateSheetTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 2) {
-            System.err.println("Usage: CreateSheetTool <filePath> <sheetName>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: CreateSheetTool <filePath> <sheetName>");
         }
 
         String filePath = args[0];
         String sheetName = args[1];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
+        if (WorkbookSession.isPackageEditable()) {
+            // The existing sheets are copied through without being parsed.
+            WorkbookStructure.createSheet(filePath, sheetName);
+            return;
         }
 
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             Sheet existing = workbook.getSheet(sheetName);
             if (existing != null) {
@@ -46,9 +40,7 @@ public class CreateSheetTool {
 
             workbook.createSheet(sheetName);
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
-            }
+            session.save();
         }
     }
 }
@@ -0,0 +1,144 @@
+/**
+ * Minimal-allocation CSV parser (RFC 4180) reading from an NIO channel.
+ *
+ * <p>The input is read in large blocks into one reusable buffer and parsed
+ * byte by byte; each field is handed to a {@link FieldHandler} as a slice of
+ * a reusable byte array, so nothing is allocated per field unless the
+ * handler does. Fields are separated by a single-byte delimiter and records
+ * by LF or CRLF; a field that starts with a double quote may contain
+ * delimiters, line breaks and doubled quotes. Because these are all ASCII
+ * bytes, UTF-8 input can be split into fields without decoding it. A UTF-8
+ * byte order mark at the start is skipped.
+ */
+package jp.isoittech;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+final class CsvReader {
+
+    /** Receives the fields of a record. */
+    interface FieldHandler {
+        /**
+         * @param column 0-based column of the field in the record
+         * @param buf    field contents (UTF-8, quotes removed); only valid during the call
+         * @param len    number of bytes in {@code buf}
+         */
+        void field(int column, byte[] buf, int len) throws IOException;
+    }
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final ReadableByteChannel channel;
+    private final byte delimiter;
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final ByteBuffer blockBuffer = ByteBuffer.wrap(block);
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private byte[] field = new byte[256];
+    private int fieldLength;
+    private long bytesRead;
+
+    CsvReader(ReadableByteChannel channel, byte delimiter) throws IOException {
+        this.channel = channel;
+        this.delimiter = delimiter;
+        if (fill() && limit >= 3 && block[0] == (byte) 0xEF && block[1] == (byte) 0xBB && block[2] == (byte) 0xBF) {
+            pos = 3;
+        }
+    }
+
+    /**
+     * Parses the next record, passing each of its fields to {@code handler}.
+     *
+     * @return the number of fields in the record, or -1 at the end of input
+     * @throws IOException if the input cannot be read or a quoted field is
+     *                     not closed
+     */
+    int readRecord(FieldHandler handler) throws IOException {
+        if (pos >= limit && !fill()) {
+            return -1;
+        }
+        int column = 0;
+        fieldLength = 0;
+        boolean inQuotes = false;
+        boolean quoted = false;
+        while (true) {
+            if (pos >= limit && !fill()) {
+                if (inQuotes) {
+                    throw new IOException("Unterminated quoted field at end of input");
+                }
+                handler.field(column, field, fieldLength);
+                return column + 1;
+            }
+            byte b = block[pos++];
+            if (inQuotes) {
+                if (b == '"') {
+                    if (pos >= limit && !fill()) {
+                        inQuotes = false;
+                    } else if (block[pos] == '"') {
+                        pos++;
+                        append(b);
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    append(b);
+                }
+            } else if (b == delimiter) {
+                handler.field(column++, field, fieldLength);
+                fieldLength = 0;
+                quoted = false;
+            } else if (b == '\n') {
+                handler.field(column, field, fieldLength);
+                return column + 1;
+            } else if (b == '\r') {
+                if ((pos < limit || fill()) && block[pos] == '\n') {
+                    pos++;
+                }
+                handler.field(column, field, fieldLength);
+                return column + 1;
+            } else if (b == '"' && fieldLength == 0 && !quoted) {
+                inQuotes = true;
+                quoted = true;
+            } else {
+                append(b);
+            }
+        }
+    }
+
+    /** Total number of bytes read from the channel so far. */
+    long getBytesRead() {
+        return bytesRead;
+    }
+
+    private void append(byte b) {
+        if (fieldLength == field.length) {
+            field = Arrays.copyOf(field, field.length * 2);
+        }
+        field[fieldLength++] = b;
+    }
+
+    /** Reads the next block; returns false at the end of input. */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        blockBuffer.clear();
+        int n;
+        do {
+            n = channel.read(blockBuffer);
+        } while (n == 0);
+        if (n < 0) {
+            eof = true;
+            pos = limit = 0;
+            return false;
+        }
+        bytesRead += n;
+        pos = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -5,15 +5,8 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.ss.usermodel.CellCopyPolicy;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class DeleteRangeTool {
@@ -30,8 +23,7 @@ public class DeleteRangeTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 5) {
-            System.err.println("Usage: DeleteRangeTool <filePath> <sheetName> <startCell> <endCell> <shiftDirection>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: DeleteRangeTool <filePath> <sheetName> <startCell> <endCell> <shiftDirection>");
         }
 
         String filePath = args[0];
@@ -40,15 +32,10 @@ public class DeleteRangeTool {
         String endCell = args[3];
         String shiftDirection = args[4];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             XSSFWorkbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            XSSFWorkbook workbook = session.getWorkbook();
 
-            Sheet sheet = workbook.getSheet(sheetName);
+            XSSFSheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
                 throw new IllegalArgumentException("Sheet not found: " + sheetName);
             }
@@ -56,22 +43,16 @@ public class DeleteRangeTool {
             CellRangeAddress range = ExcelRangeUtils.parseRange(startCell + ":" + endCell);
 
             if ("up".equalsIgnoreCase(shiftDirection)) {
-                sheet.shiftRows(range.getLastRow() + 1, sheet.getLastRowNum(),
-                        range.getFirstRow() - range.getLastRow() - 1);
+                // Only the columns of the range move up, as with Excel's "shift cells up".
+                session.getMetrics().addCellsTouched(ExcelShiftUtils.deleteCellsShiftUp(sheet, range));
             } else if ("left".equalsIgnoreCase(shiftDirection)) {
-                // For column shift, use a CellCopyPolicy to copy remaining cells
-                // over the deleted area. This is a simplified implementation.
-                for (int r = range.getFirstRow(); r <= range.getLastRow(); r++) {
-                    sheet.shiftColumns(range.getLastColumn() + 1, sheet.getRow(r).getLastCellNum(),
-                            range.getFirstColumn() - range.getLastColumn() - 1);
-                }
+                // Only the rows of the range move left, as with Excel's "shift cells left".
+                session.getMetrics().addCellsTouched(ExcelShiftUtils.deleteCellsShiftLeft(sheet, range));
             } else {
                 throw new IllegalArgumentException("shiftDirection must be 'up' or 'left'");
             }
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
-            }
+            session.save();
         }
     }
 }
@@ -4,13 +4,7 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class DeleteWorksheetTool {
 
@@ -23,20 +17,20 @@ public class DeleteWorksheetTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 2) {
-            System.err.println("Usage: DeleteWorksheetTool <filePath> <sheetName>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: DeleteWorksheetTool <filePath> <sheetName>");
         }
 
         String filePath = args[0];
         String sheetName = args[1];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
+        if (WorkbookSession.isPackageEditable()) {
+            // The other sheets are copied through without being parsed.
+            WorkbookStructure.deleteSheet(filePath, sheetName);
+            return;
         }
 
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             int index = workbook.getSheetIndex(sheetName);
             if (index < 0) {
@@ -45,9 +39,7 @@ public class DeleteWorksheetTool {
 
             workbook.removeSheetAt(index);
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
-            }
+            session.save();
         }
     }
 }
@@ -0,0 +1,456 @@
+/**
+ * Command line tool that compares two worksheets, or two ranges, and reports
+ * the cells that changed, were inserted or were deleted.
+ *
+ * <p>Both sheets are streamed with {@link SheetStreamReader}; neither
+ * workbook is built in memory. The first sheet is read once to record a
+ * 64-bit hash of every row, then the second one is read and each of its rows
+ * is hashed and checked against the row it is aligned with. Only rows whose
+ * hashes differ keep their cells, and a second read of the first sheet
+ * collects the other side of those rows. Time is linear in the size of the
+ * sheets; besides one hash per row (and one key per row when aligning by
+ * key), memory is proportional to the differences.
+ *
+ * <p>Rows are aligned by position within the ranges, or by the value of a
+ * key column: a row of the first sheet matches the row of the second one
+ * with the same key, wherever it is, and rows with a repeated key match in
+ * order. Keys are compared as text, like the values of {@link SearchTool}.
+ * Without a sheet name, every worksheet of the first workbook is compared
+ * with the worksheet of the same name in the second one.
+ *
+ * <p>Prints:
+ *
+ * <pre>
+ *   {"changes":[{"sheet":"Data","cell":"B7","type":"changed","old":3.0,"new":4.0},...],
+ *    "rowsChanged":1,"rowsInserted":0,"rowsDeleted":0,"sheetsAdded":[],"sheetsRemoved":[],
+ *    "truncated":false}
+ * </pre>
+ *
+ * Each change has a type of "changed", "inserted" or "deleted"; "cell" is
+ * the address in the first sheet, or in the second one for an inserted row,
+ * and "otherCell" is added when the cell sits at another address in the
+ * second sheet. Changes come in the order of the second sheet, followed by
+ * the rows deleted from the first one. Values are written like the rows of
+ * {@link ReadPageTool}. {@code truncated} is true if there were more than
+ * {@code maxChanges} changes; the row counts always cover all of them.
+ */
+package jp.isoittech;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import com.google.gson.GsonBuilder;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+
+public class DiffTool {
+
+    private static final int DEFAULT_MAX_CHANGES = 1000;
+    private static final int MAX_ROW = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+    private static final int MAX_COLUMN = SpreadsheetVersion.EXCEL2007.getLastColumnIndex();
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath - path to the first .xlsx file</li>
+     *     <li>otherFilePath - path to the second .xlsx file; may be the same file</li>
+     *     <li>sheetName (optional) - worksheet of the first file; all worksheets if omitted</li>
+     *     <li>otherSheetName (optional) - worksheet of the second file, default sheetName</li>
+     *     <li>range (optional) - A1-style range of the first sheet; the whole sheet if omitted</li>
+     *     <li>otherRange (optional) - range of the second sheet, default range</li>
+     *     <li>keyColumn (optional) - column letter of the key in the first range (the
+     *     column at the same position in the second one); rows are aligned by position if omitted</li>
+     *     <li>maxChanges (optional) - maximum number of changes to return, default 1000</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 8) {
+            throw new IllegalArgumentException("Usage: DiffTool <filePath> <otherFilePath> [sheetName] "
+                    + "[otherSheetName] [range] [otherRange] [keyColumn] [maxChanges]");
+        }
+
+        String filePath = args[0];
+        String otherFilePath = args[1];
+        String sheetName = optionalArg(args, 2);
+        String otherSheetName = optionalArg(args, 3) != null ? args[3] : sheetName;
+        String rangeStr = optionalArg(args, 4);
+        String otherRangeStr = optionalArg(args, 5) != null ? args[5] : rangeStr;
+        String keyColumn = optionalArg(args, 6);
+        int maxChanges = optionalArg(args, 7) != null ? Integer.parseInt(args[7]) : DEFAULT_MAX_CHANGES;
+        if (sheetName == null && (otherSheetName != null || rangeStr != null || otherRangeStr != null)) {
+            throw new IllegalArgumentException("sheetName is required to compare other sheets or ranges");
+        }
+        if (maxChanges < 0) {
+            throw new IllegalArgumentException("maxChanges must not be negative: " + maxChanges);
+        }
+        CellRangeAddress range = rangeStr != null
+                ? ExcelRangeUtils.parseRange(rangeStr) : new CellRangeAddress(0, MAX_ROW, 0, MAX_COLUMN);
+        CellRangeAddress otherRange = otherRangeStr != null
+                ? ExcelRangeUtils.parseRange(otherRangeStr) : new CellRangeAddress(0, MAX_ROW, 0, MAX_COLUMN);
+        int key = -1;
+        if (keyColumn != null) {
+            key = CellReference.convertColStringToIndex(keyColumn) - range.getFirstColumn();
+            if (key < 0 || key > range.getLastColumn() - range.getFirstColumn()) {
+                throw new IllegalArgumentException("keyColumn is outside the range: " + keyColumn);
+            }
+        }
+
+        try (SheetStreamReader reader = SheetStreamReader.open(filePath);
+             SheetStreamReader otherReader = SheetStreamReader.open(otherFilePath)) {
+            Diff diff = new Diff(maxChanges);
+            List<String> sheetsAdded = new ArrayList<>();
+            List<String> sheetsRemoved = new ArrayList<>();
+            if (sheetName != null) {
+                diff.compare(new Side(reader, sheetName, range),
+                        new Side(otherReader, otherSheetName, otherRange), key);
+            } else {
+                List<String> sheets = reader.getSheetNames();
+                List<String> otherSheets = otherReader.getSheetNames();
+                for (String sheet : sheets) {
+                    if (otherSheets.contains(sheet)) {
+                        diff.compare(new Side(reader, sheet, range),
+                                new Side(otherReader, sheet, otherRange), key);
+                    } else {
+                        sheetsRemoved.add(sheet);
+                    }
+                }
+                for (String sheet : otherSheets) {
+                    if (!sheets.contains(sheet)) {
+                        sheetsAdded.add(sheet);
+                    }
+                }
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("changes", diff.changes);
+            result.put("rowsChanged", diff.rowsChanged);
+            result.put("rowsInserted", diff.rowsInserted);
+            result.put("rowsDeleted", diff.rowsDeleted);
+            result.put("sheetsAdded", sheetsAdded);
+            result.put("sheetsRemoved", sheetsRemoved);
+            result.put("truncated", diff.truncated);
+            System.out.println(new GsonBuilder().serializeNulls().create().toJson(result));
+        }
+    }
+
+    private static String optionalArg(String[] args, int index) {
+        return args.length > index && !args[index].isEmpty() ? args[index] : null;
+    }
+
+    /**
+     * A sheet, or a range of it, to compare. Rows and columns are counted
+     * from the top-left cell of the range.
+     */
+    private static final class Side {
+        final SheetStreamReader reader;
+        final String sheet;
+        final CellRangeAddress range;
+
+        Side(SheetStreamReader reader, String sheet, CellRangeAddress range) {
+            this.reader = reader;
+            this.sheet = sheet;
+            this.range = range;
+        }
+
+        /** Streams the rows between {@code firstRow} and {@code lastRow} (relative) to {@code sink}. */
+        void read(int firstRow, int lastRow, RowSink sink) throws IOException {
+            int top = range.getFirstRow();
+            CellRangeAddress rows = new CellRangeAddress(top + firstRow, top + lastRow,
+                    range.getFirstColumn(), range.getLastColumn());
+            RowCollector collector = new RowCollector(top, range.getFirstColumn(), sink);
+            reader.read(sheet, rows, collector);
+            collector.finish();
+        }
+
+        void read(RowSink sink) throws IOException {
+            read(0, range.getLastRow() - range.getFirstRow(), sink);
+        }
+
+        String address(int row, int column) {
+            return new CellAddress(range.getFirstRow() + row, range.getFirstColumn() + column).formatAsString();
+        }
+    }
+
+    /** The cells of one row: relative columns in ascending order and their values. */
+    private static final class RowCells {
+        final int row;
+        final int[] columns;
+        final Object[] values;
+
+        RowCells(int row, int[] columns, Object[] values) {
+            this.row = row;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        /** Returns the value of a column, or null if the cell is empty. */
+        Object get(int column) {
+            int i = Arrays.binarySearch(columns, column);
+            return i >= 0 ? values[i] : null;
+        }
+
+        /** Returns the hash of the row; never 0, which stands for an empty row. */
+        long hash() {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < columns.length; i++) {
+                h = mix(h, columns[i]);
+                h = mix(h, hashValue(values[i]));
+            }
+            return h == 0 ? 1 : h;
+        }
+
+        private static long hashValue(Object value) {
+            if (value instanceof Double) {
+                return mix(1, Double.doubleToLongBits((Double) value));
+            }
+            if (value instanceof Boolean) {
+                return mix(2, (Boolean) value ? 1 : 0);
+            }
+            if (value instanceof LocalDateTime) {
+                LocalDateTime date = (LocalDateTime) value;
+                return mix(mix(3, date.toEpochSecond(ZoneOffset.UTC)), date.getNano());
+            }
+            String s = value.toString();
+            long h = 4;
+            for (int i = 0; i < s.length(); i++) {
+                h = mix(h, s.charAt(i));
+            }
+            return mix(h, s.length());
+        }
+
+        private static long mix(long h, long x) {
+            h = (h ^ x) * 0x9e3779b97f4a7c15L;
+            return h ^ (h >>> 29);
+        }
+    }
+
+    private interface RowSink {
+        void row(RowCells cells) throws IOException;
+    }
+
+    /** Groups the cells reported by {@link SheetStreamReader} into rows. */
+    private static final class RowCollector implements SheetStreamReader.CellHandler {
+        private final int top;
+        private final int left;
+        private final RowSink sink;
+        private int row = -1;
+        private int[] columns = new int[16];
+        private Object[] values = new Object[16];
+        private int count;
+
+        RowCollector(int top, int left, RowSink sink) {
+            this.top = top;
+            this.left = left;
+            this.sink = sink;
+        }
+
+        @Override
+        public void cell(int row, int column, Object value) throws IOException {
+            if (row - top != this.row) {
+                finish();
+                this.row = row - top;
+            }
+            if (count == columns.length) {
+                columns = Arrays.copyOf(columns, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            columns[count] = column - left;
+            values[count] = value;
+            count++;
+        }
+
+        void finish() throws IOException {
+            if (count > 0) {
+                sink.row(new RowCells(row, Arrays.copyOf(columns, count), Arrays.copyOf(values, count)));
+                Arrays.fill(values, 0, count, null);
+                count = 0;
+            }
+        }
+    }
+
+    /** A row of the first sheet, by key. */
+    private static final class KeyedRow {
+        final int row;
+        final long hash;
+
+        KeyedRow(int row, long hash) {
+            this.row = row;
+            this.hash = hash;
+        }
+    }
+
+    /** Collects the changes of the compared sheets. */
+    private static final class Diff {
+        final List<Map<String, Object>> changes = new ArrayList<>();
+        long rowsChanged;
+        long rowsInserted;
+        long rowsDeleted;
+        boolean truncated;
+        private final int maxChanges;
+
+        Diff(int maxChanges) {
+            this.maxChanges = maxChanges;
+        }
+
+        void compare(Side side, Side other, int key) throws IOException {
+            // Rows of the second sheet that differ, in order, each with its row in the first sheet (or -1).
+            List<Map.Entry<RowCells, Integer>> pairs = new ArrayList<>();
+            BitSet wanted = new BitSet();
+            if (key < 0) {
+                alignByPosition(side, other, pairs, wanted);
+            } else {
+                alignByKey(side, other, key, pairs, wanted);
+            }
+            if (wanted.isEmpty() && pairs.isEmpty()) {
+                return;
+            }
+
+            Map<Integer, RowCells> rows = new HashMap<>();
+            if (!wanted.isEmpty()) {
+                side.read(wanted.nextSetBit(0), wanted.length() - 1, cells -> {
+                    if (wanted.get(cells.row)) {
+                        rows.put(cells.row, cells);
+                    }
+                });
+            }
+            for (Map.Entry<RowCells, Integer> pair : pairs) {
+                RowCells otherCells = pair.getKey();
+                RowCells cells = pair.getValue() >= 0 ? rows.remove(pair.getValue()) : null;
+                if (cells == null) {
+                    rowsInserted++;
+                } else {
+                    rowsChanged++;
+                }
+                compareRow(side, cells, other, otherCells);
+            }
+            // What is left was deleted.
+            for (RowCells cells : new TreeMap<>(rows).values()) {
+                rowsDeleted++;
+                compareRow(side, cells, other, null);
+            }
+        }
+
+        private static void alignByPosition(Side side, Side other, List<Map.Entry<RowCells, Integer>> pairs,
+                                            BitSet wanted)
+                throws IOException {
+            long[][] hashes = {new long[1024]};
+            BitSet present = new BitSet();
+            side.read(cells -> {
+                if (cells.row >= hashes[0].length) {
+                    hashes[0] = Arrays.copyOf(hashes[0], Math.max(cells.row + 1, hashes[0].length * 2));
+                }
+                hashes[0][cells.row] = cells.hash();
+                present.set(cells.row);
+            });
+            other.read(cells -> {
+                boolean inFirst = present.get(cells.row);
+                if (!inFirst || hashes[0][cells.row] != cells.hash()) {
+                    pairs.add(Map.entry(cells, inFirst ? cells.row : -1));
+                    if (inFirst) {
+                        wanted.set(cells.row);
+                    }
+                }
+                present.clear(cells.row);
+            });
+            // Rows of the first sheet that are empty in the second one.
+            wanted.or(present);
+        }
+
+        private static void alignByKey(Side side, Side other, int key, List<Map.Entry<RowCells, Integer>> pairs,
+                                       BitSet wanted)
+                throws IOException {
+            // Rows sharing a key (blank keys included) are matched in order, each queue popped once per row.
+            Map<String, ArrayDeque<KeyedRow>> keys = new HashMap<>();
+            side.read(cells -> keys.computeIfAbsent(keyOf(cells, key), k -> new ArrayDeque<>())
+                    .add(new KeyedRow(cells.row, cells.hash())));
+            other.read(cells -> {
+                ArrayDeque<KeyedRow> rows = keys.get(keyOf(cells, key));
+                KeyedRow row = rows != null ? rows.poll() : null;
+                if (row == null) {
+                    pairs.add(Map.entry(cells, -1));
+                    return;
+                }
+                if (row.hash != cells.hash()) {
+                    pairs.add(Map.entry(cells, row.row));
+                    wanted.set(row.row);
+                }
+            });
+            for (ArrayDeque<KeyedRow> rows : keys.values()) {
+                for (KeyedRow row : rows) {
+                    wanted.set(row.row);
+                }
+            }
+        }
+
+        private static String keyOf(RowCells cells, int key) {
+            Object value = cells.get(key);
+            if (value == null) {
+                return "";
+            }
+            if (value instanceof Double) {
+                return ExportSheetTool.formatNumber((Double) value);
+            }
+            if (value instanceof LocalDateTime) {
+                return SheetStreamReader.formatDate((LocalDateTime) value);
+            }
+            if (value instanceof Boolean) {
+                return (Boolean) value ? "TRUE" : "FALSE";
+            }
+            return value.toString();
+        }
+
+        /** Adds the changes between two aligned rows; either may be null. */
+        private void compareRow(Side side, RowCells cells, Side other, RowCells otherCells) {
+            int i = 0;
+            int j = 0;
+            int n = cells != null ? cells.columns.length : 0;
+            int m = otherCells != null ? otherCells.columns.length : 0;
+            while (i < n || j < m) {
+                int column = Math.min(i < n ? cells.columns[i] : Integer.MAX_VALUE,
+                        j < m ? otherCells.columns[j] : Integer.MAX_VALUE);
+                Object value = i < n && cells.columns[i] == column ? cells.values[i++] : null;
+                Object otherValue = j < m && otherCells.columns[j] == column ? otherCells.values[j++] : null;
+                if (!Objects.equals(value, otherValue)) {
+                    add(side, cells, other, otherCells, column, value, otherValue);
+                }
+            }
+        }
+
+        private void add(Side side, RowCells cells, Side other, RowCells otherCells, int column,
+                         Object value, Object otherValue) {
+            if (changes.size() == maxChanges) {
+                truncated = true;
+                return;
+            }
+            String cell = cells != null ? side.address(cells.row, column) : null;
+            String otherCell = otherCells != null ? other.address(otherCells.row, column) : null;
+            Map<String, Object> change = new LinkedHashMap<>();
+            change.put("sheet", cells != null ? side.sheet : other.sheet);
+            change.put("cell", cell != null ? cell : otherCell);
+            if (cell != null && otherCell != null && !cell.equals(otherCell)) {
+                change.put("otherCell", otherCell);
+            }
+            change.put("type", value == null ? "inserted" : otherValue == null ? "deleted" : "changed");
+            change.put("old", json(value));
+            change.put("new", json(otherValue));
+            changes.add(change);
+        }
+
+        private static Object json(Object value) {
+            return value instanceof LocalDateTime ? SheetStreamReader.formatDate((LocalDateTime) value) : value;
+        }
+    }
+}
@@ -0,0 +1,605 @@
+/**
+ * Utility functions that insert or delete blocks of cells inside a
+ * worksheet the way Excel's "shift cells up/down/left/right" does: only
+ * the rows or columns of the affected range move, everything outside of
+ * it stays where it is.
+ *
+ * <p>Unlike {@link org.apache.poi.ss.usermodel.Sheet#shiftRows(int, int, int)},
+ * which rewrites formulas row by row, all formula references in the
+ * workbook are adjusted in a single pass before any cell is moved, so the
+ * cost is proportional to the number of formula cells plus the number of
+ * cells that actually move. Merged regions and conditional formatting
+ * ranges are updated in the same call.
+ */
+package jp.isoittech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaRenderer;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.formula.ptg.Area3DPxg;
+import org.apache.poi.ss.formula.ptg.AreaErrPtg;
+import org.apache.poi.ss.formula.ptg.AreaPtgBase;
+import org.apache.poi.ss.formula.ptg.Deleted3DPxg;
+import org.apache.poi.ss.formula.ptg.Ptg;
+import org.apache.poi.ss.formula.ptg.Ref3DPxg;
+import org.apache.poi.ss.formula.ptg.RefErrorPtg;
+import org.apache.poi.ss.formula.ptg.RefPtgBase;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellCopyPolicy;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Comment;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.model.CalculationChain;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFName;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCalcCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCellFormula;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCfRule;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTConditionalFormatting;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.STCellFormulaType;
+
+public final class ExcelShiftUtils {
+
+    private static final int MAX_ROW = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+    private static final int MAX_COLUMN = SpreadsheetVersion.EXCEL2007.getLastColumnIndex();
+
+    private ExcelShiftUtils() {
+    }
+
+    /**
+     * Deletes the cells of {@code range} and moves the cells below it up,
+     * restricted to the columns of the range.
+     *
+     * @param sheet sheet to modify
+     * @param range range to delete
+     * @return number of cells removed or moved
+     * @throws IllegalArgumentException if a merged region would be split
+     */
+    public static int deleteCellsShiftUp(XSSFSheet sheet, CellRangeAddress range) {
+        int height = range.getLastRow() - range.getFirstRow() + 1;
+        return shiftCells(sheet, new BlockShift(sheet, true, range.getLastRow() + 1,
+                range.getFirstColumn(), range.getLastColumn(), -height));
+    }
+
+    /**
+     * Deletes the cells of {@code range} and moves the cells to its right
+     * to the left, restricted to the rows of the range.
+     *
+     * @param sheet sheet to modify
+     * @param range range to delete
+     * @return number of cells removed or moved
+     * @throws IllegalArgumentException if a merged region would be split
+     */
+    public static int deleteCellsShiftLeft(XSSFSheet sheet, CellRangeAddress range) {
+        int width = range.getLastColumn() - range.getFirstColumn() + 1;
+        return shiftCells(sheet, new BlockShift(sheet, false, range.getLastColumn() + 1,
+                range.getFirstRow(), range.getLastRow(), -width));
+    }
+
+    /**
+     * Inserts empty cells at {@code range} by moving the cells at and below
+     * it down, restricted to the columns of the range.
+     *
+     * @param sheet sheet to modify
+     * @param range range to open up
+     * @return number of cells removed or moved
+     * @throws IllegalArgumentException if a merged region would be split or
+     *                                  cells would move past the last row
+     */
+    public static int insertCellsShiftDown(XSSFSheet sheet, CellRangeAddress range) {
+        int height = range.getLastRow() - range.getFirstRow() + 1;
+        return shiftCells(sheet, new BlockShift(sheet, true, range.getFirstRow(),
+                range.getFirstColumn(), range.getLastColumn(), height));
+    }
+
+    /**
+     * Inserts empty cells at {@code range} by moving the cells at and to the
+     * right of it further right, restricted to the rows of the range.
+     *
+     * @param sheet sheet to modify
+     * @param range range to open up
+     * @return number of cells removed or moved
+     * @throws IllegalArgumentException if a merged region would be split or
+     *                                  cells would move past the last column
+     */
+    public static int insertCellsShiftRight(XSSFSheet sheet, CellRangeAddress range) {
+        int width = range.getLastColumn() - range.getFirstColumn() + 1;
+        return shiftCells(sheet, new BlockShift(sheet, false, range.getFirstColumn(),
+                range.getFirstRow(), range.getLastRow(), width));
+    }
+
+    private static int shiftCells(XSSFSheet sheet, BlockShift shift) {
+        // Validate before touching anything so a failed call leaves the sheet intact.
+        List<CellRangeAddress> mergedRegions = sheet.getMergedRegions();
+        for (CellRangeAddress region : mergedRegions) {
+            shift.checkMergedRegion(region);
+        }
+        if (shift.n > 0 && lastUsedIndex(sheet, shift) + shift.n > shift.max()) {
+            throw new IllegalArgumentException("Cannot shift cells: cells would move beyond the end of the sheet");
+        }
+
+        XSSFEvaluationWorkbook evalWorkbook = XSSFEvaluationWorkbook.create(sheet.getWorkbook());
+        updateFormulas(evalWorkbook, shift);
+        updateConditionalFormatting(evalWorkbook, shift);
+        pruneCalculationChain(sheet);
+        int cells = moveCells(sheet, shift);
+        updateMergedRegions(sheet, mergedRegions, shift);
+        return cells;
+    }
+
+    /** Returns the last row (or column) index that holds a cell within the band of the shift, or -1. */
+    private static int lastUsedIndex(XSSFSheet sheet, BlockShift shift) {
+        int last = -1;
+        for (Row row : sheet) {
+            if (shift.vertical) {
+                // Only the columns of the band move, so cells beyond them do not count.
+                int first = Math.max(shift.bandFirst, row.getFirstCellNum());
+                int end = Math.min(shift.bandLast, row.getLastCellNum() - 1);
+                for (int c = first; c <= end; c++) {
+                    if (row.getCell(c) != null) {
+                        last = row.getRowNum();
+                        break;
+                    }
+                }
+            } else if (shift.inBand(row.getRowNum())) {
+                last = Math.max(last, row.getLastCellNum() - 1);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Parses every formula in the workbook once and rewrites the ones whose
+     * references point into the moved block. Shared formula groups that are
+     * affected are expanded into plain formulas, because their master cell
+     * may be rewritten or moved.
+     */
+    private static void updateFormulas(XSSFEvaluationWorkbook evalWorkbook, BlockShift shift) {
+        XSSFWorkbook workbook = shift.sheet.getWorkbook();
+        int targetSheetIndex = workbook.getSheetIndex(shift.sheet);
+
+        // First pass: compute every new formula from the original text. Nothing is
+        // modified yet because shared formula children derive their text from the master.
+        List<XSSFCell> cells = new ArrayList<>();
+        List<String> formulas = new ArrayList<>();
+        List<String> sharedGroups = new ArrayList<>();
+        Set<String> dirtySharedGroups = new HashSet<>();
+
+        for (int s = 0; s < workbook.getNumberOfSheets(); s++) {
+            XSSFSheet sheet = workbook.getSheetAt(s);
+            for (Row row : sheet) {
+                for (Cell c : row) {
+                    if (c.getCellType() != CellType.FORMULA || c.isPartOfArrayFormulaGroup()) {
+                        continue;
+                    }
+                    XSSFCell cell = (XSSFCell) c;
+                    String updated = shiftFormula(evalWorkbook, cell.getCellFormula(), FormulaType.CELL,
+                            s, s == targetSheetIndex, shift);
+
+                    String sharedGroup = sharedGroupKey(s, cell);
+                    if (sharedGroup != null) {
+                        if (updated != null || s == targetSheetIndex) {
+                            dirtySharedGroups.add(sharedGroup);
+                        }
+                        updated = updated != null ? updated : cell.getCellFormula();
+                    }
+                    if (updated != null) {
+                        cells.add(cell);
+                        formulas.add(updated);
+                        sharedGroups.add(sharedGroup);
+                    }
+                }
+            }
+        }
+
+        // Second pass: apply. Cells of an affected shared group get a plain formula.
+        for (int i = 0; i < cells.size(); i++) {
+            XSSFCell cell = cells.get(i);
+            String sharedGroup = sharedGroups.get(i);
+            if (sharedGroup == null) {
+                cell.setCellFormula(formulas.get(i));
+            } else if (dirtySharedGroups.contains(sharedGroup)) {
+                cell.getCTCell().unsetF();
+                cell.setCellFormula(formulas.get(i));
+            }
+        }
+
+        for (XSSFName name : workbook.getAllNames()) {
+            String formula = name.getRefersToFormula();
+            if (formula == null) {
+                continue;
+            }
+            int sheetIndex = name.getSheetIndex();
+            String updated = shiftFormula(evalWorkbook, formula, FormulaType.NAMEDRANGE,
+                    Math.max(sheetIndex, 0), sheetIndex == targetSheetIndex, shift);
+            if (updated != null) {
+                name.setRefersToFormula(updated);
+            }
+        }
+    }
+
+    /**
+     * Moves conditional formatting ranges of the sheet together with the
+     * cells and adjusts the references in their rule formulas. Formats whose
+     * ranges are deleted completely are removed.
+     */
+    private static void updateConditionalFormatting(XSSFEvaluationWorkbook evalWorkbook, BlockShift shift) {
+        CTWorksheet worksheet = shift.sheet.getCTWorksheet();
+        int sheetIndex = shift.sheet.getWorkbook().getSheetIndex(shift.sheet);
+
+        for (int i = worksheet.sizeOfConditionalFormattingArray() - 1; i >= 0; i--) {
+            CTConditionalFormatting cf = worksheet.getConditionalFormattingArray(i);
+
+            boolean changed = false;
+            List<String> sqref = new ArrayList<>();
+            for (Object ref : cf.getSqref()) {
+                CellRangeAddress range = CellRangeAddress.valueOf(ref.toString());
+                CellRangeAddress shifted = shift.shiftRange(range);
+                if (shifted != range) {
+                    changed = true;
+                }
+                if (shifted != null) {
+                    sqref.add(shifted.formatAsString());
+                }
+            }
+            if (sqref.isEmpty()) {
+                worksheet.removeConditionalFormatting(i);
+                continue;
+            }
+            if (changed) {
+                cf.setSqref(sqref);
+            }
+
+            for (CTCfRule rule : cf.getCfRuleArray()) {
+                for (int f = 0; f < rule.sizeOfFormulaArray(); f++) {
+                    String updated = shiftFormula(evalWorkbook, rule.getFormulaArray(f), FormulaType.CELL,
+                            sheetIndex, true, shift);
+                    if (updated != null) {
+                        rule.setFormulaArray(f, updated);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the rewritten formula, or {@code null} when no reference changed
+     * or the formula cannot be parsed.
+     */
+    private static String shiftFormula(XSSFEvaluationWorkbook evalWorkbook, String formula, FormulaType type,
+                                       int sheetIndex, boolean onTargetSheet, BlockShift shift) {
+        Ptg[] ptgs;
+        try {
+            ptgs = FormulaParser.parse(formula, evalWorkbook, type, sheetIndex);
+        } catch (RuntimeException ex) {
+            // Leave formulas POI cannot parse (e.g. unsupported functions) untouched.
+            return null;
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < ptgs.length; i++) {
+            Ptg ptg = ptgs[i];
+            Ptg shifted = null;
+            if (ptg instanceof RefPtgBase && refersToTarget(ptg, onTargetSheet, shift)) {
+                shifted = shift.shiftRef((RefPtgBase) ptg);
+            } else if (ptg instanceof AreaPtgBase && refersToTarget(ptg, onTargetSheet, shift)) {
+                shifted = shift.shiftArea((AreaPtgBase) ptg);
+            }
+            if (shifted != null) {
+                ptgs[i] = shifted;
+                changed = true;
+            }
+        }
+        return changed ? FormulaRenderer.toFormulaString(evalWorkbook, ptgs) : null;
+    }
+
+    private static boolean refersToTarget(Ptg ptg, boolean onTargetSheet, BlockShift shift) {
+        if (ptg instanceof Ref3DPxg) {
+            Ref3DPxg ref = (Ref3DPxg) ptg;
+            return ref.getExternalWorkbookNumber() < 1 && ref.getLastSheetName() == null
+                    && shift.sheet.getSheetName().equalsIgnoreCase(ref.getSheetName());
+        }
+        if (ptg instanceof Area3DPxg) {
+            Area3DPxg area = (Area3DPxg) ptg;
+            return area.getExternalWorkbookNumber() < 1 && area.getLastSheetName() == null
+                    && shift.sheet.getSheetName().equalsIgnoreCase(area.getSheetName());
+        }
+        return onTargetSheet;
+    }
+
+    private static String sharedGroupKey(int sheetIndex, XSSFCell cell) {
+        CTCellFormula f = cell.getCTCell().getF();
+        if (f == null || f.getT() != STCellFormulaType.SHARED || !f.isSetSi()) {
+            return null;
+        }
+        return sheetIndex + ":" + f.getSi();
+    }
+
+    /**
+     * Drops the calculation chain entries of the sheet in one pass. Excel
+     * rebuilds the chain on load; without this every moved formula cell
+     * would trigger a linear scan of the chain.
+     */
+    private static void pruneCalculationChain(XSSFSheet sheet) {
+        CalculationChain chain = sheet.getWorkbook().getCalculationChain();
+        if (chain == null) {
+            return;
+        }
+        long sheetId = sheetIdOf(sheet);
+        CTCalcCell[] entries = chain.getCTCalcChain().getCArray();
+        List<CTCalcCell> kept = new ArrayList<>(entries.length);
+        int id = -1;
+        int lastKeptId = -1;
+        for (CTCalcCell entry : entries) {
+            // The sheet id may be omitted, in which case it is inherited from the previous entry.
+            if (entry.isSetI()) {
+                id = entry.getI();
+            }
+            if (id != sheetId) {
+                CTCalcCell copy = (CTCalcCell) entry.copy();
+                if (id != lastKeptId) {
+                    copy.setI(id);
+                    lastKeptId = id;
+                }
+                kept.add(copy);
+            }
+        }
+        if (kept.size() != entries.length) {
+            chain.getCTCalcChain().setCArray(kept.toArray(new CTCalcCell[0]));
+        }
+    }
+
+    private static long sheetIdOf(XSSFSheet sheet) {
+        XSSFWorkbook workbook = sheet.getWorkbook();
+        return workbook.getCTWorkbook().getSheets().getSheetArray(workbook.getSheetIndex(sheet)).getSheetId();
+    }
+
+    private static int moveCells(XSSFSheet sheet, BlockShift shift) {
+        // Collect the affected cells first; the row and cell maps change while moving.
+        List<Cell> deleted = new ArrayList<>();
+        List<Cell> moved = new ArrayList<>();
+        for (Row row : sheet) {
+            if (shift.vertical) {
+                int r = row.getRowNum();
+                if (shift.isDeleted(r)) {
+                    collectCellsInBand(row, shift, deleted);
+                } else if (r >= shift.from) {
+                    collectCellsInBand(row, shift, moved);
+                }
+            } else if (shift.inBand(row.getRowNum())) {
+                for (Cell cell : row) {
+                    int c = cell.getColumnIndex();
+                    if (shift.isDeleted(c)) {
+                        deleted.add(cell);
+                    } else if (c >= shift.from) {
+                        moved.add(cell);
+                    }
+                }
+            }
+        }
+
+        for (Cell cell : deleted) {
+            if (cell.getCellComment() != null) {
+                cell.removeCellComment();
+            }
+            cell.removeHyperlink();
+            cell.getRow().removeCell(cell);
+        }
+
+        // Walk in the direction that never overwrites a cell that still has to move.
+        if (shift.n > 0) {
+            Collections.reverse(moved);
+        }
+        CellCopyPolicy policy = new CellCopyPolicy();
+        for (Cell src : moved) {
+            int rowIndex = src.getRowIndex() + (shift.vertical ? shift.n : 0);
+            int colIndex = src.getColumnIndex() + (shift.vertical ? 0 : shift.n);
+
+            Row target = sheet.getRow(rowIndex);
+            if (target == null) {
+                target = sheet.createRow(rowIndex);
+            }
+            Cell dest = target.getCell(colIndex);
+            if (dest == null) {
+                dest = target.createCell(colIndex);
+            }
+            ((XSSFCell) dest).copyCellFrom(src, policy);
+
+            Comment comment = src.getCellComment();
+            if (comment != null) {
+                comment.setAddress(rowIndex, colIndex);
+            }
+            src.removeHyperlink();
+            src.getRow().removeCell(src);
+        }
+        return deleted.size() + moved.size();
+    }
+
+    private static void collectCellsInBand(Row row, BlockShift shift, List<Cell> out) {
+        for (Cell cell : row) {
+            if (shift.inBand(cell.getColumnIndex())) {
+                out.add(cell);
+            }
+        }
+    }
+
+    private static void updateMergedRegions(XSSFSheet sheet, List<CellRangeAddress> regions, BlockShift shift) {
+        Set<Integer> removed = new HashSet<>();
+        List<CellRangeAddress> replacements = new ArrayList<>();
+        for (int i = 0; i < regions.size(); i++) {
+            CellRangeAddress region = regions.get(i);
+            CellRangeAddress shifted = shift.shiftRange(region);
+            if (shifted == region) {
+                continue;
+            }
+            removed.add(i);
+            if (shifted != null && shifted.getNumberOfCells() > 1) {
+                replacements.add(shifted);
+            }
+        }
+        if (!removed.isEmpty()) {
+            MergedRegionIndex.removeAll(sheet, removed);
+        }
+        for (CellRangeAddress region : replacements) {
+            sheet.addMergedRegionUnsafe(region);
+        }
+    }
+
+    /**
+     * Describes a move of every cell at or beyond index {@code from} on the
+     * shifted axis (rows when {@code vertical}, columns otherwise) inside the
+     * band {@code [bandFirst, bandLast]} of the other axis by {@code n}. When
+     * {@code n} is negative the {@code -n} rows or columns before
+     * {@code from} are deleted and references to them become {@code #REF!}.
+     */
+    private static final class BlockShift {
+        final XSSFSheet sheet;
+        final boolean vertical;
+        final int from;
+        final int bandFirst;
+        final int bandLast;
+        final int n;
+
+        BlockShift(XSSFSheet sheet, boolean vertical, int from, int bandFirst, int bandLast, int n) {
+            this.sheet = sheet;
+            this.vertical = vertical;
+            this.from = from;
+            this.bandFirst = bandFirst;
+            this.bandLast = bandLast;
+            this.n = n;
+        }
+
+        int max() {
+            return vertical ? MAX_ROW : MAX_COLUMN;
+        }
+
+        boolean inBand(int index) {
+            return index >= bandFirst && index <= bandLast;
+        }
+
+        boolean coversBand(int first, int last) {
+            return first >= bandFirst && last <= bandLast;
+        }
+
+        boolean isDeleted(int index) {
+            return n < 0 && index >= from + n && index < from;
+        }
+
+        /** New start of a span; indexes inside the deleted block collapse to the block start. */
+        int shiftFirst(int index) {
+            if (index >= from) {
+                return index + n;
+            }
+            return isDeleted(index) ? from + n : index;
+        }
+
+        /** New end of a span; indexes inside the deleted block collapse to the one before it. */
+        int shiftLast(int index) {
+            if (index >= from) {
+                return index + n;
+            }
+            return isDeleted(index) ? from + n - 1 : index;
+        }
+
+        void checkMergedRegion(CellRangeAddress region) {
+            int bandStart = vertical ? region.getFirstColumn() : region.getFirstRow();
+            int bandEnd = vertical ? region.getLastColumn() : region.getLastRow();
+            int end = vertical ? region.getLastRow() : region.getLastColumn();
+            boolean intersectsBand = bandStart <= bandLast && bandEnd >= bandFirst;
+            if (intersectsBand && !coversBand(bandStart, bandEnd) && end >= Math.min(from, from + n)) {
+                throw new IllegalArgumentException("Cannot shift cells: merged region "
+                        + region.formatAsString() + " would be split");
+            }
+        }
+
+        /**
+         * Returns the moved range, the same instance when it is not affected,
+         * or {@code null} when it was deleted completely.
+         */
+        CellRangeAddress shiftRange(CellRangeAddress range) {
+            int bandStart = vertical ? range.getFirstColumn() : range.getFirstRow();
+            int bandEnd = vertical ? range.getLastColumn() : range.getLastRow();
+            if (!coversBand(bandStart, bandEnd)) {
+                return range;
+            }
+            int start = vertical ? range.getFirstRow() : range.getFirstColumn();
+            int end = vertical ? range.getLastRow() : range.getLastColumn();
+            int newStart = shiftFirst(start);
+            int newEnd = Math.min(shiftLast(end), max());
+            if (newStart == start && newEnd == end) {
+                return range;
+            }
+            if (newStart > newEnd || newStart > max()) {
+                return null;
+            }
+            return vertical
+                    ? new CellRangeAddress(newStart, newEnd, range.getFirstColumn(), range.getLastColumn())
+                    : new CellRangeAddress(range.getFirstRow(), range.getLastRow(), newStart, newEnd);
+        }
+
+        Ptg shiftRef(RefPtgBase ref) {
+            if (!inBand(vertical ? ref.getColumn() : ref.getRow())) {
+                return null;
+            }
+            int index = vertical ? ref.getRow() : ref.getColumn();
+            if (isDeleted(index) || (index >= from && index + n > max())) {
+                return ref instanceof Ref3DPxg
+                        ? new Deleted3DPxg(((Ref3DPxg) ref).getExternalWorkbookNumber(), ((Ref3DPxg) ref).getSheetName())
+                        : new RefErrorPtg();
+            }
+            if (index < from) {
+                return null;
+            }
+            if (vertical) {
+                ref.setRow(index + n);
+            } else {
+                ref.setColumn(index + n);
+            }
+            return ref;
+        }
+
+        Ptg shiftArea(AreaPtgBase area) {
+            int bandStart = vertical ? area.getFirstColumn() : area.getFirstRow();
+            int bandEnd = vertical ? area.getLastColumn() : area.getLastRow();
+            if (!coversBand(bandStart, bandEnd)) {
+                return null;
+            }
+            int start = vertical ? area.getFirstRow() : area.getFirstColumn();
+            int end = vertical ? area.getLastRow() : area.getLastColumn();
+            if (start == 0 && end == max()) {
+                // Whole-column (A:A) or whole-row (1:1) references are never adjusted.
+                return null;
+            }
+            int newStart = shiftFirst(start);
+            int newEnd = Math.min(shiftLast(end), max());
+            if (newStart == start && newEnd == end) {
+                return null;
+            }
+            if (newStart > newEnd || newStart > max()) {
+                return area instanceof Area3DPxg
+                        ? new Deleted3DPxg(((Area3DPxg) area).getExternalWorkbookNumber(), ((Area3DPxg) area).getSheetName())
+                        : new AreaErrPtg();
+            }
+            if (vertical) {
+                area.setFirstRow(newStart);
+                area.setLastRow(newEnd);
+            } else {
+                area.setFirstColumn(newStart);
+                area.setLastColumn(newEnd);
+            }
+            return area;
+        }
+    }
+}
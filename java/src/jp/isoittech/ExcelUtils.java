@@ -3,10 +3,21 @@
  */
 package jp.isoittech;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -14,6 +25,9 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public final class ExcelUtils {
 
+    /** Workbook locks of this JVM that are held or waited for, by canonical workbook path. */
+    private static final Map<String, WorkbookFileLock> LOCKS = new ConcurrentHashMap<>();
+
     private ExcelUtils() {
     }
 
@@ -43,10 +57,9 @@ public final class ExcelUtils {
      */
     public static void createWorkbook(String filePath, String sheetName) throws IOException {
         String name = (sheetName == null || sheetName.isEmpty()) ? "Sheet1" : sheetName;
-        try (Workbook workbook = new XSSFWorkbook();
-             FileOutputStream fos = new FileOutputStream(new File(filePath))) {
-            workbook.createSheet(name);
-            workbook.write(fos);
+        try (WorkbookSession session = WorkbookSession.create(filePath)) {
+            session.getWorkbook().createSheet(name);
+            session.save();
         }
     }
 
@@ -64,4 +77,225 @@ public final class ExcelUtils {
         }
         return sheet;
     }
+
+    /**
+     * Locks a workbook against concurrent use by other threads and other
+     * processes: shared for readers, exclusive for writers.
+     *
+     * <p>The file lock is taken on a sidecar file ({@code .<name>.lock} in the
+     * same directory) rather than on the workbook itself, because
+     * {@link #replaceAtomically} swaps the workbook for a new file and a lock
+     * on the old one would no longer protect anything. Threads of one JVM
+     * share a single file lock per workbook, since the same process cannot
+     * lock a file region twice. The returned lock is not tied to the thread
+     * that acquired it and may be released by another one. A workbook's entry
+     * in this JVM is dropped once no thread holds or waits for its lock.
+     *
+     * <p>The lock files stay behind after use: deleting one would race with
+     * processes that are about to lock it. They are empty and can be removed
+     * while no tool is running.
+     *
+     * @param filePath  path to the workbook file
+     * @param exclusive true to lock for writing, false to lock for reading
+     * @return the held lock; closing it releases the lock
+     * @throws IOException if the lock file cannot be created or locked
+     */
+    public static Closeable lockWorkbook(String filePath, boolean exclusive) throws IOException {
+        String canonical = new File(filePath).getCanonicalPath();
+        WorkbookFileLock lock = LOCKS.compute(canonical, (k, existing) -> {
+            WorkbookFileLock entry = existing != null
+                    ? existing : new WorkbookFileLock(lockFileFor(new File(k).toPath()));
+            entry.users++;
+            return entry;
+        });
+        try {
+            lock.acquire(exclusive);
+        } catch (IOException | RuntimeException e) {
+            unuse(canonical);
+            throw e;
+        }
+        return new Closeable() {
+            private boolean released;
+
+            @Override
+            public synchronized void close() throws IOException {
+                if (!released) {
+                    released = true;
+                    try {
+                        lock.release(exclusive);
+                    } finally {
+                        unuse(canonical);
+                    }
+                }
+            }
+        };
+    }
+
+    /** Drops the lock of a workbook from {@link #LOCKS} when its last user is gone. */
+    private static void unuse(String canonical) {
+        LOCKS.computeIfPresent(canonical, (k, lock) -> --lock.users == 0 ? null : lock);
+    }
+
+    /** Work done by {@link #withLock} while it holds a workbook lock. */
+    @FunctionalInterface
+    public interface LockedAction<T, E extends Exception> {
+        T run() throws IOException, E;
+    }
+
+    /**
+     * Runs {@code action} while holding the lock that
+     * {@link #lockWorkbook} takes, and releases it afterwards.
+     *
+     * @return the result of {@code action}
+     * @throws IOException if the lock cannot be taken or {@code action} fails
+     */
+    public static <T, E extends Exception> T withLock(String filePath, boolean exclusive,
+                                                      LockedAction<T, E> action) throws IOException, E {
+        Closeable lock = lockWorkbook(filePath, exclusive);
+        try {
+            return action.run();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Creates an empty temporary file next to {@code target}, so that it can
+     * later be renamed over it with {@link #replaceAtomically}.
+     *
+     * @param target file that the temporary file will replace
+     * @return path of the new, empty file
+     * @throws IOException if the file cannot be created
+     */
+    public static Path createSiblingTempFile(Path target) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        String prefix = "." + target.getFileName() + ".";
+        while (true) {
+            Path temp = dir.resolve(prefix + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                // Unlike Files.createTempFile, keeps the permissions a plain
+                // new file would get, which matters when the target is new.
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException e) {
+                // Try another name.
+            }
+        }
+    }
+
+    /**
+     * Renames a fully written and forced {@code temp} file over
+     * {@code target} in one atomic step, so that readers see either the old
+     * or the new contents and never a partially written file. The
+     * permissions of an existing target are kept.
+     *
+     * @param temp   file created by {@link #createSiblingTempFile}
+     * @param target file to replace
+     * @throws IOException if the file cannot be renamed
+     */
+    public static void replaceAtomically(Path temp, Path target) throws IOException {
+        if (Files.exists(target)) {
+            try {
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+            } catch (UnsupportedOperationException e) {
+                // Not a POSIX file system; the default permissions apply.
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        // Make the rename itself durable. Not every platform can open a
+        // directory for this; the data is on disk either way.
+        try (FileChannel dir = FileChannel.open(target.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Ignored; see above.
+        }
+    }
+
+    private static Path lockFileFor(Path workbook) {
+        return workbook.resolveSibling("." + workbook.getFileName() + ".lock");
+    }
+
+    /**
+     * Readers-writer lock on one workbook for the threads of this JVM, backed
+     * by a file lock that is held while any thread holds the lock. Waiting
+     * writers keep new readers out, so a steady stream of readers cannot
+     * starve them.
+     */
+    private static final class WorkbookFileLock {
+        private final Path lockFile;
+        private final ReentrantLock mutex = new ReentrantLock();
+        private final Condition changed = mutex.newCondition();
+        /** Threads holding or waiting for this lock; only changed inside {@code LOCKS.compute*}. */
+        private int users;
+        private FileChannel channel;
+        private int readers;
+        private int waitingWriters;
+        private boolean writer;
+
+        WorkbookFileLock(Path lockFile) {
+            this.lockFile = lockFile;
+        }
+
+        void acquire(boolean exclusive) throws IOException {
+            mutex.lock();
+            try {
+                if (exclusive) {
+                    waitingWriters++;
+                    try {
+                        while (writer || readers > 0) {
+                            changed.awaitUninterruptibly();
+                        }
+                    } finally {
+                        waitingWriters--;
+                    }
+                } else {
+                    while (writer || waitingWriters > 0) {
+                        changed.awaitUninterruptibly();
+                    }
+                }
+                if (!writer && readers == 0) {
+                    // Blocks while another process holds a conflicting lock;
+                    // threads of this JVM wanting the workbook wait behind it.
+                    FileChannel ch = FileChannel.open(lockFile,
+                            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    try {
+                        ch.lock(0, Long.MAX_VALUE, !exclusive);
+                    } catch (IOException | RuntimeException e) {
+                        ch.close();
+                        changed.signalAll();
+                        throw e;
+                    }
+                    channel = ch;
+                }
+                if (exclusive) {
+                    writer = true;
+                } else {
+                    readers++;
+                }
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        void release(boolean exclusive) throws IOException {
+            mutex.lock();
+            try {
+                if (exclusive) {
+                    writer = false;
+                } else {
+                    readers--;
+                }
+                changed.signalAll();
+                if (!writer && readers == 0) {
+                    FileChannel ch = channel;
+                    channel = null;
+                    // Closing the channel releases the lock. The lock file is left
+                    // in place: deleting it would race with processes waiting on it.
+                    ch.close();
+                }
+            } finally {
+                mutex.unlock();
+            }
+        }
+    }
 }
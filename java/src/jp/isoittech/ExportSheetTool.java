@@ -0,0 +1,326 @@
+/**
+ * Command line tool that exports a worksheet, or a range of it, to a CSV or
+ * NDJSON file.
+ *
+ * <p>The sheet is streamed with {@link SheetStreamReader} and the output is
+ * written through a buffered file channel, so the heap stays flat however
+ * large the sheet is. The file is written next to its final path and renamed
+ * into place when complete.
+ *
+ * <p>Each row of the sheet becomes one line, starting at the top-left cell of
+ * the range, or of the used range of the sheet when no range is given; empty
+ * rows in between are kept so that line N is always row N of the range, and
+ * the output ends with the last row that has a value. Cells hold their
+ * values as stored (the cached result for formulas); dates are written as
+ * ISO 8601 ("2024-01-31" or "2024-01-31T09:30").
+ * <ul>
+ *     <li>csv - RFC 4180, UTF-8, CRLF line breaks; fields are quoted when
+ *     they contain a comma, a quote or a line break</li>
+ *     <li>ndjson - one JSON array per row, with numbers, booleans, strings
+ *     and null for empty cells, like the rows printed by {@link ReadExcelTool}</li>
+ * </ul>
+ *
+ * <p>Prints a JSON object with the output path and the number of rows
+ * written: {@code {"path":"/data/book_Sheet1.csv","rows":1000,"format":"csv"}}.
+ */
+package jp.isoittech;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+public class ExportSheetTool {
+
+    private static final int BUFFER_CHARS = 1 << 16;
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath - path to the .xlsx file</li>
+     *     <li>sheetName - name of the worksheet</li>
+     *     <li>outputPath - path of the file to write; replaced if it exists</li>
+     *     <li>format (optional) - "csv" (default) or "ndjson"</li>
+     *     <li>range (optional) - A1-style range to export; the whole sheet if omitted</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || args.length > 5) {
+            throw new IllegalArgumentException(
+                    "Usage: ExportSheetTool <filePath> <sheetName> <outputPath> [csv|ndjson] [range]");
+        }
+
+        String filePath = args[0];
+        String sheetName = args[1];
+        Path output = new File(args[2]).getAbsoluteFile().toPath();
+        String format = optionalArg(args, 3) != null ? args[3].toLowerCase() : "csv";
+        CellRangeAddress range = optionalArg(args, 4) != null ? ExcelRangeUtils.parseRange(args[4]) : null;
+        if (!format.equals("csv") && !format.equals("ndjson")) {
+            throw new IllegalArgumentException("format must be csv or ndjson: " + args[3]);
+        }
+        if (output.equals(new File(filePath).getAbsoluteFile().toPath())) {
+            throw new IllegalArgumentException("outputPath must differ from filePath: " + args[2]);
+        }
+
+        long rows;
+        try (SheetStreamReader reader = SheetStreamReader.open(filePath)) {
+            Path temp = ExcelUtils.createSiblingTempFile(output);
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                    Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_CHARS);
+                    RowWriter writer = format.equals("csv") ? new CsvRowWriter(out, range) : new JsonRowWriter(out, range);
+                    reader.read(sheetName, range, writer);
+                    rows = writer.finish();
+                    out.flush();
+                    channel.force(true);
+                }
+                ExcelUtils.replaceAtomically(temp, output);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            reader.getMetrics().addBytesWritten(Files.size(output));
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("path", output.toString());
+        result.put("rows", rows);
+        result.put("format", format);
+        System.out.println(new Gson().toJson(result));
+    }
+
+    private static String optionalArg(String[] args, int index) {
+        return args.length > index && !args[index].isEmpty() ? args[index] : null;
+    }
+
+    /**
+     * Collects the cells of each row and writes the row once the next one
+     * starts, filling in empty rows and cells.
+     */
+    private abstract static class RowWriter implements SheetStreamReader.CellHandler {
+        final Writer out;
+        private final CellRangeAddress range;
+        private int firstRow;
+        private int firstColumn;
+        /** Number of columns every row is padded to. */
+        private int width;
+        private Object[] values = new Object[16];
+        private int count;
+        private int currentRow = -1;
+        private int nextRow = -1;
+        private long rows;
+
+        RowWriter(Writer out, CellRangeAddress range) {
+            this.out = out;
+            this.range = range;
+            if (range != null) {
+                setOrigin(range);
+            }
+        }
+
+        private void setOrigin(CellRangeAddress area) {
+            firstRow = area.getFirstRow();
+            firstColumn = area.getFirstColumn();
+            width = area.getLastColumn() - area.getFirstColumn() + 1;
+            nextRow = firstRow;
+        }
+
+        @Override
+        public void dimension(CellRangeAddress usedRange) {
+            if (range == null) {
+                setOrigin(usedRange);
+            }
+        }
+
+        @Override
+        public void cell(int row, int column, Object value) throws IOException {
+            if (row < nextRow || column < firstColumn) {
+                // Outside a used range that did not cover the whole sheet.
+                return;
+            }
+            if (nextRow < 0) {
+                nextRow = row;
+            }
+            if (row != currentRow) {
+                flushRow();
+                while (nextRow < row) {
+                    writeRow(values, 0);
+                }
+                currentRow = row;
+            }
+            int index = column - firstColumn;
+            if (index >= values.length) {
+                values = Arrays.copyOf(values, Math.max(index + 1, values.length * 2));
+            }
+            values[index] = value;
+            count = Math.max(count, index + 1);
+        }
+
+        /**
+         * Writes the last row.
+         *
+         * @return the number of rows written
+         */
+        long finish() throws IOException {
+            flushRow();
+            return rows;
+        }
+
+        private void flushRow() throws IOException {
+            if (currentRow >= 0) {
+                writeRow(values, count);
+                Arrays.fill(values, 0, count, null);
+                count = 0;
+                currentRow = -1;
+            }
+        }
+
+        private void writeRow(Object[] row, int length) throws IOException {
+            writeRow(row, length, Math.max(width, length));
+            nextRow++;
+            rows++;
+        }
+
+        /**
+         * Writes one line.
+         *
+         * @param row     cell values, null for empty cells
+         * @param length  number of entries of {@code row} in use
+         * @param columns number of columns to write, at least {@code length}
+         */
+        abstract void writeRow(Object[] row, int length, int columns) throws IOException;
+    }
+
+    private static final class CsvRowWriter extends RowWriter {
+        CsvRowWriter(Writer out, CellRangeAddress range) {
+            super(out, range);
+        }
+
+        @Override
+        void writeRow(Object[] row, int length, int columns) throws IOException {
+            for (int i = 0; i < columns; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                if (i < length && row[i] != null) {
+                    writeField(format(row[i]));
+                }
+            }
+            out.write("\r\n");
+        }
+
+        private void writeField(String field) throws IOException {
+            boolean quote = false;
+            for (int i = 0; i < field.length() && !quote; i++) {
+                char c = field.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quote) {
+                out.write(field);
+                return;
+            }
+            out.write('"');
+            for (int i = 0; i < field.length(); i++) {
+                char c = field.charAt(i);
+                if (c == '"') {
+                    out.write('"');
+                }
+                out.write(c);
+            }
+            out.write('"');
+        }
+
+        private static String format(Object value) {
+            if (value instanceof Double) {
+                return formatNumber((Double) value);
+            }
+            if (value instanceof Boolean) {
+                return (Boolean) value ? "TRUE" : "FALSE";
+            }
+            if (value instanceof LocalDateTime) {
+                return SheetStreamReader.formatDate((LocalDateTime) value);
+            }
+            return value.toString();
+        }
+    }
+
+    private static final class JsonRowWriter extends RowWriter {
+        JsonRowWriter(Writer out, CellRangeAddress range) {
+            super(out, range);
+        }
+
+        @Override
+        void writeRow(Object[] row, int length, int columns) throws IOException {
+            out.write('[');
+            for (int i = 0; i < columns; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                Object value = i < length ? row[i] : null;
+                if (value == null) {
+                    out.write("null");
+                } else if (value instanceof Double) {
+                    out.write(formatNumber((Double) value));
+                } else if (value instanceof Boolean) {
+                    out.write(value.toString());
+                } else if (value instanceof LocalDateTime) {
+                    writeString(SheetStreamReader.formatDate((LocalDateTime) value));
+                } else {
+                    writeString(value.toString());
+                }
+            }
+            out.write("]\n");
+        }
+
+        private void writeString(String s) throws IOException {
+            out.write('"');
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                switch (c) {
+                    case '"':
+                        out.write("\\\"");
+                        break;
+                    case '\\':
+                        out.write("\\\\");
+                        break;
+                    case '\n':
+                        out.write("\\n");
+                        break;
+                    case '\r':
+                        out.write("\\r");
+                        break;
+                    case '\t':
+                        out.write("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            out.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            out.write(c);
+                        }
+                }
+            }
+            out.write('"');
+        }
+    }
+
+    /** Writes whole numbers without a fraction ("3" rather than "3.0"). */
+    static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * Command line tool that writes workbooks held in the write-behind cache of
+ * {@link ToolServer} to disk (see {@link WorkbookCache}). Outside the server,
+ * or when write-behind is disabled, every save is already on disk and this
+ * tool does nothing.
+ */
+package jp.isoittech;
+
+public class FlushTool {
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath (optional) - workbook to flush; all cached workbooks if omitted</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1) {
+            throw new IllegalArgumentException("Usage: FlushTool [filePath]");
+        }
+
+        WorkbookSession.flush(args.length == 1 && !args[0].isEmpty() ? args[0] : null);
+    }
+}
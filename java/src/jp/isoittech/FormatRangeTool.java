@@ -1,36 +1,51 @@
 /**
  * Command line tool that formats a cell range (font style, color, background
  * color, etc.). Implements "format_range" from README.JA.md.
+ *
+ * Cells whose style already has the requested format keep it, and if no
+ * cell changes the workbook is not saved.
+ *
+ * Whole columns ("A1" to "A1048576", or "A" to "C") and whole rows ("A1" to
+ * "XFD1", or "1" to "3") are formatted through column and row styles: only
+ * the cells that exist are restyled, so the cost follows the data in the
+ * sheet rather than the size of the range.
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.FillPatternType;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
 import org.apache.poi.xssf.usermodel.IndexedColorMap;
 import org.apache.poi.xssf.usermodel.XSSFCellStyle;
 import org.apache.poi.xssf.usermodel.XSSFColor;
 import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.usermodel.helpers.ColumnHelper;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCol;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTCols;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
 
 public class FormatRangeTool {
 
+    private static final int MAX_ROW = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+    private static final int MAX_COLUMN = SpreadsheetVersion.EXCEL2007.getLastColumnIndex();
+
     /**
      * Arguments (all values passed as strings):
      * <ol>
      *     <li>filePath</li>
      *     <li>sheetName</li>
-     *     <li>startCell</li>
+     *     <li>startCell (a column letter or a row number for whole columns or rows)</li>
      *     <li>endCell</li>
      *     <li>bold (true/false)</li>
      *     <li>italic (true/false)</li>
@@ -41,8 +56,7 @@ public class FormatRangeTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 9) {
-            System.err.println("Usage: FormatRangeTool <filePath> <sheetName> <startCell> <endCell> <bold> <italic> <fontSize> <fontColor> <bgColor>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: FormatRangeTool <filePath> <sheetName> <startCell> <endCell> <bold> <italic> <fontSize> <fontColor> <bgColor>");
         }
 
         String filePath = args[0];
@@ -55,20 +69,15 @@ public class FormatRangeTool {
         String fontColor = args[7];
         String bgColor = args[8];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             XSSFWorkbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            XSSFWorkbook workbook = session.getWorkbook();
 
-            Sheet sheet = workbook.getSheet(sheetName);
+            XSSFSheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
                 throw new IllegalArgumentException("Sheet not found: " + sheetName);
             }
 
-            CellRangeAddress range = ExcelRangeUtils.parseRange(startCell + ":" + endCell);
+            CellRangeAddress range = parseRange(startCell, endCell);
 
             // POI 4+ requires an IndexedColorMap for reliable RGB color handling in XSSF.
             IndexedColorMap colorMap = workbook.getStylesSource().getIndexedColors();
@@ -84,69 +93,245 @@ public class FormatRangeTool {
                 bgXssfColor = new XSSFColor(parseRgbColor(bgColor), colorMap);
             }
 
-            // IMPORTANT:
-            // Do NOT apply a single newly-created style to all cells.
-            // That would wipe existing alignment (e.g., TOP -> default BOTTOM), borders, wraps, etc.
-            // Instead, clone the existing style per "base style" and apply only requested changes.
-            Map<Short, XSSFCellStyle> styleCache = new HashMap<>();
+            StyleDeriver styles = new StyleDeriver(workbook, bold, italic, fontSize, fontXssfColor, bgXssfColor);
+            boolean changed;
+            if (range.getFirstRow() == 0 && range.getLastRow() == MAX_ROW) {
+                changed = formatColumns(sheet, range, styles);
+            } else if (range.getFirstColumn() == 0 && range.getLastColumn() == MAX_COLUMN) {
+                changed = formatRows(sheet, range, styles);
+            } else {
+                changed = formatCells(sheet, range, styles);
+            }
+            session.getMetrics().addCellsTouched(styles.cellsTouched);
+
+            session.saveIfChanged(changed);
+        }
+    }
+
+    /**
+     * Formats every cell of the range, creating the missing ones. Returns
+     * true if anything changed.
+     */
+    private static boolean formatCells(Sheet sheet, CellRangeAddress range, StyleDeriver styles) {
+        boolean changed = false;
+        for (int r = range.getFirstRow(); r <= range.getLastRow(); r++) {
+            Row row = sheet.getRow(r);
+            if (row == null) {
+                row = sheet.createRow(r);
+                changed = true;
+            }
+            for (int c = range.getFirstColumn(); c <= range.getLastColumn(); c++) {
+                Cell cell = row.getCell(c);
+                boolean created = false;
+                if (cell == null) {
+                    cell = row.createCell(c);
+                    created = true;
+                    changed = true;
+                }
 
-            for (int r = range.getFirstRow(); r <= range.getLastRow(); r++) {
-                Row row = sheet.getRow(r);
-                if (row == null) {
-                    row = sheet.createRow(r);
+                // If we just created the cell, inherit the best-effort visible style first.
+                // Otherwise, a newly created cell defaults to vertical=BOTTOM etc.
+                if (created && (cell.getCellStyle() == null || cell.getCellStyle().getIndex() == 0)) {
+                    applyBestEffortStyle(sheet, r, c, cell);
                 }
-                for (int c = range.getFirstColumn(); c <= range.getLastColumn(); c++) {
-                    Cell cell = row.getCell(c);
-                    boolean created = false;
-                    if (cell == null) {
-                        cell = row.createCell(c);
-                        created = true;
-                    }
 
-                    // If we just created the cell, inherit the best-effort visible style first.
-                    // Otherwise, a newly created cell defaults to vertical=BOTTOM etc.
-                    if (created && (cell.getCellStyle() == null || cell.getCellStyle().getIndex() == 0)) {
-                        applyBestEffortStyle(sheet, r, c, cell);
+                changed |= styles.restyle(cell);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Formats whole columns through their default column styles, which
+     * empty cells show and new cells take, and restyles only the cells that
+     * exist. Returns true if anything changed.
+     */
+    private static boolean formatColumns(XSSFSheet sheet, CellRangeAddress range, StyleDeriver styles) {
+        boolean changed = false;
+        ColumnHelper columns = sheet.getColumnHelper();
+        CTWorksheet worksheet = sheet.getCTWorksheet();
+        CTCols cols = worksheet.sizeOfColsArray() == 0 ? worksheet.addNewCols() : worksheet.getColsArray(0);
+        int c = range.getFirstColumn();
+        while (c <= range.getLastColumn()) {
+            // Style each run of columns sharing a style at once; column by column is quadratic.
+            int baseIdx = columns.getColDefaultStyle(c);
+            int end = c;
+            while (end < range.getLastColumn() && columns.getColDefaultStyle(end + 1) == baseIdx) {
+                end++;
+            }
+            XSSFCellStyle base = baseIdx < 0 ? styles.defaultStyle() : sheet.getWorkbook().getCellStyleAt(baseIdx);
+            XSSFCellStyle derived = styles.derive(base);
+            if (derived.getIndex() != base.getIndex()) {
+                CTCol col = CTCol.Factory.newInstance();
+                col.setMin(c + 1);
+                col.setMax(end + 1);
+                col.setStyle(derived.getIndex());
+                columns.addCleanColIntoCols(cols, col);
+                changed = true;
+            }
+            c = end + 1;
+        }
+
+        boolean wholeRows = range.getFirstColumn() == 0 && range.getLastColumn() == MAX_COLUMN;
+        for (Row row : sheet) {
+            if (row.isFormatted()) {
+                // Empty cells of a formatted row show the row style rather than the column style.
+                if (wholeRows) {
+                    changed |= restyleRow(row, styles);
+                } else {
+                    for (int i = range.getFirstColumn(); i <= range.getLastColumn(); i++) {
+                        if (row.getCell(i) == null) {
+                            row.createCell(i).setCellStyle(row.getRowStyle());
+                            changed = true;
+                        }
                     }
+                }
+            }
+            for (Cell cell : row) {
+                int i = cell.getColumnIndex();
+                if (i >= range.getFirstColumn() && i <= range.getLastColumn()) {
+                    changed |= styles.restyle(cell);
+                }
+            }
+        }
+        return changed;
+    }
 
-                    XSSFCellStyle baseStyle = (XSSFCellStyle) cell.getCellStyle();
-                    short baseIdx = baseStyle.getIndex();
+    /**
+     * Formats whole rows through their row styles, which empty cells show
+     * and new cells take, and restyles only the cells that exist. Returns
+     * true if anything changed.
+     */
+    private static boolean formatRows(Sheet sheet, CellRangeAddress range, StyleDeriver styles) {
+        boolean changed = false;
+        for (int r = range.getFirstRow(); r <= range.getLastRow(); r++) {
+            Row row = sheet.getRow(r);
+            if (row == null) {
+                row = sheet.createRow(r);
+                changed = true;
+            }
+            changed |= restyleRow(row, styles);
+            for (Cell cell : row) {
+                changed |= styles.restyle(cell);
+            }
+        }
+        return changed;
+    }
 
-                    XSSFCellStyle derived = styleCache.get(baseIdx);
-                    if (derived == null) {
-                        derived = workbook.createCellStyle();
-                        derived.cloneStyleFrom(baseStyle);
+    /** Gives a row the derived row style; returns true if it changed. */
+    private static boolean restyleRow(Row row, StyleDeriver styles) {
+        XSSFCellStyle rowStyle = row.isFormatted() ? (XSSFCellStyle) row.getRowStyle() : null;
+        XSSFCellStyle derived = styles.derive(rowStyle != null ? rowStyle : styles.defaultStyle());
+        if (rowStyle != null && derived.getIndex() == rowStyle.getIndex()) {
+            return false;
+        }
+        row.setRowStyle(derived);
+        return true;
+    }
 
-                        // Preserve existing font attributes, then override only requested ones.
-                        XSSFFont baseFont = workbook.getFontAt(baseStyle.getFontIndexAsInt());
-                        XSSFFont newFont = cloneFont(workbook, baseFont);
+    /**
+     * Derives the styles with the requested format, once per base style.
+     *
+     * <p>Do NOT apply a single newly-created style to all cells. That would
+     * wipe existing alignment (e.g., TOP -> default BOTTOM), borders, wraps,
+     * etc. Instead, each base style is cloned and only the requested changes
+     * are applied to the clone.
+     */
+    private static final class StyleDeriver {
+        long cellsTouched;
+        private final XSSFWorkbook workbook;
+        private final boolean bold;
+        private final boolean italic;
+        private final int fontSize;
+        private final XSSFColor fontColor;
+        private final XSSFColor bgColor;
+        private final Map<Short, XSSFCellStyle> cache = new HashMap<>();
+
+        StyleDeriver(XSSFWorkbook workbook, boolean bold, boolean italic, int fontSize,
+                     XSSFColor fontColor, XSSFColor bgColor) {
+            this.workbook = workbook;
+            this.bold = bold;
+            this.italic = italic;
+            this.fontSize = fontSize;
+            this.fontColor = fontColor;
+            this.bgColor = bgColor;
+        }
 
-                        newFont.setBold(bold);
-                        newFont.setItalic(italic);
-                        if (fontSize > 0) {
-                            newFont.setFontHeightInPoints((short) fontSize);
-                        }
-                        if (fontXssfColor != null) {
-                            newFont.setColor(fontXssfColor);
-                        }
+        XSSFCellStyle defaultStyle() {
+            return workbook.getCellStyleAt(0);
+        }
 
-                        derived.setFont(newFont);
+        /** Gives a cell the derived style; returns true if its style changed. */
+        boolean restyle(Cell cell) {
+            cellsTouched++;
+            XSSFCellStyle baseStyle = (XSSFCellStyle) cell.getCellStyle();
+            XSSFCellStyle derived = derive(baseStyle);
+            if (derived.getIndex() == baseStyle.getIndex()) {
+                return false;
+            }
+            cell.setCellStyle(derived);
+            return true;
+        }
 
-                        if (bgXssfColor != null) {
-                            derived.setFillForegroundColor(bgXssfColor);
-                            derived.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-                        }
+        /** Returns {@code baseStyle} with the requested format, or itself if it has it already. */
+        XSSFCellStyle derive(XSSFCellStyle baseStyle) {
+            short baseIdx = baseStyle.getIndex();
+            XSSFCellStyle derived = cache.get(baseIdx);
+            if (derived != null) {
+                return derived;
+            }
 
-                        styleCache.put(baseIdx, derived);
-                    }
+            XSSFFont baseFont = workbook.getFontAt(baseStyle.getFontIndexAsInt());
+            if (hasFormat(baseStyle, baseFont)) {
+                // Nothing to change: keep the style instead of adding a copy of it.
+                derived = baseStyle;
+            } else {
+                derived = workbook.createCellStyle();
+                derived.cloneStyleFrom(baseStyle);
 
-                    cell.setCellStyle(derived);
+                // Preserve existing font attributes, then override only requested ones.
+                XSSFFont newFont = cloneFont(workbook, baseFont);
+
+                newFont.setBold(bold);
+                newFont.setItalic(italic);
+                if (fontSize > 0) {
+                    newFont.setFontHeightInPoints((short) fontSize);
+                }
+                if (fontColor != null) {
+                    newFont.setColor(fontColor);
+                }
+
+                derived.setFont(newFont);
+
+                if (bgColor != null) {
+                    derived.setFillForegroundColor(bgColor);
+                    derived.setFillPattern(FillPatternType.SOLID_FOREGROUND);
                 }
             }
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
+            cache.put(baseIdx, derived);
+            return derived;
+        }
+
+        /**
+         * Returns true if cells with {@code style} already look as requested.
+         */
+        private boolean hasFormat(XSSFCellStyle style, XSSFFont font) {
+            if (font.getBold() != bold || font.getItalic() != italic) {
+                return false;
+            }
+            if (fontSize > 0 && font.getFontHeight() != fontSize * 20) {
+                return false;
+            }
+            if (fontColor != null && !sameColor(font.getXSSFColor(), fontColor)) {
+                return false;
             }
+            return bgColor == null || (style.getFillPattern() == FillPatternType.SOLID_FOREGROUND
+                    && sameColor(style.getFillForegroundColorColor(), bgColor));
+        }
+
+        private static boolean sameColor(XSSFColor color, XSSFColor expected) {
+            return color != null && color.getTint() == 0 && Arrays.equals(color.getRGB(), expected.getRGB());
         }
     }
 
@@ -244,11 +429,26 @@ public class FormatRangeTool {
         }
     }
 
+    /**
+     * Parses the range from its start and end: cells ("A1", "C10"), whole
+     * columns ("A", "C") or whole rows ("1", "3").
+     */
+    private static CellRangeAddress parseRange(String start, String end) {
+        if (start.matches("[A-Za-z]+") && end.matches("[A-Za-z]+")) {
+            return new CellRangeAddress(0, MAX_ROW,
+                    CellReference.convertColStringToIndex(start), CellReference.convertColStringToIndex(end));
+        }
+        if (start.matches("[0-9]+") && end.matches("[0-9]+")) {
+            return new CellRangeAddress(Integer.parseInt(start) - 1, Integer.parseInt(end) - 1, 0, MAX_COLUMN);
+        }
+        return ExcelRangeUtils.parseRange(start + ":" + end);
+    }
+
     /**
      * Parses a color expressed as "#RRGGBB" into a byte array suitable
      * for {@link XSSFColor}.
      */
-    private static byte[] parseRgbColor(String hex) {
+    static byte[] parseRgbColor(String hex) {
         if (hex == null || !hex.matches("#?[0-9A-Fa-f]{6}")) {
             throw new IllegalArgumentException("Invalid RGB color: " + hex);
         }
@@ -0,0 +1,30 @@
+/**
+ * Parses formulas against a workbook, for formula text that POI stores as
+ * is: the cells of sheets written through a streaming
+ * {@link org.apache.poi.xssf.streaming.SXSSFWorkbook} and conditional
+ * formatting rules. An invalid formula there would corrupt the file.
+ */
+package jp.isoittech;
+
+import org.apache.poi.ss.formula.FormulaParser;
+import org.apache.poi.ss.formula.FormulaType;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFEvaluationWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+final class FormulaCheck {
+    private final XSSFEvaluationWorkbook evaluationWorkbook;
+    private final int sheetIndex;
+
+    FormulaCheck(XSSFWorkbook workbook, Sheet sheet) {
+        this.evaluationWorkbook = XSSFEvaluationWorkbook.create(workbook);
+        this.sheetIndex = workbook.getSheetIndex(sheet.getSheetName());
+    }
+
+    /**
+     * @throws org.apache.poi.ss.formula.FormulaParseException if the formula is invalid
+     */
+    void check(String formula) {
+        FormulaParser.parse(formula, evaluationWorkbook, FormulaType.CELL, sheetIndex);
+    }
+}
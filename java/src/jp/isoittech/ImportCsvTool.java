@@ -0,0 +1,293 @@
+/**
+ * Command line tool that imports a CSV file into a worksheet, starting at a
+ * given top-left cell.
+ *
+ * <p>The file is streamed through {@link CsvReader} rather than passed as
+ * JSON on the command line, so its size is not limited by the argument
+ * length. When the sheet does not exist yet it is created and its rows are
+ * written through a streaming {@link SXSSFWorkbook}, which keeps only a
+ * window of rows in memory; importing into an existing sheet, or with the
+ * write-behind cache of {@link ToolServer}, loads the sheet as usual.
+ *
+ * <p>Cell types are inferred from the text:
+ * <ul>
+ *     <li>empty fields leave the cell untouched</li>
+ *     <li>text starting with "=" is written as a formula</li>
+ *     <li>TRUE / FALSE (any case) become booleans</li>
+ *     <li>decimal numbers become numeric cells, except those with a leading
+ *     zero ("007"), a leading "+" or more than 15 digits, which Excel could
+ *     not store exactly and are kept as text (codes, phone numbers, IDs)</li>
+ *     <li>anything else is text</li>
+ * </ul>
+ *
+ * <p>Prints a JSON object with the number of rows and the written range:
+ * {@code {"rows":1000,"columns":4,"range":"A1:D1000"}}.
+ */
+package jp.isoittech;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.formula.FormulaParseException;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+public class ImportCsvTool {
+
+    /** Rows kept in memory by the streaming writer. */
+    private static final int ROW_WINDOW = 1000;
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final int MAX_ROW = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+    private static final int MAX_COLUMN = SpreadsheetVersion.EXCEL2007.getLastColumnIndex();
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath - path to the .xlsx file</li>
+     *     <li>sheetName - name of the worksheet; created if it does not exist</li>
+     *     <li>csvPath - path to the CSV file (UTF-8)</li>
+     *     <li>startCell (optional) - top-left cell address, default "A1"</li>
+     *     <li>delimiter (optional) - single character, or "tab"; default ","</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || args.length > 5) {
+            throw new IllegalArgumentException(
+                    "Usage: ImportCsvTool <filePath> <sheetName> <csvPath> [startCell] [delimiter]");
+        }
+
+        String filePath = args[0];
+        String sheetName = args[1];
+        String csvPath = args[2];
+        String startCellStr = optionalArg(args, 3) != null ? args[3] : "A1";
+        byte delimiter = parseDelimiter(optionalArg(args, 4) != null ? args[4] : ",");
+
+        File csvFile = new File(csvPath);
+        if (!csvFile.exists()) {
+            throw new IOException("File not found: " + csvPath);
+        }
+        CellAddress start = ExcelRangeUtils.parseCellAddress(startCellStr);
+        // Like JsonRowReader: the CSV may have changed or be gone when the
+        // journal is replayed, so the import is written to the workbook file.
+        Journal.setInvocation(null, null);
+
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath);
+             FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            XSSFWorkbook workbook = session.getWorkbook();
+            CsvReader reader = new CsvReader(channel, delimiter);
+
+            CellRangeAddress written;
+            if (workbook.getSheet(sheetName) == null && session.canStream()) {
+                try (SXSSFWorkbook streaming = session.stream(ROW_WINDOW)) {
+                    Sheet sheet = streaming.createSheet(sheetName);
+                    written = importRows(reader, sheet, start, new FormulaCheck(workbook, sheet));
+                    session.getMetrics().addCellsTouched(cellCount(written));
+                    session.saveStreaming(streaming);
+                }
+            } else {
+                Sheet sheet = ExcelUtils.getOrCreateSheet(workbook, sheetName);
+                written = importRows(reader, sheet, start, null);
+                session.getMetrics().addCellsTouched(cellCount(written));
+                session.save();
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("rows", written == null ? 0 : written.getLastRow() - written.getFirstRow() + 1);
+            result.put("columns", written == null ? 0 : written.getLastColumn() - written.getFirstColumn() + 1);
+            result.put("range", written == null ? null : written.formatAsString());
+            System.out.println(new Gson().toJson(result));
+        }
+    }
+
+    /**
+     * Writes every record of the CSV as a row of {@code sheet}.
+     *
+     * @param formulas validates formulas before they are stored, for sheets
+     *                 whose cells do not parse formulas themselves; null otherwise
+     * @return the range covered by the records, or null if there were none
+     */
+    private static CellRangeAddress importRows(CsvReader reader, Sheet sheet, CellAddress start,
+                                               FormulaCheck formulas) throws IOException {
+        int startRow = start.getRow();
+        int startCol = start.getColumn();
+        int[] rowIndex = {startRow};
+        Row[] row = new Row[1];
+        CsvReader.FieldHandler handler = (column, buf, len) -> {
+            if (len == 0) {
+                return;
+            }
+            if (startCol + column > MAX_COLUMN) {
+                throw new IllegalArgumentException("CSV record " + (rowIndex[0] - startRow + 1)
+                        + " has more columns than fit in the sheet from " + start.formatAsString());
+            }
+            if (row[0] == null) {
+                if (rowIndex[0] > MAX_ROW) {
+                    throw new IllegalArgumentException(
+                            "CSV has more rows than fit in the sheet from " + start.formatAsString());
+                }
+                row[0] = sheet.getRow(rowIndex[0]);
+                if (row[0] == null) {
+                    row[0] = sheet.createRow(rowIndex[0]);
+                }
+            }
+            Cell cell = row[0].getCell(startCol + column);
+            if (cell == null) {
+                cell = row[0].createCell(startCol + column);
+            }
+            setInferredValue(cell, buf, len, formulas);
+        };
+
+        int maxColumns = 0;
+        int fields;
+        while ((fields = reader.readRecord(handler)) >= 0) {
+            maxColumns = Math.max(maxColumns, fields);
+            rowIndex[0]++;
+            row[0] = null;
+        }
+        if (rowIndex[0] == startRow) {
+            return null;
+        }
+        return new CellRangeAddress(startRow, rowIndex[0] - 1, startCol, startCol + maxColumns - 1);
+    }
+
+    private static void setInferredValue(Cell cell, byte[] buf, int len, FormulaCheck formulas) {
+        if (buf[0] == '=' && len > 1) {
+            String formula = new String(buf, 1, len - 1, StandardCharsets.UTF_8);
+            try {
+                if (formulas != null) {
+                    formulas.check(formula);
+                }
+                cell.setCellFormula(formula);
+            } catch (FormulaParseException e) {
+                // Not a formula after all; keep the text.
+                cell.setCellValue("=" + formula);
+            }
+            return;
+        }
+        if (len == 4 && equalsIgnoreCase(buf, "true")) {
+            cell.setCellValue(true);
+            return;
+        }
+        if (len == 5 && equalsIgnoreCase(buf, "false")) {
+            cell.setCellValue(false);
+            return;
+        }
+        int kind = numberKind(buf, len);
+        if (kind == INTEGER) {
+            cell.setCellValue(parseLong(buf, len));
+        } else if (kind == DECIMAL) {
+            // Only ASCII digits, signs, '.', 'e' and 'E' remain here.
+            cell.setCellValue(Double.parseDouble(new String(buf, 0, len, StandardCharsets.ISO_8859_1)));
+        } else {
+            cell.setCellValue(new String(buf, 0, len, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static final int NOT_A_NUMBER = 0;
+    private static final int INTEGER = 1;
+    private static final int DECIMAL = 2;
+
+    /**
+     * Classifies a field as an integer, a decimal number (with a fraction or
+     * exponent) or text. See the class comment for what counts as a number.
+     */
+    private static int numberKind(byte[] buf, int len) {
+        int i = 0;
+        if (buf[0] == '-') {
+            i++;
+        }
+        int intStart = i;
+        while (i < len && isDigit(buf[i])) {
+            i++;
+        }
+        int intDigits = i - intStart;
+        if (intDigits == 0 || (intDigits > 1 && buf[intStart] == '0')) {
+            return NOT_A_NUMBER;
+        }
+        int digits = intDigits;
+        boolean decimal = false;
+        if (i < len && buf[i] == '.') {
+            i++;
+            int fracStart = i;
+            while (i < len && isDigit(buf[i])) {
+                i++;
+            }
+            if (i == fracStart) {
+                return NOT_A_NUMBER;
+            }
+            digits += i - fracStart;
+            decimal = true;
+        }
+        if (i < len && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            if (i < len && (buf[i] == '-' || buf[i] == '+')) {
+                i++;
+            }
+            int expStart = i;
+            while (i < len && isDigit(buf[i])) {
+                i++;
+            }
+            if (i == expStart) {
+                return NOT_A_NUMBER;
+            }
+            decimal = true;
+        }
+        if (i != len || digits > MAX_EXACT_DIGITS) {
+            return NOT_A_NUMBER;
+        }
+        return decimal ? DECIMAL : INTEGER;
+    }
+
+    private static long parseLong(byte[] buf, int len) {
+        boolean negative = buf[0] == '-';
+        long value = 0;
+        for (int i = negative ? 1 : 0; i < len; i++) {
+            value = value * 10 + (buf[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static boolean equalsIgnoreCase(byte[] buf, String lower) {
+        for (int i = 0; i < lower.length(); i++) {
+            if ((buf[i] | 0x20) != lower.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long cellCount(CellRangeAddress range) {
+        return range == null ? 0 : range.getNumberOfCells();
+    }
+
+    private static byte parseDelimiter(String delimiter) {
+        if (delimiter.equalsIgnoreCase("tab") || delimiter.equals("\\t")) {
+            return '\t';
+        }
+        if (delimiter.length() != 1 || delimiter.charAt(0) > 0x7F
+                || delimiter.charAt(0) == '"' || delimiter.charAt(0) == '\n' || delimiter.charAt(0) == '\r') {
+            throw new IllegalArgumentException("delimiter must be a single ASCII character: " + delimiter);
+        }
+        return (byte) delimiter.charAt(0);
+    }
+
+    private static String optionalArg(String[] args, int index) {
+        return args.length > index && !args[index].isEmpty() ? args[index] : null;
+    }
+}
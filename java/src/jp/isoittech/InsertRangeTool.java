@@ -0,0 +1,58 @@
+/**
+ * Command line tool that inserts empty cells at a rectangular range and
+ * shifts the existing cells either down or right. This is the counterpart
+ * of "delete_range" from README.JA.md.
+ */
+package jp.isoittech;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+public class InsertRangeTool {
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath</li>
+     *     <li>sheetName</li>
+     *     <li>startCell</li>
+     *     <li>endCell</li>
+     *     <li>shiftDirection ("down" or "right")</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 5) {
+            throw new IllegalArgumentException("Usage: InsertRangeTool <filePath> <sheetName> <startCell> <endCell> <shiftDirection>");
+        }
+
+        String filePath = args[0];
+        String sheetName = args[1];
+        String startCell = args[2];
+        String endCell = args[3];
+        String shiftDirection = args[4];
+
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            XSSFWorkbook workbook = session.getWorkbook();
+
+            XSSFSheet sheet = workbook.getSheet(sheetName);
+            if (sheet == null) {
+                throw new IllegalArgumentException("Sheet not found: " + sheetName);
+            }
+
+            CellRangeAddress range = ExcelRangeUtils.parseRange(startCell + ":" + endCell);
+
+            // Formulas, merged regions and conditional formatting ranges are
+            // updated together with the moved cells.
+            if ("down".equalsIgnoreCase(shiftDirection)) {
+                session.getMetrics().addCellsTouched(ExcelShiftUtils.insertCellsShiftDown(sheet, range));
+            } else if ("right".equalsIgnoreCase(shiftDirection)) {
+                session.getMetrics().addCellsTouched(ExcelShiftUtils.insertCellsShiftRight(sheet, range));
+            } else {
+                throw new IllegalArgumentException("shiftDirection must be 'down' or 'right'");
+            }
+
+            session.save();
+        }
+    }
+}
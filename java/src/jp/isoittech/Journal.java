@@ -0,0 +1,325 @@
+/**
+ * Append-only journal of tool invocations that changed a workbook but have
+ * not been written into its file yet.
+ *
+ * <p>When {@code EXCEL_MCP_JOURNAL} is set to {@code 1} or {@code true}
+ * together with write-behind (see {@link WorkbookCache}), every save of a
+ * cached workbook appends the tool and its arguments to
+ * {@code .<name>.journal} next to the workbook and forces it to disk, so
+ * a change is durable once the tool returns even though the workbook itself
+ * is only written at the next checkpoint (a flush of the cache):
+ *
+ * <pre>
+ *   {"base":"1c291ca3","size":18234}
+ *   {"seq":1,"tool":"WriteRangeTool","args":["/data/book.xlsx","Sheet1","A1","[[1,2]]"]}
+ * </pre>
+ *
+ * The first line identifies the workbook file the entries apply to by its
+ * size and CRC-32C. A checkpoint writes the workbook and then deletes the
+ * journal. Whenever a workbook is read from disk, a journal whose base is
+ * that file is replayed on top of it, while one whose base is not was
+ * already written by a checkpoint that crashed before deleting it, and is
+ * deleted. So a journal left behind by a crash is never lost and never
+ * applied twice, and nothing is stored in the workbook itself.
+ * If an entry fails to replay, the entries before it are written to the
+ * workbook and the journal is moved aside to {@code .<name>.journal.failed},
+ * so that the workbook can still be opened.
+ */
+package jp.isoittech;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+public final class Journal {
+
+    static final String ENV_VAR = "EXCEL_MCP_JOURNAL";
+
+    /** Runs a tool with its output discarded. */
+    interface ToolRunner {
+        void run(String tool, String[] args) throws Exception;
+    }
+
+    /** The tool and arguments of the request running on this thread. */
+    private static final ThreadLocal<String[]> INVOCATION = new ThreadLocal<>();
+    /** The workbook that tools on this thread replay entries into. */
+    private static final ThreadLocal<XSSFWorkbook> REPLAY_TARGET = new ThreadLocal<>();
+    private static volatile ToolRunner runner = Journal::runQuietly;
+
+    private Journal() {
+    }
+
+    /**
+     * Returns true if saves of cached workbooks should be journaled.
+     */
+    public static boolean isEnabled() {
+        String value = System.getenv(ENV_VAR);
+        return value != null && (value.equals("1") || value.equalsIgnoreCase("true"));
+    }
+
+    /**
+     * Records the tool invocation running on the current thread, or clears it
+     * when {@code tool} is null. Only invocations recorded this way can be
+     * journaled.
+     */
+    static void setInvocation(String tool, String[] args) {
+        if (tool == null) {
+            INVOCATION.remove();
+        } else {
+            String[] invocation = new String[args.length + 1];
+            invocation[0] = tool;
+            System.arraycopy(args, 0, invocation, 1, args.length);
+            INVOCATION.set(invocation);
+        }
+    }
+
+    /**
+     * Returns the tool followed by its arguments for the current thread, or
+     * null if none was recorded.
+     */
+    static String[] currentInvocation() {
+        return INVOCATION.get();
+    }
+
+    /**
+     * Replaces the way replayed tools are run; {@link ToolServer} uses this
+     * to discard their output per thread rather than process-wide.
+     */
+    static void setRunner(ToolRunner toolRunner) {
+        runner = toolRunner;
+    }
+
+    /**
+     * Returns the workbook entries are being replayed into on this thread, or
+     * null outside of {@link #replay}.
+     */
+    static XSSFWorkbook replayTarget() {
+        return REPLAY_TARGET.get();
+    }
+
+    static boolean exists(File workbook) {
+        return Files.exists(pathFor(workbook));
+    }
+
+    /**
+     * Appends the invocation to the journal of {@code workbook} and forces it
+     * to disk. The first entry starts a new journal based on the workbook
+     * file as it is now.
+     *
+     * @param seq        sequence number of the entry, counting from 1
+     * @param invocation tool name followed by its arguments
+     * @throws IOException if the journal cannot be written
+     */
+    static void append(File workbook, long seq, String[] invocation) throws IOException {
+        JsonArray args = new JsonArray();
+        for (int i = 1; i < invocation.length; i++) {
+            args.add(invocation[i]);
+        }
+        JsonObject entry = new JsonObject();
+        entry.addProperty("seq", seq);
+        entry.addProperty("tool", invocation[0]);
+        entry.add("args", args);
+        String text = entry + "\n";
+        StandardOpenOption mode = StandardOpenOption.APPEND;
+        if (seq == 1) {
+            text = base(workbook.toPath()) + "\n" + text;
+            mode = StandardOpenOption.TRUNCATE_EXISTING;
+        }
+        ByteBuffer lines = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+        try (FileChannel ch = FileChannel.open(pathFor(workbook),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode)) {
+            while (lines.hasRemaining()) {
+                ch.write(lines);
+            }
+            ch.force(true);
+        }
+    }
+
+    /**
+     * Returns the sequence number of the last entry in the journal of
+     * {@code workbook}, or 0 if it has none.
+     */
+    static long lastSequence(File workbook) throws IOException {
+        Path journal = pathFor(workbook);
+        if (!Files.exists(journal)) {
+            return 0;
+        }
+        List<JsonObject> entries = read(journal);
+        return entries.size() < 2 ? 0 : entries.get(entries.size() - 1).get("seq").getAsLong();
+    }
+
+    /**
+     * Applies the journal entries up to and including sequence number
+     * {@code last} to {@code workbook}, which was just read from disk. A
+     * journal based on another version of the file is deleted instead.
+     *
+     * @return the sequence number of the last entry in the journal, or 0 if
+     *         there is none to append to
+     * @throws ReplayException if an entry fails; the workbook may then hold
+     *                         part of its changes
+     * @throws IOException if the journal cannot be read
+     */
+    static long replay(File file, XSSFWorkbook workbook, long last) throws IOException {
+        Path journal = pathFor(file);
+        if (!Files.exists(journal)) {
+            return 0;
+        }
+        List<JsonObject> entries = read(journal);
+        if (entries.isEmpty() || !entries.get(0).equals(base(file.toPath()))) {
+            // Written by a checkpoint, or cut short while its first entry was appended.
+            Files.deleteIfExists(journal);
+            return 0;
+        }
+        long seq = 0;
+        REPLAY_TARGET.set(workbook);
+        try {
+            for (JsonObject entry : entries.subList(1, entries.size())) {
+                seq = entry.get("seq").getAsLong();
+                if (seq > last) {
+                    continue;
+                }
+                JsonArray argArray = entry.getAsJsonArray("args");
+                String[] args = new String[argArray.size()];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = argArray.get(i).getAsString();
+                }
+                try {
+                    runner.run(entry.get("tool").getAsString(), args);
+                } catch (Exception e) {
+                    Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+                    throw new ReplayException(seq, journal, cause);
+                }
+            }
+        } finally {
+            REPLAY_TARGET.remove();
+        }
+        return seq;
+    }
+
+    /**
+     * Moves the journal of {@code workbook} aside, to
+     * {@code .<name>.journal.failed} or the first free name after it, once
+     * the entries before a failed one have been written to the workbook file.
+     *
+     * @return the new path of the journal, or null if it is already gone
+     */
+    static Path setAside(File workbook) throws IOException {
+        Path journal = pathFor(workbook);
+        Path target = journal.resolveSibling(journal.getFileName() + ".failed");
+        for (int i = 2; Files.exists(target); i++) {
+            target = journal.resolveSibling(journal.getFileName() + ".failed." + i);
+        }
+        try {
+            return Files.move(journal, target);
+        } catch (NoSuchFileException e) {
+            // Another reader recovered the workbook first.
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the journal of {@code workbook} once everything in it has been
+     * written to the workbook file.
+     */
+    static void delete(File workbook) throws IOException {
+        Files.deleteIfExists(pathFor(workbook));
+    }
+
+    private static List<JsonObject> read(Path journal) throws IOException {
+        List<JsonObject> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+            String line;
+            String pending = null;
+            while ((line = reader.readLine()) != null) {
+                if (pending != null) {
+                    throw new IOException("Corrupt journal entry in " + journal + ": " + pending);
+                }
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    entries.add(JsonParser.parseString(line).getAsJsonObject());
+                } catch (RuntimeException e) {
+                    // Only the last line may be incomplete (a crash during an
+                    // append); that call never returned, so the entry is dropped.
+                    pending = line;
+                }
+            }
+        }
+        return entries;
+    }
+
+    /** Returns the first line of a journal based on the workbook file as it is now. */
+    private static JsonObject base(Path workbook) throws IOException {
+        CRC32C crc = new CRC32C();
+        long size = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel ch = FileChannel.open(workbook, StandardOpenOption.READ)) {
+            while (ch.read(buffer) >= 0) {
+                buffer.flip();
+                size += buffer.remaining();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        JsonObject base = new JsonObject();
+        base.addProperty("base", String.format("%08x", crc.getValue()));
+        base.addProperty("size", size);
+        return base;
+    }
+
+    private static Path pathFor(File workbook) {
+        return workbook.getAbsoluteFile().toPath().resolveSibling("." + workbook.getName() + ".journal");
+    }
+
+    /** Thrown by {@link #replay} when a journal entry cannot be applied. */
+    static final class ReplayException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long sequence;
+
+        ReplayException(long sequence, Path journal, Throwable cause) {
+            super("Cannot replay entry " + sequence + " of " + journal, cause);
+            this.sequence = sequence;
+        }
+
+        /** Returns the sequence number of the entry that failed. */
+        long getSequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * Default runner for a single-threaded tool process: discards output by
+     * replacing {@code System.out} while the tool runs.
+     */
+    private static void runQuietly(String tool, String[] args) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            ToolServer.findMain(tool).invoke(null, (Object) args);
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
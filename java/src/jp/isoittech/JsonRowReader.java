@@ -0,0 +1,100 @@
+/**
+ * Reads the rows of a JSON array of arrays one at a time.
+ *
+ * <p>The data argument of the write tools is either the JSON text itself,
+ * {@code "-"} to read it from standard input, or {@code "@path"} to read it
+ * from a file. Input is parsed incrementally with a {@link JsonReader}, so
+ * only the row being written is held in memory and the payload is not
+ * limited by the maximum length of a command line. Changes made from
+ * standard input or a file are not journaled (see {@link Journal}).
+ */
+package jp.isoittech;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+final class JsonRowReader implements Closeable {
+
+    private final JsonReader reader;
+    private final boolean closeInput;
+    private boolean done;
+
+    private JsonRowReader(Reader input, boolean closeInput) throws IOException {
+        this.reader = new JsonReader(input);
+        this.closeInput = closeInput;
+        reader.beginArray();
+    }
+
+    /**
+     * Opens a data argument: JSON text, {@code "-"} for standard input or
+     * {@code "@path"} for a UTF-8 file.
+     *
+     * @throws IOException if the file does not exist or cannot be read
+     */
+    static JsonRowReader open(String data) throws IOException {
+        if (data.equals("-") || data.startsWith("@")) {
+            // The input may be gone when the journal is replayed, so the
+            // change has to be written to the workbook file right away.
+            Journal.setInvocation(null, null);
+        }
+        if (data.equals("-")) {
+            return new JsonRowReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), false);
+        }
+        if (data.startsWith("@")) {
+            Reader input;
+            try {
+                input = Files.newBufferedReader(Paths.get(data.substring(1)), StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                throw new IOException("File not found: " + data.substring(1), e);
+            }
+            try {
+                return new JsonRowReader(input, true);
+            } catch (IOException | RuntimeException e) {
+                input.close();
+                throw e;
+            }
+        }
+        return new JsonRowReader(new StringReader(data), true);
+    }
+
+    /**
+     * Returns the next row, or null after the last one.
+     *
+     * @throws IllegalStateException if the element is not an array
+     */
+    JsonArray nextRow() throws IOException {
+        if (done) {
+            return null;
+        }
+        if (!reader.hasNext()) {
+            reader.endArray();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IllegalArgumentException("Unexpected data after the rows: " + reader.peek());
+            }
+            done = true;
+            return null;
+        }
+        JsonElement row = JsonParser.parseReader(reader);
+        return row.getAsJsonArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeInput) {
+            reader.close();
+        }
+    }
+}
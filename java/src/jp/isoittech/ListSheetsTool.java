@@ -25,13 +25,13 @@ public class ListSheetsTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 1) {
-            System.err.println("Usage: ListSheetsTool <filePath>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: ListSheetsTool <filePath>");
         }
 
         String filePath = args[0];
 
-        try (Workbook workbook = ExcelUtils.openWorkbook(filePath)) {
+        try (WorkbookSession session = WorkbookSession.open(filePath)) {
+            Workbook workbook = session.getWorkbook();
             List<String> names = new ArrayList<>();
             int count = workbook.getNumberOfSheets();
             for (int i = 0; i < count; i++) {
@@ -4,14 +4,11 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFCell;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class MergeCellsTool {
@@ -27,8 +24,7 @@ public class MergeCellsTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 4) {
-            System.err.println("Usage: MergeCellsTool <filePath> <sheetName> <startCell> <endCell>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: MergeCellsTool <filePath> <sheetName> <startCell> <endCell>");
         }
 
         String filePath = args[0];
@@ -36,24 +32,59 @@ public class MergeCellsTool {
         String startCell = args[2];
         String endCell = args[3];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            XSSFWorkbook workbook = session.getWorkbook();
 
-            Sheet sheet = workbook.getSheet(sheetName);
+            XSSFSheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
                 throw new IllegalArgumentException("Sheet not found: " + sheetName);
             }
 
             CellRangeAddress range = ExcelRangeUtils.parseRange(startCell + ":" + endCell);
-            sheet.addMergedRegion(range);
+            if (range.getNumberOfCells() < 2) {
+                throw new IllegalArgumentException("Merged region " + range.formatAsString()
+                        + " must contain 2 or more cells");
+            }
+            range.validate(SpreadsheetVersion.EXCEL2007);
+
+            // Same checks as Sheet#addMergedRegion, but the overlap test uses an
+            // index instead of scanning every existing merged region.
+            CellRangeAddress existing = MergedRegionIndex.build(sheet).findFirstOverlapping(range);
+            if (range.equals(existing)) {
+                // Already merged: leave the file alone.
+                session.saveIfChanged(false);
+                return;
+            }
+            if (existing != null) {
+                throw new IllegalStateException("Cannot add merged region " + range.formatAsString()
+                        + " because it overlaps with an existing merged region (" + existing.formatAsString() + ")");
+            }
+            checkArrayFormulas(sheet, range);
+            sheet.addMergedRegionUnsafe(range);
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
+            session.save();
+        }
+    }
+
+    /**
+     * Rejects the merge if it would cut through a multi-cell array formula.
+     */
+    private static void checkArrayFormulas(XSSFSheet sheet, CellRangeAddress range) {
+        for (int r = range.getFirstRow(); r <= range.getLastRow(); r++) {
+            XSSFRow row = sheet.getRow(r);
+            if (row == null) {
+                continue;
+            }
+            for (int c = range.getFirstColumn(); c <= range.getLastColumn(); c++) {
+                XSSFCell cell = row.getCell(c);
+                if (cell == null || !cell.isPartOfArrayFormulaGroup()) {
+                    continue;
+                }
+                CellRangeAddress arrayRange = cell.getArrayFormulaRange();
+                if (arrayRange.getNumberOfCells() > 1 && range.intersects(arrayRange)) {
+                    throw new IllegalStateException("The range " + range.formatAsString()
+                            + " intersects with a multi-cell array formula. You cannot merge cells of an array.");
+                }
             }
         }
     }
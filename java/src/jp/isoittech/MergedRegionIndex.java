@@ -0,0 +1,183 @@
+/**
+ * Read-only index over the merged regions of a worksheet.
+ *
+ * <p>{@link org.apache.poi.xssf.usermodel.XSSFSheet#addMergedRegion(CellRangeAddress)}
+ * and a loop over {@code getMergedRegion(i)} / {@code removeMergedRegion(i)}
+ * each scan every merged region of the sheet, which becomes quadratic on
+ * sheets that carry tens of thousands of them. This index is built once per
+ * operation from a single {@code getMergedRegions()} call and answers overlap
+ * queries in {@code O(log n + k)} using a static interval tree over the row
+ * span of each region; the column span is checked on the candidates.
+ *
+ * <p>The positions returned by {@link #findOverlapping(CellRangeAddress)} are
+ * the indexes POI uses for the sheet's merged regions; remove them with
+ * {@link #removeAll(XSSFSheet, Set)}.
+ * The index is not updated when the sheet changes; build a new one instead.
+ */
+package jp.isoittech;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTMergeCell;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTMergeCells;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorksheet;
+
+public final class MergedRegionIndex {
+
+    /** Regions sorted by first row. */
+    private final CellRangeAddress[] regions;
+    /** Position of each sorted region in the sheet's merged region list. */
+    private final int[] positions;
+    /**
+     * For the implicit balanced tree over {@link #regions}, the greatest last
+     * row found in the subtree rooted at each node.
+     */
+    private final int[] maxLastRow;
+
+    private MergedRegionIndex(List<CellRangeAddress> sheetRegions) {
+        int n = sheetRegions.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> sheetRegions.get(i).getFirstRow()));
+
+        regions = new CellRangeAddress[n];
+        positions = new int[n];
+        for (int i = 0; i < n; i++) {
+            positions[i] = order[i];
+            regions[i] = sheetRegions.get(order[i]);
+        }
+        maxLastRow = new int[n];
+        computeMaxLastRow(0, n);
+    }
+
+    /**
+     * Builds an index over the current merged regions of {@code sheet}.
+     *
+     * @param sheet worksheet to index
+     * @return new index
+     */
+    public static MergedRegionIndex build(XSSFSheet sheet) {
+        return new MergedRegionIndex(sheet.getMergedRegions());
+    }
+
+    /**
+     * Removes the merged regions at sheet {@code positions} from {@code sheet}.
+     *
+     * <p>{@code XSSFSheet#removeMergedRegions} tests each region against the
+     * collection and then shrinks the XML array in place, which is quadratic
+     * in the number of regions. This rewrites the sheet's list in one pass.
+     *
+     * @param sheet     worksheet to change
+     * @param positions positions as returned by {@link #findOverlapping(CellRangeAddress)}
+     */
+    public static void removeAll(XSSFSheet sheet, Set<Integer> positions) {
+        CTWorksheet worksheet = sheet.getCTWorksheet();
+        if (positions.isEmpty() || !worksheet.isSetMergeCells()) {
+            return;
+        }
+        CTMergeCell[] cells = worksheet.getMergeCells().getMergeCellArray();
+        List<String> kept = new ArrayList<>(cells.length);
+        for (int i = 0; i < cells.length; i++) {
+            if (!positions.contains(i)) {
+                kept.add(cells[i].getRef());
+            }
+        }
+        worksheet.unsetMergeCells();
+        if (kept.isEmpty()) {
+            return;
+        }
+        CTMergeCells mergeCells = worksheet.addNewMergeCells();
+        for (String ref : kept) {
+            mergeCells.addNewMergeCell().setRef(ref);
+        }
+        mergeCells.setCount(kept.size());
+    }
+
+    /**
+     * Returns the number of indexed merged regions.
+     */
+    public int size() {
+        return regions.length;
+    }
+
+    /**
+     * Returns the sheet positions of all merged regions that share at least
+     * one cell with {@code range}, in ascending order.
+     *
+     * @param range range to test
+     * @return positions usable with {@link #removeAll(XSSFSheet, Set)}
+     */
+    public List<Integer> findOverlapping(CellRangeAddress range) {
+        List<Integer> result = new ArrayList<>();
+        collect(0, regions.length, range, result, false);
+        result.sort(null);
+        return result;
+    }
+
+    /**
+     * Returns one merged region that shares at least one cell with
+     * {@code range}, or {@code null} if there is none.
+     *
+     * @param range range to test
+     * @return an overlapping merged region or {@code null}
+     */
+    public CellRangeAddress findFirstOverlapping(CellRangeAddress range) {
+        List<Integer> result = new ArrayList<>(1);
+        collect(0, regions.length, range, result, true);
+        return result.isEmpty() ? null : regions[result.get(0)];
+    }
+
+    private int computeMaxLastRow(int lo, int hi) {
+        if (lo >= hi) {
+            return -1;
+        }
+        int mid = (lo + hi) >>> 1;
+        int max = Math.max(regions[mid].getLastRow(),
+                Math.max(computeMaxLastRow(lo, mid), computeMaxLastRow(mid + 1, hi)));
+        maxLastRow[mid] = max;
+        return max;
+    }
+
+    /**
+     * Collects matches in the subtree {@code [lo, hi)}. When {@code firstOnly}
+     * is set, the index into {@link #regions} of the first match is added and
+     * the search stops; otherwise sheet positions are added.
+     *
+     * @return true if the search should stop
+     */
+    private boolean collect(int lo, int hi, CellRangeAddress range, List<Integer> out, boolean firstOnly) {
+        if (lo >= hi) {
+            return false;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (maxLastRow[mid] < range.getFirstRow()) {
+            // Every region in this subtree ends above the range.
+            return false;
+        }
+        if (collect(lo, mid, range, out, firstOnly)) {
+            return true;
+        }
+        CellRangeAddress region = regions[mid];
+        if (region.getFirstRow() > range.getLastRow()) {
+            // Regions from here on start below the range.
+            return false;
+        }
+        if (region.getLastRow() >= range.getFirstRow()
+                && region.getFirstColumn() <= range.getLastColumn()
+                && region.getLastColumn() >= range.getFirstColumn()) {
+            out.add(firstOnly ? mid : positions[mid]);
+            if (firstOnly) {
+                return true;
+            }
+        }
+        return collect(mid + 1, hi, range, out, firstOnly);
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Command line tool that moves a worksheet to another position in the
+ * sheet order of an existing workbook.
+ */
+package jp.isoittech;
+
+import org.apache.poi.ss.usermodel.Workbook;
+
+public class MoveWorksheetTool {
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath - path to the .xlsx file</li>
+     *     <li>sheetName - name of the sheet to move</li>
+     *     <li>position - new 0-based position of the sheet</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            throw new IllegalArgumentException("Usage: MoveWorksheetTool <filePath> <sheetName> <position>");
+        }
+
+        String filePath = args[0];
+        String sheetName = args[1];
+        int position = Integer.parseInt(args[2]);
+
+        if (WorkbookSession.isPackageEditable()) {
+            // Only the sheet list and the names and views that refer to sheets by position change.
+            WorkbookStructure.moveSheet(filePath, sheetName, position);
+            return;
+        }
+
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
+
+            int index = workbook.getSheetIndex(sheetName);
+            if (index < 0) {
+                throw new IllegalArgumentException("Sheet not found: " + sheetName);
+            }
+            int count = workbook.getNumberOfSheets();
+            if (position < 0 || position >= count) {
+                throw new IllegalArgumentException(
+                        "position must be between 0 and " + (count - 1) + ": " + position);
+            }
+
+            boolean changed = index != position;
+            if (changed) {
+                workbook.setSheetOrder(workbook.getSheetName(index), position);
+            }
+
+            session.saveIfChanged(changed);
+        }
+    }
+}
@@ -6,14 +6,31 @@
  * structure shown in README.JA.md under the "read_excel" tool:
  *
  * <pre>
- *   java -cp ... jp.isoittech.ReadExcelTool filePath sheetName range
+ *   java -cp ... jp.isoittech.ReadExcelTool filePath sheetName range [format] [outputPath]
  * </pre>
+ *
+ * <p>With format "columnar" the range is written in the binary format of
+ * {@link ColumnarEncoder} instead, to {@code outputPath} or, when it is
+ * omitted, to standard output. Tool server responses carry text only, so
+ * through {@link ToolServer} an output path is required.
+ *
+ * <p>With format "sparse" only the cells that hold a value are printed, as
+ * runs of adjacent cells in a row: {@code [row, column, [values...]]}, with
+ * row and column counted from the top-left cell of the range.
  */
 package jp.isoittech;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -21,7 +38,6 @@ import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.ss.util.CellRangeAddress;
 
@@ -33,26 +49,30 @@ public class ReadExcelTool {
      *     <li>filePath - path to the .xlsx file</li>
      *     <li>sheetName - name of the worksheet</li>
      *     <li>range - A1-style range (for example "A1:C10")</li>
+     *     <li>format (optional) - "json" (default), "columnar" or "sparse"</li>
+     *     <li>outputPath (optional) - file to write columnar output to</li>
      * </ol>
-     * The result is printed as JSON to standard output.
+     * The result is printed as JSON to standard output, except for columnar
+     * output; when that goes to a file, a JSON summary
+     * {@code {"path":...,"rows":...,"columns":...}} is printed instead.
      */
     public static void main(String[] args) throws Exception {
-        if (args.length != 3) {
-            System.err.println("Usage: ReadExcelTool <filePath> <sheetName> <range>");
-            System.exit(1);
+        if (args.length < 3 || args.length > 5) {
+            throw new IllegalArgumentException(
+                    "Usage: ReadExcelTool <filePath> <sheetName> <range> [json|columnar|sparse] [outputPath]");
         }
 
         String filePath = args[0];
         String sheetName = args[1];
         String range = args[2];
-
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
+        String format = optionalArg(args, 3) != null ? args[3].toLowerCase() : "json";
+        String outputPath = optionalArg(args, 4);
+        if (!format.equals("json") && !format.equals("columnar") && !format.equals("sparse")) {
+            throw new IllegalArgumentException("format must be json, columnar or sparse: " + args[3]);
         }
 
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.open(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             Sheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
@@ -61,7 +81,23 @@ public class ReadExcelTool {
 
             CellRangeAddress cellRange = ExcelRangeUtils.parseRange(range);
 
+            if (format.equals("columnar")) {
+                ColumnarEncoder encoder = readRangeAsColumns(sheet, cellRange);
+                session.getMetrics().addCellsTouched(cellRange.getNumberOfCells());
+                writeColumnar(encoder, outputPath, cellRange, session.getMetrics());
+                return;
+            }
+
+            if (format.equals("sparse")) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("range", cellRange.formatAsString());
+                result.put("cells", readRangeAsRuns(sheet, cellRange, session.getMetrics()));
+                System.out.println(new Gson().toJson(result));
+                return;
+            }
+
             Object[][] data = readRangeAsMatrix(sheet, cellRange);
+            session.getMetrics().addCellsTouched(cellRange.getNumberOfCells());
 
             Gson gson = new GsonBuilder().serializeNulls().create();
             System.out.println(gson.toJson(data));
@@ -81,32 +117,148 @@ public class ReadExcelTool {
         for (int r = 0; r < rows; r++) {
             Row row = sheet.getRow(range.getFirstRow() + r);
             for (int c = 0; c < cols; c++) {
-                Object value = null;
-                if (row != null) {
-                    Cell cell = row.getCell(range.getFirstColumn() + c);
-                    if (cell != null) {
-                        switch (cell.getCellType()) {
-                            case STRING:
-                                value = cell.getStringCellValue();
-                                break;
-                            case NUMERIC:
-                                value = cell.getNumericCellValue();
-                                break;
-                            case BOOLEAN:
-                                value = cell.getBooleanCellValue();
-                                break;
-                            case FORMULA:
-                                // keep formula as string so MCP client can decide how to handle it
-                                value = "=" + cell.getCellFormula();
-                                break;
-                            default:
-                                value = null;
-                        }
-                    }
-                }
-                matrix[r][c] = value;
+                Cell cell = row != null ? row.getCell(range.getFirstColumn() + c) : null;
+                matrix[r][c] = cell != null ? toValue(cell) : null;
             }
         }
         return matrix;
     }
+
+    /**
+     * Reads the cells of the range that hold a value, walking only the rows
+     * and cells present in the sheet. Adjacent cells of a row are grouped
+     * into runs of {@code [row, column, [values...]]}, relative to the
+     * top-left cell of the range.
+     */
+    private static List<Object[]> readRangeAsRuns(Sheet sheet, CellRangeAddress range, ToolMetrics metrics) {
+        List<Object[]> runs = new ArrayList<>();
+        long touched = 0;
+        for (Row row : sheet) {
+            int r = row.getRowNum();
+            if (r < range.getFirstRow()) {
+                continue;
+            }
+            if (r > range.getLastRow()) {
+                break;
+            }
+            List<Object> values = null;
+            int next = -1;
+            for (Cell cell : row) {
+                int c = cell.getColumnIndex();
+                if (c < range.getFirstColumn()) {
+                    continue;
+                }
+                if (c > range.getLastColumn()) {
+                    break;
+                }
+                touched++;
+                Object value = toValue(cell);
+                if (value == null) {
+                    continue;
+                }
+                if (c != next) {
+                    values = new ArrayList<>();
+                    runs.add(new Object[] {r - range.getFirstRow(), c - range.getFirstColumn(), values});
+                }
+                values.add(value);
+                next = c + 1;
+            }
+        }
+        metrics.addCellsTouched(touched);
+        return runs;
+    }
+
+    /**
+     * Converts a cell to a simple Java type (String, Double, Boolean), or
+     * {@code null} for blank and error cells. Formulas are returned as
+     * their text with a leading "=".
+     */
+    private static Object toValue(Cell cell) {
+        switch (cell.getCellType()) {
+            case STRING:
+                return cell.getStringCellValue();
+            case NUMERIC:
+                return cell.getNumericCellValue();
+            case BOOLEAN:
+                return cell.getBooleanCellValue();
+            case FORMULA:
+                // keep formula as string so MCP client can decide how to handle it
+                return "=" + cell.getCellFormula();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads the given cell range into a {@link ColumnarEncoder}, with the
+     * same value conversions as {@link #readRangeAsMatrix}.
+     */
+    private static ColumnarEncoder readRangeAsColumns(Sheet sheet, CellRangeAddress range) {
+        int rows = range.getLastRow() - range.getFirstRow() + 1;
+        int cols = range.getLastColumn() - range.getFirstColumn() + 1;
+        ColumnarEncoder encoder = new ColumnarEncoder(rows, cols);
+
+        for (int r = 0; r < rows; r++) {
+            Row row = sheet.getRow(range.getFirstRow() + r);
+            if (row == null) {
+                continue;
+            }
+            for (int c = 0; c < cols; c++) {
+                Cell cell = row.getCell(range.getFirstColumn() + c);
+                if (cell == null) {
+                    continue;
+                }
+                switch (cell.getCellType()) {
+                    case STRING:
+                        encoder.setString(r, c, cell.getStringCellValue());
+                        break;
+                    case NUMERIC:
+                        encoder.setNumber(r, c, cell.getNumericCellValue());
+                        break;
+                    case BOOLEAN:
+                        encoder.setBoolean(r, c, cell.getBooleanCellValue());
+                        break;
+                    case FORMULA:
+                        encoder.setString(r, c, "=" + cell.getCellFormula());
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return encoder;
+    }
+
+    /**
+     * Writes columnar output to standard output, or to {@code outputPath}
+     * through a temporary file that is renamed into place.
+     */
+    private static void writeColumnar(ColumnarEncoder encoder, String outputPath, CellRangeAddress range,
+                                      ToolMetrics metrics) throws IOException {
+        if (outputPath == null) {
+            metrics.addBytesWritten(encoder.write(Channels.newChannel(System.out)));
+            System.out.flush();
+            return;
+        }
+        Path output = new File(outputPath).getAbsoluteFile().toPath();
+        Path temp = ExcelUtils.createSiblingTempFile(output);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                metrics.addBytesWritten(encoder.write(channel));
+            }
+            ExcelUtils.replaceAtomically(temp, output);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("path", output.toString());
+        result.put("rows", range.getLastRow() - range.getFirstRow() + 1);
+        result.put("columns", range.getLastColumn() - range.getFirstColumn() + 1);
+        System.out.println(new Gson().toJson(result));
+    }
+
+    private static String optionalArg(String[] args, int index) {
+        return args.length > index && !args[index].isEmpty() ? args[index] : null;
+    }
 }
@@ -0,0 +1,153 @@
+/**
+ * Command line tool that reads a worksheet page by page.
+ *
+ * <p>Each call returns up to {@code pageSize} rows and a cursor for the next
+ * page, which is passed back to continue. The rows are read through a
+ * {@link SheetPageIndex}, so a page deep into a large sheet costs about as
+ * much as the first one: the sheet is scanned once, and later pages parse
+ * only their own rows.
+ *
+ * <p>Rows start at the top of the used range of the sheet and include empty
+ * rows; every row has the columns of the used range. Values are written
+ * like the rows of {@link ExportSheetTool}'s NDJSON output: numbers,
+ * booleans, strings (cached results for formulas, ISO 8601 for dates) and
+ * null for empty cells.
+ *
+ * <pre>
+ *   {"range":"A1:E1000","rows":[[...],...],"cursor":"MTAwMDo3ZjNhMmMxMA"}
+ * </pre>
+ *
+ * The cursor is null after the last page. A cursor only applies to the
+ * version of the workbook it was issued for; once the workbook has been
+ * saved, reading starts again without one.
+ */
+package jp.isoittech;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.GsonBuilder;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+public class ReadPageTool {
+
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final int MAX_COLUMN = SpreadsheetVersion.EXCEL2007.getLastColumnIndex();
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath - path to the .xlsx file</li>
+     *     <li>sheetName - name of the worksheet</li>
+     *     <li>pageSize (optional) - number of rows per page, default 1000</li>
+     *     <li>cursor (optional) - cursor returned with the previous page</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 4) {
+            throw new IllegalArgumentException("Usage: ReadPageTool <filePath> <sheetName> [pageSize] [cursor]");
+        }
+
+        String filePath = args[0];
+        String sheetName = args[1];
+        int pageSize = optionalArg(args, 2) != null ? Integer.parseInt(args[2]) : DEFAULT_PAGE_SIZE;
+        String cursor = optionalArg(args, 3);
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+
+        try (SheetStreamReader reader = SheetStreamReader.open(filePath);
+             SheetPageIndex index = SheetPageIndex.open(reader, filePath, sheetName)) {
+            CellRangeAddress dimension = index.getDimension();
+            int firstColumn = dimension != null ? dimension.getFirstColumn() : 0;
+            int width = dimension != null ? dimension.getLastColumn() - firstColumn + 1 : 0;
+
+            int startRow;
+            if (cursor != null) {
+                startRow = decodeCursor(cursor, reader.getVersion());
+            } else if (dimension != null) {
+                startRow = dimension.getFirstRow();
+            } else {
+                startRow = Math.max(index.getFirstRow(), 0);
+            }
+            int lastRow = index.getLastRow();
+            int endRow = (int) Math.min((long) startRow + pageSize - 1, Math.max(lastRow, startRow));
+
+            List<Object[]> rows = new ArrayList<>();
+            int[] maxWidth = {width};
+            if (lastRow >= startRow) {
+                for (int r = startRow; r <= endRow; r++) {
+                    rows.add(null);
+                }
+                SheetStreamReader.CellHandler handler = (row, column, value) -> {
+                    int c = column - firstColumn;
+                    Object[] values = rows.get(row - startRow);
+                    if (values == null || values.length <= c) {
+                        values = values == null ? new Object[Math.max(width, c + 1)] : Arrays.copyOf(values, c + 1);
+                        rows.set(row - startRow, values);
+                    }
+                    values[c] = value instanceof LocalDateTime
+                            ? SheetStreamReader.formatDate((LocalDateTime) value) : value;
+                    maxWidth[0] = Math.max(maxWidth[0], c + 1);
+                };
+                try (InputStream in = index.openRows(startRow)) {
+                    reader.read(in, new CellRangeAddress(startRow, endRow, firstColumn, MAX_COLUMN), handler);
+                }
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] values = rows.get(i);
+                rows.set(i, values == null ? new Object[maxWidth[0]] : Arrays.copyOf(values, maxWidth[0]));
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("range", rows.isEmpty() || maxWidth[0] == 0 ? null
+                    : new CellRangeAddress(startRow, endRow, firstColumn, firstColumn + maxWidth[0] - 1)
+                            .formatAsString());
+            result.put("rows", rows);
+            result.put("cursor", endRow < lastRow ? encodeCursor(endRow + 1, reader.getVersion()) : null);
+            System.out.println(new GsonBuilder().serializeNulls().create().toJson(result));
+        }
+    }
+
+    private static String encodeCursor(int row, String version) {
+        String token = row + ":" + Integer.toHexString(version.hashCode());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the row a cursor continues at.
+     *
+     * @throws IllegalArgumentException if the cursor is malformed
+     * @throws IllegalStateException if the workbook was saved after the cursor was issued
+     */
+    private static int decodeCursor(String cursor, String version) {
+        String[] parts;
+        int row;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 2);
+            row = Integer.parseInt(parts[0]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+        if (parts.length != 2 || row < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        if (!parts[1].equals(Integer.toHexString(version.hashCode()))) {
+            throw new IllegalStateException("The workbook has changed since the cursor was issued; "
+                    + "read again from the first page");
+        }
+        return row;
+    }
+
+    private static String optionalArg(String[] args, int index) {
+        return args.length > index && !args[index].isEmpty() ? args[index] : null;
+    }
+}
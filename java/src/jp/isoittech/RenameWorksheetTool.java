@@ -4,13 +4,7 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class RenameWorksheetTool {
 
@@ -24,32 +18,33 @@ public class RenameWorksheetTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 3) {
-            System.err.println("Usage: RenameWorksheetTool <filePath> <oldName> <newName>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: RenameWorksheetTool <filePath> <oldName> <newName>");
         }
 
         String filePath = args[0];
         String oldName = args[1];
         String newName = args[2];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
+        if (WorkbookSession.isPackageEditable()) {
+            // Only the workbook part and the parts with formulas naming the sheet are rewritten.
+            WorkbookStructure.renameSheet(filePath, oldName, newName);
+            return;
         }
 
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             int index = workbook.getSheetIndex(oldName);
             if (index < 0) {
                 throw new IllegalArgumentException("Sheet not found: " + oldName);
             }
 
-            workbook.setSheetName(index, newName);
-
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
+            boolean changed = !workbook.getSheetName(index).equals(newName);
+            if (changed) {
+                workbook.setSheetName(index, newName);
             }
+
+            session.saveIfChanged(changed);
         }
     }
 }
@@ -0,0 +1,375 @@
+/**
+ * Command line tool that finds the cells of a workbook whose value or formula
+ * matches a query, across all worksheets.
+ *
+ * <p>The worksheets are scanned in parallel, each straight from its XML with
+ * a SAX parser (see {@link SheetStreamReader}), so the workbook is never
+ * built in memory. Shared strings are matched once each, up front; a cell
+ * holding a shared string then only needs a lookup by index. Scanning stops
+ * as soon as the hits to return are known.
+ *
+ * <p>Modes:
+ * <ul>
+ *     <li>text (default) - the cell's value contains the query, ignoring case</li>
+ *     <li>exact - the cell's value equals the query, ignoring case; numbers
+ *     also match a query with the same numeric value ("42" matches 42.0)</li>
+ *     <li>regex - a Java regular expression found in the cell's value</li>
+ *     <li>formula - the cell's formula contains the query, ignoring case</li>
+ * </ul>
+ * Values are matched as text, like the cells of {@link ExportSheetTool}'s
+ * output: cached results for formulas, "TRUE" / "FALSE" for booleans and
+ * ISO 8601 for dates. Cells that share a formula are matched against the
+ * formula text of the first cell of the group.
+ *
+ * <p>Prints the first {@code maxHits} hits in workbook order (sheet by sheet,
+ * row by row):
+ *
+ * <pre>
+ *   {"hits":[{"sheet":"Data","cell":"B7","value":"Tokyo"},...],"truncated":false}
+ * </pre>
+ *
+ * In formula mode the value is the formula, starting with "=".
+ * {@code truncated} is true if the search stopped at {@code maxHits}, so
+ * there may be more hits.
+ */
+package jp.isoittech;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.google.gson.Gson;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+
+public class SearchTool {
+
+    private static final int DEFAULT_MAX_HITS = 100;
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>filePath - path to the .xlsx file</li>
+     *     <li>query - text, regular expression or formula text to find</li>
+     *     <li>mode (optional) - "text" (default), "exact", "regex" or "formula"</li>
+     *     <li>maxHits (optional) - maximum number of hits to return, default 100</li>
+     *     <li>sheetName (optional) - search only this worksheet</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 5) {
+            throw new IllegalArgumentException(
+                    "Usage: SearchTool <filePath> <query> [text|exact|regex|formula] [maxHits] [sheetName]");
+        }
+
+        String filePath = args[0];
+        String query = args[1];
+        String mode = optionalArg(args, 2) != null ? args[2].toLowerCase() : "text";
+        int maxHits = optionalArg(args, 3) != null ? Integer.parseInt(args[3]) : DEFAULT_MAX_HITS;
+        String sheetName = optionalArg(args, 4);
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException("query must not be empty");
+        }
+        if (maxHits < 1) {
+            throw new IllegalArgumentException("maxHits must be positive: " + maxHits);
+        }
+        Matcher matcher = Matcher.of(mode, query);
+
+        try (SheetStreamReader reader = SheetStreamReader.open(filePath)) {
+            List<String> sheets = reader.getSheetNames();
+            if (sheetName != null) {
+                if (!sheets.contains(sheetName)) {
+                    throw new IllegalArgumentException("Sheet not found: " + sheetName);
+                }
+                sheets = List.of(sheetName);
+            }
+
+            long start = System.nanoTime();
+            BitSet sharedStringHits = matcher.formulas ? null : matchSharedStrings(reader, matcher);
+            Search search = new Search(reader, matcher, sharedStringHits, sheets.size(), maxHits);
+            List<List<Map<String, Object>>> results = search.run(sheets);
+            reader.getMetrics().addParse(System.nanoTime() - start);
+            reader.getMetrics().addCellsTouched(search.cellsScanned());
+
+            List<Map<String, Object>> hits = new ArrayList<>();
+            boolean truncated = false;
+            for (List<Map<String, Object>> sheetHits : results) {
+                for (Map<String, Object> hit : sheetHits) {
+                    if (hits.size() == maxHits) {
+                        truncated = true;
+                        break;
+                    }
+                    hits.add(hit);
+                }
+            }
+            truncated |= search.stoppedEarly();
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("hits", hits);
+            result.put("truncated", truncated);
+            System.out.println(new Gson().toJson(result));
+        }
+    }
+
+    private static String optionalArg(String[] args, int index) {
+        return args.length > index && !args[index].isEmpty() ? args[index] : null;
+    }
+
+    /** Returns the indexes of the shared strings that match. */
+    private static BitSet matchSharedStrings(SheetStreamReader reader, Matcher matcher) throws IOException {
+        ReadOnlySharedStringsTable strings = reader.getSharedStrings();
+        int count = strings.getUniqueCount();
+        BitSet hits = new BitSet(count);
+        for (int i = 0; i < count; i++) {
+            if (matcher.matchesText(strings.getItemAt(i).getString())) {
+                hits.set(i);
+            }
+        }
+        return hits;
+    }
+
+    /** Tests values or formulas against the query. */
+    private static final class Matcher {
+        final boolean formulas;
+        private final String mode;
+        private final String lowerQuery;
+        private final Double number;
+        private final Pattern pattern;
+
+        private Matcher(String mode, String query, Pattern pattern) {
+            this.mode = mode;
+            this.formulas = mode.equals("formula");
+            String text = formulas && query.startsWith("=") ? query.substring(1) : query;
+            this.lowerQuery = text.toLowerCase(Locale.ROOT);
+            this.number = parseNumber(query);
+            this.pattern = pattern;
+        }
+
+        static Matcher of(String mode, String query) {
+            switch (mode) {
+                case "text":
+                case "exact":
+                case "formula":
+                    return new Matcher(mode, query, null);
+                case "regex":
+                    try {
+                        return new Matcher(mode, query, Pattern.compile(query));
+                    } catch (PatternSyntaxException e) {
+                        throw new IllegalArgumentException("Invalid regex: " + e.getMessage(), e);
+                    }
+                default:
+                    throw new IllegalArgumentException("mode must be text, exact, regex or formula: " + mode);
+            }
+        }
+
+        private static Double parseNumber(String query) {
+            try {
+                return Double.valueOf(query.trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        /** Matches a value, or in formula mode a formula without its "=". */
+        boolean matchesText(String text) {
+            switch (mode) {
+                case "exact":
+                    return text.equalsIgnoreCase(lowerQuery);
+                case "regex":
+                    return pattern.matcher(text).find();
+                default:
+                    return containsIgnoreCase(text, lowerQuery);
+            }
+        }
+
+        boolean matchesNumber(double value, String text) {
+            if (mode.equals("exact") && number != null && number == value) {
+                return true;
+            }
+            return matchesText(text);
+        }
+
+        private static boolean containsIgnoreCase(String text, String lowerQuery) {
+            int length = lowerQuery.length();
+            for (int i = 0; i + length <= text.length(); i++) {
+                if (text.regionMatches(true, i, lowerQuery, 0, length)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Scans the sheets in parallel. A sheet stops once it, together with the
+     * sheets before it, has {@code maxHits} hits: later cells cannot be among
+     * the first {@code maxHits} in workbook order.
+     */
+    private static final class Search {
+        private final SheetStreamReader reader;
+        private final Matcher matcher;
+        private final BitSet sharedStringHits;
+        private final int maxHits;
+        /** Hits found so far in each sheet. */
+        private final AtomicIntegerArray counts;
+        private final long[] cells;
+        private volatile boolean stoppedEarly;
+
+        Search(SheetStreamReader reader, Matcher matcher, BitSet sharedStringHits, int sheets, int maxHits) {
+            this.reader = reader;
+            this.matcher = matcher;
+            this.sharedStringHits = sharedStringHits;
+            this.maxHits = maxHits;
+            this.counts = new AtomicIntegerArray(sheets);
+            this.cells = new long[sheets];
+        }
+
+        List<List<Map<String, Object>>> run(List<String> sheets) throws IOException, InterruptedException {
+            List<InputStream> streams = new ArrayList<>();
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.max(1, Math.min(sheets.size(), Runtime.getRuntime().availableProcessors())));
+            try {
+                for (String sheet : sheets) {
+                    streams.add(reader.openSheet(sheet));
+                }
+                List<Future<List<Map<String, Object>>>> futures = new ArrayList<>();
+                for (int i = 0; i < sheets.size(); i++) {
+                    int index = i;
+                    futures.add(executor.submit(() -> scan(index, sheets.get(index), streams.get(index))));
+                }
+                List<List<Map<String, Object>>> results = new ArrayList<>();
+                for (Future<List<Map<String, Object>>> future : futures) {
+                    results.add(future.get());
+                }
+                return results;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            } finally {
+                executor.shutdownNow();
+                for (InputStream in : streams) {
+                    in.close();
+                }
+            }
+        }
+
+        long cellsScanned() {
+            return Arrays.stream(cells).sum();
+        }
+
+        boolean stoppedEarly() {
+            return stoppedEarly;
+        }
+
+        private List<Map<String, Object>> scan(int index, String sheet, InputStream in) throws IOException {
+            SearchHandler handler = new SearchHandler(index, sheet);
+            if (!reader.readRaw(in, matcher.formulas, handler)) {
+                stoppedEarly = true;
+            }
+            cells[index] = handler.cells;
+            return handler.hits;
+        }
+
+        /** Returns true once sheet {@code index} and the sheets before it have enough hits. */
+        private boolean enough(int index) {
+            int total = 0;
+            for (int i = 0; i <= index && total < maxHits; i++) {
+                total += counts.get(i);
+            }
+            return total >= maxHits;
+        }
+
+        /** Matches the cells of one sheet. */
+        private final class SearchHandler implements SheetStreamReader.RawCellHandler {
+            final List<Map<String, Object>> hits = new ArrayList<>();
+            long cells;
+            private final int index;
+            private final String sheet;
+
+            SearchHandler(int index, String sheet) {
+                this.index = index;
+                this.sheet = sheet;
+            }
+
+            @Override
+            public boolean startRow(int row) {
+                return !enough(index);
+            }
+
+            @Override
+            public void cell(int row, int column, String type, int style, String value, String formula)
+                    throws IOException {
+                if (matcher.formulas) {
+                    if (formula == null) {
+                        return;
+                    }
+                    cells++;
+                    if (matcher.matchesText(formula)) {
+                        hit(row, column, "=" + formula);
+                    }
+                    return;
+                }
+                if (value == null) {
+                    return;
+                }
+                cells++;
+                try {
+                    if (type == null || type.equals("n")) {
+                        double number = Double.parseDouble(value);
+                        String text = reader.isDateStyle(style)
+                                ? SheetStreamReader.formatDate(DateUtil.getLocalDateTime(number))
+                                : ExportSheetTool.formatNumber(number);
+                        if (matcher.matchesNumber(number, text)) {
+                            hit(row, column, text);
+                        }
+                    } else if (type.equals("s")) {
+                        int stringIndex = Integer.parseInt(value.trim());
+                        if (sharedStringHits.get(stringIndex)) {
+                            hit(row, column, reader.getSharedStrings().getItemAt(stringIndex).getString());
+                        }
+                    } else if (type.equals("b")) {
+                        String text = value.equals("1") || value.equalsIgnoreCase("true") ? "TRUE" : "FALSE";
+                        if (matcher.matchesText(text)) {
+                            hit(row, column, text);
+                        }
+                    } else if (matcher.matchesText(value)) {
+                        // "inlineStr", "str" (formula text result), "e" (error), "d" (ISO date)
+                        hit(row, column, value);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid value \"" + value + "\" in cell "
+                            + new CellAddress(row, column).formatAsString() + " of sheet " + sheet, e);
+                }
+            }
+
+            private void hit(int row, int column, String value) {
+                Map<String, Object> hit = new LinkedHashMap<>();
+                hit.put("sheet", sheet);
+                hit.put("cell", new CellAddress(row, column).formatAsString());
+                hit.put("value", value);
+                hits.add(hit);
+                counts.incrementAndGet(index);
+            }
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/**
+ * Cached copy of a worksheet's rows, with an index from row numbers to
+ * their position, so that a page in the middle of a large sheet is parsed
+ * from its first row instead of from the top of the sheet.
+ *
+ * <p>The first read of a sheet decompresses its XML once into a file in
+ * {@code <java.io.tmpdir>/excel-mcp-pages}, keeping only the root element's
+ * start tag (for its namespace declarations) and the {@code <row>} elements,
+ * and records the byte offset of every {@value #ROWS_PER_ENTRY}th row. The
+ * file is keyed by the workbook path and sheet name and stores the version of
+ * the workbook it was built from (see {@link SheetStreamReader#getVersion()}),
+ * so it is rebuilt as soon as the workbook is saved.
+ *
+ * <p>The copies take about as much disk space as the uncompressed sheets.
+ * Whenever a copy is built, copies unused for {@value #MAX_IDLE_HOURS}
+ * hours are deleted, and then the least recently used ones until the
+ * directory holds at most {@value #MAX_CACHE_MB} MB.
+ *
+ * <p>{@link #openRows(int)} returns well-formed XML consisting of the root
+ * start tag, the rows from the indexed row at or before the requested one to
+ * the end, and the root end tag; {@link SheetStreamReader} parses it like the
+ * original sheet.
+ */
+package jp.isoittech;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+final class SheetPageIndex implements Closeable {
+
+    static final int ROWS_PER_ENTRY = 256;
+    static final int MAX_IDLE_HOURS = 24;
+    static final long MAX_CACHE_MB = 1024;
+
+    private static final byte[] MAGIC = "XLPAGE01".getBytes(StandardCharsets.US_ASCII);
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Pattern ROW_NUMBER = Pattern.compile("\\sr\\s*=\\s*[\"'](\\d+)[\"']");
+    private static final Pattern REF = Pattern.compile("\\sref\\s*=\\s*[\"']([^\"']*)[\"']");
+
+    private final FileChannel channel;
+    private final long dataStart;
+    private final byte[] prefix;
+    private final byte[] suffix;
+    private final int[] entryRows;
+    private final long[] entryOffsets;
+    private final int lastRow;
+    private final CellRangeAddress dimension;
+
+    private SheetPageIndex(FileChannel channel, long dataStart, byte[] prefix, String rootName, int[] entryRows,
+                           long[] entryOffsets, int lastRow, CellRangeAddress dimension) {
+        this.channel = channel;
+        this.dataStart = dataStart;
+        this.prefix = prefix;
+        this.suffix = ("</" + rootName + ">").getBytes(StandardCharsets.UTF_8);
+        this.entryRows = entryRows;
+        this.entryOffsets = entryOffsets;
+        this.lastRow = lastRow;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Opens the cached index of a sheet, building it first if there is none
+     * for the version of the workbook that {@code reader} has open.
+     *
+     * @throws IllegalArgumentException if the sheet does not exist
+     */
+    static SheetPageIndex open(SheetStreamReader reader, String filePath, String sheetName) throws IOException {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "excel-mcp-pages");
+        Files.createDirectories(dir);
+        Path cacheFile = dir.resolve(cacheKey(new File(filePath).getCanonicalPath(), sheetName) + ".page");
+
+        SheetPageIndex index = load(cacheFile, reader.getVersion());
+        if (index != null) {
+            try {
+                // The modification time records the last use for prune().
+                Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (NoSuchFileException e) {
+                // Pruned by another process; the open channel still reads it.
+            }
+            return index;
+        }
+        Path temp = ExcelUtils.createSiblingTempFile(cacheFile);
+        try {
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 InputStream in = reader.openSheet(sheetName)) {
+                build(in, out, reader.getVersion());
+            }
+            ExcelUtils.replaceAtomically(temp, cacheFile);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        index = load(cacheFile, reader.getVersion());
+        if (index == null) {
+            throw new IOException("Cannot read page index " + cacheFile);
+        }
+        prune(dir, cacheFile);
+        return index;
+    }
+
+    /**
+     * Deletes the files in {@code dir} other than {@code keep} that have not
+     * been used for {@value #MAX_IDLE_HOURS} hours, then the least recently
+     * used copies until at most {@value #MAX_CACHE_MB} MB are left. Files that
+     * cannot be deleted (still open on Windows, or already gone) are skipped.
+     */
+    private static void prune(Path dir, Path keep) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(dir)) {
+            list.filter(file -> !file.equals(keep)).forEach(files::add);
+        }
+        List<Map.Entry<Path, BasicFileAttributes>> used = new ArrayList<>();
+        long total = Files.size(keep);
+        long idleSince = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(MAX_IDLE_HOURS);
+        for (Path file : files) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attrs.lastModifiedTime().toMillis() < idleSince) {
+                    Files.delete(file);
+                } else if (!file.getFileName().toString().endsWith(".tmp")) {
+                    // Recent temporary files are copies still being built, so only copies count.
+                    used.add(Map.entry(file, attrs));
+                    total += attrs.size();
+                }
+            } catch (IOException e) {
+                // In use or deleted by another process; leave it.
+            }
+        }
+        used.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+        long limit = MAX_CACHE_MB << 20;
+        for (Map.Entry<Path, BasicFileAttributes> entry : used) {
+            if (total <= limit) {
+                break;
+            }
+            try {
+                Files.delete(entry.getKey());
+                total -= entry.getValue().size();
+            } catch (IOException e) {
+                // In use or deleted by another process; leave it.
+            }
+        }
+    }
+
+    /** Index of the last row of the sheet that has a {@code <row>} element, or -1 if none. */
+    int getLastRow() {
+        return lastRow;
+    }
+
+    /** Index of the first row of the sheet that has a {@code <row>} element, or -1 if none. */
+    int getFirstRow() {
+        return entryRows.length > 0 ? entryRows[0] : -1;
+    }
+
+    /** The used range recorded in the sheet, or null if it has none. */
+    CellRangeAddress getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns sheet XML starting at most {@value #ROWS_PER_ENTRY} rows
+     * before {@code row}; the caller skips the rows it does not need.
+     */
+    InputStream openRows(int row) {
+        int i = Arrays.binarySearch(entryRows, row);
+        if (i < 0) {
+            i = Math.max(0, -i - 2);
+        }
+        long dataLength = entryOffsets.length > 0 ? entryOffsets[entryOffsets.length - 1] : 0;
+        InputStream rows = entryOffsets.length == 0
+                ? InputStream.nullInputStream()
+                : new BufferedInputStream(new RegionInputStream(channel,
+                        dataStart + entryOffsets[i], dataStart + dataLength), BUFFER_SIZE);
+        return new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(prefix), rows, new ByteArrayInputStream(suffix))));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static String cacheKey(String canonicalPath, String sheetName) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest((canonicalPath + "\0" + sheetName).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 16; i++) {
+                hex.append(String.format("%02x", hash[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Cache file layout (big-endian, as written by DataOutputStream):
+     *
+     *   magic "XLPAGE01", UTF version, long data length
+     *   data: the root start tag followed by the rows
+     *   UTF root element name, int prefix length (the root start tag),
+     *   int last row, int[4] dimension (first row, last row, first column,
+     *   last column; -1 if none), int entry count, entries (int row, long
+     *   offset in the data); the last entry marks the end of the rows
+     */
+
+    /** Returns the index in {@code cacheFile}, or null if it is missing or for another version. */
+    private static SheetPageIndex load(Path cacheFile, String version) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(cacheFile, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || !in.readUTF().equals(version)) {
+                channel.close();
+                return null;
+            }
+            long dataLength = in.readLong();
+            long dataStart = MAGIC.length + 2 + version.getBytes(StandardCharsets.UTF_8).length + 8;
+
+            channel.position(dataStart + dataLength);
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            String rootName = in.readUTF();
+            int prefixLength = in.readInt();
+            int lastRow = in.readInt();
+            int[] dim = {in.readInt(), in.readInt(), in.readInt(), in.readInt()};
+            int entries = in.readInt();
+            int[] entryRows = new int[entries];
+            long[] entryOffsets = new long[entries];
+            for (int i = 0; i < entries; i++) {
+                entryRows[i] = in.readInt();
+                entryOffsets[i] = in.readLong();
+            }
+
+            byte[] prefix = new byte[prefixLength];
+            ByteBuffer prefixBuffer = ByteBuffer.wrap(prefix);
+            while (prefixBuffer.hasRemaining()) {
+                if (channel.read(prefixBuffer, dataStart + prefixBuffer.position()) < 0) {
+                    throw new IOException("Truncated page index " + cacheFile);
+                }
+            }
+            CellRangeAddress dimension = dim[0] < 0 ? null : new CellRangeAddress(dim[0], dim[1], dim[2], dim[3]);
+            return new SheetPageIndex(channel, dataStart, prefix, rootName,
+                    entryRows, entryOffsets, lastRow, dimension);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            // A corrupt or truncated cache file is rebuilt.
+            return null;
+        }
+    }
+
+    private static void build(InputStream sheetXml, FileChannel channel, String version) throws IOException {
+        DataOutputStream header = new DataOutputStream(Channels.newOutputStream(channel));
+        header.write(MAGIC);
+        header.writeUTF(version);
+        long lengthPosition = channel.position();
+        header.writeLong(0);
+        header.flush();
+
+        RowScanner scanner = new RowScanner(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        scanner.scan(sheetXml);
+        scanner.out.flush();
+        long dataLength = scanner.written;
+
+        DataOutputStream trailer = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        trailer.writeUTF(scanner.rootName);
+        trailer.writeInt(scanner.prefixLength);
+        trailer.writeInt(scanner.lastRow);
+        CellRangeAddress dim = scanner.dimension;
+        trailer.writeInt(dim == null ? -1 : dim.getFirstRow());
+        trailer.writeInt(dim == null ? -1 : dim.getLastRow());
+        trailer.writeInt(dim == null ? -1 : dim.getFirstColumn());
+        trailer.writeInt(dim == null ? -1 : dim.getLastColumn());
+        int entries = scanner.entryCount;
+        boolean hasRows = entries > 0;
+        trailer.writeInt(hasRows ? entries + 1 : 0);
+        for (int i = 0; i < entries; i++) {
+            trailer.writeInt(scanner.entryRows[i]);
+            trailer.writeLong(scanner.entryOffsets[i]);
+        }
+        if (hasRows) {
+            // End marker: no row starts at the end of the data.
+            trailer.writeInt(Integer.MAX_VALUE);
+            trailer.writeLong(dataLength);
+        }
+        trailer.flush();
+
+        ByteBuffer length = ByteBuffer.allocate(8).putLong(0, dataLength);
+        channel.write(length, lengthPosition);
+        channel.force(true);
+    }
+
+    /**
+     * Copies the root start tag and the rows of sheet XML to {@code out},
+     * scanning it for tags without parsing it. This is enough because the
+     * characters '<' and '>' cannot occur unescaped in text, and sheet XML
+     * has no CDATA sections.
+     */
+    private static final class RowScanner {
+        private static final int PREFIX = 0;
+        private static final int SKIP = 1;
+        private static final int ROWS = 2;
+        private static final int DONE = 3;
+
+        final OutputStream out;
+        long written;
+        String rootName;
+        int prefixLength;
+        int lastRow = -1;
+        CellRangeAddress dimension;
+        int entryCount;
+        int[] entryRows = new int[64];
+        long[] entryOffsets = new long[64];
+
+        private final ByteArrayOutputStream tag = new ByteArrayOutputStream();
+        private int mode = PREFIX;
+        private int rowCount;
+
+        RowScanner(OutputStream out) {
+            this.out = out;
+        }
+
+        void scan(InputStream in) throws IOException {
+            byte[] buf = new byte[BUFFER_SIZE];
+            boolean inTag = false;
+            byte quote = 0;
+            int n;
+            while (mode != DONE && (n = in.read(buf)) >= 0) {
+                int textStart = 0;
+                for (int i = 0; i < n && mode != DONE; i++) {
+                    byte b = buf[i];
+                    if (!inTag) {
+                        if (b == '<') {
+                            writeText(buf, textStart, i);
+                            inTag = true;
+                            tag.reset();
+                        }
+                    } else if (quote != 0) {
+                        if (b == quote) {
+                            quote = 0;
+                        }
+                    } else if (b == '"' || b == '\'') {
+                        quote = b;
+                    } else if (b == '>') {
+                        inTag = false;
+                        endTag();
+                        textStart = i + 1;
+                        continue;
+                    }
+                    if (inTag && !(b == '<' && tag.size() == 0)) {
+                        tag.write(b);
+                    }
+                }
+                if (!inTag && mode != DONE) {
+                    writeText(buf, textStart, n);
+                }
+            }
+        }
+
+        private void writeText(byte[] buf, int from, int to) throws IOException {
+            if ((mode == PREFIX || mode == ROWS) && to > from) {
+                out.write(buf, from, to - from);
+                written += to - from;
+            }
+        }
+
+        /** Handles the tag collected in {@link #tag}, without its angle brackets. */
+        private void endTag() throws IOException {
+            String text = tag.toString(StandardCharsets.UTF_8);
+            boolean special = text.startsWith("?") || text.startsWith("!");
+            boolean end = text.startsWith("/");
+            String name = special ? "" : localName(text, end);
+
+            if (!special && !end && rootName == null) {
+                rootName = qualifiedName(text);
+                writeTag();
+                prefixLength = (int) written;
+                mode = SKIP;
+                return;
+            }
+            if (name.equals("sheetData") && (end || text.endsWith("/"))) {
+                mode = DONE;
+                return;
+            }
+            if (!end && name.equals("dimension")) {
+                Matcher m = REF.matcher(text);
+                if (m.find()) {
+                    dimension = CellRangeAddress.valueOf(m.group(1));
+                }
+            }
+            if (!end && name.equals("row")) {
+                Matcher m = ROW_NUMBER.matcher(text);
+                lastRow = m.find() ? Integer.parseInt(m.group(1)) - 1 : lastRow + 1;
+                if (rowCount++ % ROWS_PER_ENTRY == 0) {
+                    addEntry(lastRow, written);
+                }
+                mode = ROWS;
+            }
+            if (mode == PREFIX || mode == ROWS) {
+                writeTag();
+            }
+        }
+
+        private void writeTag() throws IOException {
+            out.write('<');
+            tag.writeTo(out);
+            out.write('>');
+            written += tag.size() + 2;
+        }
+
+        private void addEntry(int row, long offset) {
+            if (entryCount == entryRows.length) {
+                entryRows = Arrays.copyOf(entryRows, entryCount * 2);
+                entryOffsets = Arrays.copyOf(entryOffsets, entryCount * 2);
+            }
+            entryRows[entryCount] = row;
+            entryOffsets[entryCount] = offset;
+            entryCount++;
+        }
+
+        private static String qualifiedName(String tagText) {
+            int end = 0;
+            while (end < tagText.length() && !Character.isWhitespace(tagText.charAt(end))
+                    && tagText.charAt(end) != '/') {
+                end++;
+            }
+            return tagText.substring(0, end);
+        }
+
+        private static String localName(String tagText, boolean endTag) {
+            String name = qualifiedName(endTag ? tagText.substring(1) : tagText);
+            return name.substring(name.indexOf(':') + 1);
+        }
+    }
+
+    /** Reads a region of a file channel without moving its position. */
+    private static final class RegionInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private final long end;
+
+        RegionInputStream(FileChannel channel, long position, long end) {
+            this.channel = channel;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,526 @@
+/**
+ * Reads the cells of a worksheet straight from the sheet XML with a SAX
+ * parser, without building the workbook in memory, so that sheets of any
+ * size are read with a flat heap. Only the shared strings and the cell
+ * styles are loaded.
+ *
+ * <p>Cell values are reported as they are stored in the file: formulas are
+ * represented by their cached result. Values are passed to the
+ * {@link CellHandler} as:
+ * <ul>
+ *     <li>{@link String} for text, formula text results and error codes ("#N/A")</li>
+ *     <li>{@link Double} for numbers</li>
+ *     <li>{@link LocalDateTime} for numbers with a date format</li>
+ *     <li>{@link Boolean} for booleans</li>
+ * </ul>
+ * Cells without a value are skipped.
+ *
+ * <p>{@link #open(String)} first brings the file up to date (see
+ * {@link WorkbookSession#checkpoint}) and holds a shared lock only while the
+ * package is opened: saves replace the file by renaming a new one over it,
+ * so the open package keeps reading the version it started with.
+ */
+package jp.isoittech;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+final class SheetStreamReader implements Closeable {
+
+    /** Receives the cells of a sheet in row-major order. */
+    interface CellHandler {
+        /**
+         * Called once with the used range recorded in the sheet, before the
+         * first cell; not called if the sheet has none.
+         */
+        default void dimension(CellRangeAddress usedRange) throws IOException {
+        }
+
+        /**
+         * @param row    0-based row index
+         * @param column 0-based column index
+         * @param value  the cell value; see the class comment for its types
+         */
+        void cell(int row, int column, Object value) throws IOException;
+    }
+
+    /**
+     * Receives the cells of a sheet in row-major order as they are stored,
+     * before their values are decoded.
+     */
+    interface RawCellHandler {
+        /**
+         * Called once with the used range recorded in the sheet, before the
+         * first cell; not called if the sheet has none.
+         */
+        default void dimension(CellRangeAddress usedRange) throws IOException {
+        }
+
+        /**
+         * Called at the start of every row.
+         *
+         * @return false to stop reading the sheet
+         */
+        default boolean startRow(int row) throws IOException {
+            return true;
+        }
+
+        /**
+         * Called for every cell with a value or a requested formula.
+         *
+         * @param type    the cell's {@code t} attribute ("s", "b", "str", ...), or null
+         * @param style   the cell style index
+         * @param value   the text of the cell's value or inline string, or null if it has none
+         * @param formula the formula without "=", that of the first cell of the group for
+         *                cells sharing one; null if the cell has none or formulas were not requested
+         */
+        void cell(int row, int column, String type, int style, String value, String formula) throws IOException;
+    }
+
+    private final File file;
+    private final OPCPackage pkg;
+    private final String version;
+    private final XSSFReader reader;
+    private final ToolMetrics metrics;
+    private ReadOnlySharedStringsTable sharedStrings;
+    /** Per cell style index: whether it formats numbers as dates; null until first used. */
+    private volatile boolean[] dateStyles;
+
+    private SheetStreamReader(File file, OPCPackage pkg, String version, ToolMetrics metrics) throws IOException {
+        this.file = file;
+        this.pkg = pkg;
+        this.version = version;
+        this.metrics = metrics;
+        try {
+            this.reader = new XSSFReader(pkg);
+        } catch (OpenXML4JException | RuntimeException e) {
+            pkg.revert();
+            throw new IOException("Invalid workbook: " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Opens a workbook for streaming reads.
+     *
+     * @param filePath path to the workbook file
+     * @return the reader; close it when done
+     * @throws IOException if the file does not exist or cannot be read
+     */
+    static SheetStreamReader open(String filePath) throws IOException {
+        WorkbookSession.checkpoint(filePath);
+        File file = new File(filePath);
+        ToolMetrics metrics = new ToolMetrics();
+        long start = System.nanoTime();
+        SheetStreamReader reader;
+        try {
+            reader = ExcelUtils.withLock(filePath, false, () -> {
+                BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                String version = attrs.fileKey() + "/" + attrs.lastModifiedTime().toMillis() + "/" + attrs.size();
+                return new SheetStreamReader(file, OPCPackage.open(file, PackageAccess.READ), version, metrics);
+            });
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid workbook: " + filePath, e);
+        }
+        metrics.addOpen(System.nanoTime() - start);
+        metrics.addBytesRead(file.length());
+        return reader;
+    }
+
+    ToolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Returns the names of the worksheets in workbook order. */
+    List<String> getSheetNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        XSSFReader.SheetIterator sheets = sheetIterator();
+        while (sheets.hasNext()) {
+            // Only the name is needed; the part is never read.
+            sheets.next().close();
+            names.add(sheets.getSheetName());
+        }
+        return names;
+    }
+
+    /**
+     * Streams the cells of a worksheet to {@code handler}.
+     *
+     * @param sheetName name of the worksheet
+     * @param range     only cells in this range are reported, or null for all
+     * @return the number of cells reported
+     * @throws IOException if the sheet cannot be read
+     * @throws IllegalArgumentException if the sheet does not exist
+     */
+    long read(String sheetName, CellRangeAddress range, CellHandler handler) throws IOException {
+        try (InputStream in = openSheet(sheetName)) {
+            return read(in, range, handler);
+        }
+    }
+
+    /**
+     * Streams the cells of worksheet XML from {@code sheetXml}, which may also
+     * be a copy of (part of) a sheet of this workbook, to {@code handler}.
+     *
+     * @param range only cells in this range are reported, or null for all
+     * @return the number of cells reported
+     * @throws IOException if the XML cannot be read
+     */
+    long read(InputStream sheetXml, CellRangeAddress range, CellHandler handler) throws IOException {
+        long start = System.nanoTime();
+        ValueDecoder decoder = new ValueDecoder(range, handler);
+        readRaw(sheetXml, false, decoder);
+        metrics.addParse(System.nanoTime() - start);
+        metrics.addCellsTouched(decoder.cells);
+        return decoder.cells;
+    }
+
+    /**
+     * Streams the cells of worksheet XML from {@code sheetXml} to
+     * {@code handler} as they are stored. Records no metrics, so that
+     * several sheets can be read in parallel.
+     *
+     * @param formulas true to report the formulas of the cells
+     * @return false if the handler stopped before the end of the sheet
+     * @throws IOException if the XML cannot be read
+     */
+    boolean readRaw(InputStream sheetXml, boolean formulas, RawCellHandler handler) throws IOException {
+        try {
+            XMLReader xmlReader = XMLHelper.newXMLReader();
+            xmlReader.setContentHandler(new SheetHandler(formulas, handler));
+            xmlReader.parse(new InputSource(sheetXml));
+            return true;
+        } catch (StopParsing e) {
+            return false;
+        } catch (HandlerException e) {
+            throw e.getCause();
+        } catch (SAXException | ParserConfigurationException e) {
+            throw new IOException("Invalid sheet XML in " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Opens the XML of a worksheet.
+     *
+     * @throws IllegalArgumentException if the sheet does not exist
+     */
+    InputStream openSheet(String sheetName) throws IOException {
+        XSSFReader.SheetIterator sheets = sheetIterator();
+        while (sheets.hasNext()) {
+            InputStream in = sheets.next();
+            if (sheets.getSheetName().equals(sheetName)) {
+                return in;
+            }
+            in.close();
+        }
+        throw new IllegalArgumentException("Sheet not found: " + sheetName);
+    }
+
+    /**
+     * Identifies the version of the file that was opened: it changes
+     * whenever the workbook is saved, since saves replace the file.
+     */
+    String getVersion() {
+        return version;
+    }
+
+    /** Formats a date as ISO 8601, without the time if it is midnight. */
+    static String formatDate(LocalDateTime value) {
+        return value.toLocalTime().equals(LocalTime.MIDNIGHT) ? value.toLocalDate().toString() : value.toString();
+    }
+
+    /** Closes the package without writing it and prints the metrics if enabled. */
+    @Override
+    public void close() {
+        pkg.revert();
+        metrics.emit();
+    }
+
+    private XSSFReader.SheetIterator sheetIterator() throws IOException {
+        try {
+            return (XSSFReader.SheetIterator) reader.getSheetsData();
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid workbook: " + file.getPath(), e);
+        }
+    }
+
+    private String sharedString(int index) throws IOException {
+        return getSharedStrings().getItemAt(index).getString();
+    }
+
+    /** Returns the shared strings of the workbook, loading them on first use. */
+    synchronized ReadOnlySharedStringsTable getSharedStrings() throws IOException {
+        if (sharedStrings == null) {
+            try {
+                sharedStrings = new ReadOnlySharedStringsTable(pkg, false);
+            } catch (SAXException e) {
+                throw new IOException("Invalid shared strings in " + file.getPath(), e);
+            }
+        }
+        return sharedStrings;
+    }
+
+    /**
+     * Returns true if numbers with the cell style {@code styleIndex} are
+     * dates. Safe to call from several threads without locking once loaded.
+     */
+    boolean isDateStyle(int styleIndex) throws IOException {
+        boolean[] flags = dateStyles;
+        if (flags == null) {
+            flags = loadDateStyles();
+        }
+        return styleIndex >= 0 && styleIndex < flags.length && flags[styleIndex];
+    }
+
+    private synchronized boolean[] loadDateStyles() throws IOException {
+        if (dateStyles == null) {
+            StylesTable styles;
+            try {
+                styles = reader.getStylesTable();
+            } catch (InvalidFormatException e) {
+                throw new IOException("Invalid styles in " + file.getPath(), e);
+            }
+            boolean[] flags = new boolean[styles == null ? 0 : styles.getNumCellStyles()];
+            for (int i = 0; i < flags.length; i++) {
+                XSSFCellStyle style = styles.getStyleAt(i);
+                flags[i] = style != null && DateUtil.isADateFormat(style.getDataFormat(), style.getDataFormatString());
+            }
+            dateStyles = flags;
+        }
+        return dateStyles;
+    }
+
+    /** Thrown to end the parse once the handler needs no more rows. */
+    private static final class StopParsing extends SAXException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** Carries an exception of a handler through the parser. */
+    private static final class HandlerException extends SAXException {
+        private static final long serialVersionUID = 1L;
+
+        HandlerException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /** Decodes the cells in range into values for a {@link CellHandler}. */
+    private final class ValueDecoder implements RawCellHandler {
+        private final CellRangeAddress range;
+        private final CellHandler handler;
+        private long cells;
+
+        ValueDecoder(CellRangeAddress range, CellHandler handler) {
+            this.range = range;
+            this.handler = handler;
+        }
+
+        @Override
+        public void dimension(CellRangeAddress usedRange) throws IOException {
+            handler.dimension(usedRange);
+        }
+
+        @Override
+        public boolean startRow(int row) {
+            return range == null || row <= range.getLastRow();
+        }
+
+        @Override
+        public void cell(int row, int column, String type, int style, String value, String formula)
+                throws IOException {
+            if (value == null || (range != null && !range.isInRange(row, column))) {
+                return;
+            }
+            handler.cell(row, column, decode(row, column, type, style, value));
+            cells++;
+        }
+
+        private Object decode(int row, int column, String type, int style, String raw) throws IOException {
+            try {
+                if (type == null || type.equals("n")) {
+                    double number = Double.parseDouble(raw);
+                    return isDateStyle(style) ? DateUtil.getLocalDateTime(number) : (Object) number;
+                }
+                switch (type) {
+                    case "s":
+                        return sharedString(Integer.parseInt(raw.trim()));
+                    case "b":
+                        return raw.equals("1") || raw.equalsIgnoreCase("true");
+                    default:
+                        // "inlineStr", "str" (formula text result), "e" (error), "d" (ISO date)
+                        return raw;
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid value \"" + raw + "\" in cell "
+                        + new CellAddress(row, column).formatAsString() + " of " + file.getPath(), e);
+            }
+        }
+    }
+
+    /** Turns the elements of the sheet XML into raw cells. */
+    private static final class SheetHandler extends DefaultHandler {
+        private final boolean formulas;
+        private final RawCellHandler handler;
+        private final StringBuilder text = new StringBuilder();
+        private final StringBuilder formula = new StringBuilder();
+        /** Formula of the first cell of each shared formula group. */
+        private final Map<String, String> sharedFormulas = new HashMap<>();
+        private int row = -1;
+        private int column = -1;
+        private String type;
+        private int style;
+        private String sharedIndex;
+        private boolean hasValue;
+        private boolean hasFormula;
+        private StringBuilder collecting;
+        private boolean inInlineString;
+        private boolean inPhonetic;
+
+        SheetHandler(boolean formulas, RawCellHandler handler) {
+            this.formulas = formulas;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            try {
+                switch (localName) {
+                    case "dimension":
+                        String ref = attributes.getValue("ref");
+                        if (ref != null) {
+                            handler.dimension(CellRangeAddress.valueOf(ref));
+                        }
+                        break;
+                    case "row":
+                        String r = attributes.getValue("r");
+                        row = r != null ? Integer.parseInt(r) - 1 : row + 1;
+                        column = -1;
+                        if (!handler.startRow(row)) {
+                            throw new StopParsing();
+                        }
+                        break;
+                    case "c":
+                        String cellRef = attributes.getValue("r");
+                        column = cellRef != null ? new CellAddress(cellRef).getColumn() : column + 1;
+                        type = attributes.getValue("t");
+                        String s = attributes.getValue("s");
+                        style = s != null ? Integer.parseInt(s) : 0;
+                        hasValue = false;
+                        hasFormula = false;
+                        sharedIndex = null;
+                        text.setLength(0);
+                        formula.setLength(0);
+                        break;
+                    case "v":
+                        collecting = text;
+                        hasValue = true;
+                        break;
+                    case "f":
+                        collecting = formulas ? formula : null;
+                        hasFormula = formulas;
+                        sharedIndex = "shared".equals(attributes.getValue("t")) ? attributes.getValue("si") : null;
+                        break;
+                    case "is":
+                        inInlineString = true;
+                        hasValue = true;
+                        break;
+                    case "rPh":
+                        inPhonetic = true;
+                        break;
+                    case "t":
+                        collecting = inInlineString && !inPhonetic ? text : null;
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IOException e) {
+                throw new HandlerException(e);
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (collecting != null) {
+                collecting.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "v":
+                case "t":
+                case "f":
+                    collecting = null;
+                    break;
+                case "is":
+                    inInlineString = false;
+                    break;
+                case "rPh":
+                    inPhonetic = false;
+                    break;
+                case "c":
+                    if (hasValue || hasFormula) {
+                        try {
+                            handler.cell(row, column, type, style, hasValue ? text.toString() : null, formula());
+                        } catch (IOException e) {
+                            throw new HandlerException(e);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private String formula() {
+            if (!hasFormula) {
+                return null;
+            }
+            String f = formula.toString();
+            if (sharedIndex != null) {
+                if (f.isEmpty()) {
+                    f = sharedFormulas.getOrDefault(sharedIndex, "");
+                } else {
+                    sharedFormulas.put(sharedIndex, f);
+                }
+            }
+            return f;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Output stream that writes to a per-thread target when one is set, and to
+ * a fallback stream otherwise.
+ *
+ * <p>{@link ToolServer} installs one of these as {@code System.out} and
+ * {@code System.err}, so the output of tools running concurrently in one
+ * JVM is captured separately for each request.
+ */
+package jp.isoittech;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+final class ThreadLocalOutputStream extends OutputStream {
+
+    private final OutputStream fallback;
+    private final ThreadLocal<OutputStream> target = new ThreadLocal<>();
+
+    ThreadLocalOutputStream(OutputStream fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Redirects the current thread's output to {@code out}, or back to the
+     * fallback stream when {@code out} is null.
+     *
+     * @return the previous target, or null if there was none
+     */
+    OutputStream setTarget(OutputStream out) {
+        OutputStream previous = target.get();
+        if (out == null) {
+            target.remove();
+        } else {
+            target.set(out);
+        }
+        return previous;
+    }
+
+    private OutputStream current() {
+        OutputStream out = target.get();
+        return out != null ? out : fallback;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        current().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        current().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        current().flush();
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Timing and resource counters collected while a tool runs.
+ *
+ * <p>A {@link WorkbookSession} records the open, parse, mutate, serialize
+ * and fsync phases; tools add the number of cells they read or wrote via
+ * {@link #addCellsTouched(long)}. When the {@code EXCEL_MCP_METRICS}
+ * environment variable is set to {@code 1} or {@code true}, the record is
+ * printed to standard error as a single JSON line:
+ *
+ * <pre>
+ *   {"metrics":{"openMs":1.2,"parseMs":35.0,...}}
+ * </pre>
+ *
+ * The Python wrapper strips this line from stderr and attaches it to the
+ * tool result.
+ *
+ * <p>{@code peakHeapBytes} is the most heap in use seen when a phase ended
+ * or the record was built. It is a size the heap actually reached, but a
+ * spike inside a phase can fall between samples. In a {@link ToolServer},
+ * the heap also holds concurrent requests.
+ */
+package jp.isoittech;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.Gson;
+
+public final class ToolMetrics {
+
+    static final String ENV_VAR = "EXCEL_MCP_METRICS";
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private long openNanos;
+    private long parseNanos;
+    private long mutateNanos;
+    private long serializeNanos;
+    private long fsyncNanos;
+    private long cellsTouched;
+    private int stylesCreated;
+    private long bytesRead;
+    private long bytesWritten;
+    private boolean saveSkipped;
+    private long peakHeapBytes;
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Returns true if metrics should be printed for this process.
+     */
+    public static boolean isEnabled() {
+        String value = System.getenv(ENV_VAR);
+        return value != null && (value.equals("1") || value.equalsIgnoreCase("true"));
+    }
+
+    public void addCellsTouched(long count) {
+        cellsTouched += count;
+    }
+
+    void addOpen(long nanos) {
+        openNanos += nanos;
+        sampleHeap();
+    }
+
+    void addParse(long nanos) {
+        parseNanos += nanos;
+        sampleHeap();
+    }
+
+    void addMutate(long nanos) {
+        mutateNanos += nanos;
+        sampleHeap();
+    }
+
+    void addSerialize(long nanos) {
+        serializeNanos += nanos;
+        sampleHeap();
+    }
+
+    void addFsync(long nanos) {
+        fsyncNanos += nanos;
+        sampleHeap();
+    }
+
+    void addBytesRead(long bytes) {
+        bytesRead += bytes;
+    }
+
+    void addBytesWritten(long bytes) {
+        bytesWritten += bytes;
+    }
+
+    void setStylesCreated(int count) {
+        stylesCreated = count;
+    }
+
+    void setSaveSkipped(boolean skipped) {
+        saveSkipped = skipped;
+    }
+
+    /**
+     * Returns the record as a JSON line of the form {@code {"metrics":{...}}}.
+     */
+    public String toJson() {
+        sampleHeap();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("openMs", millis(openNanos));
+        values.put("parseMs", millis(parseNanos));
+        values.put("mutateMs", millis(mutateNanos));
+        values.put("serializeMs", millis(serializeNanos));
+        values.put("fsyncMs", millis(fsyncNanos));
+        values.put("totalMs", millis(System.nanoTime() - startNanos));
+        values.put("cellsTouched", cellsTouched);
+        values.put("stylesCreated", stylesCreated);
+        values.put("peakHeapBytes", peakHeapBytes);
+        values.put("bytesRead", bytesRead);
+        values.put("bytesWritten", bytesWritten);
+        values.put("saveSkipped", saveSkipped);
+
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("metrics", values);
+        return new Gson().toJson(record);
+    }
+
+    /**
+     * Prints the record to standard error if metrics are enabled.
+     */
+    public void emit() {
+        if (isEnabled()) {
+            System.err.println(toJson());
+        }
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    private void sampleHeap() {
+        peakHeapBytes = Math.max(peakHeapBytes, MEMORY.getHeapMemoryUsage().getUsed());
+    }
+}
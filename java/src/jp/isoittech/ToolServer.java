@@ -0,0 +1,254 @@
+/**
+ * Long-running process that executes tool requests read from standard input,
+ * so that the JVM, the loaded classes and the JIT-compiled code are reused
+ * across calls instead of paying the startup cost for each one.
+ *
+ * <p>Protocol: one JSON object per line in each direction.
+ *
+ * <pre>
+ *   request:  {"id": 1, "tool": "ReadExcelTool", "args": ["/path/book.xlsx", "Sheet1", "A1:C10"]}
+ *   response: {"id": 1, "exitCode": 0, "stdout": "[[...]]\n", "stderr": ""}
+ * </pre>
+ *
+ * The fields of a response mirror what running the tool's {@code main} as
+ * its own process would produce; an uncaught exception yields exit code 1
+ * and its stack trace on "stderr". Responses are written as requests
+ * complete, which is not necessarily the order they were received in, and
+ * requests in flight at the same time are not ordered against each other:
+ * a client that needs one call to see the effect of another waits for the
+ * first response before sending the second request.
+ *
+ * <p>Every request runs on its own virtual thread (Java 21+, falling back to
+ * a cached pool of platform threads on older JVMs). Tools lock their
+ * workbook through {@link WorkbookSession}, shared for reading and exclusive
+ * for writing, so independent requests use all cores while writes to one
+ * workbook stay serialized, also against other processes. At most
+ * {@code maxConcurrent} requests (default: the number of processors) run at
+ * a time, which bounds heap usage.
+ *
+ * <p>When {@code EXCEL_MCP_WRITE_BEHIND_MS} is set to a positive number of
+ * milliseconds, saved workbooks are kept in a {@link WorkbookCache} and
+ * written once they have been idle that long, on a {@link FlushTool}
+ * request, or when the server exits; with {@code EXCEL_MCP_JOURNAL} also set,
+ * each change is first made durable in a {@link Journal}.
+ *
+ * <pre>
+ *   java -cp dist/excel-mcp.jar jp.isoittech.ToolServer [maxConcurrent]
+ * </pre>
+ */
+package jp.isoittech;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public class ToolServer {
+
+    private final Map<String, Method> mains = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private final ThreadLocalOutputStream toolOut;
+    private final ThreadLocalOutputStream toolErr;
+    private final Writer responses;
+    private final Gson gson = new Gson();
+
+    private ToolServer(int maxConcurrent, ThreadLocalOutputStream toolOut, ThreadLocalOutputStream toolErr,
+                       Writer responses) {
+        this.permits = new Semaphore(maxConcurrent);
+        this.toolOut = toolOut;
+        this.toolErr = toolErr;
+        this.responses = responses;
+    }
+
+    /**
+     * Arguments:
+     * <ol>
+     *     <li>maxConcurrent (optional) - maximum number of requests executed at once</li>
+     * </ol>
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1) {
+            throw new IllegalArgumentException("Usage: ToolServer [maxConcurrent]");
+        }
+        int maxConcurrent = args.length == 1
+                ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+
+        // Standard output carries the protocol only. Tool output is captured per
+        // request; anything printed outside of a request goes to standard error.
+        Writer responses = new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8);
+        PrintStream originalErr = System.err;
+        ThreadLocalOutputStream toolOut = new ThreadLocalOutputStream(originalErr);
+        ThreadLocalOutputStream toolErr = new ThreadLocalOutputStream(originalErr);
+        System.setOut(new PrintStream(toolOut, true, "UTF-8"));
+        System.setErr(new PrintStream(toolErr, true, "UTF-8"));
+        // Standard input carries the requests, so tools must not read data from it.
+        InputStream requests = System.in;
+        System.setIn(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Standard input is not available to tools run by ToolServer");
+            }
+        });
+
+        WorkbookCache cache = WorkbookCache.fromEnvironment();
+        if (cache != null) {
+            WorkbookSession.setCache(cache);
+            // Also flush when the server is terminated instead of seeing end of input.
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> closeQuietly(cache)));
+        }
+
+        ToolServer server = new ToolServer(maxConcurrent, toolOut, toolErr, responses);
+        Journal.setRunner(server::runQuietly);
+        ExecutorService executor = newRequestExecutor();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(requests, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonObject request;
+                try {
+                    request = JsonParser.parseString(line).getAsJsonObject();
+                } catch (RuntimeException e) {
+                    server.respond(null, 1, "", "Invalid request: " + e.getMessage() + "\n");
+                    continue;
+                }
+                executor.execute(() -> server.handle(request));
+            }
+        } finally {
+            // Standard input closed: finish the requests in flight, then exit.
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+            if (cache != null) {
+                cache.close();
+            }
+        }
+    }
+
+    private static void closeQuietly(WorkbookCache cache) {
+        try {
+            cache.close();
+        } catch (IOException e) {
+            System.err.println("Failed to flush workbooks: " + e);
+        }
+    }
+
+    /**
+     * Returns an executor that starts a virtual thread per task when the JVM
+     * supports it (Java 21+), and a cached platform thread pool otherwise.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handle(JsonObject request) {
+        JsonElement id = request.get("id");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        toolOut.setTarget(out);
+        toolErr.setTarget(err);
+        int exitCode = 0;
+        try {
+            String tool = request.get("tool").getAsString();
+            JsonArray argArray = request.has("args") ? request.getAsJsonArray("args") : new JsonArray();
+            String[] args = new String[argArray.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = argArray.get(i).getAsString();
+            }
+            run(tool, args);
+        } catch (Throwable t) {
+            exitCode = 1;
+            Throwable cause = t instanceof InvocationTargetException ? t.getCause() : t;
+            System.err.print("Exception in thread \"main\" ");
+            cause.printStackTrace();
+        } finally {
+            toolOut.setTarget(null);
+            toolErr.setTarget(null);
+        }
+        respond(id, exitCode, out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8));
+    }
+
+    private void run(String tool, String[] args) throws Exception {
+        Method main = mains.computeIfAbsent(tool, ToolServer::findMain);
+        permits.acquire();
+        Journal.setInvocation(tool, args);
+        try {
+            main.invoke(null, (Object) args);
+        } finally {
+            Journal.setInvocation(null, null);
+            permits.release();
+        }
+    }
+
+    /**
+     * Runs a tool on the current thread with its output discarded; used to
+     * replay journal entries in the middle of a request.
+     */
+    private void runQuietly(String tool, String[] args) throws Exception {
+        OutputStream out = toolOut.setTarget(OutputStream.nullOutputStream());
+        OutputStream err = toolErr.setTarget(OutputStream.nullOutputStream());
+        try {
+            mains.computeIfAbsent(tool, ToolServer::findMain).invoke(null, (Object) args);
+        } finally {
+            toolOut.setTarget(out);
+            toolErr.setTarget(err);
+        }
+    }
+
+    static Method findMain(String tool) {
+        if (!tool.matches("[A-Z][A-Za-z]*Tool")) {
+            throw new IllegalArgumentException("Unknown tool: " + tool);
+        }
+        try {
+            return Class.forName("jp.isoittech." + tool).getMethod("main", String[].class);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unknown tool: " + tool, e);
+        }
+    }
+
+    private void respond(JsonElement id, int exitCode, String stdout, String stderr) {
+        JsonObject response = new JsonObject();
+        response.add("id", id);
+        response.addProperty("exitCode", exitCode);
+        response.addProperty("stdout", stdout);
+        response.addProperty("stderr", stderr);
+        String json = gson.toJson(response);
+        synchronized (responses) {
+            try {
+                responses.write(json);
+                responses.write('\n');
+                responses.flush();
+            } catch (IOException e) {
+                // The client went away; nothing left to report to.
+                System.exit(1);
+            }
+        }
+    }
+}
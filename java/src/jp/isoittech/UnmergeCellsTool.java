@@ -4,15 +4,11 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
 
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class UnmergeCellsTool {
@@ -28,8 +24,7 @@ public class UnmergeCellsTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 4) {
-            System.err.println("Usage: UnmergeCellsTool <filePath> <sheetName> <startCell> <endCell>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: UnmergeCellsTool <filePath> <sheetName> <startCell> <endCell>");
         }
 
         String filePath = args[0];
@@ -37,39 +32,23 @@ public class UnmergeCellsTool {
         String startCell = args[2];
         String endCell = args[3];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            XSSFWorkbook workbook = session.getWorkbook();
 
-            Sheet sheet = workbook.getSheet(sheetName);
+            XSSFSheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
                 throw new IllegalArgumentException("Sheet not found: " + sheetName);
             }
 
             CellRangeAddress target = ExcelRangeUtils.parseRange(startCell + ":" + endCell);
 
-            for (int i = sheet.getNumMergedRegions() - 1; i >= 0; i--) {
-                CellRangeAddress region = sheet.getMergedRegion(i);
-                if (regionsOverlap(region, target)) {
-                    sheet.removeMergedRegion(i);
-                }
+            List<Integer> overlapping = MergedRegionIndex.build(sheet).findOverlapping(target);
+            if (!overlapping.isEmpty()) {
+                MergedRegionIndex.removeAll(sheet, new HashSet<>(overlapping));
             }
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
-            }
+            // Nothing to unmerge leaves the file alone.
+            session.saveIfChanged(!overlapping.isEmpty());
         }
     }
-
-    /**
-     * Returns true if two ranges overlap at least one cell.
-     */
-    private static boolean regionsOverlap(CellRangeAddress a, CellRangeAddress b) {
-        return a.getFirstRow() <= b.getLastRow() && a.getLastRow() >= b.getFirstRow()
-                && a.getFirstColumn() <= b.getLastColumn() && a.getLastColumn() >= b.getFirstColumn();
-    }
 }
@@ -5,14 +5,9 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class ValidateExcelRangeTool {
 
@@ -27,8 +22,7 @@ public class ValidateExcelRangeTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length < 3 || args.length > 4) {
-            System.err.println("Usage: ValidateExcelRangeTool <filePath> <sheetName> <startCell> [endCell]");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: ValidateExcelRangeTool <filePath> <sheetName> <startCell> [endCell]");
         }
 
         String filePath = args[0];
@@ -36,13 +30,8 @@ public class ValidateExcelRangeTool {
         String startCell = args[2];
         String endCell = args.length == 4 ? args[3] : startCell;
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.open(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             Sheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
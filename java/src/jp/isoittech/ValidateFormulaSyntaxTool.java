@@ -7,15 +7,10 @@
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class ValidateFormulaSyntaxTool {
 
@@ -29,21 +24,15 @@ public class ValidateFormulaSyntaxTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 3) {
-            System.err.println("Usage: ValidateFormulaSyntaxTool <filePath> <sheetName> <formula>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: ValidateFormulaSyntaxTool <filePath> <sheetName> <formula>");
         }
 
         String filePath = args[0];
         String sheetName = args[1];
         String formula = args[2];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.open(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
             Sheet sheet = workbook.getSheet(sheetName);
             if (sheet == null) {
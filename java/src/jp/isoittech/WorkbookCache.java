@@ -0,0 +1,294 @@
+/**
+ * Write-behind cache of open workbooks, used by {@link ToolServer} when the
+ * {@code EXCEL_MCP_WRITE_BEHIND_MS} environment variable is set.
+ *
+ * <p>A workbook opened for update stays in memory after the tool is done
+ * with it, and {@link WorkbookSession#save()} only marks it dirty. It is
+ * written to disk once no tool has used it for the idle interval, when
+ * {@link FlushTool} asks for it, or when the server shuts down, so a burst of
+ * small edits costs one serialization instead of one per edit. Tools running
+ * in the server, readers included, work on the cached copy.
+ *
+ * <p>A cached workbook keeps its exclusive lock (see
+ * {@link ExcelUtils#lockWorkbook}) until it is flushed, so another process
+ * waits for the flush instead of reading a stale file or overwriting the
+ * pending changes. A tool that fails without saving a workbook that has no
+ * pending changes drops it from the cache, discarding anything it changed;
+ * if the workbook already has pending changes they are kept.
+ *
+ * <p>With {@code EXCEL_MCP_JOURNAL} enabled, each save is also appended to
+ * the workbook's {@link Journal}, so pending changes survive a crash; a
+ * workbook is checkpointed after {@value #CHECKPOINT_ENTRIES} journal
+ * entries even if it is never idle, which bounds the journal.
+ */
+package jp.isoittech;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+public final class WorkbookCache implements Closeable {
+
+    static final String ENV_VAR = "EXCEL_MCP_WRITE_BEHIND_MS";
+    static final int CHECKPOINT_ENTRIES = 1000;
+
+    private final long idleMillis;
+    private final boolean journaled = Journal.isEnabled();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "workbook-flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * @param idleMillis how long a workbook stays unused before it is flushed
+     */
+    public WorkbookCache(long idleMillis) {
+        this.idleMillis = idleMillis;
+    }
+
+    /**
+     * Returns a cache configured from the environment, or null if write-behind
+     * is not enabled.
+     */
+    public static WorkbookCache fromEnvironment() {
+        String value = System.getenv(ENV_VAR);
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        long idleMillis = Long.parseLong(value);
+        return idleMillis > 0 ? new WorkbookCache(idleMillis) : null;
+    }
+
+    /** A cached workbook; only the thread that checked it out may use it. */
+    final class Entry {
+        final String path;
+        private final ReentrantLock inUse = new ReentrantLock();
+        private XSSFWorkbook workbook;
+        private Closeable writeLock;
+        private boolean dirty;
+        private boolean evicted;
+        private long lastUsed;
+        private long journalEntries;
+
+        private Entry(String path) {
+            this.path = path;
+        }
+
+        XSSFWorkbook getWorkbook() {
+            return workbook;
+        }
+
+        /** Returns the entry to its cache; see {@link WorkbookCache#checkin}. */
+        void checkin(boolean saved, boolean modified) throws IOException {
+            WorkbookCache.this.checkin(this, saved, modified);
+        }
+    }
+
+    /**
+     * Checks out the cached workbook for {@code filePath}, waiting while
+     * another tool uses it. If it is not cached yet and {@code load} is true,
+     * locks and reads it from disk.
+     *
+     * @return the checked-out entry, or null if it is not cached and
+     *         {@code load} is false; release it with {@link #checkin}
+     */
+    Entry checkout(String filePath, boolean load, ToolMetrics metrics) throws IOException {
+        String canonical = new File(filePath).getCanonicalPath();
+        while (true) {
+            Entry entry = load ? entries.computeIfAbsent(canonical, k -> new Entry(k)) : entries.get(canonical);
+            if (entry == null) {
+                return null;
+            }
+            entry.inUse.lock();
+            if (entry.evicted) {
+                // Flushed while we were waiting; look again.
+                entry.inUse.unlock();
+                continue;
+            }
+            if (entry.workbook == null) {
+                try {
+                    entry.writeLock = ExcelUtils.lockWorkbook(canonical, true);
+                    entry.workbook = WorkbookSession.load(new File(canonical), metrics);
+                    // A journal left behind was replayed; append to it and checkpoint it with the next flush.
+                    entry.journalEntries = Journal.lastSequence(new File(canonical));
+                    entry.dirty = Journal.exists(new File(canonical));
+                } catch (IOException | RuntimeException e) {
+                    try {
+                        evict(entry);
+                    } finally {
+                        entry.inUse.unlock();
+                    }
+                    throw e;
+                }
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Returns an entry obtained from {@link #checkout}.
+     *
+     * @param saved    true if the tool saved the workbook
+     * @param modified true if the tool opened the workbook for update
+     */
+    void checkin(Entry entry, boolean saved, boolean modified) throws IOException {
+        try {
+            if (saved) {
+                entry.dirty = true;
+                if (journaled && !journal(entry)) {
+                    // Not journaled, so only durable once written.
+                    evict(entry);
+                    return;
+                }
+            } else if (modified && !entry.dirty) {
+                // The tool may have changed the workbook before it failed.
+                evict(entry);
+                return;
+            }
+            entry.lastUsed = System.nanoTime();
+            if (entry.journalEntries >= CHECKPOINT_ENTRIES) {
+                flusher.execute(() -> checkpoint(entry));
+            } else {
+                flusher.schedule(() -> flushIfIdle(entry), idleMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            entry.inUse.unlock();
+        }
+    }
+
+    /**
+     * Writes the workbook for {@code filePath} if it has pending changes and
+     * drops it from the cache, releasing its lock.
+     *
+     * @return true if the workbook was cached
+     */
+    boolean flush(String filePath) throws IOException {
+        Entry entry = entries.get(new File(filePath).getCanonicalPath());
+        if (entry == null) {
+            return false;
+        }
+        entry.inUse.lock();
+        try {
+            if (entry.evicted) {
+                return false;
+            }
+            evict(entry);
+            return true;
+        } finally {
+            entry.inUse.unlock();
+        }
+    }
+
+    /**
+     * Flushes every cached workbook.
+     *
+     * @throws IOException if a workbook cannot be written; the others are
+     *                     still flushed
+     */
+    void flushAll() throws IOException {
+        IOException failure = null;
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            try {
+                flush(entry.path);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Flushes every cached workbook and stops the background flusher.
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdownNow();
+        flushAll();
+    }
+
+    /**
+     * Appends the save that is being checked in to the journal.
+     *
+     * @return false if the invocation is unknown or the journal cannot be written
+     */
+    private boolean journal(Entry entry) {
+        String[] invocation = Journal.currentInvocation();
+        if (invocation == null) {
+            return false;
+        }
+        try {
+            Journal.append(new File(entry.path), entry.journalEntries + 1, invocation);
+        } catch (IOException e) {
+            System.err.println("Failed to journal " + entry.path + ": " + e);
+            return false;
+        }
+        entry.journalEntries++;
+        return true;
+    }
+
+    private void flushIfIdle(Entry entry) {
+        entry.inUse.lock();
+        try {
+            if (!entry.evicted && System.nanoTime() - entry.lastUsed >= TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+                evict(entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Keep the changes; the next use, flush or shutdown tries again.
+            System.err.println("Failed to flush " + entry.path + ": " + e);
+        } finally {
+            entry.inUse.unlock();
+        }
+    }
+
+    private void checkpoint(Entry entry) {
+        entry.inUse.lock();
+        try {
+            if (!entry.evicted) {
+                evict(entry);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Keep the changes; the next use, flush or shutdown tries again.
+            System.err.println("Failed to flush " + entry.path + ": " + e);
+        } finally {
+            entry.inUse.unlock();
+        }
+    }
+
+    /** Writes the entry if dirty, then closes it; called with the entry checked out. */
+    private void evict(Entry entry) throws IOException {
+        if (entry.dirty) {
+            File file = new File(entry.path);
+            WorkbookSession.write(entry.workbook, file, new ToolMetrics());
+            Journal.delete(file);
+            entry.dirty = false;
+        }
+        entry.evicted = true;
+        entries.remove(entry.path, entry);
+        try {
+            if (entry.workbook != null) {
+                entry.workbook.close();
+            }
+        } finally {
+            if (entry.writeLock != null) {
+                entry.writeLock.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/**
+ * The zip package of a workbook read part by part, for tools that edit the
+ * package directly instead of loading the workbook (see
+ * {@link WorksheetTransfer} and {@link WorkbookStructure}).
+ *
+ * <p>Parts are named by their zip entry names, without the leading "/".
+ * {@link #rewrite} writes a new package next to the file and renames it
+ * over it, copying every entry that does not change raw, still compressed,
+ * so the cost of an edit follows the parts it touches rather than the size
+ * of the workbook.
+ */
+package jp.isoittech;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.poi.util.XMLHelper;
+
+final class WorkbookPackage implements Closeable {
+
+    static final String MAIN_NS = "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+    static final String REL_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    static final String PACKAGE_REL_NS = "http://schemas.openxmlformats.org/package/2006/relationships";
+    static final String CONTENT_TYPES_NS = "http://schemas.openxmlformats.org/package/2006/content-types";
+    static final String CONTENT_TYPES = "[Content_Types].xml";
+
+    static final String OFFICE_DOCUMENT = REL_NS + "/officeDocument";
+    static final String WORKSHEET = REL_NS + "/worksheet";
+
+    static final String WORKSHEET_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml";
+
+    static final XMLInputFactory INPUT = XMLHelper.newXMLInputFactory();
+    static final XMLOutputFactory OUTPUT = XMLOutputFactory.newInstance();
+
+    final ZipFile zip;
+    /** Extension (lower case) to content type. */
+    final Map<String, String> defaults = new LinkedHashMap<>();
+    /** Part name (with "/") to content type. */
+    final Map<String, String> overrides = new LinkedHashMap<>();
+
+    /**
+     * Opens a package and reads its content types.
+     *
+     * @throws IOException if the file does not exist or is not a package
+     */
+    WorkbookPackage(File file) throws IOException {
+        if (!file.exists()) {
+            throw new IOException("File not found: " + file.getPath());
+        }
+        zip = ZipFile.builder().setFile(file).get();
+        try (InputStream in = open(CONTENT_TYPES)) {
+            XMLStreamReader reader = INPUT.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
+                if ("Default".equals(reader.getLocalName())) {
+                    defaults.put(reader.getAttributeValue(null, "Extension").toLowerCase(Locale.ROOT),
+                            reader.getAttributeValue(null, "ContentType"));
+                } else if ("Override".equals(reader.getLocalName())) {
+                    overrides.put(reader.getAttributeValue(null, "PartName"),
+                            reader.getAttributeValue(null, "ContentType"));
+                }
+            }
+            reader.close();
+        } catch (IOException | XMLStreamException | RuntimeException e) {
+            zip.close();
+            throw new IOException("Invalid workbook: " + file.getPath(), e);
+        }
+    }
+
+    boolean has(String part) {
+        return zip.getEntry(part) != null;
+    }
+
+    InputStream open(String part) throws IOException {
+        ZipArchiveEntry entry = zip.getEntry(part);
+        if (entry == null) {
+            throw new IOException("Missing part: " + part);
+        }
+        return zip.getInputStream(entry);
+    }
+
+    /** Returns the names of all entries, in the order of the zip. */
+    List<String> entries() {
+        List<String> names = new ArrayList<>();
+        for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+            names.add(entry.getName());
+        }
+        return names;
+    }
+
+    String contentType(String part) {
+        String type = overrides.get("/" + part);
+        if (type == null) {
+            type = defaults.get(part.substring(part.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT));
+        }
+        return type;
+    }
+
+    /** Returns the workbook part the package starts from. */
+    String workbookPart() throws IOException {
+        for (Rel rel : rels("")) {
+            if (OFFICE_DOCUMENT.equals(rel.type)) {
+                return resolve("", rel.target);
+            }
+        }
+        throw new IOException("Not a workbook: no office document");
+    }
+
+    /** Returns the relationships of a part; the package itself is "". */
+    List<Rel> rels(String part) throws IOException {
+        String name = part.isEmpty() ? "_rels/.rels" : relsName(part);
+        if (!has(name)) {
+            return Collections.emptyList();
+        }
+        List<Rel> rels = new ArrayList<>();
+        try (InputStream in = open(name)) {
+            XMLStreamReader reader = INPUT.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT
+                        && "Relationship".equals(reader.getLocalName())) {
+                    rels.add(new Rel(reader.getAttributeValue(null, "Id"),
+                            reader.getAttributeValue(null, "Type"),
+                            reader.getAttributeValue(null, "Target"),
+                            "External".equals(reader.getAttributeValue(null, "TargetMode"))));
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid relationships: " + name, e);
+        }
+        return rels;
+    }
+
+    /** Returns the part a workbook relates to with {@code type}, or null. */
+    String partOfType(String workbookPart, List<Rel> rels, String type) {
+        for (Rel rel : rels) {
+            if (rel.type.equals(type) && !rel.external) {
+                String part = resolve(workbookPart, rel.target);
+                return has(part) ? part : null;
+            }
+        }
+        return null;
+    }
+
+    /** Writes the changed entries of a new package; the names of entries it writes or drops go to {@code replaced}. */
+    interface Changes {
+        void write(ZipArchiveOutputStream out, Set<String> replaced) throws IOException, XMLStreamException;
+    }
+
+    /**
+     * Writes a new package into a temporary file next to {@code file} and
+     * renames it over it: {@code changes} writes the entries that change,
+     * and the others are copied raw.
+     */
+    void rewrite(Path file, ToolMetrics metrics, Changes changes) throws IOException, XMLStreamException {
+        long start = System.nanoTime();
+        Set<String> replaced = new HashSet<>();
+        Path temp = ExcelUtils.createSiblingTempFile(file);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE);
+                 ZipArchiveOutputStream out = new ZipArchiveOutputStream(channel)) {
+                changes.write(out, replaced);
+                for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+                    if (!replaced.contains(entry.getName())) {
+                        try (InputStream raw = zip.getRawInputStream(entry)) {
+                            out.addRawArchiveEntry(entry, raw);
+                        }
+                    }
+                }
+                out.finish();
+                long written = System.nanoTime();
+                metrics.addSerialize(written - start);
+
+                channel.force(true);
+                metrics.addFsync(System.nanoTime() - written);
+            }
+            ExcelUtils.replaceAtomically(temp, file);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        metrics.addBytesWritten(Files.size(file));
+    }
+
+    /** Copies a part of this package into {@code out} under a new name, still compressed. */
+    void copyRaw(ZipArchiveOutputStream out, String part, String newPart) throws IOException {
+        ZipArchiveEntry entry = zip.getEntry(part);
+        ZipArchiveEntry copy = new ZipArchiveEntry(newPart);
+        copy.setMethod(entry.getMethod());
+        copy.setCrc(entry.getCrc());
+        copy.setSize(entry.getSize());
+        copy.setCompressedSize(entry.getCompressedSize());
+        try (InputStream raw = zip.getRawInputStream(entry)) {
+            out.addRawArchiveEntry(copy, raw);
+        }
+    }
+
+    /**
+     * Writes the content types of this package with {@code added} parts
+     * (name to content type) and without the {@code removed} ones.
+     */
+    void writeContentTypes(Map<String, String> added, Collection<String> removed, OutputStream out)
+            throws IOException {
+        Map<String, String> types = new LinkedHashMap<>(overrides);
+        for (String name : removed) {
+            types.remove("/" + name);
+        }
+        for (Map.Entry<String, String> part : added.entrySet()) {
+            String name = part.getKey();
+            String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            if (part.getValue() != null && !part.getValue().equals(defaults.get(extension))) {
+                types.put("/" + name, part.getValue());
+            }
+        }
+        try {
+            XMLStreamWriter writer = OUTPUT.createXMLStreamWriter(shield(out), "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("Types");
+            writer.writeDefaultNamespace(CONTENT_TYPES_NS);
+            for (Map.Entry<String, String> type : defaults.entrySet()) {
+                writer.writeEmptyElement("Default");
+                writer.writeAttribute("Extension", type.getKey());
+                writer.writeAttribute("ContentType", type.getValue());
+            }
+            for (Map.Entry<String, String> type : types.entrySet()) {
+                writer.writeEmptyElement("Override");
+                writer.writeAttribute("PartName", type.getKey());
+                writer.writeAttribute("ContentType", type.getValue());
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static void writeRels(List<Rel> rels, OutputStream out) throws IOException {
+        try {
+            XMLStreamWriter writer = OUTPUT.createXMLStreamWriter(shield(out), "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("Relationships");
+            writer.writeDefaultNamespace(PACKAGE_REL_NS);
+            for (Rel rel : rels) {
+                writer.writeEmptyElement("Relationship");
+                writer.writeAttribute("Id", rel.id);
+                writer.writeAttribute("Type", rel.type);
+                writer.writeAttribute("Target", rel.target);
+                if (rel.external) {
+                    writer.writeAttribute("TargetMode", "External");
+                }
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Buffers writes to the zip stream, which compresses each write as it
+     * comes, and keeps XML writers from closing it. Flush when done.
+     */
+    static OutputStream shield(OutputStream out) {
+        return new BufferedOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+        }, 1 << 16);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+    // ---- part names ----
+
+    static String dirOf(String part) {
+        return part.substring(0, part.lastIndexOf('/') + 1);
+    }
+
+    static String relsName(String part) {
+        return dirOf(part) + "_rels/" + part.substring(part.lastIndexOf('/') + 1) + ".rels";
+    }
+
+    /** Resolves a relationship target of {@code part} to a part name (an entry name, without "/"). */
+    static String resolve(String part, String target) {
+        String path = target.startsWith("/") ? target.substring(1) : dirOf(part) + target;
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if ("..".equals(segment)) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+            } else if (!segment.isEmpty() && !".".equals(segment)) {
+                segments.add(segment);
+            }
+        }
+        return String.join("/", segments);
+    }
+
+    /** Returns the relationship target of {@code to} seen from {@code from}. */
+    static String relativize(String from, String to) {
+        String[] base = dirOf(from).split("/");
+        String[] path = to.split("/");
+        int common = 0;
+        int dirs = dirOf(from).isEmpty() ? 0 : base.length;
+        while (common < dirs && common < path.length - 1 && base[common].equals(path[common])) {
+            common++;
+        }
+        StringBuilder target = new StringBuilder();
+        for (int i = common; i < dirs; i++) {
+            target.append("../");
+        }
+        for (int i = common; i < path.length; i++) {
+            target.append(path[i]);
+            if (i < path.length - 1) {
+                target.append('/');
+            }
+        }
+        return target.toString();
+    }
+
+    /** Returns {@code wanted}, or if it is taken, the same name numbered from 1 up; then marks it taken. */
+    static String allocate(String wanted, Set<String> usedNames) {
+        String name = wanted;
+        int dot = wanted.lastIndexOf('.');
+        String stem = (dot > wanted.lastIndexOf('/') ? wanted.substring(0, dot) : wanted).replaceAll("[0-9]+$", "");
+        String extension = dot > wanted.lastIndexOf('/') ? wanted.substring(dot) : "";
+        for (int n = 1; usedNames.contains(name.toLowerCase(Locale.ROOT)); n++) {
+            name = stem + n + extension;
+        }
+        usedNames.add(name.toLowerCase(Locale.ROOT));
+        return name;
+    }
+
+    /** A relationship of a part. */
+    static final class Rel {
+        final String id;
+        final String type;
+        final String target;
+        final boolean external;
+
+        Rel(String id, String type, String target, boolean external) {
+            this.id = id;
+            this.type = type;
+            this.target = target;
+            this.external = external;
+        }
+
+        static Rel find(List<Rel> rels, String id) {
+            for (Rel rel : rels) {
+                if (rel.id.equals(id)) {
+                    return rel;
+                }
+            }
+            return null;
+        }
+
+        static String newId(List<Rel> rels) {
+            int n = rels.size() + 1;
+            while (find(rels, "rId" + n) != null) {
+                n++;
+            }
+            return "rId" + n;
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * An open workbook together with the file it came from and the
+ * {@link ToolMetrics} collected while a tool works on it.
+ *
+ * <p>Every tool opens its workbook through this class:
+ *
+ * <pre>
+ *   try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+ *       XSSFWorkbook workbook = session.getWorkbook();
+ *       ... change the workbook ...
+ *       session.save();
+ *   }
+ * </pre>
+ *
+ * Tools that only read use {@link #open(String)} instead, which holds a
+ * shared lock (see {@link ExcelUtils#lockWorkbook}) while the file is read,
+ * so readers run in parallel. {@link #openForUpdate(String)} and
+ * {@link #create(String)} hold an exclusive lock until the session is
+ * closed, so that concurrent read-modify-write cycles on one workbook, from
+ * this process or another, cannot overwrite each other's changes.
+ * {@link #save()} writes a temporary file and renames it over the workbook,
+ * so a reader never parses a partially written file. When a
+ * {@link WorkbookCache} is installed, sessions use the cached workbooks and
+ * {@link #save()} leaves the writing to the cache. Reading a workbook from
+ * disk replays its {@link Journal}, if there is one.
+ *
+ * <p>Opening reads the package into memory ("open") and then parses the
+ * workbook parts ("parse"); everything up to {@link #save()} or
+ * {@link #close()} counts as "mutate"; {@link #save()} measures writing the
+ * package ("serialize") and forcing it to disk ("fsync") separately.
+ * Closing the session never writes the file, and prints the metrics when
+ * they are enabled.
+ *
+ * <p>Tools that can tell whether their operation changed anything (the
+ * same values written again, a region that is already merged) save with
+ * {@link #saveIfChanged(boolean)}, so that a no-op leaves the file, its
+ * modification time and the caches keyed on it alone.
+ */
+package jp.isoittech;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+public final class WorkbookSession implements Closeable {
+
+    private static volatile WorkbookCache cache;
+
+    private final File file;
+    private final XSSFWorkbook workbook;
+    private final ToolMetrics metrics;
+    private final boolean writable;
+    /** Exclusive lock held for the whole session; null for read-only and cached sessions. */
+    private final Closeable writeLock;
+    /** The cache entry the workbook belongs to; null if it is not cached. */
+    private final WorkbookCache.Entry cached;
+    /** True if a journal entry is being replayed into a workbook owned by the caller. */
+    private final boolean replaying;
+    private final int initialStyles;
+    /** The wrapper returned by {@link #stream}, which closes the workbook; null if none. */
+    private SXSSFWorkbook streaming;
+    private boolean saved;
+    /** True if the tool reported that it left the workbook as it was. */
+    private boolean unchanged;
+    private long mutateStart;
+
+    private WorkbookSession(File file, XSSFWorkbook workbook, ToolMetrics metrics, boolean writable,
+                            Closeable writeLock, WorkbookCache.Entry cached) {
+        this.file = file;
+        this.workbook = workbook;
+        this.metrics = metrics;
+        this.writable = writable;
+        this.writeLock = writeLock;
+        this.cached = cached;
+        this.replaying = Journal.replayTarget() == workbook;
+        this.initialStyles = workbook.getNumCellStyles();
+        this.mutateStart = System.nanoTime();
+    }
+
+    /**
+     * Installs the write-behind cache used by all sessions of this JVM, or
+     * removes it when {@code workbookCache} is null.
+     */
+    static void setCache(WorkbookCache workbookCache) {
+        cache = workbookCache;
+    }
+
+    /**
+     * Writes the cached workbook for {@code filePath}, or every cached
+     * workbook if it is null, to disk and drops it from the cache. Does
+     * nothing when no cache is installed.
+     *
+     * @throws IOException if a workbook cannot be written
+     */
+    public static void flush(String filePath) throws IOException {
+        WorkbookCache workbookCache = cache;
+        if (workbookCache == null) {
+            return;
+        }
+        if (filePath == null) {
+            workbookCache.flushAll();
+        } else {
+            workbookCache.flush(filePath);
+        }
+    }
+
+    /**
+     * Brings the file of an existing workbook up to date for tools that parse
+     * it directly instead of opening a session: writes its cached copy, and
+     * applies and removes a journal left behind by a crash.
+     *
+     * @param filePath path to the workbook file
+     * @throws IOException if the file does not exist or cannot be written
+     */
+    public static void checkpoint(String filePath) throws IOException {
+        flush(filePath);
+        File file = existingFile(filePath);
+        if (!Journal.exists(file)) {
+            return;
+        }
+        ExcelUtils.withLock(filePath, true, () -> {
+            // Someone else may have checkpointed it while we waited.
+            if (Journal.exists(file)) {
+                ToolMetrics metrics = new ToolMetrics();
+                try (XSSFWorkbook workbook = load(file, metrics)) {
+                    write(workbook, file, metrics);
+                }
+                Journal.delete(file);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns true if tools may edit the package of a workbook file directly
+     * instead of opening a session (see {@link WorkbookStructure}): no cache
+     * holds workbooks in memory and no journal entry is being replayed into
+     * one, so the file is the workbook.
+     */
+    static boolean isPackageEditable() {
+        return cache == null && Journal.replayTarget() == null;
+    }
+
+    /**
+     * Opens an existing workbook (.xlsx) for reading. The session cannot be
+     * saved.
+     *
+     * @param filePath path to the workbook file
+     * @return open session
+     * @throws IOException if the file does not exist or cannot be read
+     */
+    public static WorkbookSession open(String filePath) throws IOException {
+        File file = existingFile(filePath);
+        ToolMetrics metrics = new ToolMetrics();
+        XSSFWorkbook replayTarget = Journal.replayTarget();
+        if (replayTarget != null) {
+            return new WorkbookSession(file, replayTarget, metrics, true, null, null);
+        }
+        WorkbookCache workbookCache = cache;
+        if (workbookCache != null) {
+            WorkbookCache.Entry entry = workbookCache.checkout(filePath, false, metrics);
+            if (entry != null) {
+                return new WorkbookSession(file, entry.getWorkbook(), metrics, false, null, entry);
+            }
+        }
+        // The package is read into memory, so the lock is not needed past this point.
+        XSSFWorkbook workbook = ExcelUtils.withLock(filePath, false, () -> load(file, metrics));
+        return new WorkbookSession(file, workbook, metrics, false, null, null);
+    }
+
+    /**
+     * Opens an existing workbook (.xlsx) for reading and writing. The
+     * workbook stays locked until the session is closed.
+     *
+     * @param filePath path to the workbook file
+     * @return open session
+     * @throws IOException if the file does not exist or cannot be read
+     */
+    public static WorkbookSession openForUpdate(String filePath) throws IOException {
+        File file = existingFile(filePath);
+        ToolMetrics metrics = new ToolMetrics();
+        XSSFWorkbook replayTarget = Journal.replayTarget();
+        if (replayTarget != null) {
+            return new WorkbookSession(file, replayTarget, metrics, true, null, null);
+        }
+        WorkbookCache workbookCache = cache;
+        if (workbookCache != null) {
+            WorkbookCache.Entry entry = workbookCache.checkout(filePath, true, metrics);
+            return new WorkbookSession(file, entry.getWorkbook(), metrics, true, null, entry);
+        }
+        Closeable writeLock = ExcelUtils.lockWorkbook(filePath, true);
+        try {
+            return new WorkbookSession(file, load(file, metrics), metrics, true, writeLock, null);
+        } catch (IOException | RuntimeException e) {
+            writeLock.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a session for a new, empty workbook that will be written to
+     * {@code filePath} on {@link #save()}.
+     *
+     * @param filePath path of the file to create
+     * @return session holding an empty workbook
+     * @throws IOException if the workbook cannot be locked
+     */
+    public static WorkbookSession create(String filePath) throws IOException {
+        // A cached copy of a file being replaced must not be flushed over it later.
+        flush(filePath);
+        Closeable writeLock = ExcelUtils.lockWorkbook(filePath, true);
+        return new WorkbookSession(new File(filePath), new XSSFWorkbook(), new ToolMetrics(), true, writeLock, null);
+    }
+
+    private static File existingFile(String filePath) throws IOException {
+        File file = new File(filePath);
+        if (!file.exists()) {
+            throw new IOException("File not found: " + filePath);
+        }
+        return file;
+    }
+
+    /**
+     * Reads a workbook from disk and replays its journal. If an entry of the
+     * journal fails, the entries before it are written to the file and the
+     * journal is moved aside (see {@link Journal#setAside}), so one bad entry
+     * cannot leave the workbook unopenable.
+     */
+    static XSSFWorkbook load(File file, ToolMetrics metrics) throws IOException {
+        XSSFWorkbook workbook = parse(file, metrics);
+        try {
+            Journal.replay(file, workbook, Long.MAX_VALUE);
+            return workbook;
+        } catch (Journal.ReplayException e) {
+            workbook.close();
+            return recover(file, e, metrics);
+        } catch (IOException | RuntimeException e) {
+            workbook.close();
+            throw e;
+        }
+    }
+
+    private static XSSFWorkbook recover(File file, Journal.ReplayException failure, ToolMetrics metrics)
+            throws IOException {
+        // The failed tool may have left the workbook half changed, so start over and stop before it.
+        XSSFWorkbook workbook = parse(file, metrics);
+        Path failed;
+        try {
+            Journal.replay(file, workbook, failure.getSequence() - 1);
+            write(workbook, file, metrics);
+            failed = Journal.setAside(file);
+        } catch (IOException | RuntimeException e) {
+            e.addSuppressed(failure);
+            workbook.close();
+            throw e;
+        }
+        System.err.println(failure.getMessage() + ": " + failure.getCause()
+                + "; the entries before it were written to the workbook and the journal was moved to " + failed);
+        return workbook;
+    }
+
+    private static XSSFWorkbook parse(File file, ToolMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        OPCPackage pkg;
+        try (FileInputStream fis = new FileInputStream(file)) {
+            pkg = OPCPackage.open(fis);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid workbook: " + file.getPath(), e);
+        }
+        long opened = System.nanoTime();
+        metrics.addOpen(opened - start);
+        metrics.addBytesRead(file.length());
+
+        XSSFWorkbook workbook;
+        try {
+            workbook = new XSSFWorkbook(pkg);
+        } catch (IOException | RuntimeException e) {
+            pkg.revert();
+            throw e;
+        }
+        metrics.addParse(System.nanoTime() - opened);
+        return workbook;
+    }
+
+    public XSSFWorkbook getWorkbook() {
+        return workbook;
+    }
+
+    public ToolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Writes the workbook to a temporary file, forces it to disk and renames
+     * it over the workbook file. With a write-behind cache installed, only
+     * marks the cached workbook as changed.
+     *
+     * @throws IOException if the file cannot be written
+     * @throws IllegalStateException if the session was opened read-only
+     */
+    public void save() throws IOException {
+        if (!writable) {
+            throw new IllegalStateException("Workbook was opened read-only: " + file.getPath());
+        }
+        long start = System.nanoTime();
+        metrics.addMutate(start - mutateStart);
+        saved = true;
+        if (cached == null && !replaying) {
+            write(workbook, file, metrics);
+            // Everything replayed from the journal is in the file now.
+            Journal.delete(file);
+        }
+        mutateStart = System.nanoTime();
+    }
+
+    /**
+     * Saves the workbook with {@link #save()} if the tool changed it.
+     * Otherwise nothing is written: the file keeps its modification time,
+     * and a cached workbook is returned to the cache as it was.
+     *
+     * @param changed true if the tool changed the workbook
+     * @throws IOException if the file cannot be written
+     * @throws IllegalStateException if the session was opened read-only
+     */
+    public void saveIfChanged(boolean changed) throws IOException {
+        if (changed) {
+            save();
+            return;
+        }
+        if (!writable) {
+            throw new IllegalStateException("Workbook was opened read-only: " + file.getPath());
+        }
+        unchanged = !saved;
+        metrics.setSaveSkipped(unchanged);
+    }
+
+    /**
+     * Wraps the workbook in a {@link SXSSFWorkbook} that keeps
+     * {@code rowWindow} rows of each new sheet in memory and writes the rest
+     * to temporary files. Save it with {@link #saveStreaming} and close it
+     * when done: that closes the workbook and deletes the temporary files,
+     * so the session then leaves the workbook alone.
+     *
+     * @throws IllegalStateException if {@link #canStream()} is false
+     */
+    public SXSSFWorkbook stream(int rowWindow) {
+        if (!canStream()) {
+            throw new IllegalStateException("Workbook cannot be saved by streaming: " + file.getPath());
+        }
+        streaming = new SXSSFWorkbook(workbook, rowWindow);
+        return streaming;
+    }
+
+    /**
+     * Returns true if this session can be saved with {@link #saveStreaming}.
+     * Cached sessions and journal replays cannot, because their workbook has
+     * to stay complete in memory.
+     */
+    public boolean canStream() {
+        return writable && cached == null && !replaying;
+    }
+
+    /**
+     * Saves the session through {@code streaming}, a {@link SXSSFWorkbook}
+     * wrapped around {@link #getWorkbook()} that rows were streamed into.
+     * The caller still closes it.
+     *
+     * @throws IOException if the file cannot be written
+     * @throws IllegalStateException if {@link #canStream()} is false
+     */
+    public void saveStreaming(SXSSFWorkbook streaming) throws IOException {
+        if (!canStream()) {
+            throw new IllegalStateException("Workbook cannot be saved by streaming: " + file.getPath());
+        }
+        metrics.addMutate(System.nanoTime() - mutateStart);
+        saved = true;
+        write(streaming, file, metrics);
+        Journal.delete(file);
+        mutateStart = System.nanoTime();
+    }
+
+    /**
+     * Writes {@code workbook} to {@code file} through a temporary file that
+     * is forced to disk and then renamed over it. The caller holds the
+     * exclusive lock.
+     */
+    static void write(Workbook workbook, File file, ToolMetrics metrics) throws IOException {
+        long start = System.nanoTime();
+        Path target = file.toPath();
+        Path temp = ExcelUtils.createSiblingTempFile(target);
+        try {
+            try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+                workbook.write(fos);
+                long written = System.nanoTime();
+                metrics.addSerialize(written - start);
+
+                fos.getChannel().force(true);
+                metrics.addFsync(System.nanoTime() - written);
+            }
+            ExcelUtils.replaceAtomically(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        metrics.addBytesWritten(file.length());
+    }
+
+    /**
+     * Closes the workbook without writing it, or returns it to the cache,
+     * releases the lock and prints the metrics if enabled.
+     */
+    @Override
+    public void close() throws IOException {
+        metrics.addMutate(System.nanoTime() - mutateStart);
+        metrics.setStylesCreated(workbook.getNumCellStyles() - initialStyles);
+        if (replaying) {
+            return;
+        }
+        try {
+            if (cached != null) {
+                cached.checkin(saved, writable && !unchanged);
+            } else if (streaming == null) {
+                // Otherwise closing the streaming workbook closed it.
+                workbook.close();
+            }
+        } finally {
+            try {
+                if (writeLock != null) {
+                    writeLock.close();
+                }
+            } finally {
+                metrics.emit();
+            }
+        }
+    }
+}
@@ -0,0 +1,715 @@
+/**
+ * Creates, renames, deletes and moves worksheets by editing the workbook
+ * package (see {@link WorkbookPackage}) instead of loading the workbook.
+ *
+ * <p>The workbook part, its relationships and the content types are
+ * rewritten: the sheet list, the defined names that belong to a sheet (by
+ * its position) and the active tab of the workbook views. Sheet parts are
+ * copied through as they are, except where renaming a sheet changes the
+ * formulas that refer to it by name. To find those, every worksheet, chart
+ * and pivot cache part is scanned as bytes, without parsing it, for what
+ * a reference to the old name looks like ("Old!"), and only the parts where
+ * it occurs are streamed through StAX to rewrite their formulas,
+ * conditional formats, data validations, chart series and pivot sources.
+ *
+ * <p>The results are what {@link org.apache.poi.xssf.usermodel.XSSFWorkbook}
+ * produces for the same edits: deleting a sheet drops the names local to
+ * it, the calculation chain and the parts that only the sheet refers to,
+ * and leaves formulas that pointed at it as they are.
+ */
+package jp.isoittech;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntUnaryOperator;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import jp.isoittech.WorkbookPackage.Rel;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.poi.ooxml.POIXMLTypeLoader;
+import org.apache.poi.ss.formula.SheetNameFormatter;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.xmlbeans.XmlException;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTBookView;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTDefinedName;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTDefinedNames;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheet;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTSheets;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTWorkbook;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.WorkbookDocument;
+
+final class WorkbookStructure {
+
+    private static final String CALC_CHAIN = WorkbookPackage.REL_NS + "/calcChain";
+
+    private static final String CHART_TYPE = "application/vnd.openxmlformats-officedocument.drawingml.chart+xml";
+    private static final String PIVOT_CACHE_TYPE =
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.pivotCacheDefinition+xml";
+
+    /** The parts that can refer to a sheet by name in their formulas. */
+    private static final Set<String> FORMULA_TYPES =
+            Set.of(WorkbookPackage.WORKSHEET_TYPE, CHART_TYPE, PIVOT_CACHE_TYPE);
+
+    /** Elements, by local name, whose text is a formula: cells, conditional formats, validations, charts. */
+    private static final Set<String> FORMULA_ELEMENTS = Set.of("f", "formula", "formula1", "formula2");
+
+    /** What POI writes for a new sheet. */
+    private static final byte[] EMPTY_SHEET = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<worksheet xmlns=\"" + WorkbookPackage.MAIN_NS + "\"><dimension ref=\"A1\"/>"
+            + "<sheetViews><sheetView workbookViewId=\"0\"/></sheetViews>"
+            + "<sheetFormatPr defaultRowHeight=\"15.0\"/><sheetData/>"
+            + "<pageMargins bottom=\"0.75\" footer=\"0.3\" header=\"0.3\" left=\"0.7\" right=\"0.7\" top=\"0.75\"/>"
+            + "</worksheet>").getBytes(StandardCharsets.UTF_8);
+
+    private static final QName SHEET = new QName("sheet");
+    private static final XMLEventFactory EVENTS = XMLEventFactory.newInstance();
+
+    /** Writes the new content of a part. */
+    private interface PartWriter {
+        void write(OutputStream out) throws IOException, XMLStreamException;
+    }
+
+    /** A change to the workbook; returns false if it leaves the workbook as it was. */
+    private interface Edit {
+        boolean apply(WorkbookStructure structure) throws IOException, XMLStreamException;
+    }
+
+    private final WorkbookPackage pkg;
+    private final ToolMetrics metrics;
+    private final String workbookPart;
+    private final List<Rel> rels;
+    private final WorkbookDocument document;
+    private final CTWorkbook workbook;
+
+    /** New and rewritten parts other than the workbook part and its relationships. */
+    private final Map<String, PartWriter> changed = new LinkedHashMap<>();
+    /** New parts with their content types. */
+    private final Map<String, String> added = new LinkedHashMap<>();
+    private final Set<String> removed = new LinkedHashSet<>();
+
+    private WorkbookStructure(WorkbookPackage pkg, ToolMetrics metrics) throws IOException {
+        this.pkg = pkg;
+        this.metrics = metrics;
+        workbookPart = pkg.workbookPart();
+        rels = new ArrayList<>(pkg.rels(workbookPart));
+        try (InputStream in = open(workbookPart)) {
+            document = WorkbookDocument.Factory.parse(in, POIXMLTypeLoader.DEFAULT_XML_OPTIONS);
+        } catch (XmlException e) {
+            throw new IOException("Invalid workbook: " + e.getMessage(), e);
+        }
+        workbook = document.getWorkbook();
+    }
+
+    /**
+     * Adds an empty worksheet after the last sheet.
+     *
+     * @throws IOException if the file does not exist or cannot be read or written
+     * @throws IllegalArgumentException if the name is invalid or taken
+     */
+    static void createSheet(String filePath, String sheetName) throws IOException {
+        edit(filePath, structure -> structure.create(sheetName));
+    }
+
+    /**
+     * Renames a sheet and the references to it in formulas, defined names
+     * and charts. Renaming a sheet to its own name does not write the file.
+     *
+     * @throws IOException if the file does not exist or cannot be read or written
+     * @throws IllegalArgumentException if the sheet does not exist, or the new
+     *                                  name is invalid or taken
+     */
+    static void renameSheet(String filePath, String oldName, String newName) throws IOException {
+        edit(filePath, structure -> structure.rename(oldName, newName));
+    }
+
+    /**
+     * Deletes a sheet with the parts that no other part refers to.
+     *
+     * @throws IOException if the file does not exist or cannot be read or written
+     * @throws IllegalArgumentException if the sheet does not exist
+     */
+    static void deleteSheet(String filePath, String sheetName) throws IOException {
+        edit(filePath, structure -> structure.delete(sheetName));
+    }
+
+    /**
+     * Moves a sheet to {@code position} (0-based) in the sheet order. Moving
+     * a sheet to where it is does not write the file.
+     *
+     * @throws IOException if the file does not exist or cannot be read or written
+     * @throws IllegalArgumentException if the sheet does not exist or the
+     *                                  position is out of range
+     */
+    static void moveSheet(String filePath, String sheetName, int position) throws IOException {
+        edit(filePath, structure -> structure.move(sheetName, position));
+    }
+
+    private static void edit(String filePath, Edit edit) throws IOException {
+        WorkbookSession.checkpoint(filePath);
+        File file = new File(filePath);
+        ToolMetrics metrics = new ToolMetrics();
+
+        long start = System.nanoTime();
+        try {
+            ExcelUtils.withLock(filePath, true, () -> {
+                try (WorkbookPackage pkg = new WorkbookPackage(file)) {
+                    long opened = System.nanoTime();
+                    metrics.addOpen(opened - start);
+                    WorkbookStructure structure = new WorkbookStructure(pkg, metrics);
+                    boolean changed = edit.apply(structure);
+                    metrics.addParse(System.nanoTime() - opened);
+                    if (changed) {
+                        structure.write(file.toPath());
+                    } else {
+                        metrics.setSaveSkipped(true);
+                    }
+                }
+                return null;
+            });
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid workbook: " + e.getMessage(), e);
+        } finally {
+            metrics.emit();
+        }
+    }
+
+    // ---- edits ----
+
+    private boolean create(String sheetName) {
+        WorkbookUtil.validateSheetName(sheetName);
+        if (indexOf(sheetName) >= 0) {
+            throw new IllegalArgumentException("Sheet already exists: " + sheetName);
+        }
+        Set<String> usedNames = new HashSet<>();
+        for (String entry : pkg.entries()) {
+            usedNames.add(entry.toLowerCase(Locale.ROOT));
+        }
+        String part = WorkbookPackage.allocate(
+                WorkbookPackage.dirOf(workbookPart) + "worksheets/sheet1.xml", usedNames);
+        String relId = Rel.newId(rels);
+        rels.add(new Rel(relId, WorkbookPackage.WORKSHEET, WorkbookPackage.relativize(workbookPart, part), false));
+
+        long sheetId = 0;
+        for (CTSheet sheet : workbook.getSheets().getSheetArray()) {
+            sheetId = Math.max(sheetId, sheet.getSheetId());
+        }
+        CTSheet sheet = workbook.getSheets().addNewSheet();
+        sheet.setName(sheetName);
+        sheet.setSheetId(sheetId + 1);
+        sheet.setId(relId);
+
+        added.put(part, WorkbookPackage.WORKSHEET_TYPE);
+        changed.put(part, out -> out.write(EMPTY_SHEET));
+        return true;
+    }
+
+    private boolean rename(String oldName, String newName) throws IOException {
+        int index = requireSheet(oldName);
+        CTSheet sheet = workbook.getSheets().getSheetArray(index);
+        String current = sheet.getName();
+        if (current.equals(newName)) {
+            return false;
+        }
+        WorkbookUtil.validateSheetName(newName);
+        int existing = indexOf(newName);
+        if (existing >= 0 && existing != index) {
+            throw new IllegalArgumentException("Sheet already exists: " + newName);
+        }
+        sheet.setName(newName);
+
+        if (workbook.isSetDefinedNames()) {
+            for (CTDefinedName name : workbook.getDefinedNames().getDefinedNameArray()) {
+                String formula = name.getStringValue();
+                String renamed = renameInFormula(formula, current, newName);
+                if (!renamed.equals(formula)) {
+                    name.setStringValue(renamed);
+                }
+            }
+        }
+
+        Reference references = new Reference(current, false);
+        Reference sources = new Reference(current, true);
+        for (String part : pkg.entries()) {
+            String type = pkg.contentType(part);
+            if (FORMULA_TYPES.contains(type) && contains(part, PIVOT_CACHE_TYPE.equals(type) ? sources : references)) {
+                changed.put(part, out -> renameInPart(part, current, newName, out));
+            }
+        }
+        return true;
+    }
+
+    private boolean delete(String sheetName) throws IOException {
+        int index = requireSheet(sheetName);
+        CTSheets sheets = workbook.getSheets();
+        Rel sheetRel = Rel.find(rels, sheets.getSheetArray(index).getId());
+        sheets.removeSheet(index);
+        int count = sheets.sizeOfSheetArray();
+
+        Map<String, Integer> references = countReferences();
+        if (sheetRel != null) {
+            rels.remove(sheetRel);
+            release(WorkbookPackage.resolve(workbookPart, sheetRel.target), references);
+        }
+        // The calculation chain lists the cells of every sheet; Excel rebuilds it.
+        for (Rel rel : new ArrayList<>(rels)) {
+            if (CALC_CHAIN.equals(rel.type)) {
+                rels.remove(rel);
+                release(WorkbookPackage.resolve(workbookPart, rel.target), references);
+            }
+        }
+
+        if (workbook.isSetDefinedNames()) {
+            CTDefinedNames names = workbook.getDefinedNames();
+            for (int i = names.sizeOfDefinedNameArray() - 1; i >= 0; i--) {
+                CTDefinedName name = names.getDefinedNameArray(i);
+                if (!name.isSetLocalSheetId()) {
+                    continue;
+                }
+                if (name.getLocalSheetId() == index) {
+                    names.removeDefinedName(i);
+                } else if (name.getLocalSheetId() > index) {
+                    name.setLocalSheetId(name.getLocalSheetId() - 1);
+                }
+            }
+            if (names.sizeOfDefinedNameArray() == 0) {
+                workbook.unsetDefinedNames();
+            }
+        }
+        // The sheet after the deleted one takes its place, or the one before it if it was last.
+        remapViews(i -> i > index || i >= count ? Math.max(0, i - 1) : i);
+        return true;
+    }
+
+    private boolean move(String sheetName, int position) {
+        int index = requireSheet(sheetName);
+        CTSheets sheets = workbook.getSheets();
+        int count = sheets.sizeOfSheetArray();
+        if (position < 0 || position >= count) {
+            throw new IllegalArgumentException("position must be between 0 and " + (count - 1) + ": " + position);
+        }
+        if (position == index) {
+            return false;
+        }
+
+        CTSheet sheet = (CTSheet) sheets.getSheetArray(index).copy();
+        sheets.removeSheet(index);
+        sheets.insertNewSheet(position).set(sheet);
+
+        IntUnaryOperator moved = i -> {
+            if (i == index) {
+                return position;
+            }
+            if (index < position && i > index && i <= position) {
+                return i - 1;
+            }
+            if (index > position && i >= position && i < index) {
+                return i + 1;
+            }
+            return i;
+        };
+        if (workbook.isSetDefinedNames()) {
+            for (CTDefinedName name : workbook.getDefinedNames().getDefinedNameArray()) {
+                if (name.isSetLocalSheetId()) {
+                    name.setLocalSheetId(moved.applyAsInt((int) name.getLocalSheetId()));
+                }
+            }
+        }
+        remapViews(moved);
+        return true;
+    }
+
+    /** Points the active tab of the workbook views at its sheet's new position. */
+    private void remapViews(IntUnaryOperator position) {
+        if (!workbook.isSetBookViews()) {
+            return;
+        }
+        int last = workbook.getSheets().sizeOfSheetArray() - 1;
+        for (CTBookView view : workbook.getBookViews().getWorkbookViewArray()) {
+            int active = (int) view.getActiveTab();
+            if (position.applyAsInt(active) != active) {
+                view.setActiveTab(position.applyAsInt(active));
+            }
+            // The first tab shown only scrolls the tab bar; it just has to stay in range.
+            if (view.isSetFirstSheet() && view.getFirstSheet() > last) {
+                view.setFirstSheet(Math.max(0, last));
+            }
+        }
+    }
+
+    /** Returns the position of a sheet, ignoring case as Excel does, or -1. */
+    private int indexOf(String sheetName) {
+        CTSheet[] sheets = workbook.getSheets().getSheetArray();
+        for (int i = 0; i < sheets.length; i++) {
+            if (sheets[i].getName().equalsIgnoreCase(sheetName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int requireSheet(String sheetName) {
+        int index = indexOf(sheetName);
+        if (index < 0) {
+            throw new IllegalArgumentException("Sheet not found: " + sheetName);
+        }
+        return index;
+    }
+
+    // ---- parts ----
+
+    /** Counts the relationships that point at each part, from all parts of the package. */
+    private Map<String, Integer> countReferences() throws IOException {
+        Map<String, Integer> references = new HashMap<>();
+        for (String entry : pkg.entries()) {
+            int dir = entry.lastIndexOf("_rels/");
+            if (dir < 0 || !entry.endsWith(".rels")) {
+                continue;
+            }
+            String source = entry.substring(0, dir) + entry.substring(dir + "_rels/".length(), entry.length() - 5);
+            for (Rel rel : pkg.rels(source)) {
+                if (!rel.external) {
+                    references.merge(WorkbookPackage.resolve(source, rel.target), 1, Integer::sum);
+                }
+            }
+        }
+        return references;
+    }
+
+    /** Drops one reference to a part, and removes the part and what it refers to when none is left. */
+    private void release(String part, Map<String, Integer> references) throws IOException {
+        if (references.merge(part, -1, Integer::sum) > 0 || !pkg.has(part) || !removed.add(part)) {
+            return;
+        }
+        String partRels = WorkbookPackage.relsName(part);
+        if (pkg.has(partRels)) {
+            removed.add(partRels);
+        }
+        for (Rel rel : pkg.rels(part)) {
+            if (!rel.external) {
+                release(WorkbookPackage.resolve(part, rel.target), references);
+            }
+        }
+    }
+
+    private InputStream open(String part) throws IOException {
+        ZipArchiveEntry entry = pkg.zip.getEntry(part);
+        if (entry != null) {
+            metrics.addBytesRead(entry.getCompressedSize());
+        }
+        return pkg.open(part);
+    }
+
+    private void write(Path file) throws IOException, XMLStreamException {
+        pkg.rewrite(file, metrics, (out, replaced) -> {
+            for (Map.Entry<String, PartWriter> part : changed.entrySet()) {
+                out.putArchiveEntry(new ZipArchiveEntry(part.getKey()));
+                part.getValue().write(out);
+                out.closeArchiveEntry();
+                replaced.add(part.getKey());
+            }
+            replaced.addAll(removed);
+
+            out.putArchiveEntry(new ZipArchiveEntry(workbookPart));
+            OutputStream xml = WorkbookPackage.shield(out);
+            document.save(xml, POIXMLTypeLoader.DEFAULT_XML_OPTIONS);
+            xml.flush();
+            out.closeArchiveEntry();
+            replaced.add(workbookPart);
+
+            String workbookRels = WorkbookPackage.relsName(workbookPart);
+            out.putArchiveEntry(new ZipArchiveEntry(workbookRels));
+            WorkbookPackage.writeRels(rels, out);
+            out.closeArchiveEntry();
+            replaced.add(workbookRels);
+
+            if (!added.isEmpty() || !removed.isEmpty()) {
+                out.putArchiveEntry(new ZipArchiveEntry(WorkbookPackage.CONTENT_TYPES));
+                pkg.writeContentTypes(added, removed, out);
+                out.closeArchiveEntry();
+                replaced.add(WorkbookPackage.CONTENT_TYPES);
+            }
+        });
+    }
+
+    // ---- renaming ----
+
+    /** Returns true if the uncompressed part may refer to the sheet {@code reference} looks for. */
+    private boolean contains(String part, Reference reference) throws IOException {
+        if (reference.tail.length == 0) {
+            return true;
+        }
+        byte[] buffer = new byte[1 << 16];
+        int kept = 0;
+        try (InputStream in = open(part)) {
+            int n;
+            while ((n = in.read(buffer, kept, buffer.length - kept)) > 0) {
+                int end = kept + n;
+                if (reference.foundIn(buffer, kept, end)) {
+                    return true;
+                }
+                // Keep what may precede a terminator in the next read.
+                kept = Math.min(reference.tail.length + APOS.length, end);
+                System.arraycopy(buffer, end - kept, buffer, 0, kept);
+            }
+        }
+        return false;
+    }
+
+    private static final byte[] APOS = "&apos;".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * What a reference to a sheet looks like in the bytes of a part: the end
+     * of its name that XML escaping, quoting and case cannot change (ASCII
+     * letters are matched in any case), followed by what ends a sheet name in
+     * a reference: "Old!", "'Old'!", "Old:Last!", and in pivot sources
+     * sheet="Old". The search looks for the rare terminators and checks what
+     * precedes them. An empty name end matches every part.
+     */
+    private static final class Reference {
+        final byte[] tail;
+        final boolean attribute;
+
+        Reference(String sheetName, boolean attribute) {
+            int start = sheetName.length();
+            while (start > 0 && isStable(sheetName.charAt(start - 1))) {
+                start--;
+            }
+            this.tail = sheetName.substring(start).toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+            this.attribute = attribute;
+        }
+
+        private static boolean isStable(char ch) {
+            return "'\"&<>".indexOf(ch) < 0
+                    && (ch < 0x80 || Character.toUpperCase(ch) == ch && Character.toLowerCase(ch) == ch);
+        }
+
+        /** Looks for terminators in {@code data[from, to)}, with the bytes before {@code from} for context. */
+        boolean foundIn(byte[] data, int from, int to) {
+            for (int i = from; i < to; i++) {
+                byte b = data[i];
+                if (b == '!') {
+                    if (endsWithTail(data, i) || i > 0 && data[i - 1] == '\'' && endsWithTail(data, i - 1)
+                            || endsWith(data, i, APOS) && endsWithTail(data, i - APOS.length)) {
+                        return true;
+                    }
+                } else if (b == ':' || b == '"' && attribute) {
+                    if (endsWithTail(data, i)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean endsWithTail(byte[] data, int end) {
+            int start = end - tail.length;
+            if (start < 0) {
+                return false;
+            }
+            for (int i = 0; i < tail.length; i++) {
+                if (lower(data[start + i]) != tail[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean endsWith(byte[] data, int end, byte[] suffix) {
+            int start = end - suffix.length;
+            if (start < 0) {
+                return false;
+            }
+            for (int i = 0; i < suffix.length; i++) {
+                if (data[start + i] != suffix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    /** Streams a part, renaming the sheet in its formulas and pivot sources. */
+    private void renameInPart(String part, String oldName, String newName, OutputStream out)
+            throws IOException, XMLStreamException {
+        try (InputStream in = open(part)) {
+            XMLEventReader reader = WorkbookPackage.INPUT.createXMLEventReader(in);
+            XMLEventWriter writer = WorkbookPackage.OUTPUT.createXMLEventWriter(WorkbookPackage.shield(out), "UTF-8");
+            StringBuilder formula = null;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (formula != null) {
+                    if (event.isCharacters()) {
+                        formula.append(event.asCharacters().getData());
+                        continue;
+                    }
+                    if (formula.length() > 0) {
+                        writer.add(EVENTS.createCharacters(renameInFormula(formula.toString(), oldName, newName)));
+                    }
+                    formula = null;
+                }
+                if (event.isStartElement()) {
+                    StartElement element = event.asStartElement();
+                    String name = element.getName().getLocalPart();
+                    if (FORMULA_ELEMENTS.contains(name)) {
+                        formula = new StringBuilder();
+                    } else if ("worksheetSource".equals(name)) {
+                        event = renameSource(element, oldName, newName);
+                    }
+                }
+                writer.add(event);
+            }
+            writer.flush();
+            writer.close();
+        }
+    }
+
+    /** Renames the sheet a pivot cache reads from. */
+    private static XMLEvent renameSource(StartElement element, String oldName, String newName) {
+        Attribute sheet = element.getAttributeByName(SHEET);
+        if (sheet == null || !sheet.getValue().equalsIgnoreCase(oldName)) {
+            return element;
+        }
+        List<Attribute> attributes = new ArrayList<>();
+        for (Iterator<Attribute> it = element.getAttributes(); it.hasNext(); ) {
+            Attribute a = it.next();
+            attributes.add(a.getName().equals(SHEET) ? EVENTS.createAttribute(SHEET, newName) : a);
+        }
+        return EVENTS.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+    }
+
+    /**
+     * Replaces the references to sheet {@code oldName} in a formula
+     * ("Old!A1", "'Old name'!A1", "Old:Other!A1") with {@code newName}.
+     * String literals, structured references and references into other
+     * workbooks ("[1]Old!A1") are left as they are.
+     */
+    static String renameInFormula(String formula, String oldName, String newName) {
+        StringBuilder result = new StringBuilder(formula.length());
+        int n = formula.length();
+        int i = 0;
+        while (i < n) {
+            char ch = formula.charAt(i);
+            int end;
+            if (ch == '"') {
+                end = skipQuoted(formula, i);
+            } else if (ch == '[') {
+                end = skipBrackets(formula, i);
+            } else if (ch == '\'' || isNameChar(ch)) {
+                List<String> names = new ArrayList<>(2);
+                if (ch == '\'') {
+                    end = skipQuoted(formula, i);
+                    String quoted = formula.substring(i + 1, Math.max(i + 1, end - 1)).replace("''", "'");
+                    if (quoted.indexOf('[') < 0) {
+                        names.addAll(List.of(quoted.split(":", 2)));
+                    }
+                } else {
+                    end = nameEnd(formula, i);
+                    names.add(formula.substring(i, end));
+                    if (end < n && formula.charAt(end) == ':') {
+                        int second = nameEnd(formula, end + 1);
+                        if (second > end + 1 && second < n && formula.charAt(second) == '!') {
+                            names.add(formula.substring(end + 1, second));
+                            end = second;
+                        }
+                    }
+                }
+                boolean reference = end < n && formula.charAt(end) == '!' && (i == 0 || formula.charAt(i - 1) != ']');
+                if (reference && names.stream().anyMatch(oldName::equalsIgnoreCase)) {
+                    result.append(sheetReference(names, oldName, newName));
+                    i = end;
+                    continue;
+                }
+            } else {
+                end = i + 1;
+            }
+            result.append(formula, i, end);
+            i = end;
+        }
+        return result.toString();
+    }
+
+    /** Writes "Sheet" or "First:Last" with the sheet renamed, quoted if either name needs it. */
+    private static String sheetReference(List<String> names, String oldName, String newName) {
+        List<String> renamed = new ArrayList<>(names.size());
+        boolean quote = false;
+        for (String name : names) {
+            String sheet = name.equalsIgnoreCase(oldName) ? newName : name;
+            quote |= !SheetNameFormatter.format(sheet).equals(sheet);
+            renamed.add(sheet);
+        }
+        String joined = String.join(":", renamed);
+        return quote ? "'" + joined.replace("'", "''") + "'" : joined;
+    }
+
+    /** Returns the end of the quoted text starting at {@code start}, where a doubled quote is part of the text. */
+    private static int skipQuoted(String formula, int start) {
+        char quote = formula.charAt(start);
+        int i = start + 1;
+        while (i < formula.length()) {
+            if (formula.charAt(i) == quote) {
+                if (i + 1 < formula.length() && formula.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /** Returns the end of the (possibly nested) brackets starting at {@code start}; "'" escapes within them. */
+    private static int skipBrackets(String formula, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < formula.length()) {
+            char ch = formula.charAt(i++);
+            if (ch == '\'') {
+                i++;
+            } else if (ch == '[') {
+                depth++;
+            } else if (ch == ']' && --depth == 0) {
+                break;
+            }
+        }
+        return Math.min(i, formula.length());
+    }
+
+    private static int nameEnd(String formula, int start) {
+        int i = start;
+        while (i < formula.length() && isNameChar(formula.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNameChar(char ch) {
+        return Character.isLetterOrDigit(ch) || ch == '_' || ch == '.' || ch == '\\';
+    }
+}
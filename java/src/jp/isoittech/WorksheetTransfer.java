@@ -0,0 +1,758 @@
+/**
+ * Copies a worksheet into another workbook without loading either of them
+ * (see {@link CopyWorksheetTool}).
+ *
+ * <p>The target package is rewritten entry by entry into a temporary file
+ * that is then renamed over it: the entries that do not change are copied
+ * raw, still compressed, and the sheet XML is streamed from the source
+ * package with StAX, so that the heap stays flat however large the sheet
+ * is. While the sheet streams, its shared string indices and style indices
+ * are translated through lookup tables built once:
+ * <ul>
+ *     <li>the shared strings the sheet uses are appended to the target's
+ *     table, found by a first pass over the sheet;</li>
+ *     <li>each cell style the sheet uses is recreated in the target, with
+ *     its font, fill, border and number format, and reused if the target
+ *     already has it; conditional formats are handled the same way.</li>
+ * </ul>
+ * Drawings, images, charts, comments and the other parts the sheet refers
+ * to are carried along as raw parts under free names. Tables, pivot tables
+ * and slicers belong to the whole workbook and are left behind; formulas
+ * are copied as written, and charts referring to the sheet by name are
+ * pointed at the new name. Theme colors take the target's theme.
+ */
+package jp.isoittech;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import jp.isoittech.WorkbookPackage.Rel;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.poi.ss.formula.SheetNameFormatter;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFFont;
+import org.apache.poi.xssf.usermodel.extensions.XSSFCellBorder;
+import org.apache.poi.xssf.usermodel.extensions.XSSFCellFill;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTBorder;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTDxf;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTFill;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTFont;
+import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTXf;
+
+final class WorksheetTransfer {
+
+    private static final String MAIN_NS = WorkbookPackage.MAIN_NS;
+    private static final String REL_NS = WorkbookPackage.REL_NS;
+    private static final String WORKSHEET = WorkbookPackage.WORKSHEET;
+    private static final String STYLES = REL_NS + "/styles";
+    private static final String SHARED_STRINGS = REL_NS + "/sharedStrings";
+
+    private static final String WORKSHEET_TYPE = WorkbookPackage.WORKSHEET_TYPE;
+    private static final String SHARED_STRINGS_TYPE =
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sharedStrings+xml";
+    private static final String CHART_TYPE = "application/vnd.openxmlformats-officedocument.drawingml.chart+xml";
+
+    /** Relationship types, by their last segment, of parts that belong to the whole workbook. */
+    private static final Set<String> WORKBOOK_LEVEL = Set.of(
+            "worksheet", "chartsheet", "table", "pivotTable", "slicer", "timeline");
+
+    /** Number formats below this id are built in and mean the same in every workbook. */
+    private static final int FIRST_CUSTOM_FORMAT = 164;
+
+    private static final QName R_ID = new QName(REL_NS, "id");
+    private static final QName TYPE = new QName("t");
+    private static final QName STYLE = new QName("s");
+    private static final XMLInputFactory INPUT = WorkbookPackage.INPUT;
+    private static final XMLOutputFactory OUTPUT = WorkbookPackage.OUTPUT;
+    private static final XMLEventFactory EVENTS = XMLEventFactory.newInstance();
+
+    private final WorkbookPackage source;
+    private final WorkbookPackage target;
+    private final ToolMetrics metrics;
+    /** Lower-case names of the entries of the new package, for allocating free part names. */
+    private final Set<String> usedNames = new HashSet<>();
+    /** Source part name to the name of its copy in the target. */
+    private final Map<String, String> carried = new HashMap<>();
+
+    private StylesTable sourceStyles;
+    private StylesTable targetStyles;
+    private int[] styleMap;
+    private int[] dxfMap;
+    /** Target cell style XML to its first index; built on the first copied style. */
+    private Map<String, Integer> targetXfs;
+    private boolean stylesChanged;
+
+    /** Source shared string index to target index; -1 where the sheet does not use it. */
+    private int[] stringMap;
+    private BitSet usedStrings;
+    private int targetStringCount;
+    private long sharedCells;
+
+    private WorksheetTransfer(WorkbookPackage source, WorkbookPackage target, ToolMetrics metrics) {
+        this.source = source;
+        this.target = target;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Copies {@code sourceSheet} of one workbook into another as
+     * {@code targetSheet}, the last sheet of the target.
+     *
+     * @throws IOException if a file does not exist or cannot be read or written
+     * @throws IllegalArgumentException if the source sheet does not exist or
+     *                                  the target already has a sheet of that name
+     */
+    static void copy(String sourcePath, String sourceSheet, String targetPath, String targetSheet)
+            throws IOException {
+        WorkbookUtil.validateSheetName(targetSheet);
+        WorkbookSession.checkpoint(sourcePath);
+        WorkbookSession.checkpoint(targetPath);
+        File sourceFile = new File(sourcePath);
+        File targetFile = new File(targetPath);
+        ToolMetrics metrics = new ToolMetrics();
+
+        long start = System.nanoTime();
+        // Saves rename a new file over the old one, so the open zip keeps reading this version.
+        WorkbookPackage sourcePackage = ExcelUtils.withLock(sourcePath, false, () -> new WorkbookPackage(sourceFile));
+        try (WorkbookPackage src = sourcePackage) {
+            ExcelUtils.withLock(targetPath, true, () -> {
+                try (WorkbookPackage dst = new WorkbookPackage(targetFile)) {
+                    metrics.addOpen(System.nanoTime() - start);
+                    metrics.addBytesRead(sourceFile.length() + targetFile.length());
+                    new WorksheetTransfer(src, dst, metrics).run(sourceSheet, targetSheet, targetFile.toPath());
+                }
+                return null;
+            });
+        } catch (XMLStreamException e) {
+            throw new IOException("Invalid workbook: " + e.getMessage(), e);
+        } finally {
+            metrics.emit();
+        }
+    }
+
+    private void run(String sourceSheet, String targetSheet, Path targetFile) throws IOException, XMLStreamException {
+        long start = System.nanoTime();
+
+        // Where the sheet comes from.
+        String sourceWorkbook = source.workbookPart();
+        Map<String, String> sourceSheets = readSheets(source, sourceWorkbook);
+        String sheetId = sourceSheets.get(sourceSheet);
+        if (sheetId == null) {
+            throw new IllegalArgumentException("Sheet not found: " + sourceSheet);
+        }
+        List<Rel> sourceWorkbookRels = source.rels(sourceWorkbook);
+        Rel sheetRel = Rel.find(sourceWorkbookRels, sheetId);
+        if (sheetRel == null || !WORKSHEET.equals(sheetRel.type)) {
+            throw new IllegalArgumentException("Not a worksheet: " + sourceSheet);
+        }
+        String sheetPart = WorkbookPackage.resolve(sourceWorkbook, sheetRel.target);
+
+        // Where it goes.
+        String targetWorkbook = target.workbookPart();
+        Map<String, String> targetSheets = readSheets(target, targetWorkbook);
+        for (String name : targetSheets.keySet()) {
+            if (name.equalsIgnoreCase(targetSheet)) {
+                throw new IllegalArgumentException("Sheet already exists: " + targetSheet);
+            }
+        }
+        List<Rel> targetWorkbookRels = new ArrayList<>(target.rels(targetWorkbook));
+        for (String entry : target.entries()) {
+            usedNames.add(entry.toLowerCase(Locale.ROOT));
+        }
+
+        loadStyles(sourceWorkbook, sourceWorkbookRels, targetWorkbook, targetWorkbookRels);
+        String sourceStrings = source.partOfType(sourceWorkbook, sourceWorkbookRels, SHARED_STRINGS);
+        String targetStrings = target.partOfType(targetWorkbook, targetWorkbookRels, SHARED_STRINGS);
+        if (sourceStrings != null) {
+            mapStrings(sheetPart, targetStrings);
+        }
+        metrics.addParse(System.nanoTime() - start);
+
+        // Write the new package next to the target and rename it over it.
+        target.rewrite(targetFile, metrics, (out, replaced) -> {
+            String newSheetPart = allocate(WorkbookPackage.dirOf(targetWorkbook) + "worksheets/sheet1.xml");
+            carried.put(sheetPart, newSheetPart);
+            Set<String> skipped = carryRelated(out, sheetPart, newSheetPart, sourceSheet, targetSheet);
+            out.putArchiveEntry(new ZipArchiveEntry(newSheetPart));
+            copySheet(sheetPart, skipped, out);
+            out.closeArchiveEntry();
+
+            Map<String, String> newTypes = new LinkedHashMap<>();
+            for (Map.Entry<String, String> part : carried.entrySet()) {
+                newTypes.put(part.getValue(), source.contentType(part.getKey()));
+            }
+            newTypes.put(newSheetPart, WORKSHEET_TYPE);
+
+            if (usedStrings != null && !usedStrings.isEmpty()) {
+                String stringsPart = targetStrings;
+                if (stringsPart == null) {
+                    stringsPart = allocate(WorkbookPackage.dirOf(targetWorkbook) + "sharedStrings.xml");
+                    targetWorkbookRels.add(new Rel(Rel.newId(targetWorkbookRels), SHARED_STRINGS,
+                            WorkbookPackage.relativize(targetWorkbook, stringsPart), false));
+                    newTypes.put(stringsPart, SHARED_STRINGS_TYPE);
+                }
+                out.putArchiveEntry(new ZipArchiveEntry(stringsPart));
+                writeStrings(sourceStrings, targetStrings, out);
+                out.closeArchiveEntry();
+                replaced.add(stringsPart);
+            }
+            if (stylesChanged) {
+                String stylesPart = target.partOfType(targetWorkbook, targetWorkbookRels, STYLES);
+                out.putArchiveEntry(new ZipArchiveEntry(stylesPart));
+                OutputStream styles = WorkbookPackage.shield(out);
+                targetStyles.writeTo(styles);
+                styles.flush();
+                out.closeArchiveEntry();
+                replaced.add(stylesPart);
+            }
+
+            String newRelId = Rel.newId(targetWorkbookRels);
+            targetWorkbookRels.add(new Rel(newRelId, WORKSHEET,
+                    WorkbookPackage.relativize(targetWorkbook, newSheetPart), false));
+            out.putArchiveEntry(new ZipArchiveEntry(targetWorkbook));
+            writeWorkbook(targetWorkbook, targetSheet, nextSheetId(targetWorkbook), newRelId, out);
+            out.closeArchiveEntry();
+            replaced.add(targetWorkbook);
+
+            String workbookRels = WorkbookPackage.relsName(targetWorkbook);
+            out.putArchiveEntry(new ZipArchiveEntry(workbookRels));
+            WorkbookPackage.writeRels(targetWorkbookRels, out);
+            out.closeArchiveEntry();
+            replaced.add(workbookRels);
+
+            out.putArchiveEntry(new ZipArchiveEntry(WorkbookPackage.CONTENT_TYPES));
+            target.writeContentTypes(newTypes, Collections.emptySet(), out);
+            out.closeArchiveEntry();
+            replaced.add(WorkbookPackage.CONTENT_TYPES);
+        });
+    }
+
+    // ---- the sheet ----
+
+    /**
+     * Streams the sheet XML, translating style, conditional format and
+     * shared string indices, and dropping the references to parts that were
+     * left behind.
+     */
+    private void copySheet(String sheetPart, Set<String> skippedIds, OutputStream out)
+            throws IOException, XMLStreamException {
+        try (InputStream in = source.open(sheetPart)) {
+            XMLEventReader reader = INPUT.createXMLEventReader(in);
+            XMLEventWriter writer = OUTPUT.createXMLEventWriter(WorkbookPackage.shield(out), "UTF-8");
+            int skipDepth = 0;
+            boolean sharedCell = false;
+            StringBuilder sharedValue = null;
+            long cells = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (skipDepth > 0) {
+                    if (event.isStartElement()) {
+                        skipDepth++;
+                    } else if (event.isEndElement()) {
+                        skipDepth--;
+                    }
+                    continue;
+                }
+                if (event.isStartElement()) {
+                    StartElement element = event.asStartElement();
+                    String name = element.getName().getLocalPart();
+                    Attribute relId = element.getAttributeByName(R_ID);
+                    if ("tableParts".equals(name) || relId != null && skippedIds.contains(relId.getValue())) {
+                        skipDepth = 1;
+                        continue;
+                    }
+                    if (MAIN_NS.equals(element.getName().getNamespaceURI())) {
+                        switch (name) {
+                            case "c":
+                                cells++;
+                                Attribute type = element.getAttributeByName(TYPE);
+                                sharedCell = type != null && "s".equals(type.getValue());
+                                event = mapAttribute(element, STYLE, this::mapStyle);
+                                break;
+                            case "row":
+                                event = mapAttribute(element, STYLE, this::mapStyle);
+                                break;
+                            case "col":
+                                event = mapAttribute(element, new QName("style"), this::mapStyle);
+                                break;
+                            case "cfRule":
+                                event = mapAttribute(element, new QName("dxfId"), this::mapDxf);
+                                break;
+                            case "sheetView":
+                                // Two selected tabs would group the sheets.
+                                event = mapAttribute(element, new QName("tabSelected"), i -> -1);
+                                break;
+                            case "v":
+                                if (sharedCell) {
+                                    sharedValue = new StringBuilder();
+                                }
+                                break;
+                            default:
+                                break;
+                        }
+                    }
+                } else if (sharedValue != null) {
+                    if (event.isCharacters()) {
+                        sharedValue.append(event.asCharacters().getData());
+                        continue;
+                    }
+                    if (event.isEndElement()) {
+                        writer.add(EVENTS.createCharacters(Integer.toString(mapString(sharedValue.toString()))));
+                        sharedValue = null;
+                    }
+                } else if (event.isEndElement() && "c".equals(event.asEndElement().getName().getLocalPart())) {
+                    sharedCell = false;
+                }
+                writer.add(event);
+            }
+            writer.flush();
+            writer.close();
+            metrics.addCellsTouched(cells);
+        }
+    }
+
+    /** An index translation; returns -1 to drop the attribute. */
+    private interface IndexMap {
+        int map(int index) throws IOException;
+    }
+
+    private static XMLEvent mapAttribute(StartElement element, QName name, IndexMap map) throws IOException {
+        Attribute attribute = element.getAttributeByName(name);
+        if (attribute == null) {
+            return element;
+        }
+        int mapped;
+        try {
+            mapped = map.map(Integer.parseInt(attribute.getValue()));
+        } catch (NumberFormatException e) {
+            // Booleans such as tabSelected="true".
+            mapped = map.map(0);
+        }
+        if (Integer.toString(mapped).equals(attribute.getValue())) {
+            return element;
+        }
+        List<Attribute> attributes = new ArrayList<>();
+        for (Iterator<Attribute> it = element.getAttributes(); it.hasNext(); ) {
+            Attribute a = it.next();
+            if (a.getName().equals(attribute.getName())) {
+                if (mapped >= 0) {
+                    attributes.add(EVENTS.createAttribute(a.getName(), Integer.toString(mapped)));
+                }
+            } else {
+                attributes.add(a);
+            }
+        }
+        return EVENTS.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+    }
+
+    // ---- shared strings ----
+
+    /**
+     * Finds the shared strings the sheet uses and gives them the indices
+     * they will have at the end of the target's table.
+     */
+    private void mapStrings(String sheetPart, String targetStrings) throws IOException, XMLStreamException {
+        usedStrings = new BitSet();
+        try (InputStream in = source.open(sheetPart)) {
+            XMLStreamReader reader = INPUT.createXMLStreamReader(in);
+            boolean sharedCell = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("c".equals(name)) {
+                        sharedCell = "s".equals(reader.getAttributeValue(null, "t"));
+                    } else if ("v".equals(name) && sharedCell) {
+                        usedStrings.set(parseIndex(reader.getElementText()));
+                        sharedCells++;
+                    }
+                }
+            }
+            reader.close();
+        }
+        if (usedStrings.isEmpty()) {
+            return;
+        }
+
+        targetStringCount = targetStrings == null ? 0 : countStrings(targetStrings);
+        stringMap = new int[usedStrings.length()];
+        Arrays.fill(stringMap, -1);
+        int next = targetStringCount;
+        for (int i = usedStrings.nextSetBit(0); i >= 0; i = usedStrings.nextSetBit(i + 1)) {
+            stringMap[i] = next++;
+        }
+    }
+
+    private int mapString(String value) {
+        return stringMap[parseIndex(value)];
+    }
+
+    private int countStrings(String part) throws IOException, XMLStreamException {
+        int count = 0;
+        try (InputStream in = target.open(part)) {
+            XMLStreamReader reader = INPUT.createXMLStreamReader(in);
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (++depth == 2 && "si".equals(reader.getLocalName())) {
+                        count++;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the target's shared strings, or a new table if
+     * {@code targetStrings} is null, followed by the source strings the
+     * sheet uses.
+     */
+    private void writeStrings(String sourceStrings, String targetStrings, OutputStream out)
+            throws IOException, XMLStreamException {
+        XMLEventWriter writer = OUTPUT.createXMLEventWriter(WorkbookPackage.shield(out), "UTF-8");
+        if (targetStrings == null) {
+            writer.add(EVENTS.createStartDocument("UTF-8", "1.0", true));
+            writer.add(EVENTS.createStartElement("", MAIN_NS, "sst"));
+            writer.add(EVENTS.createNamespace(MAIN_NS));
+            writer.add(EVENTS.createAttribute("count", Long.toString(sharedCells)));
+            writer.add(EVENTS.createAttribute("uniqueCount", Integer.toString(usedStrings.cardinality())));
+            appendStrings(sourceStrings, writer);
+            writer.add(EVENTS.createEndElement("", MAIN_NS, "sst"));
+        } else {
+            try (InputStream in = target.open(targetStrings)) {
+                XMLEventReader reader = INPUT.createXMLEventReader(in);
+                int depth = 0;
+                while (reader.hasNext()) {
+                    XMLEvent event = reader.nextEvent();
+                    if (event.isStartElement() && ++depth == 1) {
+                        event = countedTable(event.asStartElement());
+                    } else if (event.isEndElement() && --depth == 0) {
+                        appendStrings(sourceStrings, writer);
+                    }
+                    writer.add(event);
+                }
+            }
+        }
+        writer.flush();
+        writer.close();
+    }
+
+    /** Updates the counts of the target's table for the appended strings. */
+    private StartElement countedTable(StartElement sst) {
+        List<Attribute> attributes = new ArrayList<>();
+        for (Iterator<Attribute> it = sst.getAttributes(); it.hasNext(); ) {
+            Attribute a = it.next();
+            String name = a.getName().getLocalPart();
+            if (!a.getName().getNamespaceURI().isEmpty() || !"count".equals(name) && !"uniqueCount".equals(name)) {
+                attributes.add(a);
+            }
+        }
+        long count = sharedCells;
+        Attribute old = sst.getAttributeByName(new QName("count"));
+        if (old != null) {
+            count += Long.parseLong(old.getValue());
+        }
+        attributes.add(EVENTS.createAttribute("count", Long.toString(count)));
+        attributes.add(EVENTS.createAttribute("uniqueCount",
+                Integer.toString(targetStringCount + usedStrings.cardinality())));
+        return EVENTS.createStartElement(sst.getName(), attributes.iterator(), sst.getNamespaces());
+    }
+
+    private void appendStrings(String sourceStrings, XMLEventWriter writer) throws IOException, XMLStreamException {
+        try (InputStream in = source.open(sourceStrings)) {
+            XMLEventReader reader = INPUT.createXMLEventReader(in);
+            int depth = 0;
+            int index = -1;
+            boolean copying = false;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && ++depth == 2) {
+                    copying = usedStrings.get(++index);
+                }
+                if (copying) {
+                    writer.add(event);
+                }
+                if (event.isEndElement() && --depth == 1) {
+                    copying = false;
+                }
+            }
+        }
+    }
+
+    private static int parseIndex(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid shared string index: " + value, e);
+        }
+    }
+
+    // ---- styles ----
+
+    private void loadStyles(String sourceWorkbook, List<Rel> sourceRels, String targetWorkbook, List<Rel> targetRels)
+            throws IOException {
+        String sourcePart = source.partOfType(sourceWorkbook, sourceRels, STYLES);
+        String targetPart = target.partOfType(targetWorkbook, targetRels, STYLES);
+        if (sourcePart == null || targetPart == null) {
+            // Without styles on both sides, every cell keeps the default style.
+            return;
+        }
+        try (InputStream in = source.open(sourcePart)) {
+            sourceStyles = new StylesTable(in);
+        }
+        try (InputStream in = target.open(targetPart)) {
+            targetStyles = new StylesTable(in);
+        }
+        styleMap = new int[sourceStyles.getNumCellStyles()];
+        Arrays.fill(styleMap, -1);
+        dxfMap = new int[sourceStyles._getDXfsSize()];
+        Arrays.fill(dxfMap, -1);
+    }
+
+    /** Returns the target index of source cell style {@code index}, creating the style if needed. */
+    private int mapStyle(int index) {
+        if (styleMap == null || index < 0 || index >= styleMap.length) {
+            return 0;
+        }
+        if (styleMap[index] < 0) {
+            styleMap[index] = copyStyle(index);
+        }
+        return styleMap[index];
+    }
+
+    private int copyStyle(int index) {
+        CTXf xf = (CTXf) sourceStyles.getCellXfAt(index).copy();
+        if (xf.isSetFontId()) {
+            CTFont font = sourceStyles.getFontAt((int) xf.getFontId()).getCTFont();
+            xf.setFontId(targetStyles.putFont(new XSSFFont((CTFont) font.copy())));
+        }
+        if (xf.isSetFillId()) {
+            CTFill fill = sourceStyles.getFillAt((int) xf.getFillId()).getCTFill();
+            xf.setFillId(targetStyles.putFill(new XSSFCellFill((CTFill) fill.copy(), targetStyles.getIndexedColors())));
+        }
+        if (xf.isSetBorderId()) {
+            CTBorder border = sourceStyles.getBorderAt((int) xf.getBorderId()).getCTBorder();
+            xf.setBorderId(targetStyles.putBorder(new XSSFCellBorder((CTBorder) border.copy(),
+                    targetStyles.getTheme(), targetStyles.getIndexedColors())));
+        }
+        if (xf.isSetNumFmtId() && xf.getNumFmtId() >= FIRST_CUSTOM_FORMAT) {
+            String format = sourceStyles.getNumberFormatAt((short) xf.getNumFmtId());
+            xf.setNumFmtId(format == null ? 0 : targetStyles.putNumberFormat(format));
+        }
+        if (xf.isSetXfId()) {
+            // Named cell styles are not copied; the cell keeps its own formatting.
+            xf.setXfId(0);
+        }
+
+        if (targetXfs == null) {
+            targetXfs = new HashMap<>();
+            for (int i = 0; i < targetStyles.getNumCellStyles(); i++) {
+                targetXfs.putIfAbsent(targetStyles.getCellXfAt(i).xmlText(), i);
+            }
+        }
+        String xml = xf.xmlText();
+        Integer existing = targetXfs.get(xml);
+        if (existing != null) {
+            return existing;
+        }
+        int created = targetStyles.getNumCellStyles();
+        targetStyles.putCellXf(xf);
+        targetXfs.put(xml, created);
+        stylesChanged = true;
+        return created;
+    }
+
+    /** Returns the target index of source conditional format {@code index}, copying it if needed. */
+    private int mapDxf(int index) {
+        if (dxfMap == null || index < 0 || index >= dxfMap.length) {
+            return index;
+        }
+        if (dxfMap[index] < 0) {
+            // putDxf returns the new number of formats.
+            dxfMap[index] = targetStyles.putDxf((CTDxf) sourceStyles.getDxfAt(index).copy()) - 1;
+            stylesChanged = true;
+        }
+        return dxfMap[index];
+    }
+
+    // ---- related parts ----
+
+    /**
+     * Copies the parts related to {@code sourcePart}, and theirs, and writes
+     * the relationships of its copy {@code newPart}. Returns the ids of the
+     * relationships left behind.
+     */
+    private Set<String> carryRelated(ZipArchiveOutputStream out, String sourcePart, String newPart,
+                                     String sourceSheet, String targetSheet) throws IOException {
+        List<Rel> rels = source.rels(sourcePart);
+        if (rels.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> skipped = new HashSet<>();
+        List<Rel> newRels = new ArrayList<>();
+        for (Rel rel : rels) {
+            if (rel.external) {
+                newRels.add(rel);
+                continue;
+            }
+            String related = WorkbookPackage.resolve(sourcePart, rel.target);
+            if (WORKBOOK_LEVEL.contains(rel.type.substring(rel.type.lastIndexOf('/') + 1)) || !source.has(related)) {
+                skipped.add(rel.id);
+                continue;
+            }
+            String copy = carried.get(related);
+            if (copy == null) {
+                copy = allocate(related);
+                carried.put(related, copy);
+                copyPart(out, related, copy, sourceSheet, targetSheet);
+                carryRelated(out, related, copy, sourceSheet, targetSheet);
+            }
+            newRels.add(new Rel(rel.id, rel.type, WorkbookPackage.relativize(newPart, copy), false));
+        }
+        out.putArchiveEntry(new ZipArchiveEntry(WorkbookPackage.relsName(newPart)));
+        WorkbookPackage.writeRels(newRels, out);
+        out.closeArchiveEntry();
+        return skipped;
+    }
+
+    /**
+     * Copies a part as it is, still compressed, except for charts referring
+     * to the sheet by its old name.
+     */
+    private void copyPart(ZipArchiveOutputStream out, String sourcePart, String newPart,
+                          String sourceSheet, String targetSheet) throws IOException {
+        if (CHART_TYPE.equals(source.contentType(sourcePart)) && !sourceSheet.equals(targetSheet)) {
+            String xml;
+            try (InputStream in = source.open(sourcePart)) {
+                xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            out.putArchiveEntry(new ZipArchiveEntry(newPart));
+            out.write(renameSheet(xml, sourceSheet, targetSheet).getBytes(StandardCharsets.UTF_8));
+            out.closeArchiveEntry();
+            return;
+        }
+        source.copyRaw(out, sourcePart, newPart);
+    }
+
+    /** Points the references of a chart ("Sheet1!$B$2:$B$5") at the new sheet name. */
+    private static String renameSheet(String xml, String sourceSheet, String targetSheet) {
+        String quoted = escape(SheetNameFormatter.format(sourceSheet));
+        String plain = escape(sourceSheet);
+        Pattern reference = Pattern.compile("(?<=[>(,])(?:" + Pattern.quote(quoted) + "|"
+                + Pattern.quote(quoted.replace("'", "&apos;")) + "|" + Pattern.quote(plain) + ")!");
+        return reference.matcher(xml).replaceAll(Matcher.quoteReplacement(
+                escape(SheetNameFormatter.format(targetSheet)) + "!"));
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // ---- workbook, relationships and content types ----
+
+    /** Returns the names of the sheets of a workbook with their relationship ids, in order. */
+    private static Map<String, String> readSheets(WorkbookPackage pkg, String workbookPart)
+            throws IOException, XMLStreamException {
+        Map<String, String> sheets = new LinkedHashMap<>();
+        try (InputStream in = pkg.open(workbookPart)) {
+            XMLStreamReader reader = INPUT.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "sheet".equals(reader.getLocalName())) {
+                    sheets.put(reader.getAttributeValue(null, "name"), reader.getAttributeValue(REL_NS, "id"));
+                }
+            }
+            reader.close();
+        }
+        return sheets;
+    }
+
+    private long nextSheetId(String workbookPart) throws IOException, XMLStreamException {
+        long max = 0;
+        try (InputStream in = target.open(workbookPart)) {
+            XMLStreamReader reader = INPUT.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "sheet".equals(reader.getLocalName())) {
+                    max = Math.max(max, Long.parseLong(reader.getAttributeValue(null, "sheetId")));
+                }
+            }
+            reader.close();
+        }
+        return max + 1;
+    }
+
+    /** Copies the target workbook part with the new sheet added at the end of its sheets. */
+    private void writeWorkbook(String workbookPart, String sheetName, long sheetId, String relId, OutputStream out)
+            throws IOException, XMLStreamException {
+        try (InputStream in = target.open(workbookPart)) {
+            XMLEventReader reader = INPUT.createXMLEventReader(in);
+            XMLEventWriter writer = OUTPUT.createXMLEventWriter(WorkbookPackage.shield(out), "UTF-8");
+            String relPrefix = null;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && "sheets".equals(event.asStartElement().getName().getLocalPart())) {
+                    relPrefix = event.asStartElement().getNamespaceContext().getPrefix(REL_NS);
+                } else if (event.isEndElement() && "sheets".equals(event.asEndElement().getName().getLocalPart())) {
+                    QName sheets = event.asEndElement().getName();
+                    List<Attribute> attributes = new ArrayList<>();
+                    attributes.add(EVENTS.createAttribute("name", sheetName));
+                    attributes.add(EVENTS.createAttribute("sheetId", Long.toString(sheetId)));
+                    List<Namespace> namespaces = new ArrayList<>();
+                    if (relPrefix == null) {
+                        relPrefix = "r";
+                        namespaces.add(EVENTS.createNamespace(relPrefix, REL_NS));
+                    }
+                    attributes.add(EVENTS.createAttribute(relPrefix, REL_NS, "id", relId));
+                    QName sheet = new QName(sheets.getNamespaceURI(), "sheet", sheets.getPrefix());
+                    writer.add(EVENTS.createStartElement(sheet, attributes.iterator(), namespaces.iterator()));
+                    writer.add(EVENTS.createEndElement(sheet, null));
+                }
+                writer.add(event);
+            }
+            writer.flush();
+            writer.close();
+        }
+    }
+
+    private String allocate(String wanted) {
+        return WorkbookPackage.allocate(wanted, usedNames);
+    }
+}
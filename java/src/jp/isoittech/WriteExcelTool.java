@@ -3,26 +3,23 @@
  * worksheet. Data is provided as a simple JSON array of arrays and
  * written starting from the top-left cell.
  *
+ * <p>The data is the JSON text itself, {@code "-"} to read it from standard
+ * input, or {@code "@path"} to read it from a file; see {@link JsonRowReader}.
+ *
  * <p>The interface corresponds to the "write_excel" tool described in
  * README.JA.md.
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonArray;
-import com.google.gson.JsonParser;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class WriteExcelTool {
 
@@ -31,7 +28,7 @@ public class WriteExcelTool {
      * <ol>
      *     <li>filePath - path to the .xlsx file</li>
      *     <li>sheetName - name of the worksheet</li>
-     *     <li>jsonData - JSON array of arrays representing rows and cells</li>
+     *     <li>jsonData - JSON array of arrays representing rows and cells, "-" or "@path"</li>
      * </ol>
      *
      * <p>Example of jsonData:
@@ -41,39 +38,38 @@ public class WriteExcelTool {
      */
     public static void main(String[] args) throws Exception {
         if (args.length != 3) {
-            System.err.println("Usage: WriteExcelTool <filePath> <sheetName> <jsonData>");
-            System.exit(1);
+            throw new IllegalArgumentException("Usage: WriteExcelTool <filePath> <sheetName> <jsonData|-|@path>");
         }
 
         String filePath = args[0];
         String sheetName = args[1];
         String jsonData = args[2];
 
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
-        }
-
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            Workbook workbook = session.getWorkbook();
 
+            boolean created = workbook.getSheet(sheetName) == null;
             Sheet sheet = ExcelUtils.getOrCreateSheet(workbook, sheetName);
 
-            JsonArray rows = JsonParser.parseString(jsonData).getAsJsonArray();
-            writeMatrix(sheet, rows);
-
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
+            boolean changed;
+            try (JsonRowReader rows = JsonRowReader.open(jsonData)) {
+                changed = writeMatrix(sheet, rows, session.getMetrics()) || created;
             }
+
+            session.saveIfChanged(changed);
         }
     }
 
     /**
-     * Writes matrix-like JSON to the sheet starting from cell A1.
+     * Writes matrix-like JSON to the sheet starting from cell A1, each row
+     * as soon as it is read. Returns true if any cell changed.
      */
-    private static void writeMatrix(Sheet sheet, JsonArray rows) {
-        for (int r = 0; r < rows.size(); r++) {
-            JsonArray rowArray = rows.get(r).getAsJsonArray();
+    private static boolean writeMatrix(Sheet sheet, JsonRowReader rows, ToolMetrics metrics) throws IOException {
+        long cells = 0;
+        boolean changed = false;
+        JsonArray rowArray;
+        for (int r = 0; (rowArray = rows.nextRow()) != null; r++) {
+            cells += rowArray.size();
             Row row = sheet.getRow(r);
             if (row == null) {
                 row = sheet.createRow(r);
@@ -85,25 +81,28 @@ public class WriteExcelTool {
                     cell = row.createCell(c);
                     // Best-effort style inheritance for newly created cells.
                     applyBestEffortStyle(sheet, r, c, cell);
+                    changed = true;
                 }
 
                 if (cellElement.isJsonNull()) {
                     // Keep style; only clear content.
-                    cell.setBlank();
+                    changed |= CellUpdates.setBlank(cell);
                 } else if (cellElement.isJsonPrimitive()) {
                     if (cellElement.getAsJsonPrimitive().isNumber()) {
-                        cell.setCellValue(cellElement.getAsDouble());
+                        changed |= CellUpdates.setValue(cell, cellElement.getAsDouble());
                     } else if (cellElement.getAsJsonPrimitive().isBoolean()) {
-                        cell.setCellValue(cellElement.getAsBoolean());
+                        changed |= CellUpdates.setValue(cell, cellElement.getAsBoolean());
                     } else {
-                        cell.setCellValue(cellElement.getAsString());
+                        changed |= CellUpdates.setValue(cell, cellElement.getAsString());
                     }
                 } else {
                     // Fallback: store complex JSON as string
-                    cell.setCellValue(cellElement.toString());
+                    changed |= CellUpdates.setValue(cell, cellElement.toString());
                 }
             }
         }
+        metrics.addCellsTouched(cells);
+        return changed;
     }
 
     /**
@@ -7,73 +7,103 @@
  *     <li>filePath - path to the .xlsx file</li>
  *     <li>sheetName - name of the worksheet</li>
  *     <li>startCell - top-left cell address (e.g. "B3")</li>
- *     <li>jsonData - JSON array of arrays representing rows and cells</li>
+ *     <li>jsonData - JSON array of arrays representing rows and cells, "-" to read it from
+ *     standard input, or "@path" to read it from a file</li>
+ *     <li>format (optional) - "json" (default) or "columnar"</li>
  * </ol>
  *
+ * With format "columnar" the data is "-" or "@path" in the binary format of
+ * {@link ColumnarEncoder}, one column per column of the block. Numbers are
+ * written straight from the packed doubles, without a JSON value per cell,
+ * and a sheet that does not exist yet is written through a streaming
+ * {@link SXSSFWorkbook} (except with the write-behind cache), like
+ * {@link ImportCsvTool} does.
+ *
  * Notes:
  * - When a string cell value starts with "=", it will be written as a formula.
  * - Null values are written as blank cells.
+ * - If every cell already holds its value, the workbook is not saved.
  */
 package jp.isoittech;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonParser;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 public class WriteRangeTool {
 
+    /** Rows kept in memory when a new sheet is written by streaming. */
+    private static final int ROW_WINDOW = 1000;
+
     public static void main(String[] args) throws Exception {
-        if (args.length != 4) {
-            System.err.println("Usage: WriteRangeTool <filePath> <sheetName> <startCell> <jsonData>");
-            System.exit(1);
+        if (args.length != 4 && args.length != 5) {
+            throw new IllegalArgumentException(
+                    "Usage: WriteRangeTool <filePath> <sheetName> <startCell> <jsonData|-|@path> [json|columnar]");
         }
 
         String filePath = args[0];
         String sheetName = args[1];
         String startCellStr = args[2];
         String jsonData = args[3];
-
-        File file = new File(filePath);
-        if (!file.exists()) {
-            throw new IOException("File not found: " + filePath);
+        String format = args.length == 5 && !args[4].isEmpty() ? args[4].toLowerCase() : "json";
+        if (!format.equals("json") && !format.equals("columnar")) {
+            throw new IllegalArgumentException("format must be json or columnar: " + args[4]);
         }
 
-        try (FileInputStream fis = new FileInputStream(file);
-             Workbook workbook = new XSSFWorkbook(fis)) {
-
-            Sheet sheet = ExcelUtils.getOrCreateSheet(workbook, sheetName);
+        try (WorkbookSession session = WorkbookSession.openForUpdate(filePath)) {
+            XSSFWorkbook workbook = session.getWorkbook();
 
             CellAddress startAddr = ExcelRangeUtils.parseCellAddress(startCellStr);
             int startRow = startAddr.getRow();
             int startCol = startAddr.getColumn();
 
-            JsonArray rows = JsonParser.parseString(jsonData).getAsJsonArray();
-            writeMatrixAt(sheet, startRow, startCol, rows);
-
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
+            boolean created = workbook.getSheet(sheetName) == null;
+            Sheet sheet;
+            boolean changed;
+            if (format.equals("columnar")) {
+                ColumnarDecoder columns = ColumnarDecoder.open(jsonData);
+                if (created && session.canStream()) {
+                    // A new sheet has nothing to keep in memory: stream its rows out.
+                    try (SXSSFWorkbook streaming = session.stream(ROW_WINDOW)) {
+                        sheet = streaming.createSheet(sheetName);
+                        FormulaCheck formulas = new FormulaCheck(workbook, sheet);
+                        writeColumnsAt(sheet, startRow, startCol, columns, formulas, session.getMetrics());
+                        session.saveStreaming(streaming);
+                    }
+                    return;
+                }
+                sheet = ExcelUtils.getOrCreateSheet(workbook, sheetName);
+                changed = writeColumnsAt(sheet, startRow, startCol, columns, null, session.getMetrics()) || created;
+            } else {
+                sheet = ExcelUtils.getOrCreateSheet(workbook, sheetName);
+                try (JsonRowReader rows = JsonRowReader.open(jsonData)) {
+                    changed = writeMatrixAt(sheet, startRow, startCol, rows, session.getMetrics()) || created;
+                }
             }
+
+            session.saveIfChanged(changed);
         }
     }
 
     /**
-     * Writes matrix-like JSON to the sheet starting at (startRow, startCol).
+     * Writes matrix-like JSON to the sheet starting at (startRow, startCol),
+     * each row as soon as it is read. Returns true if any cell changed.
      */
-    private static void writeMatrixAt(Sheet sheet, int startRow, int startCol, JsonArray rows) {
-        for (int r = 0; r < rows.size(); r++) {
-            JsonArray rowArray = rows.get(r).getAsJsonArray();
+    private static boolean writeMatrixAt(Sheet sheet, int startRow, int startCol, JsonRowReader rows,
+                                         ToolMetrics metrics) throws IOException {
+        long cells = 0;
+        boolean changed = false;
+        JsonArray rowArray;
+        for (int r = 0; (rowArray = rows.nextRow()) != null; r++) {
+            cells += rowArray.size();
             int rowIndex = startRow + r;
 
             Row row = sheet.getRow(rowIndex);
@@ -90,42 +120,101 @@ public class WriteRangeTool {
                     cell = row.createCell(colIndex);
                     // Best-effort style inheritance for newly created cells.
                     applyBestEffortStyle(sheet, rowIndex, colIndex, cell);
+                    changed = true;
+                }
+
+                changed |= writeCellValue(cell, cellElement);
+            }
+        }
+        metrics.addCellsTouched(cells);
+        return changed;
+    }
+
+    /**
+     * Writes columnar data to the sheet starting at (startRow, startCol),
+     * row by row. Returns true if any cell changed.
+     *
+     * @param formulas validates formulas before they are stored, for new
+     *                 streaming sheets (which have no styles to inherit); null otherwise
+     */
+    private static boolean writeColumnsAt(Sheet sheet, int startRow, int startCol, ColumnarDecoder columns,
+                                          FormulaCheck formulas, ToolMetrics metrics) {
+        int rows = columns.getRows();
+        int cols = columns.getColumns();
+        boolean changed = false;
+        for (int r = 0; r < rows; r++) {
+            int rowIndex = startRow + r;
+
+            Row row = sheet.getRow(rowIndex);
+            if (row == null) {
+                row = sheet.createRow(rowIndex);
+            }
+
+            for (int c = 0; c < cols; c++) {
+                int colIndex = startCol + c;
+
+                Cell cell = row.getCell(colIndex);
+                if (cell == null) {
+                    cell = row.createCell(colIndex);
+                    if (formulas == null) {
+                        // Best-effort style inheritance for newly created cells.
+                        applyBestEffortStyle(sheet, rowIndex, colIndex, cell);
+                    }
+                    changed = true;
                 }
 
-                writeCellValue(cell, cellElement);
+                switch (columns.getTag(r, c)) {
+                    case ColumnarEncoder.NUMBER:
+                        changed |= CellUpdates.setValue(cell, columns.getNumber(r, c));
+                        break;
+                    case ColumnarEncoder.BOOLEAN:
+                        changed |= CellUpdates.setValue(cell, columns.getBoolean(r, c));
+                        break;
+                    case ColumnarEncoder.STRING:
+                        String value = columns.getString(r, c);
+                        if (formulas != null && value.startsWith("=") && value.length() > 1) {
+                            formulas.check(value.substring(1));
+                        }
+                        changed |= writeString(cell, value);
+                        break;
+                    default:
+                        // Keep style; only clear content.
+                        changed |= CellUpdates.setBlank(cell);
+                        break;
+                }
             }
         }
+        metrics.addCellsTouched((long) rows * cols);
+        return changed;
     }
 
-    private static void writeCellValue(Cell cell, JsonElement cellElement) {
+    /** Writes one JSON value; returns true if the cell changed. */
+    private static boolean writeCellValue(Cell cell, JsonElement cellElement) {
         if (cellElement == null || cellElement.isJsonNull()) {
             // Keep style; only clear content.
-            cell.setBlank();
-            return;
+            return CellUpdates.setBlank(cell);
         }
 
         if (cellElement.isJsonPrimitive()) {
             if (cellElement.getAsJsonPrimitive().isNumber()) {
-                cell.setCellValue(cellElement.getAsDouble());
-                return;
+                return CellUpdates.setValue(cell, cellElement.getAsDouble());
             }
             if (cellElement.getAsJsonPrimitive().isBoolean()) {
-                cell.setCellValue(cellElement.getAsBoolean());
-                return;
+                return CellUpdates.setValue(cell, cellElement.getAsBoolean());
             }
 
-            // string
-            String s = cellElement.getAsString();
-            if (s != null && s.startsWith("=") && s.length() > 1) {
-                cell.setCellFormula(s.substring(1));
-            } else {
-                cell.setCellValue(s);
-            }
-            return;
+            return writeString(cell, cellElement.getAsString());
         }
 
         // Fallback: store complex JSON as string
-        cell.setCellValue(cellElement.toString());
+        return CellUpdates.setValue(cell, cellElement.toString());
+    }
+
+    private static boolean writeString(Cell cell, String s) {
+        if (s != null && s.startsWith("=") && s.length() > 1) {
+            return CellUpdates.setFormula(cell, s.substring(1));
+        }
+        return CellUpdates.setValue(cell, s);
     }
 
     /**
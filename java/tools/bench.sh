@@ -0,0 +1,45 @@
+#!/usr/bin/env bash
+
+# ベンチマーク用ツールスクリプト
+# - JMH の jar を bench/lib にダウンロード（初回のみ）
+# - src と bench/src をまとめて bench/build にコンパイル（JMH のアノテーション処理を含む）
+# - 引数はそのまま JMH に渡す。省略時は "-prof gc"
+#
+# 例: ./tools/bench.sh ToolBenchmark.read -p rows=1000 -p styles=1 -prof gc
+
+set -eu
+
+SCRIPT_DIR="$(cd "$(dirname "${BASH_SOURCE[0]}")" && pwd)"
+JAVA_DIR="${SCRIPT_DIR%/tools}"
+
+JMH_VERSION="1.37"
+MAVEN_CENTRAL="https://repo1.maven.org/maven2"
+
+cd "${JAVA_DIR}"
+
+mkdir -p bench/lib
+for artifact in \
+    "org/openjdk/jmh/jmh-core/${JMH_VERSION}/jmh-core-${JMH_VERSION}.jar" \
+    "org/openjdk/jmh/jmh-generator-annprocess/${JMH_VERSION}/jmh-generator-annprocess-${JMH_VERSION}.jar" \
+    "net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar" \
+    "org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar"; do
+    jar="bench/lib/$(basename "${artifact}")"
+    if [ ! -f "${jar}" ]; then
+        curl -fsSL -o "${jar}" "${MAVEN_CENTRAL}/${artifact}"
+    fi
+done
+
+rm -rf bench/build
+mkdir -p bench/build
+
+# -processorpath does not expand "*", so list the jars explicitly.
+PROCESSOR_PATH="$(printf '%s:' bench/lib/*.jar)"
+
+javac -d bench/build -cp 'jars/*:bench/lib/*' -processorpath "${PROCESSOR_PATH}" \
+    src/jp/isoittech/*.java bench/src/jp/isoittech/bench/*.java
+
+if [ "$#" -eq 0 ]; then
+    set -- -prof gc
+fi
+
+java -cp 'bench/build:jars/*:bench/lib/*' org.openjdk.jmh.Main "$@"
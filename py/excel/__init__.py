@@ -25,47 +25,79 @@ if str(_src_dir) not in sys.path:
 from src.excel import (
     create_excel,
     read_excel,
+    read_excel_sparse,
+    read_excel_columnar,
+    read_page,
+    search_excel,
+    diff_excel,
+    decode_columnar,
+    encode_columnar,
     write_excel,
     write_range,
+    write_range_columnar,
     append_rows,
+    import_csv,
+    export_sheet,
     create_sheet,
     rename_worksheet,
     delete_worksheet,
+    move_worksheet,
     copy_worksheet,
     apply_formula,
     validate_formula_syntax,
     format_range,
+    conditional_format,
     merge_cells,
     unmerge_cells,
     copy_range,
     delete_range,
+    insert_range,
     validate_excel_range,
     create_chart,
     create_pivot_table,
     list_sheets,
+    flush_excel,
+    collect_metrics,
+    metrics_enabled,
 )
 
 __all__ = [
     "create_excel",
     "read_excel",
+    "read_excel_sparse",
+    "read_excel_columnar",
+    "read_page",
+    "search_excel",
+    "diff_excel",
+    "decode_columnar",
+    "encode_columnar",
     "write_excel",
     "write_range",
+    "write_range_columnar",
     "append_rows",
+    "import_csv",
+    "export_sheet",
     "create_sheet",
     "rename_worksheet",
     "delete_worksheet",
+    "move_worksheet",
     "copy_worksheet",
     "apply_formula",
     "validate_formula_syntax",
     "format_range",
+    "conditional_format",
     "merge_cells",
     "unmerge_cells",
     "copy_range",
     "delete_range",
+    "insert_range",
     "validate_excel_range",
     "create_chart",
     "create_pivot_table",
     "list_sheets",
+    "flush_excel",
+    "collect_metrics",
+    "metrics_enabled",
 ]
 
 # Import the real excel package (located in src/excel)
@@ -24,10 +24,12 @@ Related OSS pattern reference:
 from __future__ import annotations
 
 import argparse
+import asyncio
+import functools
 import os
 import sys
 from pathlib import Path
-from typing import Any, Dict
+from typing import Any, Awaitable, Callable, Dict
 from urllib.parse import quote
 
 from mcp.server.fastmcp import FastMCP
@@ -40,24 +42,36 @@ from starlette.staticfiles import StaticFiles
 from excel import (
     create_excel,
     read_excel,
+    read_excel_sparse,
+    read_page,
+    search_excel,
+    diff_excel,
     write_excel,
     write_range,
     append_rows,
+    import_csv,
+    export_sheet,
     create_sheet,
     rename_worksheet,
     delete_worksheet,
+    move_worksheet,
     copy_worksheet,
     apply_formula,
     validate_formula_syntax,
     format_range,
+    conditional_format,
     merge_cells,
     unmerge_cells,
     copy_range,
     delete_range,
+    insert_range,
     validate_excel_range,
     create_chart,
     create_pivot_table,
     list_sheets,
+    flush_excel,
+    collect_metrics,
+    metrics_enabled,
 )
 
 # NOTE:
@@ -162,12 +176,41 @@ def build_asgi_app_for_sse(sse_app) -> Starlette:
     )
 
 
+# ---------------------------------------------------------------------------
+# Metrics
+# ---------------------------------------------------------------------------
+
+
+def with_metrics(
+    func: Callable[..., Awaitable[Dict[str, Any]]],
+) -> Callable[..., Awaitable[Dict[str, Any]]]:
+    """Attach Java tool metrics to a tool result when EXCEL_MCP_METRICS is set.
+
+    The result gets a `metrics` list with one entry per Java tool run, containing
+    per-phase durations (open/parse/mutate/serialize/fsync, in ms), cells touched,
+    styles created, peak heap and bytes read/written.
+    """
+
+    @functools.wraps(func)
+    async def wrapper(*args: Any, **kwargs: Any) -> Dict[str, Any]:
+        if not metrics_enabled():
+            return await func(*args, **kwargs)
+        with collect_metrics() as records:
+            result = await func(*args, **kwargs)
+        if isinstance(result, dict) and records:
+            result = {**result, "metrics": records}
+        return result
+
+    return wrapper
+
+
 # ---------------------------------------------------------------------------
 # Tool registrations
 # ---------------------------------------------------------------------------
 
 
 @app.tool()
+@with_metrics
 async def tool_create_excel(path: str, sheet_name: str = "Sheet1") -> Dict[str, Any]:
     """Create a new Excel workbook (.xlsx) at the given path (fails if it already exists).
 
@@ -203,7 +246,7 @@ async def tool_create_excel(path: str, sheet_name: str = "Sheet1") -> Dict[str,
         - It will fail if the parent directory does not exist or is not writable.
     """
 
-    create_excel(path, sheet_name)
+    await asyncio.to_thread(create_excel, path, sheet_name)
     return {
         "message": f"Created Excel workbook at {path} with sheet '{sheet_name}'",
         "path": path,
@@ -212,7 +255,8 @@ async def tool_create_excel(path: str, sheet_name: str = "Sheet1") -> Dict[str,
 
 
 @app.tool()
-async def tool_read_excel(path: str, sheet_name: str, range_str: str) -> Dict[str, Any]:
+@with_metrics
+async def tool_read_excel(path: str, sheet_name: str, range_str: str, sparse: bool = False) -> Dict[str, Any]:
     """Read a rectangular cell range from a worksheet and return it as a 2D array.
 
     Args:
@@ -222,24 +266,200 @@ async def tool_read_excel(path: str, sheet_name: str, range_str: str) -> Dict[st
             Worksheet name (required).
         range_str:
             A1-style rectangular range (e.g. `A1:C10`).
+        sparse:
+            If true, return only the populated cells as `cells` instead of `data`.
+            Use this for large ranges that are mostly empty.
 
     Returns:
         A JSON-serializable dict containing:
         - `data`: 2D array (rows x columns). Values are JSON-compatible types.
+        - `cells` (sparse only): runs of adjacent populated cells in a row as
+          `[row, column, [values...]]`, counted from the top-left cell of the range.
         - `path`, `range`, and other metadata.
 
     Examples:
         - path="/mnt/data/book.xlsx", sheet_name="Sheet1", range_str="A1:C10"
+        - path="/mnt/data/book.xlsx", sheet_name="Sheet1", range_str="A1:Z100000", sparse=True
 
     Notes:
         - Raises an error if the file/sheet does not exist or the range is invalid.
     """
 
-    data = read_excel(path, sheet_name, range_str)
+    if sparse:
+        cells = await asyncio.to_thread(read_excel_sparse, path, sheet_name, range_str)
+        return {"path": path, "+sheet": sheet_name, "range": range_str, "cells": cells}
+    data = await asyncio.to_thread(read_excel, path, sheet_name, range_str)
     return {"path": path, "+sheet": sheet_name, "range": range_str, "data": data}
 
 
 @app.tool()
+@with_metrics
+async def tool_read_page(
+    path: str,
+    sheet_name: str,
+    page_size: int = 1000,
+    cursor: str = "",
+) -> Dict[str, Any]:
+    """Read a worksheet page by page, without knowing its size in advance.
+
+    Each call returns up to `page_size` rows, starting at the top of the used range,
+    and a `cursor`. Pass the cursor to the next call to continue; it is null after
+    the last page. Pages deep into a large sheet are as fast as the first one.
+    Formulas are returned as their cached values and dates as ISO 8601 text.
+
+    Args:
+        path: Workbook path.
+        sheet_name: Worksheet name.
+        page_size: Rows per page (default: 1000).
+        cursor: Cursor from the previous page; empty for the first page.
+
+    Returns:
+        A JSON-serializable dict containing `path`, `sheet_name`, `range` (the cells
+        covered by the page), `data` (2D array) and `cursor`.
+
+    Notes:
+        - A cursor is invalidated when the workbook changes; start again from the first page.
+    """
+
+    page = await asyncio.to_thread(read_page, path, sheet_name, page_size, cursor or None)
+    return {
+        "path": path,
+        "sheet_name": sheet_name,
+        "range": page["range"],
+        "data": page["rows"],
+        "cursor": page["cursor"],
+    }
+
+
+@app.tool()
+@with_metrics
+async def tool_search_excel(
+    path: str,
+    query: str,
+    mode: str = "text",
+    max_hits: int = 100,
+    sheet_name: str = "",
+) -> Dict[str, Any]:
+    """Find the cells of a workbook that contain a value or formula, across all sheets.
+
+    Use this to locate data before reading it, instead of reading sheets with guessed ranges.
+
+    Args:
+        path: Workbook path.
+        query: Text, regular expression or formula text to look for.
+        mode: "text" (value contains `query`, ignoring case; default), "exact" (value equals
+            `query`, ignoring case; numbers compare numerically), "regex" (Java regular
+            expression found in the value) or "formula" (formula contains `query`).
+        max_hits: Maximum number of hits to return (default: 100).
+        sheet_name: Search only this worksheet; empty for all.
+
+    Returns:
+        A JSON-serializable dict containing `path`, `hits` (list of `{"sheet", "cell", "value"}`
+        in workbook order) and `truncated` (true if the search stopped at `max_hits`).
+
+    Notes:
+        - Values are matched as shown in exports: cached results for formulas, TRUE/FALSE,
+          and ISO 8601 dates. In "formula" mode `value` is the formula.
+    """
+
+    result = await asyncio.to_thread(search_excel, path, query, mode, max_hits, sheet_name or None)
+    return {"path": path, "hits": result["hits"], "truncated": result["truncated"]}
+
+
+@app.tool()
+@with_metrics
+async def tool_diff_excel(
+    path: str,
+    other_path: str,
+    sheet_name: str = "",
+    other_sheet_name: str = "",
+    range_str: str = "",
+    other_range_str: str = "",
+    key_column: str = "",
+    max_changes: int = 1000,
+) -> Dict[str, Any]:
+    """Compare two workbooks (or two sheets or ranges) and return only the cells that differ.
+
+    Use this to verify what changed instead of reading both versions in full.
+
+    Args:
+        path: First (e.g. original) workbook path.
+        other_path: Second (e.g. edited) workbook path; may be the same workbook.
+        sheet_name: Sheet of the first workbook; empty to compare all sheets by name.
+        other_sheet_name: Sheet of the second workbook (default: `sheet_name`).
+        range_str: Range of the first sheet, e.g. "A1:F500" (default: whole sheet).
+        other_range_str: Range of the second sheet (default: `range_str`).
+        key_column: Column letter whose value identifies a row (e.g. "A"); rows are
+            aligned by position when empty.
+        max_changes: Maximum number of changed cells to return (default: 1000).
+
+    Returns:
+        A JSON-serializable dict containing `changes` (list of `{"sheet", "cell", "type",
+        "old", "new"}` with `type` "changed", "inserted" or "deleted"; `otherCell` when the
+        row moved), `rowsChanged`, `rowsInserted`, `rowsDeleted`, `sheetsAdded`,
+        `sheetsRemoved` and `truncated`.
+    """
+
+    return await asyncio.to_thread(
+        diff_excel,
+        path,
+        other_path,
+        sheet_name or None,
+        other_sheet_name or None,
+        range_str or None,
+        other_range_str or None,
+        key_column or None,
+        max_changes,
+    )
+
+
+@app.tool()
+@with_metrics
+async def tool_export_sheet(
+    path: str,
+    sheet_name: str,
+    output_path: str = "",
+    format: str = "csv",
+    range_str: str = "",
+) -> Dict[str, Any]:
+    """Export a worksheet (or a range of it) to a CSV or NDJSON file.
+
+    Prefer this over `read_excel` to get a whole sheet or a large range out: the
+    sheet is streamed to the file instead of being returned in the response, and
+    the file can then be downloaded. Formulas are exported as their cached values
+    and dates as ISO 8601 text.
+
+    If the output file is under EXCEL_SHARED_DIR, this also returns a public `download_url`.
+
+    Args:
+        path: Workbook path.
+        sheet_name: Worksheet name.
+        output_path: File to write (default: `<workbook>_<sheet>.csv` or `.ndjson`
+            next to the workbook). Replaced if it exists.
+        format: "csv" (default) or "ndjson" (one JSON array per row).
+        range_str: Optional A1-style range (e.g. `A1:D1000`); the whole sheet if empty.
+
+    Returns:
+        A JSON-serializable dict containing `message`, `path`, `rows`, `format`
+        and `download_url`.
+    """
+    if not output_path:
+        workbook = Path(path)
+        output_path = str(workbook.with_name(f"{workbook.stem}_{sheet_name}.{format.lower()}"))
+    result = await asyncio.to_thread(
+        export_sheet, path, sheet_name, output_path, fmt=format, range_str=range_str or None
+    )
+    return {
+        "message": f"Exported {result['rows']} rows of {path}:{sheet_name} to {result['path']}",
+        "path": result["path"],
+        "rows": result["rows"],
+        "format": result["format"],
+        "download_url": build_download_url_for_path(result["path"]),
+    }
+
+
+@app.tool()
+@with_metrics
 async def tool_write_excel(path: str, sheet_name: str, data: Any) -> Dict[str, Any]:
     """Write a 2D array into a worksheet starting at A1 (fixed start cell).
 
@@ -271,7 +491,7 @@ async def tool_write_excel(path: str, sheet_name: str, data: Any) -> Dict[str, A
         ValueError: if `path` is not under EXCEL_SHARED_DIR.
     """
 
-    write_excel(path, sheet_name, data)
+    await asyncio.to_thread(write_excel, path, sheet_name, data)
     return {
         "message": f"Wrote {len(data)} rows to {path}:{sheet_name}!A1",
         "path": path,
@@ -280,6 +500,7 @@ async def tool_write_excel(path: str, sheet_name: str, data: Any) -> Dict[str, A
 
 
 @app.tool()
+@with_metrics
 async def tool_write_range(path: str, sheet_name: str, start_cell: str, data: Any) -> Dict[str, Any]:
     """Write a 2D array into a worksheet starting at `start_cell`.
 
@@ -301,7 +522,7 @@ async def tool_write_range(path: str, sheet_name: str, start_cell: str, data: An
         - `start_cell`
         - `download_url`
     """
-    write_range(path, sheet_name, start_cell, data)
+    await asyncio.to_thread(write_range, path, sheet_name, start_cell, data)
     return {
         "message": f"Wrote {len(data)} rows to {path}:{sheet_name}!{start_cell}",
         "path": path,
@@ -311,6 +532,7 @@ async def tool_write_range(path: str, sheet_name: str, start_cell: str, data: An
 
 
 @app.tool()
+@with_metrics
 async def tool_append_rows(
     path: str,
     sheet_name: str,
@@ -336,7 +558,7 @@ async def tool_append_rows(
         - `start_row` (0-based)
         - `download_url`
     """
-    start_row = append_rows(path, sheet_name, rows, anchor_column=anchor_column)
+    start_row = await asyncio.to_thread(append_rows, path, sheet_name, rows, anchor_column=anchor_column)
     return {
         "message": f"Appended {len(rows)} rows to {path}:{sheet_name} at row {start_row + 1} (anchor={anchor_column})",
         "path": path,
@@ -347,6 +569,49 @@ async def tool_append_rows(
 
 
 @app.tool()
+@with_metrics
+async def tool_import_csv(
+    path: str,
+    sheet_name: str,
+    csv_path: str,
+    start_cell: str = "A1",
+    delimiter: str = ",",
+) -> Dict[str, Any]:
+    """Import a CSV file into a worksheet.
+
+    Prefer this over `write_range` for anything larger than a few hundred cells:
+    the file is streamed, so its size is not limited by the request size. Numbers,
+    TRUE/FALSE and formulas starting with "=" are detected; values with leading
+    zeros or more than 15 digits are kept as text.
+
+    If the workbook is under EXCEL_SHARED_DIR, this also returns a public `download_url`.
+
+    Args:
+        path: Target workbook path.
+        sheet_name: Worksheet name (created if it does not exist).
+        csv_path: Path of the UTF-8 CSV file to import.
+        start_cell: Top-left cell for the first record (default: "A1").
+        delimiter: Field delimiter, a single character or "tab" (default: ",").
+
+    Returns:
+        A JSON-serializable dict containing `message`, `path`, `rows`, `columns`,
+        `range` and `download_url`.
+    """
+    result = await asyncio.to_thread(
+        import_csv, path, sheet_name, csv_path, start_cell=start_cell, delimiter=delimiter
+    )
+    return {
+        "message": f"Imported {result['rows']} rows from {csv_path} into {path}:{sheet_name}",
+        "path": path,
+        "rows": result["rows"],
+        "columns": result["columns"],
+        "range": result["range"],
+        "download_url": build_download_url_for_path(path),
+    }
+
+
+@app.tool()
+@with_metrics
 async def tool_create_sheet(path: str, sheet_name: str) -> Dict[str, Any]:
     """Add a new worksheet to an existing workbook.
 
@@ -359,7 +624,7 @@ async def tool_create_sheet(path: str, sheet_name: str) -> Dict[str, Any]:
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    create_sheet(path, sheet_name)
+    await asyncio.to_thread(create_sheet, path, sheet_name)
     return {
         "message": f"Created sheet '{sheet_name}' in {path}",
         "path": path,
@@ -368,6 +633,7 @@ async def tool_create_sheet(path: str, sheet_name: str) -> Dict[str, Any]:
 
 
 @app.tool()
+@with_metrics
 async def tool_rename_worksheet(path: str, old_name: str, new_name: str) -> Dict[str, Any]:
     """Rename a worksheet.
 
@@ -381,7 +647,7 @@ async def tool_rename_worksheet(path: str, old_name: str, new_name: str) -> Dict
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    rename_worksheet(path, old_name, new_name)
+    await asyncio.to_thread(rename_worksheet, path, old_name, new_name)
     return {
         "message": f"Renamed sheet '{old_name}' to '{new_name}' in {path}",
         "path": path,
@@ -390,6 +656,7 @@ async def tool_rename_worksheet(path: str, old_name: str, new_name: str) -> Dict
 
 
 @app.tool()
+@with_metrics
 async def tool_delete_worksheet(path: str, sheet_name: str) -> Dict[str, Any]:
     """Delete a worksheet by name.
 
@@ -406,7 +673,7 @@ async def tool_delete_worksheet(path: str, sheet_name: str) -> Dict[str, Any]:
         - Raises an error if the worksheet does not exist.
         - Some workbooks may disallow deleting the last remaining sheet.
     """
-    delete_worksheet(path, sheet_name)
+    await asyncio.to_thread(delete_worksheet, path, sheet_name)
     return {
         "message": f"Deleted sheet '{sheet_name}' in {path}",
         "path": path,
@@ -415,28 +682,63 @@ async def tool_delete_worksheet(path: str, sheet_name: str) -> Dict[str, Any]:
 
 
 @app.tool()
-async def tool_copy_worksheet(path: str, source_sheet: str, target_sheet: str) -> Dict[str, Any]:
-    """Copy a worksheet (creates a new duplicated sheet).
+@with_metrics
+async def tool_move_worksheet(path: str, sheet_name: str, position: int) -> Dict[str, Any]:
+    """Move a worksheet to another position in the sheet order.
 
     If the workbook is under EXCEL_SHARED_DIR, this also returns a public `download_url`.
 
     Args:
         path: Target workbook path.
-        source_sheet: Source worksheet name.
-        target_sheet: Target (new) worksheet name.
+        sheet_name: Worksheet name to move.
+        position: New 0-based position (0 makes it the first sheet).
 
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    copy_worksheet(path, source_sheet, target_sheet)
+    await asyncio.to_thread(move_worksheet, path, sheet_name, position)
     return {
-        "message": f"Copied sheet '{source_sheet}' to '{target_sheet}' in {path}",
+        "message": f"Moved sheet '{sheet_name}' to position {position} in {path}",
         "path": path,
         "download_url": build_download_url_for_path(path),
     }
 
 
 @app.tool()
+@with_metrics
+async def tool_copy_worksheet(
+    path: str,
+    source_sheet: str,
+    target_sheet: str,
+    target_path: str = "",
+) -> Dict[str, Any]:
+    """Copy a worksheet (creates a new duplicated sheet), optionally into another workbook.
+
+    If the workbook is under EXCEL_SHARED_DIR, this also returns a public `download_url`.
+
+    Args:
+        path: Target workbook path.
+        source_sheet: Source worksheet name.
+        target_sheet: Target (new) worksheet name.
+        target_path: Optional workbook to copy the sheet into, as its last sheet. Cell styles,
+            shared strings, drawings, images and comments come along; tables and pivot tables
+            do not.
+
+    Returns:
+        A JSON-serializable dict containing `message`, `path`, and `download_url` of the workbook
+        that received the sheet.
+    """
+    await asyncio.to_thread(copy_worksheet, path, source_sheet, target_sheet, target_path)
+    destination = target_path or path
+    return {
+        "message": f"Copied sheet '{source_sheet}' to '{target_sheet}' in {destination}",
+        "path": destination,
+        "download_url": build_download_url_for_path(destination),
+    }
+
+
+@app.tool()
+@with_metrics
 async def tool_apply_formula(path: str, sheet_name: str, cell: str, formula: str) -> Dict[str, Any]:
     """Set an Excel formula on a specific cell.
 
@@ -453,7 +755,7 @@ async def tool_apply_formula(path: str, sheet_name: str, cell: str, formula: str
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    apply_formula(path, sheet_name, cell, formula)
+    await asyncio.to_thread(apply_formula, path, sheet_name, cell, formula)
     return {
         "message": f"Applied formula '{formula}' to {path}:{sheet_name}!{cell}",
         "path": path,
@@ -462,6 +764,7 @@ async def tool_apply_formula(path: str, sheet_name: str, cell: str, formula: str
 
 
 @app.tool()
+@with_metrics
 async def tool_validate_formula_syntax(path: str, sheet_name: str, formula: str) -> Dict[str, Any]:
     """Validate the syntax of an Excel formula (does not modify the workbook).
 
@@ -478,11 +781,12 @@ async def tool_validate_formula_syntax(path: str, sheet_name: str, formula: str)
     Notes:
         - This is primarily a syntax check; it does not guarantee referenced cells exist or that the formula is semantically valid.
     """
-    ok = validate_formula_syntax(path, sheet_name, formula)
+    ok = await asyncio.to_thread(validate_formula_syntax, path, sheet_name, formula)
     return {"valid": ok, "formula": formula}
 
 
 @app.tool()
+@with_metrics
 async def tool_format_range(
     path: str,
     sheet_name: str,
@@ -501,8 +805,8 @@ async def tool_format_range(
     Args:
         path: Target workbook path.
         sheet_name: Worksheet name.
-        start_cell: Range start cell (A1 style).
-        end_cell: Range end cell (A1 style).
+        start_cell: Range start cell (A1 style), or a column letter / row number for whole columns / rows.
+        end_cell: Range end cell (A1 style), or a column letter / row number for whole columns / rows.
         bold: Set true for bold.
         italic: Set true for italic.
         font_size: Font size (0 means "unspecified").
@@ -512,7 +816,7 @@ async def tool_format_range(
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    format_range(path, sheet_name, start_cell, end_cell, bold, italic, font_size, font_color, bg_color)
+    await asyncio.to_thread(format_range, path, sheet_name, start_cell, end_cell, bold, italic, font_size, font_color, bg_color)
     return {
         "message": f"Formatted range {sheet_name}!{start_cell}:{end_cell} in {path}",
         "path": path,
@@ -521,6 +825,42 @@ async def tool_format_range(
 
 
 @app.tool()
+@with_metrics
+async def tool_conditional_format(path: str, sheet_name: str, range_str: str, rule: Dict[str, Any]) -> Dict[str, Any]:
+    """Add a conditional formatting rule to a range, instead of styling its cells one by one.
+
+    Prefer this over `format_range` to highlight cells by value: one rule covers any number of
+    rows, keeps the styles part small and follows the values when they change.
+    If the workbook is under EXCEL_SHARED_DIR, this also returns a public `download_url`.
+
+    Args:
+        path: Target workbook path.
+        sheet_name: Worksheet name.
+        range_str: A1-style range, or several separated by commas (e.g. `A2:A1000,C2:C1000`).
+        rule: The rule, with `type` one of:
+            - `cellValue`: `operator` (`between`, `notBetween`, `equal`, `notEqual`, `greaterThan`,
+              `lessThan`, `greaterThanOrEqual`, `lessThanOrEqual`), `value` and, for the between
+              operators, `value2` (number, text, or formula starting with `=`).
+            - `formula`: `formula` written for the top-left cell of the range (e.g. `=$C2>100`
+              highlights whole rows).
+            - `colorScale`: `colors`, 2 or 3 hex colors for the lowest, (median,) and highest values.
+            - `dataBar`: `color` of the bars.
+            `cellValue` and `formula` rules also take `bold`, `italic`, `fontColor` and `bgColor`
+            (hex like `#FFC7CE`).
+
+    Returns:
+        A JSON-serializable dict containing `message`, `path`, and `download_url`.
+    """
+    await asyncio.to_thread(conditional_format, path, sheet_name, range_str, rule)
+    return {
+        "message": f"Added a {rule.get('type')} rule to {sheet_name}!{range_str} in {path}",
+        "path": path,
+        "download_url": build_download_url_for_path(path),
+    }
+
+
+@app.tool()
+@with_metrics
 async def tool_merge_cells(path: str, sheet_name: str, start_cell: str, end_cell: str) -> Dict[str, Any]:
     """Merge cells in the specified rectangular range.
 
@@ -535,7 +875,7 @@ async def tool_merge_cells(path: str, sheet_name: str, start_cell: str, end_cell
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    merge_cells(path, sheet_name, start_cell, end_cell)
+    await asyncio.to_thread(merge_cells, path, sheet_name, start_cell, end_cell)
     return {
         "message": f"Merged cells {sheet_name}!{start_cell}:{end_cell} in {path}",
         "path": path,
@@ -544,6 +884,7 @@ async def tool_merge_cells(path: str, sheet_name: str, start_cell: str, end_cell
 
 
 @app.tool()
+@with_metrics
 async def tool_unmerge_cells(path: str, sheet_name: str, start_cell: str, end_cell: str) -> Dict[str, Any]:
     """Unmerge cells in the specified rectangular range.
 
@@ -558,7 +899,7 @@ async def tool_unmerge_cells(path: str, sheet_name: str, start_cell: str, end_ce
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    unmerge_cells(path, sheet_name, start_cell, end_cell)
+    await asyncio.to_thread(unmerge_cells, path, sheet_name, start_cell, end_cell)
     return {
         "message": f"Unmerged cells {sheet_name}!{start_cell}:{end_cell} in {path}",
         "path": path,
@@ -567,6 +908,7 @@ async def tool_unmerge_cells(path: str, sheet_name: str, start_cell: str, end_ce
 
 
 @app.tool()
+@with_metrics
 async def tool_copy_range(
     path: str,
     sheet_name: str,
@@ -595,7 +937,7 @@ async def tool_copy_range(
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    copy_range(path, sheet_name, source_start, source_end, target_start, target_sheet, copy_style=copy_style)
+    await asyncio.to_thread(copy_range, path, sheet_name, source_start, source_end, target_start, target_sheet, copy_style=copy_style)
     return {
         "message": (
             f"Copied range {sheet_name}!{source_start}:{source_end} "
@@ -607,6 +949,7 @@ async def tool_copy_range(
 
 
 @app.tool()
+@with_metrics
 async def tool_delete_range(
     path: str,
     sheet_name: str,
@@ -629,7 +972,7 @@ async def tool_delete_range(
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
     """
-    delete_range(path, sheet_name, start_cell, end_cell, shift_direction)
+    await asyncio.to_thread(delete_range, path, sheet_name, start_cell, end_cell, shift_direction)
     return {
         "message": f"Deleted range {sheet_name}!{start_cell}:{end_cell} in {path} (shift={shift_direction})",
         "path": path,
@@ -638,6 +981,44 @@ async def tool_delete_range(
 
 
 @app.tool()
+@with_metrics
+async def tool_insert_range(
+    path: str,
+    sheet_name: str,
+    start_cell: str,
+    end_cell: str,
+    shift_direction: str = "down",
+) -> Dict[str, Any]:
+    """Insert empty cells at a range and shift existing cells down or right.
+
+    This is the counterpart of `delete_range`. Only the cells in the columns (for `down`)
+    or rows (for `right`) of the range move; formulas, merged regions and conditional
+    formatting ranges are updated accordingly. Prefer this over reading and rewriting
+    the cells below with `write_range`.
+
+    If the workbook is under EXCEL_SHARED_DIR, this also returns a public `download_url`.
+
+    Args:
+        path: Target workbook path.
+        sheet_name: Worksheet name.
+        start_cell: Insert range start cell (A1 style).
+        end_cell: Insert range end cell (A1 style).
+        shift_direction:
+            Direction to shift existing cells: `down` or `right` (default: `down`).
+
+    Returns:
+        A JSON-serializable dict containing `message`, `path`, and `download_url`.
+    """
+    await asyncio.to_thread(insert_range, path, sheet_name, start_cell, end_cell, shift_direction)
+    return {
+        "message": f"Inserted range {sheet_name}!{start_cell}:{end_cell} in {path} (shift={shift_direction})",
+        "path": path,
+        "download_url": build_download_url_for_path(path),
+    }
+
+
+@app.tool()
+@with_metrics
 async def tool_validate_excel_range(
     path: str,
     sheet_name: str,
@@ -657,11 +1038,12 @@ async def tool_validate_excel_range(
         - `valid`: boolean
         - `sheet`, `start`, `end`: echo of the inputs
     """
-    ok = validate_excel_range(path, sheet_name, start_cell, end_cell)
+    ok = await asyncio.to_thread(validate_excel_range, path, sheet_name, start_cell, end_cell)
     return {"valid": ok, "sheet": sheet_name, "start": start_cell, "end": end_cell}
 
 
 @app.tool()
+@with_metrics
 async def tool_create_chart(
     path: str,
     sheet_name: str,
@@ -671,9 +1053,14 @@ async def tool_create_chart(
     title: str | None = None,
     x_axis: str | None = None,
     y_axis: str | None = None,
+    downsample: str | None = None,
+    max_points: int | None = None,
 ) -> Dict[str, Any]:
     """Create a chart from a data range and place it on the worksheet.
 
+    For long series (e.g. hundreds of thousands of rows), pass `downsample` so the chart
+    plots a reduced copy of the data and the workbook stays fast to open in Excel.
+
     If the workbook is under EXCEL_SHARED_DIR, this also returns a public `download_url`.
 
     Args:
@@ -686,6 +1073,13 @@ async def tool_create_chart(
         title: Chart title (optional).
         x_axis: X-axis label (optional).
         y_axis: Y-axis label (optional).
+        downsample:
+            Optional point reduction: `none` (default), `lttb` (Largest-Triangle-Three-Buckets,
+            preserves visual shape) or `minmax` (min and max per bucket, preserves peaks).
+            When set, the first column of `data_range` is X and each further column is a
+            series; a leading text row is used as series names. Reduced data is written to
+            a hidden `_chart_dataN` sheet that the chart references.
+        max_points: Maximum number of points to keep when downsampling (default 1000).
 
     Returns:
         A JSON-serializable dict containing `message`, `path`, and `download_url`.
@@ -693,7 +1087,19 @@ async def tool_create_chart(
     Notes:
         - Exact chart appearance can vary by Excel compatibility and defaults/templates.
     """
-    create_chart(path, sheet_name, data_range, chart_type, target_cell, title, x_axis, y_axis)
+    await asyncio.to_thread(
+        create_chart,
+        path,
+        sheet_name,
+        data_range,
+        chart_type,
+        target_cell,
+        title,
+        x_axis,
+        y_axis,
+        downsample,
+        max_points,
+    )
     return {
         "message": f"Created chart of type '{chart_type}' at {sheet_name}!{target_cell} in {path}",
         "path": path,
@@ -702,6 +1108,7 @@ async def tool_create_chart(
 
 
 @app.tool()
+@with_metrics
 async def tool_list_sheets(path: str) -> Dict[str, Any]:
     """List worksheet names in a workbook.
 
@@ -714,11 +1121,37 @@ async def tool_list_sheets(path: str) -> Dict[str, Any]:
         - `sheets`: list of worksheet names in order
     """
 
-    sheets = list_sheets(path)
+    sheets = await asyncio.to_thread(list_sheets, path)
     return {"path": path, "sheets": sheets}
 
 
 @app.tool()
+@with_metrics
+async def tool_flush_excel(path: str) -> Dict[str, Any]:
+    """Write a workbook's pending changes to disk.
+
+    Only needed when the server runs with write-behind enabled
+    (EXCEL_MCP_WRITE_BEHIND_MS), where saves are kept in memory until the
+    workbook has been idle for a while. Call it before handing out a workbook
+    that was just changed. If the workbook is under EXCEL_SHARED_DIR, this also
+    returns a public `download_url`.
+
+    Args:
+        path: Target workbook path.
+
+    Returns:
+        A JSON-serializable dict containing `message`, `path`, and `download_url`.
+    """
+    await asyncio.to_thread(flush_excel, path)
+    return {
+        "message": f"Flushed {path}",
+        "path": path,
+        "download_url": build_download_url_for_path(path),
+    }
+
+
+@app.tool()
+@with_metrics
 async def tool_create_pivot_table(
     path: str,
     sheet_name: str,
@@ -746,7 +1179,7 @@ async def tool_create_pivot_table(
     Notes:
         - Depending on the implementation state, this may build metadata only and may not create a native Excel pivot table object.
     """
-    message = create_pivot_table(path, sheet_name, data_range, rows, values, columns, agg_func)
+    message = await asyncio.to_thread(create_pivot_table, path, sheet_name, data_range, rows, values, columns, agg_func)
     return {"message": message}
 
 
@@ -768,8 +1201,6 @@ def main(transport: str = "stdio", port: int = 8000) -> None:
     """
 
     if transport == "http":
-        import asyncio
-
         # Bind on all interfaces in containers and respect the requested port
         app.settings.host = "0.0.0.0"
         app.settings.port = port
@@ -13,11 +13,20 @@ implementation, but they can also be imported and used directly.
 
 from __future__ import annotations
 
+import itertools
 import json
 import os
+import struct
 import subprocess
+import sys
+import tempfile
+import threading
+from array import array
+from concurrent.futures import Future
+from contextlib import contextmanager
+from contextvars import ContextVar
 from pathlib import Path
-from typing import Any, Iterable, List, Optional
+from typing import Any, Dict, Iterable, Iterator, List, Optional
 
 # Base paths relative to repository root (this file lives in py/src/excel).
 # ``wrapper.py`` is located at ``<repo>/py/src/excel/wrapper.py`` so the
@@ -26,6 +35,10 @@ _REPO_ROOT = Path(__file__).resolve().parents[3]
 _JAVA_DIR = _REPO_ROOT / "java"
 _JAVA_DIST = _JAVA_DIR / "dist"
 _JAVA_JARS = _JAVA_DIR / "jars"
+# Built by ``java/tools/compile.sh``: the application jar (its manifest
+# references ``java/jars``) and the AppCDS archive dumped from a training run.
+_APP_JAR = _JAVA_DIST / "excel-mcp.jar"
+_CDS_ARCHIVE = _JAVA_DIST / "excel-mcp.jsa"
 
 
 def _java_classpath() -> str:
@@ -40,6 +53,23 @@ def _java_classpath() -> str:
     return f"{jars_pattern}:{_JAVA_DIST}"
 
 
+def _java_launcher() -> List[str]:
+    """Return the ``java`` command line up to (not including) the class name.
+
+    Prefers the application jar together with its AppCDS archive, which
+    avoids loading and verifying POI/xmlbeans classes on every call. The JVM
+    silently falls back to normal class loading if the archive does not
+    match the current JDK or class path.
+    """
+
+    if _APP_JAR.exists():
+        cmd = ["java"]
+        if _CDS_ARCHIVE.exists():
+            cmd.append(f"-XX:SharedArchiveFile={_CDS_ARCHIVE}")
+        return [*cmd, "-cp", str(_APP_JAR)]
+    return ["java", "-cp", _java_classpath()]
+
+
 def _run_java(class_name: str, args: Iterable[str]) -> subprocess.CompletedProcess:
     """Run a Java tool and return the completed process.
 
@@ -53,14 +83,185 @@ def _run_java(class_name: str, args: Iterable[str]) -> subprocess.CompletedProce
     """
 
     cmd = [
-        "java",
-        "-cp",
-        _java_classpath(),
+        *_java_launcher(),
         class_name,
         *list(args),
     ]
 
-    return subprocess.run(cmd, check=False, capture_output=True, text=True)
+    records = _metrics_records.get()
+    if tool_server_enabled():
+        result = _tool_server.run(class_name, list(args))
+    else:
+        env = None
+        if records is not None and not metrics_enabled():
+            env = {**os.environ, METRICS_ENV_VAR: "1"}
+        result = subprocess.run(cmd, check=False, capture_output=True, text=True, env=env)
+    result.stderr = _strip_metrics(class_name, result.stderr, records)
+    return result
+
+
+# ---------------------------------------------------------------------------
+# Tool server
+# ---------------------------------------------------------------------------
+
+
+# When set to ``1`` or ``true``, tools run inside one long-lived Java process
+# (``jp.isoittech.ToolServer``) instead of a new JVM per call.
+TOOL_SERVER_ENV_VAR = "EXCEL_MCP_TOOL_SERVER"
+
+
+def tool_server_enabled() -> bool:
+    """Return True if tool calls should go through the long-lived ToolServer."""
+
+    return os.environ.get(TOOL_SERVER_ENV_VAR, "").lower() in ("1", "true")
+
+
+# Number of idle milliseconds after which the ToolServer writes a changed
+# workbook to disk. Until then saves only update the copy in memory; see
+# ``flush_excel``. Has no effect without the ToolServer.
+WRITE_BEHIND_ENV_VAR = "EXCEL_MCP_WRITE_BEHIND_MS"
+
+# When set to ``1`` or ``true`` together with write-behind, every change is
+# appended to a journal next to the workbook before the call returns, so
+# changes not yet written survive a crash of the ToolServer.
+JOURNAL_ENV_VAR = "EXCEL_MCP_JOURNAL"
+
+
+class _ToolServerClient:
+    """Thread-safe client for ``jp.isoittech.ToolServer``.
+
+    Requests are written as JSON lines to the server's stdin and matched to
+    responses by id, so calls from several threads run concurrently in the
+    server. The process is started on first use and restarted if it exits.
+    """
+
+    def __init__(self) -> None:
+        self._lock = threading.Lock()
+        self._proc: Optional[subprocess.Popen] = None
+        self._pending: Dict[int, Future] = {}
+        self._ids = itertools.count(1)
+
+    def run(self, class_name: str, args: List[str]) -> subprocess.CompletedProcess:
+        tool = class_name.rsplit(".", 1)[-1]
+        future: Future = Future()
+        with self._lock:
+            proc = self._ensure_started()
+            request_id = next(self._ids)
+            self._pending[request_id] = future
+            request = {"id": request_id, "tool": tool, "args": args}
+            try:
+                proc.stdin.write(json.dumps(request, ensure_ascii=False) + "\n")
+                proc.stdin.flush()
+            except OSError as exc:
+                del self._pending[request_id]
+                raise RuntimeError(f"ToolServer is not available: {exc}") from exc
+        response = future.result()
+        return subprocess.CompletedProcess(
+            args=[class_name, *args],
+            returncode=response["exitCode"],
+            stdout=response["stdout"],
+            stderr=response["stderr"],
+        )
+
+    def _ensure_started(self) -> subprocess.Popen:
+        if self._proc is not None and self._proc.poll() is None:
+            return self._proc
+        # Metrics are always requested; _strip_metrics drops them unless collected.
+        env = {**os.environ, METRICS_ENV_VAR: "1"}
+        proc = subprocess.Popen(
+            [*_java_launcher(), "jp.isoittech.ToolServer"],
+            stdin=subprocess.PIPE,
+            stdout=subprocess.PIPE,
+            text=True,
+            encoding="utf-8",
+            env=env,
+        )
+        # Each process gets its own pending map, so a restart never mixes them up.
+        self._pending = {}
+        threading.Thread(
+            target=self._read_responses, args=(proc, self._pending), daemon=True
+        ).start()
+        self._proc = proc
+        return proc
+
+    def _read_responses(self, proc: subprocess.Popen, pending: Dict[int, Future]) -> None:
+        for line in proc.stdout:
+            response = json.loads(line)
+            with self._lock:
+                future = pending.pop(response.get("id"), None)
+            if future is not None:
+                future.set_result(response)
+        # The server exited: fail the calls that were waiting on it.
+        with self._lock:
+            waiting = list(pending.values())
+            pending.clear()
+        for future in waiting:
+            future.set_exception(RuntimeError(f"ToolServer exited with code {proc.wait()}"))
+
+
+_tool_server = _ToolServerClient()
+
+
+# ---------------------------------------------------------------------------
+# Metrics
+# ---------------------------------------------------------------------------
+
+
+# When set to ``1`` or ``true``, every Java tool prints a timing record as a
+# single ``{"metrics": {...}}`` JSON line on stderr (see ToolMetrics.java).
+METRICS_ENV_VAR = "EXCEL_MCP_METRICS"
+
+_metrics_records: ContextVar[Optional[List[Dict[str, Any]]]] = ContextVar(
+    "excel_metrics_records", default=None
+)
+
+
+def metrics_enabled() -> bool:
+    """Return True if the Java tools are configured to emit metrics."""
+
+    return os.environ.get(METRICS_ENV_VAR, "").lower() in ("1", "true")
+
+
+@contextmanager
+def collect_metrics() -> Iterator[List[Dict[str, Any]]]:
+    """Collect the metrics of every Java tool run inside the ``with`` block.
+
+    Yields a list that receives one dict per tool invocation, for example::
+
+        {"tool": "WriteRangeTool", "openMs": 3.1, "parseMs": 40.2, ...}
+
+    Metrics are requested from the Java side for the duration of the block
+    even if ``EXCEL_MCP_METRICS`` is not set.
+    """
+
+    records: List[Dict[str, Any]] = []
+    token = _metrics_records.set(records)
+    try:
+        yield records
+    finally:
+        _metrics_records.reset(token)
+
+
+def _strip_metrics(
+    class_name: str, stderr: str, records: Optional[List[Dict[str, Any]]]
+) -> str:
+    """Remove metrics lines from ``stderr`` and append them to ``records``."""
+
+    if '{"metrics":' not in stderr:
+        return stderr
+    kept = []
+    for line in stderr.splitlines(keepends=True):
+        if line.startswith('{"metrics":'):
+            try:
+                metrics = json.loads(line)["metrics"]
+            except (ValueError, KeyError, TypeError):
+                kept.append(line)
+                continue
+            if records is not None:
+                records.append({"tool": class_name.rsplit(".", 1)[-1], **metrics})
+        else:
+            kept.append(line)
+    return "".join(kept)
 
 
 # ---------------------------------------------------------------------------
@@ -92,14 +293,344 @@ def read_excel(file_path: str, sheet_name: str, range_str: str) -> List[List[Any
     return json.loads(result.stdout.strip() or "[]")
 
 
+def read_excel_sparse(file_path: str, sheet_name: str, range_str: str) -> List[List[Any]]:
+    """Read only the populated cells of a range.
+
+    Returns runs of adjacent cells in a row as ``[row, column, [values...]]``,
+    with row and column counted from the top-left cell of the range. Empty
+    cells are left out, so mostly-empty ranges stay small.
+    """
+
+    result = _run_java("jp.isoittech.ReadExcelTool", [file_path, sheet_name, range_str, "sparse"])
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"ReadExcelTool failed: {result.returncode}")
+    return json.loads(result.stdout)["cells"]
+
+
+def read_excel_columnar(file_path: str, sheet_name: str, range_str: str) -> List[List[Any]]:
+    """Read a rectangular range column by column through the binary columnar format.
+
+    Returns one list per column (not per row), with the same values as
+    :func:`read_excel`. Numbers are transferred as raw doubles instead of
+    decimal text, which makes large numeric reads much cheaper.
+    """
+
+    fd, output_path = tempfile.mkstemp(suffix=".xlcols")
+    os.close(fd)
+    try:
+        result = _run_java(
+            "jp.isoittech.ReadExcelTool",
+            [file_path, sheet_name, range_str, "columnar", output_path],
+        )
+        if result.returncode != 0:
+            raise RuntimeError(result.stderr or f"ReadExcelTool failed: {result.returncode}")
+        with open(output_path, "rb") as f:
+            return decode_columnar(f.read())
+    finally:
+        try:
+            os.unlink(output_path)
+        except FileNotFoundError:
+            pass
+
+
+def read_page(
+    file_path: str,
+    sheet_name: str,
+    page_size: int = 1000,
+    cursor: Optional[str] = None,
+) -> Dict[str, Any]:
+    """Read a sheet page by page.
+
+    Returns ``{"range": ..., "rows": [[...], ...], "cursor": ...}``. Pass the
+    returned ``cursor`` to get the next page; it is ``None`` after the last one.
+    Later pages cost about as much as the first, because the sheet is indexed
+    once and cached until the workbook changes.
+    """
+
+    result = _run_java(
+        "jp.isoittech.ReadPageTool",
+        [file_path, sheet_name, str(page_size), cursor or ""],
+    )
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"ReadPageTool failed: {result.returncode}")
+    return json.loads(result.stdout.strip())
+
+
+def search_excel(
+    file_path: str,
+    query: str,
+    mode: str = "text",
+    max_hits: int = 100,
+    sheet_name: Optional[str] = None,
+) -> Dict[str, Any]:
+    """Find the cells whose value (or formula) matches `query`, across all sheets.
+
+    `mode` is "text" (substring, ignoring case), "exact", "regex" or "formula".
+    Returns ``{"hits": [{"sheet": ..., "cell": ..., "value": ...}, ...], "truncated": ...}``
+    with at most `max_hits` hits in workbook order.
+    """
+
+    result = _run_java(
+        "jp.isoittech.SearchTool",
+        [file_path, query, mode, str(max_hits), sheet_name or ""],
+    )
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"SearchTool failed: {result.returncode}")
+    return json.loads(result.stdout.strip())
+
+
+def diff_excel(
+    file_path: str,
+    other_file_path: str,
+    sheet_name: Optional[str] = None,
+    other_sheet_name: Optional[str] = None,
+    range_str: Optional[str] = None,
+    other_range_str: Optional[str] = None,
+    key_column: Optional[str] = None,
+    max_changes: int = 1000,
+) -> Dict[str, Any]:
+    """Compare two workbooks, sheets or ranges and return the cells that differ.
+
+    Rows are aligned by position, or by the value of `key_column` (a column letter of the
+    first range). Without `sheet_name` every sheet is compared with the sheet of the same
+    name in the other workbook. Returns ``{"changes": [{"sheet", "cell", "type", "old",
+    "new"}, ...], "rowsChanged", "rowsInserted", "rowsDeleted", "sheetsAdded",
+    "sheetsRemoved", "truncated"}``, with at most `max_changes` changes.
+    """
+
+    result = _run_java(
+        "jp.isoittech.DiffTool",
+        [
+            file_path,
+            other_file_path,
+            sheet_name or "",
+            other_sheet_name or "",
+            range_str or "",
+            other_range_str or "",
+            key_column or "",
+            str(max_changes),
+        ],
+    )
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"DiffTool failed: {result.returncode}")
+    return json.loads(result.stdout.strip())
+
+
+# Layout of the binary columnar format; see java/src/jp/isoittech/ColumnarEncoder.java.
+_COLUMNAR_MAGIC = b"XLCOLS01"
+_COLUMN_NULL, _COLUMN_FLOAT64, _COLUMN_BOOL, _COLUMN_STRING, _COLUMN_MIXED = range(5)
+_TAG_NUMBER, _TAG_BOOLEAN, _TAG_STRING = 1, 2, 3
+
+
+def _align8(n: int) -> int:
+    return (n + 7) & ~7
+
+
+def _read_array(typecode: str, data: memoryview, pos: int, count: int) -> array:
+    values = array(typecode)
+    values.frombytes(data[pos : pos + count * values.itemsize])
+    if sys.byteorder == "big":
+        values.byteswap()
+    return values
+
+
+def decode_columnar(data: bytes) -> List[List[Any]]:
+    """Decode the binary columnar format written by ``ReadExcelTool``.
+
+    Returns one list per column; empty cells are ``None``.
+    """
+
+    view = memoryview(data)
+    if bytes(view[:8]) != _COLUMNAR_MAGIC:
+        raise ValueError("Not a columnar Excel read result")
+    rows, columns, string_count, _ = struct.unpack_from("<4i", view, 8)
+    pos = 24
+    strings: List[str] = []
+    for _ in range(string_count):
+        (length,) = struct.unpack_from("<i", view, pos)
+        pos += 4
+        strings.append(str(view[pos : pos + length], "utf-8"))
+        pos += length
+    pos = _align8(pos)
+
+    bitmap_size = (rows + 7) // 8
+    full_bitmap = b"\xff" * (rows // 8) + (bytes([(1 << rows % 8) - 1]) if rows % 8 else b"")
+    result: List[List[Any]] = []
+    for _ in range(columns):
+        kind = view[pos]
+        pos += 8
+        if kind == _COLUMN_NULL:
+            result.append([None] * rows)
+            continue
+        validity = view[pos : pos + bitmap_size]
+        pos += _align8(bitmap_size)
+
+        values: List[Any]
+        if kind == _COLUMN_FLOAT64:
+            values = _read_array("d", view, pos, rows).tolist()
+            pos += rows * 8
+        elif kind == _COLUMN_BOOL:
+            bits = view[pos : pos + bitmap_size]
+            values = [bool(bits[i >> 3] >> (i & 7) & 1) for i in range(rows)]
+            pos += _align8(bitmap_size)
+        elif kind == _COLUMN_STRING:
+            values = [strings[i] for i in _read_array("i", view, pos, rows)]
+            pos += _align8(rows * 4)
+        elif kind == _COLUMN_MIXED:
+            tags = view[pos : pos + rows]
+            pos += _align8(rows)
+            numbers = _read_array("d", view, pos, rows)
+            pos += rows * 8
+            indexes = _read_array("i", view, pos, rows)
+            pos += _align8(rows * 4)
+            values = [
+                numbers[i] if tag == _TAG_NUMBER
+                else numbers[i] != 0 if tag == _TAG_BOOLEAN
+                else strings[indexes[i]] if tag == _TAG_STRING
+                else None
+                for i, tag in enumerate(tags)
+            ]
+        else:
+            raise ValueError(f"Unknown column type {kind} in columnar Excel read result")
+
+        if validity != full_bitmap:
+            for i in range(rows):
+                if not validity[i >> 3] >> (i & 7) & 1:
+                    values[i] = None
+        result.append(values)
+    return result
+
+
+def encode_columnar(columns: List[List[Any]]) -> bytes:
+    """Encode columns of values in the binary columnar format (see :func:`decode_columnar`).
+
+    ``columns`` holds one list per column, all of the same length; values are
+    numbers, booleans, strings or ``None``. Columns of numbers only are packed
+    as float64 arrays.
+    """
+
+    rows = len(columns[0]) if columns else 0
+    if any(len(column) != rows for column in columns):
+        raise ValueError("All columns must have the same length")
+
+    strings: Dict[str, int] = {}
+    bitmap_size = (rows + 7) // 8
+    full_bitmap = b"\xff" * (rows // 8) + (bytes([(1 << rows % 8) - 1]) if rows % 8 else b"")
+
+    def pad(buf: bytearray) -> None:
+        buf.extend(bytes(_align8(len(buf)) - len(buf)))
+
+    def bitmap(flags: Iterable[bool]) -> bytes:
+        bits = bytearray(bitmap_size)
+        for i, flag in enumerate(flags):
+            if flag:
+                bits[i >> 3] |= 1 << (i & 7)
+        return bytes(bits)
+
+    def string_index(value: str) -> int:
+        index = strings.get(value)
+        if index is None:
+            index = strings[value] = len(strings)
+        return index
+
+    def packed(typecode: str, values: Iterable[Any]) -> bytes:
+        packed_values = array(typecode, values)
+        if sys.byteorder == "big":
+            packed_values.byteswap()
+        return packed_values.tobytes()
+
+    body = bytearray()
+    for column in columns:
+        tags = bytearray(rows)
+        for i, value in enumerate(column):
+            if value is None:
+                continue
+            if isinstance(value, bool):
+                tags[i] = _TAG_BOOLEAN
+            elif isinstance(value, (int, float)):
+                tags[i] = _TAG_NUMBER
+            elif isinstance(value, str):
+                tags[i] = _TAG_STRING
+            else:
+                raise TypeError(f"Unsupported value for columnar encoding: {value!r}")
+        kinds = set(tags) - {0}
+        if not kinds:
+            body.extend(bytes([_COLUMN_NULL]) + bytes(7))
+            continue
+
+        validity = full_bitmap if 0 not in tags else bitmap(tag != 0 for tag in tags)
+        kind = _COLUMN_MIXED if len(kinds) > 1 else {
+            _TAG_NUMBER: _COLUMN_FLOAT64,
+            _TAG_BOOLEAN: _COLUMN_BOOL,
+            _TAG_STRING: _COLUMN_STRING,
+        }[kinds.pop()]
+        body.extend(bytes([kind]) + bytes(7))
+        body.extend(validity)
+        pad(body)
+        if kind == _COLUMN_FLOAT64:
+            body.extend(packed("d", (0.0 if value is None else value for value in column)))
+        elif kind == _COLUMN_BOOL:
+            body.extend(bitmap(value is True for value in column))
+            pad(body)
+        elif kind == _COLUMN_STRING:
+            body.extend(packed("i", (0 if value is None else string_index(value) for value in column)))
+            pad(body)
+        else:
+            body.extend(tags)
+            pad(body)
+            body.extend(packed("d", (
+                float(value) if tag in (_TAG_NUMBER, _TAG_BOOLEAN) else 0.0
+                for value, tag in zip(column, tags)
+            )))
+            body.extend(packed("i", (
+                string_index(value) if tag == _TAG_STRING else 0
+                for value, tag in zip(column, tags)
+            )))
+            pad(body)
+
+    header = bytearray(_COLUMNAR_MAGIC + struct.pack("<4i", rows, len(columns), len(strings), 0))
+    for value in strings:
+        encoded = value.encode("utf-8")
+        header.extend(struct.pack("<i", len(encoded)))
+        header.extend(encoded)
+    pad(header)
+    return bytes(header + body)
+
+
+# Payloads larger than this are passed to the Java tools as ``@path`` through a
+# temporary file instead of on the command line, which is limited in length.
+_INLINE_DATA_LIMIT = 64 * 1024
+
+
+@contextmanager
+def _data_arg(data: List[List[Any]]) -> Iterator[str]:
+    """Yield the argument for a JSON rows payload: the JSON itself, or ``@path``."""
+
+    json_data = json.dumps(data, ensure_ascii=False)
+    if len(json_data) <= _INLINE_DATA_LIMIT:
+        yield json_data
+        return
+    fd, path = tempfile.mkstemp(suffix=".json")
+    try:
+        with os.fdopen(fd, "w", encoding="utf-8") as f:
+            f.write(json_data)
+        del json_data
+        yield "@" + path
+    finally:
+        try:
+            os.unlink(path)
+        except FileNotFoundError:
+            pass
+
+
 def write_excel(file_path: str, sheet_name: str, data: List[List[Any]]) -> None:
     """Write a matrix of values into an Excel sheet starting at A1.
 
     ``data`` must be JSON-serializable.
     """
 
-    json_data = json.dumps(data, ensure_ascii=False)
-    result = _run_java("jp.isoittech.WriteExcelTool", [file_path, sheet_name, json_data])
+    with _data_arg(data) as json_data:
+        result = _run_java("jp.isoittech.WriteExcelTool", [file_path, sheet_name, json_data])
     if result.returncode != 0:
         raise RuntimeError(result.stderr or f"WriteExcelTool failed: {result.returncode}")
 
@@ -116,8 +647,34 @@ def write_range(file_path: str, sheet_name: str, start_cell: str, data: List[Lis
     ``data`` must be JSON-serializable.
     """
 
-    json_data = json.dumps(data, ensure_ascii=False)
-    result = _run_java("jp.isoittech.WriteRangeTool", [file_path, sheet_name, start_cell, json_data])
+    with _data_arg(data) as json_data:
+        result = _run_java("jp.isoittech.WriteRangeTool", [file_path, sheet_name, start_cell, json_data])
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"WriteRangeTool failed: {result.returncode}")
+
+
+def write_range_columnar(file_path: str, sheet_name: str, start_cell: str, columns: List[List[Any]]) -> None:
+    """Write columns of values into an Excel sheet starting at `start_cell`.
+
+    Like :func:`write_range`, but ``columns`` holds one list per column (as
+    returned by :func:`read_excel_columnar`) and is passed to Java in the
+    binary columnar format, so numeric columns travel as packed doubles and
+    are written without per-cell JSON parsing.
+    """
+
+    fd, data_path = tempfile.mkstemp(suffix=".xlcols")
+    try:
+        with os.fdopen(fd, "wb") as f:
+            f.write(encode_columnar(columns))
+        result = _run_java(
+            "jp.isoittech.WriteRangeTool",
+            [file_path, sheet_name, start_cell, "@" + data_path, "columnar"],
+        )
+    finally:
+        try:
+            os.unlink(data_path)
+        except FileNotFoundError:
+            pass
     if result.returncode != 0:
         raise RuntimeError(result.stderr or f"WriteRangeTool failed: {result.returncode}")
 
@@ -134,8 +691,8 @@ def append_rows(file_path: str, sheet_name: str, rows: List[List[Any]], anchor_c
     ``rows`` must be JSON-serializable.
     """
 
-    json_rows = json.dumps(rows, ensure_ascii=False)
-    result = _run_java("jp.isoittech.AppendRowsTool", [file_path, sheet_name, anchor_column, json_rows])
+    with _data_arg(rows) as json_rows:
+        result = _run_java("jp.isoittech.AppendRowsTool", [file_path, sheet_name, anchor_column, json_rows])
     if result.returncode != 0:
         raise RuntimeError(result.stderr or f"AppendRowsTool failed: {result.returncode}")
 
@@ -148,6 +705,52 @@ def append_rows(file_path: str, sheet_name: str, rows: List[List[Any]], anchor_c
         raise RuntimeError(f"AppendRowsTool returned non-integer start row: {out!r}") from e
 
 
+def import_csv(
+    file_path: str,
+    sheet_name: str,
+    csv_path: str,
+    start_cell: str = "A1",
+    delimiter: str = ",",
+) -> Dict[str, Any]:
+    """Stream a UTF-8 CSV file into a sheet, starting at `start_cell`.
+
+    The sheet is created if it does not exist. Cell types are inferred from the
+    text (numbers, TRUE/FALSE, formulas starting with "="). Returns the parsed
+    JSON printed by the Java tool: ``{"rows": ..., "columns": ..., "range": ...}``.
+    """
+
+    result = _run_java(
+        "jp.isoittech.ImportCsvTool",
+        [file_path, sheet_name, csv_path, start_cell, delimiter],
+    )
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"ImportCsvTool failed: {result.returncode}")
+    return json.loads(result.stdout.strip())
+
+
+def export_sheet(
+    file_path: str,
+    sheet_name: str,
+    output_path: str,
+    fmt: str = "csv",
+    range_str: Optional[str] = None,
+) -> Dict[str, Any]:
+    """Stream a sheet (or `range_str` of it) to a CSV or NDJSON file.
+
+    `fmt` is "csv" or "ndjson" (one JSON array per row). The sheet is not loaded
+    into memory, so this works for sheets of any size. Returns the parsed JSON
+    printed by the Java tool: ``{"path": ..., "rows": ..., "format": ...}``.
+    """
+
+    result = _run_java(
+        "jp.isoittech.ExportSheetTool",
+        [file_path, sheet_name, output_path, fmt, range_str or ""],
+    )
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"ExportSheetTool failed: {result.returncode}")
+    return json.loads(result.stdout.strip())
+
+
 def create_sheet(file_path: str, sheet_name: str) -> None:
     result = _run_java("jp.isoittech.CreateSheetTool", [file_path, sheet_name])
     if result.returncode != 0:
@@ -166,8 +769,30 @@ def delete_worksheet(file_path: str, sheet_name: str) -> None:
         raise RuntimeError(result.stderr or f"DeleteWorksheetTool failed: {result.returncode}")
 
 
-def copy_worksheet(file_path: str, source_sheet: str, target_sheet: str) -> None:
-    result = _run_java("jp.isoittech.CopyWorksheetTool", [file_path, source_sheet, target_sheet])
+def move_worksheet(file_path: str, sheet_name: str, position: int) -> None:
+    """Move a worksheet to `position` (0-based) in the sheet order."""
+
+    result = _run_java("jp.isoittech.MoveWorksheetTool", [file_path, sheet_name, str(position)])
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"MoveWorksheetTool failed: {result.returncode}")
+
+
+def copy_worksheet(
+    file_path: str,
+    source_sheet: str,
+    target_sheet: str,
+    target_file_path: Optional[str] = None,
+) -> None:
+    """Copy a worksheet within the workbook, or into `target_file_path` as its last sheet.
+
+    Copies into another workbook stream the sheet from file to file, so neither workbook is
+    loaded into memory.
+    """
+
+    result = _run_java(
+        "jp.isoittech.CopyWorksheetTool",
+        [file_path, source_sheet, target_sheet, target_file_path or ""],
+    )
     if result.returncode != 0:
         raise RuntimeError(result.stderr or f"CopyWorksheetTool failed: {result.returncode}")
 
@@ -213,6 +838,14 @@ def format_range(
         raise RuntimeError(result.stderr or f"FormatRangeTool failed: {result.returncode}")
 
 
+def conditional_format(file_path: str, sheet_name: str, range_str: str, rule: Dict[str, Any]) -> None:
+    """Add a conditional formatting rule to `range_str` (see ConditionalFormatTool for `rule`)."""
+
+    result = _run_java("jp.isoittech.ConditionalFormatTool", [file_path, sheet_name, range_str, json.dumps(rule)])
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"ConditionalFormatTool failed: {result.returncode}")
+
+
 def merge_cells(file_path: str, sheet_name: str, start_cell: str, end_cell: str) -> None:
     result = _run_java("jp.isoittech.MergeCellsTool", [file_path, sheet_name, start_cell, end_cell])
     if result.returncode != 0:
@@ -273,6 +906,21 @@ def delete_range(
         raise RuntimeError(result.stderr or f"DeleteRangeTool failed: {result.returncode}")
 
 
+def insert_range(
+    file_path: str,
+    sheet_name: str,
+    start_cell: str,
+    end_cell: str,
+    shift_direction: str = "down",
+) -> None:
+    result = _run_java(
+        "jp.isoittech.InsertRangeTool",
+        [file_path, sheet_name, start_cell, end_cell, shift_direction],
+    )
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"InsertRangeTool failed: {result.returncode}")
+
+
 def validate_excel_range(
     file_path: str,
     sheet_name: str,
@@ -297,14 +945,22 @@ def create_chart(
     title: Optional[str] = None,
     x_axis: Optional[str] = None,
     y_axis: Optional[str] = None,
+    downsample: Optional[str] = None,
+    max_points: Optional[int] = None,
 ) -> None:
     args = [file_path, sheet_name, data_range, chart_type, target_cell]
-    if title is not None:
-        args.append(title)
-    if x_axis is not None:
-        args.append(x_axis)
-    if y_axis is not None:
-        args.append(y_axis)
+    if downsample is not None or max_points is not None:
+        # Positional args: empty strings stand for omitted optional values.
+        args.extend([title or "", x_axis or "", y_axis or "", downsample or "", ""])
+        if max_points is not None:
+            args[-1] = str(max_points)
+    else:
+        if title is not None:
+            args.append(title)
+        if x_axis is not None:
+            args.append(x_axis)
+        if y_axis is not None:
+            args.append(y_axis)
     result = _run_java("jp.isoittech.CreateChartTool", args)
     if result.returncode != 0:
         raise RuntimeError(result.stderr or f"CreateChartTool failed: {result.returncode}")
@@ -347,3 +1003,16 @@ def list_sheets(file_path: str) -> List[str]:
     if result.returncode != 0:
         raise RuntimeError(result.stderr or f"ListSheetsTool failed: {result.returncode}")
     return json.loads(result.stdout.strip() or "[]")
+
+
+def flush_excel(file_path: Optional[str] = None) -> None:
+    """Write pending changes held by the ToolServer's write-behind cache to disk.
+
+    Flushes ``file_path``, or every cached workbook when it is omitted. Without
+    the ToolServer or write-behind every save is already on disk and this does
+    nothing.
+    """
+
+    result = _run_java("jp.isoittech.FlushTool", [file_path] if file_path else [])
+    if result.returncode != 0:
+        raise RuntimeError(result.stderr or f"FlushTool failed: {result.returncode}")